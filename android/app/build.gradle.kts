@@ -22,6 +22,19 @@ android {
         jvmTarget = JavaVersion.VERSION_11.toString()
     }
 
+    testOptions {
+        // Robolectric tests read the merged manifest and assets.
+        unitTests.isIncludeAndroidResources = true
+    }
+
+    sourceSets {
+        // The corpus evaluator is a build-machine tool kept out of the APK; its tests
+        // compile it alongside the app classes.
+        getByName("test") {
+            java.srcDir("src/evaluator/java")
+        }
+    }
+
     defaultConfig {
         // TODO: Specify your own unique Application ID (https://developer.android.com/studio/build/application-id.html).
         applicationId = "com.navia.navia"
@@ -47,8 +60,37 @@ dependencies {
     implementation("ai.picovoice:porcupine-android:3.0.0")
     implementation("ai.picovoice:eagle-android:1.0.0")
     implementation("com.google.mlkit:barcode-scanning:17.3.0")
+    implementation("org.yaml:snakeyaml:2.2")
+
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("org.robolectric:robolectric:4.14.1")
 }
 
 flutter {
     source = "../.."
 }
+
+// Offline wake / verification tuning (CorpusEvaluator, in src/evaluator/java): the tool
+// plus the plain-Java pipeline classes it replays, compiled for the build machine's JVM,
+// no device or vendor keys needed.
+//   ./gradlew :app:evaluateCorpus --args="<corpus dir> [options]"
+val corpusEvaluatorSources = listOf(
+    "AudioFrontEnd", "ImaAdpcm", "VerifierPool", "SpeakerVerifier", "WakeWordEngine",
+    "VoiceEngineException", "ScriptedWakeWordEngine", "ScriptedSpeakerVerifier",
+)
+val compileCorpusEvaluator = tasks.register<JavaCompile>("compileCorpusEvaluator") {
+    setSource(fileTree("src/main/java/com/navia/navia") {
+        corpusEvaluatorSources.forEach { include("$it.java") }
+    } + fileTree("src/evaluator/java"))
+    classpath = files()
+    destinationDirectory.set(layout.buildDirectory.dir("corpusEvaluator/classes"))
+    sourceCompatibility = JavaVersion.VERSION_11.toString()
+    targetCompatibility = JavaVersion.VERSION_11.toString()
+    options.encoding = "UTF-8"
+}
+tasks.register<JavaExec>("evaluateCorpus") {
+    group = "verification"
+    description = "Replays a labelled corpus through detection and verification over a sensitivity/threshold grid."
+    classpath = files(compileCorpusEvaluator.flatMap { it.destinationDirectory })
+    mainClass.set("com.navia.navia.CorpusEvaluator")
+}
@@ -0,0 +1,693 @@
+package com.navia.navia;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Offline tuning of the wake path. Replays a labelled corpus through the stages
+// PorcupainService runs on the phone (front end -> detector -> 4 s snapshot ending at
+// the detection -> VerifierPool's windows) for a grid of detector sensitivities, then
+// applies a grid of verification thresholds to the scores and prints false-reject /
+// false-accept curves, latency percentiles and throughput. Work is spread over all
+// cores with a fork-join pool: one task per recording loads and conditions it, then
+// forks one pass per sensitivity with its own detector and verifier. A pass scores
+// the windows inline (VerifierPool.verifyInline), so no worker ever blocks on
+// another pool. Not part of the app: built by the compileCorpusEvaluator task and
+// the unit tests only.
+//
+// Corpus layout (16-bit PCM or IMA ADPCM mono WAV, or raw 16 kHz .pcm; subdirectories
+// are walked, so exported wake_diagnostics clips can be dropped in):
+//   <corpus>/target/      the keyword said by the enrolled speaker
+//   <corpus>/impostor/    the keyword said by someone else
+//   <corpus>/background/  no keyword; false wakes are counted per hour
+//
+// Engines come from an Engines implementation named with --engines. The default is
+// the stand-in built on ScriptedWakeWordEngine / ScriptedSpeakerVerifier, so CI runs
+// without vendor keys. Plain Java, runs on the JVM:
+//   ./gradlew :app:evaluateCorpus --args="<corpus> --sensitivity 0.5:0.9:0.1"
+public final class CorpusEvaluator {
+    // The phone's settings: WakeKeyword's default sensitivity in FULL power mode and
+    // VoiceIdService's threshold. Marked in the report.
+    static final float DEVICE_SENSITIVITY = 0.7f;
+    static final float DEVICE_THRESHOLD = 0.6f;
+    // Length of PorcupainService's ring buffer, i.e. of the verification snapshot.
+    static final int SNAPSHOT_SECONDS = 4;
+    static final int PCM_SAMPLE_RATE = 16000;
+    // PorcupainService's capture frame; the AGC adapts once per frame.
+    static final int CAPTURE_FRAME_LENGTH = 512;
+    // Above any score, so VerifierPool scores every window and returns the best; the
+    // thresholds are applied afterwards.
+    private static final float SCORE_ALL_WINDOWS = 1f;
+
+    private static final String USAGE = String.join("\n",
+            "usage: CorpusEvaluator <corpus dir> [options]",
+            "  --sensitivity LIST   detector sensitivities, 0.5,0.7 or 0.5:0.9:0.1 (default 0.5:0.9:0.1)",
+            "  --threshold LIST     verification thresholds (default 0.4:0.8:0.05)",
+            "  --engines CLASS      Engines implementation with a no-arg constructor (default: stand-in)",
+            "  --cost-ns N          per-frame CPU cost of the stand-in engines (default 0)",
+            "  --front-end STAGES   enabled front-end stages, comma separated, or none (default highPass,agc)",
+            "  --threads N          fork-join parallelism, at least 1 (default: all cores)",
+            "  --csv FILE           also write the sweep as CSV");
+
+    public enum Label {
+        TARGET, IMPOSTOR, BACKGROUND;
+
+        static Label of(String directory) {
+            for (Label label : values()) {
+                if (label.name().equalsIgnoreCase(directory)) return label;
+            }
+            return null;
+        }
+    }
+
+    public static final class Recording {
+        // Path relative to the corpus root.
+        public final String name;
+        public final Label label;
+        public final int sampleRate;
+        // After the front end, as the detector and the verifier see it.
+        public final short[] pcm;
+
+        Recording(String name, Label label, int sampleRate, short[] pcm) {
+            this.name = name;
+            this.label = label;
+            this.sampleRate = sampleRate;
+            this.pcm = pcm;
+        }
+
+        public double seconds() {
+            return pcm.length / (double) sampleRate;
+        }
+    }
+
+    // Called concurrently from the fork-join workers; every call returns a new instance
+    // that is used by one thread at a time, as on the phone.
+    public interface Engines {
+        WakeWordEngine createDetector(Recording recording, float sensitivity) throws VoiceEngineException;
+
+        SpeakerVerifier createVerifier(Recording recording) throws VoiceEngineException;
+    }
+
+    // Deterministic stand-in with the shape of a real detector and verifier: a higher
+    // sensitivity misses fewer keywords and wakes more often on background, the
+    // enrolled speaker scores higher than impostors. Each clip draws from a seed of its
+    // name, so runs are reproducible. The numbers mean nothing; CI uses it to check the
+    // pipeline and the report.
+    public static final class StandInEngines implements Engines {
+        private static final int FRAME_LENGTH = 512;
+        // A keyword clip ends a little after the keyword.
+        private static final double KEYWORD_END = 0.8;
+        private static final int BACKGROUND_SEGMENT_SECONDS = 10;
+        // Frames over which a verifier score builds up to its final value.
+        private static final int SCORE_RAMP_FRAMES = 32;
+
+        private final long costNsPerFrame;
+
+        public StandInEngines() {
+            this(0);
+        }
+
+        public StandInEngines(long costNsPerFrame) {
+            this.costNsPerFrame = costNsPerFrame;
+        }
+
+        @Override
+        public WakeWordEngine createDetector(Recording recording, float sensitivity) {
+            List<Long> fires = new ArrayList<>();
+            if (recording.label == Label.BACKGROUND) {
+                long segment = (long) BACKGROUND_SEGMENT_SECONDS * recording.sampleRate;
+                double rate = 0.02 * Math.pow(sensitivity, 4);
+                for (long start = 0, n = 0; start + segment <= recording.pcm.length; start += segment, n++) {
+                    SplittableRandom random = draw(recording, 100 + n);
+                    if (random.nextDouble() < rate) fires.add(start + (long) (random.nextDouble() * segment));
+                }
+            } else if (draw(recording, 1).nextDouble() < 0.5 + 0.5 * sensitivity) {
+                fires.add((long) (recording.pcm.length * KEYWORD_END));
+            }
+            long[] offsets = new long[fires.size()];
+            for (int i = 0; i < offsets.length; i++) offsets[i] = fires.get(i);
+            return new ScriptedWakeWordEngine(FRAME_LENGTH, PCM_SAMPLE_RATE, offsets, new int[offsets.length],
+                    costNsPerFrame);
+        }
+
+        @Override
+        public SpeakerVerifier createVerifier(Recording recording) {
+            double u = draw(recording, 2).nextDouble();
+            double target;
+            switch (recording.label) {
+                case TARGET:
+                    target = 0.5 + 0.5 * u;
+                    break;
+                case IMPOSTOR:
+                    target = 0.75 * u;
+                    break;
+                default:
+                    target = 0.5 * u;
+                    break;
+            }
+            float[] scores = new float[SCORE_RAMP_FRAMES];
+            for (int i = 0; i < scores.length; i++) scores[i] = (float) (target * (i + 1) / SCORE_RAMP_FRAMES);
+            return new ScriptedSpeakerVerifier(FRAME_LENGTH, scores, costNsPerFrame);
+        }
+
+        private static SplittableRandom draw(Recording recording, long salt) {
+            return new SplittableRandom(recording.name.hashCode() * 1_000_003L + salt);
+        }
+    }
+
+    // Log-scale latency histogram, 8 buckets per doubling (~9% resolution). Not
+    // thread-safe: one per pass, merged at the end.
+    static final class Histogram {
+        private static final int BUCKETS_PER_OCTAVE = 8;
+        private final long[] counts = new long[64 * BUCKETS_PER_OCTAVE];
+        private long total = 0;
+        private long maxNs = 0;
+
+        void add(long ns) {
+            long value = Math.max(1, ns);
+            int bucket = (int) (BUCKETS_PER_OCTAVE * Math.log(value) / Math.log(2));
+            counts[Math.min(counts.length - 1, bucket)]++;
+            total++;
+            if (value > maxNs) maxNs = value;
+        }
+
+        void addAll(Histogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            total += other.total;
+            maxNs = Math.max(maxNs, other.maxNs);
+        }
+
+        long count() {
+            return total;
+        }
+
+        long maxNs() {
+            return maxNs;
+        }
+
+        // Upper edge of the bucket holding the p-th percentile, capped at the maximum.
+        double percentileNs(double p) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(p / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(maxNs, Math.pow(2, (i + 1) / (double) BUCKETS_PER_OCTAVE));
+            }
+            return maxNs;
+        }
+    }
+
+    // One recording at one sensitivity: the best verification score of every detection.
+    static final class Pass {
+        final Label label;
+        final int sensitivity;
+        final double seconds;
+        final float[] scores;
+
+        Pass(Label label, int sensitivity, double seconds, float[] scores) {
+            this.label = label;
+            this.sensitivity = sensitivity;
+            this.seconds = seconds;
+            this.scores = scores;
+        }
+
+        boolean accepted(float threshold) {
+            for (float score : scores) {
+                if (score > threshold) return true;
+            }
+            return false;
+        }
+
+        int acceptedCount(float threshold) {
+            int n = 0;
+            for (float score : scores) {
+                if (score > threshold) n++;
+            }
+            return n;
+        }
+    }
+
+    private final Engines engines;
+    private final float[] sensitivities;
+    private final float[] thresholds;
+    private final List<String> frontEndStages;
+
+    private final Queue<Pass> passes = new ConcurrentLinkedQueue<>();
+    private final Queue<Histogram> frameLatencies = new ConcurrentLinkedQueue<>();
+    private final Queue<Histogram> verifyLatencies = new ConcurrentLinkedQueue<>();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+    public CorpusEvaluator(Engines engines, float[] sensitivities, float[] thresholds,
+                           List<String> frontEndStages) {
+        this.engines = engines;
+        this.sensitivities = sensitivities.clone();
+        this.thresholds = thresholds.clone();
+        this.frontEndStages = frontEndStages;
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        CorpusEvaluator evaluator = new CorpusEvaluator(options.engines, options.sensitivities,
+                options.thresholds, options.frontEndStages);
+        try {
+            boolean evaluated = evaluator.run(options.corpus, options.threads, System.out);
+            if (options.csv != null) evaluator.writeCsv(options.csv);
+            System.exit(evaluated ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Evaluation failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Returns false when nothing could be evaluated.
+    public boolean run(Path corpus, int threads, PrintStream out) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+        List<RecordingTask> tasks = new ArrayList<>();
+        int ignored = 0;
+        try (Stream<Path> files = Files.walk(corpus)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                Path relative = corpus.relativize(file);
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                Label label = relative.getNameCount() > 1 ? Label.of(relative.getName(0).toString()) : null;
+                if (label == null || !(name.endsWith(".wav") || name.endsWith(".pcm"))) {
+                    ignored++;
+                    continue;
+                }
+                tasks.add(new RecordingTask(file, relative.toString(), label));
+            }
+        }
+        if (tasks.isEmpty()) {
+            out.println("No recordings under " + corpus + " (expected target/, impostor/, background/)");
+            return false;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        for (String failure : failures) System.err.println("skipped " + failure);
+        if (ignored > 0) out.println("Ignored " + ignored + " files outside target/, impostor/, background/");
+        if (passes.isEmpty()) return false;
+        report(out, wallSeconds, pool.getParallelism());
+        return true;
+    }
+
+    // Loads and conditions one recording, then runs one pass per sensitivity.
+    private final class RecordingTask extends RecursiveAction {
+        private final Path file;
+        private final String name;
+        private final Label label;
+
+        RecordingTask(Path file, String name, Label label) {
+            this.file = file;
+            this.name = name;
+            this.label = label;
+        }
+
+        @Override
+        protected void compute() {
+            Recording recording;
+            try {
+                recording = load(file, name, label);
+            } catch (IOException e) {
+                failures.add(name + ": " + e.getMessage());
+                return;
+            }
+            AudioFrontEnd frontEnd = new AudioFrontEnd(recording.sampleRate);
+            for (String stage : AudioFrontEnd.stageNames()) frontEnd.setEnabled(stage, frontEndStages.contains(stage));
+            short[] frame = new short[CAPTURE_FRAME_LENGTH];
+            for (int offset = 0; offset < recording.pcm.length; offset += CAPTURE_FRAME_LENGTH) {
+                int length = Math.min(CAPTURE_FRAME_LENGTH, recording.pcm.length - offset);
+                System.arraycopy(recording.pcm, offset, frame, 0, length);
+                frontEnd.process(frame, length);
+                System.arraycopy(frame, 0, recording.pcm, offset, length);
+            }
+
+            List<RecursiveAction> sweep = new ArrayList<>();
+            for (int s = 0; s < sensitivities.length; s++) {
+                int sensitivity = s;
+                sweep.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        runPass(recording, sensitivity);
+                    }
+                });
+            }
+            invokeAll(sweep);
+        }
+    }
+
+    // Same order as the capture thread: detector on every full frame, and on a
+    // detection the snapshot that ends with that frame is verified.
+    private void runPass(Recording recording, int sensitivity) {
+        Histogram frameNs = new Histogram();
+        Histogram verifyNs = new Histogram();
+        List<Float> scores = new ArrayList<>();
+        WakeWordEngine detector = null;
+        SpeakerVerifier verifier = null;
+        try {
+            detector = engines.createDetector(recording, sensitivities[sensitivity]);
+            if (detector.getSampleRate() != recording.sampleRate) {
+                throw new VoiceEngineException("recorded at " + recording.sampleRate + " Hz, the detector needs "
+                        + detector.getSampleRate() + " Hz");
+            }
+            int frameLength = detector.getFrameLength();
+            int snapshotLength = recording.sampleRate * SNAPSHOT_SECONDS / frameLength * frameLength;
+            short[] frame = new short[frameLength];
+            int frames = recording.pcm.length / frameLength;
+            for (int f = 0; f < frames; f++) {
+                System.arraycopy(recording.pcm, f * frameLength, frame, 0, frameLength);
+                long frameStart = System.nanoTime();
+                int keyword = detector.process(frame);
+                frameNs.add(System.nanoTime() - frameStart);
+                if (keyword < 0) continue;
+
+                if (verifier == null) verifier = engines.createVerifier(recording);
+                short[] snapshot = snapshot(recording.pcm, (f + 1) * frameLength, snapshotLength);
+                VerifierPool.Decision decision = VerifierPool.verifyInline(verifier, snapshot, frameLength,
+                        SCORE_ALL_WINDOWS);
+                verifyNs.add(decision.elapsedNs);
+                scores.add(decision.score);
+            }
+        } catch (VoiceEngineException e) {
+            failures.add(recording.name + " @ " + sensitivities[sensitivity] + ": " + e.getMessage());
+            return;
+        } finally {
+            if (detector != null) detector.delete();
+            if (verifier != null) verifier.delete();
+        }
+        float[] best = new float[scores.size()];
+        for (int i = 0; i < best.length; i++) best[i] = scores.get(i);
+        passes.add(new Pass(recording.label, sensitivity, recording.seconds(), best));
+        frameLatencies.add(frameNs);
+        verifyLatencies.add(verifyNs);
+    }
+
+    // The `length` samples ending at `end`, zero-padded in front like a ring buffer
+    // that has not filled up yet.
+    static short[] snapshot(short[] pcm, int end, int length) {
+        short[] snapshot = new short[length];
+        int from = Math.max(0, end - length);
+        System.arraycopy(pcm, from, snapshot, length - (end - from), end - from);
+        return snapshot;
+    }
+
+    private void report(PrintStream out, double wallSeconds, int threads) {
+        int[] clips = new int[Label.values().length];
+        double[] seconds = new double[Label.values().length];
+        for (Pass pass : passes) {
+            if (pass.sensitivity != 0) continue;
+            clips[pass.label.ordinal()]++;
+            seconds[pass.label.ordinal()] += pass.seconds;
+        }
+        double backgroundHours = seconds[Label.BACKGROUND.ordinal()] / 3600;
+        out.println(String.format(Locale.ROOT, "Corpus: %d target, %d impostor, %d background clips (%.2f h of background)",
+                clips[Label.TARGET.ordinal()], clips[Label.IMPOSTOR.ordinal()], clips[Label.BACKGROUND.ordinal()],
+                backgroundHours));
+        out.println("Engines: " + engines.getClass().getSimpleName() + ", front end: "
+                + (frontEndStages.isEmpty() ? "none" : String.join(",", frontEndStages)));
+
+        out.println();
+        out.println("Detection");
+        out.println("  sens   miss%   wakes/h");
+        for (int s = 0; s < sensitivities.length; s++) {
+            out.println(String.format(Locale.ROOT, "  %.2f  %6.2f  %8.2f", sensitivities[s],
+                    100 - percent(s, null, -1),
+                    perHour(s, -1, backgroundHours)));
+        }
+
+        out.println();
+        out.println("Detection + verification (FRR on target, FAR on impostor, false wakes on background)");
+        out.println("    sens   thr     FRR%    FAR%   wakes/h");
+        for (int s = 0; s < sensitivities.length; s++) {
+            float eerThreshold = Float.NaN;
+            double eer = Double.NaN;
+            double bestGap = Double.MAX_VALUE;
+            for (float threshold : thresholds) {
+                double frr = 100 - percent(s, Label.TARGET, threshold);
+                double far = percent(s, Label.IMPOSTOR, threshold);
+                boolean device = Math.abs(sensitivities[s] - DEVICE_SENSITIVITY) < 1e-4
+                        && Math.abs(threshold - DEVICE_THRESHOLD) < 1e-4;
+                out.println(String.format(Locale.ROOT, "  %s %.2f  %.2f  %6.2f  %6.2f  %8.2f", device ? "*" : " ",
+                        sensitivities[s], threshold, frr, far, perHour(s, threshold, backgroundHours)));
+                if (Math.abs(frr - far) < bestGap) {
+                    bestGap = Math.abs(frr - far);
+                    eer = (frr + far) / 2;
+                    eerThreshold = threshold;
+                }
+            }
+            out.println(String.format(Locale.ROOT, "    sens %.2f: FRR ~ FAR ~ %.2f%% at threshold %.2f",
+                    sensitivities[s], eer, eerThreshold));
+        }
+        out.println(String.format(Locale.ROOT, "  * device setting (sensitivity %.2f, threshold %.2f)",
+                DEVICE_SENSITIVITY, DEVICE_THRESHOLD));
+
+        Histogram frames = new Histogram();
+        for (Histogram h : frameLatencies) frames.addAll(h);
+        Histogram verifies = new Histogram();
+        for (Histogram h : verifyLatencies) verifies.addAll(h);
+        out.println();
+        out.println("Latency");
+        out.println(String.format(Locale.ROOT, "  detector frame  p50 %8.1f us  p90 %8.1f us  p99 %8.1f us  max %8.1f us  (%d frames)",
+                frames.percentileNs(50) / 1e3, frames.percentileNs(90) / 1e3, frames.percentileNs(99) / 1e3,
+                frames.maxNs() / 1e3, frames.count()));
+        // Every window is scored one after another on one instance: the no-early-exit,
+        // single-worker upper bound of the phone's path.
+        out.println(String.format(Locale.ROOT, "  verification    p50 %8.2f ms  p90 %8.2f ms  p99 %8.2f ms  max %8.2f ms  (%d snapshots, all windows)",
+                verifies.percentileNs(50) / 1e6, verifies.percentileNs(90) / 1e6, verifies.percentileNs(99) / 1e6,
+                verifies.maxNs() / 1e6, verifies.count()));
+
+        double audioSeconds = 0;
+        for (Pass pass : passes) audioSeconds += pass.seconds;
+        out.println();
+        out.println("Throughput");
+        out.println(String.format(Locale.ROOT, "  %d passes, %.1f s of audio in %.2f s on %d threads: %.1fx real time, %.1f passes/s",
+                passes.size(), audioSeconds, wallSeconds, threads, audioSeconds / wallSeconds, passes.size() / wallSeconds));
+    }
+
+    // Percent of `label` clips (null: all keyword clips) at sensitivity s that were
+    // detected (threshold < 0) or detected and accepted.
+    private double percent(int s, Label label, float threshold) {
+        int total = 0;
+        int hits = 0;
+        for (Pass pass : passes) {
+            if (pass.sensitivity != s) continue;
+            if (label != null ? pass.label != label : pass.label == Label.BACKGROUND) continue;
+            total++;
+            if (threshold < 0 ? pass.scores.length > 0 : pass.accepted(threshold)) hits++;
+        }
+        return total == 0 ? Double.NaN : 100.0 * hits / total;
+    }
+
+    // Background wakes per hour at sensitivity s, before (threshold < 0) or after verification.
+    private double perHour(int s, float threshold, double hours) {
+        long wakes = 0;
+        for (Pass pass : passes) {
+            if (pass.sensitivity != s || pass.label != Label.BACKGROUND) continue;
+            wakes += threshold < 0 ? pass.scores.length : pass.acceptedCount(threshold);
+        }
+        return hours == 0 ? Double.NaN : wakes / hours;
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        double hours = 0;
+        for (Pass pass : passes) {
+            if (pass.sensitivity == 0 && pass.label == Label.BACKGROUND) hours += pass.seconds / 3600;
+        }
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(file))) {
+            csv.println("sensitivity,threshold,frr_percent,far_percent,false_wakes_per_hour");
+            for (int s = 0; s < sensitivities.length; s++) {
+                for (float threshold : thresholds) {
+                    csv.println(String.format(Locale.ROOT, "%.4f,%.4f,%.4f,%.4f,%.4f", sensitivities[s], threshold,
+                            100 - percent(s, Label.TARGET, threshold), percent(s, Label.IMPOSTOR, threshold),
+                            perHour(s, threshold, hours)));
+                }
+            }
+        }
+    }
+
+    // WAV (16-bit PCM or IMA ADPCM, mono) or raw 16-bit little-endian PCM at 16 kHz.
+    static Recording load(Path file, String name, Label label) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav")) {
+            short[] pcm = new short[bytes.length / 2];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(pcm);
+            return new Recording(name, label, PCM_SAMPLE_RATE, pcm);
+        }
+
+        ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) {
+            throw new IOException("not a RIFF/WAVE file");
+        }
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bits = 0;
+        int blockAlign = 0;
+        int factSamples = -1;
+        int dataOffset = -1;
+        int dataLength = 0;
+        for (int pos = 12; pos + 8 <= bytes.length; ) {
+            int id = wav.getInt(pos);
+            int size = wav.getInt(pos + 4);
+            int body = pos + 8;
+            if (size < 0 || body + size > bytes.length) size = bytes.length - body;
+            if (id == 0x20746d66) { // "fmt "
+                format = wav.getShort(body) & 0xffff;
+                channels = wav.getShort(body + 2);
+                sampleRate = wav.getInt(body + 4);
+                blockAlign = wav.getShort(body + 12) & 0xffff;
+                bits = wav.getShort(body + 14);
+            } else if (id == 0x74636166) { // "fact"
+                factSamples = wav.getInt(body);
+            } else if (id == 0x61746164) { // "data"
+                dataOffset = body;
+                dataLength = size;
+            }
+            pos = body + size + (size & 1);
+        }
+        if (format < 0 || dataOffset < 0) throw new IOException("missing fmt or data chunk");
+        if (channels != 1) throw new IOException(channels + " channels, expected mono");
+
+        if (format == 1 && bits == 16) {
+            short[] pcm = new short[dataLength / 2];
+            ByteBuffer.wrap(bytes, dataOffset, pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(pcm);
+            return new Recording(name, label, sampleRate, pcm);
+        }
+        if (format == 0x0011 && blockAlign > 4) {
+            int samplesPerBlock = (blockAlign - 4) * 2 + 1;
+            int blocks = dataLength / blockAlign;
+            int samples = factSamples >= 0 ? Math.min(factSamples, blocks * samplesPerBlock) : blocks * samplesPerBlock;
+            short[] pcm = new short[samples];
+            for (int b = 0, done = 0; done < samples; b++, done += samplesPerBlock) {
+                ImaAdpcm.decodeBlock(bytes, dataOffset + b * blockAlign, Math.min(samplesPerBlock, samples - done),
+                        pcm, done);
+            }
+            return new Recording(name, label, sampleRate, pcm);
+        }
+        throw new IOException("unsupported WAV format " + format + " (" + bits + " bit)");
+    }
+
+    static final class Options {
+        Path corpus;
+        float[] sensitivities = range("0.5:0.9:0.1");
+        float[] thresholds = range("0.4:0.8:0.05");
+        Engines engines;
+        long costNs = 0;
+        List<String> frontEndStages = Arrays.asList(AudioFrontEnd.HIGH_PASS, AudioFrontEnd.AGC);
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path csv;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            String enginesClass = null;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (options.corpus != null) throw new IllegalArgumentException("More than one corpus: " + arg);
+                    options.corpus = Paths.get(arg);
+                    continue;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException(arg + " needs a value");
+                String value = args[++i];
+                switch (arg) {
+                    case "--sensitivity":
+                        options.sensitivities = range(value);
+                        break;
+                    case "--threshold":
+                        options.thresholds = range(value);
+                        break;
+                    case "--engines":
+                        enginesClass = value;
+                        break;
+                    case "--cost-ns":
+                        options.costNs = Long.parseLong(value);
+                        if (options.costNs < 0) throw new IllegalArgumentException("--cost-ns must not be negative");
+                        break;
+                    case "--front-end":
+                        options.frontEndStages = "none".equals(value) ? new ArrayList<>() : Arrays.asList(value.split(","));
+                        break;
+                    case "--threads":
+                        options.threads = Integer.parseInt(value);
+                        if (options.threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+                        break;
+                    case "--csv":
+                        options.csv = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.corpus == null) throw new IllegalArgumentException("No corpus directory given");
+            if (!Files.isDirectory(options.corpus)) throw new IllegalArgumentException("Not a directory: " + options.corpus);
+            options.engines = enginesClass == null ? new StandInEngines(options.costNs) : instantiate(enginesClass);
+            return options;
+        }
+
+        private static Engines instantiate(String className) {
+            try {
+                return (Engines) Class.forName(className).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Cannot create engines " + className + ": " + e);
+            }
+        }
+
+        // "0.5,0.6,0.7" or "from:to:step", both ends included.
+        static float[] range(String spec) {
+            try {
+                String[] parts = spec.split(":");
+                if (parts.length == 3) {
+                    float from = Float.parseFloat(parts[0]);
+                    float to = Float.parseFloat(parts[1]);
+                    float step = Float.parseFloat(parts[2]);
+                    if (step <= 0 || to < from) throw new IllegalArgumentException("Bad range " + spec);
+                    int n = (int) Math.floor((to - from) / step + 1e-4) + 1;
+                    float[] values = new float[n];
+                    for (int i = 0; i < n; i++) values[i] = Math.round((from + i * step) * 10_000) / 10_000f;
+                    return values;
+                }
+                String[] items = spec.split(",");
+                float[] values = new float[items.length];
+                for (int i = 0; i < items.length; i++) values[i] = Float.parseFloat(items[i].trim());
+                return values;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value list " + spec);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.navia.navia;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Multi-pattern substring matcher. Every pattern carries a rank and a scan returns the
+// lowest rank among all patterns occurring in the text, in one pass over the text and
+// independent of how many patterns were added. Immutable once built.
+public final class AhoCorasick {
+    public static final int NO_MATCH = -1;
+
+    // Per state: sorted transition labels and their targets.
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // Lowest rank of any pattern ending at this state or at one of its suffix states.
+    private final int[] best;
+
+    private AhoCorasick(char[][] labels, int[][] targets, int[] fail, int[] best) {
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.best = best;
+    }
+
+    public int stateCount() {
+        return fail.length;
+    }
+
+    public int bestMatch(CharSequence text) {
+        int state = 0;
+        int result = Integer.MAX_VALUE;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            if (best[state] < result) result = best[state];
+        }
+        return result == Integer.MAX_VALUE ? NO_MATCH : result;
+    }
+
+    private int step(int state, char c) {
+        int k = Arrays.binarySearch(labels[state], c);
+        return k < 0 ? -1 : targets[state][k];
+    }
+
+    public static final class Builder {
+        private final List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        private final List<Integer> ranks = new ArrayList<>();
+
+        public Builder() {
+            newState();
+        }
+
+        private int newState() {
+            edges.add(new TreeMap<>());
+            ranks.add(Integer.MAX_VALUE);
+            return edges.size() - 1;
+        }
+
+        // Empty patterns are ignored. If a pattern is added twice the lower rank wins.
+        public Builder add(String pattern, int rank) {
+            if (pattern == null || pattern.isEmpty()) return this;
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = edges.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = newState();
+                    edges.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            ranks.set(state, Math.min(ranks.get(state), rank));
+            return this;
+        }
+
+        public AhoCorasick build() {
+            int n = edges.size();
+            char[][] labels = new char[n][];
+            int[][] targets = new int[n][];
+            int[] fail = new int[n];
+            int[] best = new int[n];
+            for (int s = 0; s < n; s++) {
+                TreeMap<Character, Integer> map = edges.get(s);
+                labels[s] = new char[map.size()];
+                targets[s] = new int[map.size()];
+                int k = 0;
+                for (Map.Entry<Character, Integer> e : map.entrySet()) {
+                    labels[s][k] = e.getKey();
+                    targets[s][k] = e.getValue();
+                    k++;
+                }
+                best[s] = ranks.get(s);
+            }
+
+            // Breadth-first so a state's failure target is finished before the state.
+            AhoCorasick partial = new AhoCorasick(labels, targets, fail, best);
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int child : targets[0]) {
+                fail[child] = 0;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                for (int k = 0; k < labels[s].length; k++) {
+                    char c = labels[s][k];
+                    int child = targets[s][k];
+                    int f = fail[s];
+                    int next;
+                    while ((next = partial.step(f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = next < 0 || next == child ? 0 : next;
+                    best[child] = Math.min(best[child], best[fail[child]]);
+                    queue.add(child);
+                }
+            }
+            return partial;
+        }
+    }
+}
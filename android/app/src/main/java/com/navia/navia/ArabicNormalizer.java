@@ -0,0 +1,60 @@
+package com.navia.navia;
+
+import java.util.Locale;
+
+// Folds the spelling variants speech recognisers and YAML authors disagree on, so a
+// command matches however it was written: diacritics and tatweel are dropped, alef
+// forms become ا, ى becomes ي, ة becomes ه, hamza carriers become their base letter,
+// Arabic-Indic digits become ASCII and punctuation collapses into single spaces.
+public final class ArabicNormalizer {
+
+    private ArabicNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder out = new StringBuilder(lower.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = fold(lower.charAt(i));
+            if (c == 0) continue;
+            if (c == ' ') {
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    // Returns 0 for characters that are dropped and ' ' for separators.
+    static char fold(char c) {
+        if (c >= '\u064B' && c <= '\u065F') return 0; // harakat
+        if (c == '\u0670' || c == '\u0640') return 0; // superscript alef, tatweel
+        switch (c) {
+            case '\u0623': // أ
+            case '\u0625': // إ
+            case '\u0622': // آ
+            case '\u0671': // ٱ
+                return '\u0627';
+            case '\u0649': // ى
+            case '\u0626': // ئ
+                return '\u064A';
+            case '\u0629': // ة
+                return '\u0647';
+            case '\u0624': // ؤ
+                return '\u0648';
+            default:
+                break;
+        }
+        if (c >= '\u0660' && c <= '\u0669') return (char) ('0' + (c - '\u0660'));
+        if (c >= '\u06F0' && c <= '\u06F9') return (char) ('0' + (c - '\u06F0'));
+        if (Character.isLetterOrDigit(c)) return c;
+        return ' ';
+    }
+}
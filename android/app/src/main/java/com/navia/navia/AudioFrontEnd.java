@@ -0,0 +1,258 @@
+package com.navia.navia;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Conditioning applied to every captured frame before it reaches the ring buffer, so
+// the wake-word detector, the verifier and the command stream all see the same audio.
+// Stages run in place on the capture thread's frame and keep only scalar state, so the
+// steady state allocates nothing. Each stage can be switched on and off from any
+// thread (it resets its state when it comes back on) and times itself; benchmark()
+// runs them one by one on synthetic audio. Plain Java, so it also runs on the JVM.
+public final class AudioFrontEnd {
+    public static final String HIGH_PASS = "highPass";
+    public static final String PRE_EMPHASIS = "preEmphasis";
+    public static final String AGC = "agc";
+
+    public abstract static class Stage {
+        final String name;
+        volatile boolean enabled;
+        private boolean running = false;
+        long totalNs = 0;
+        long maxNs = 0;
+        long frames = 0;
+
+        Stage(String name, boolean enabled) {
+            this.name = name;
+            this.enabled = enabled;
+        }
+
+        abstract void process(short[] frame, int length);
+
+        abstract void reset();
+
+        void putStats(Map<String, Object> stats) {
+        }
+    }
+
+    // One-pole DC blocker / high-pass: y[n] = x[n] - x[n-1] + r * y[n-1]. Removes the
+    // offset and the rumble below ~60 Hz that cheap mics and handling add.
+    static final class HighPass extends Stage {
+        private final float r;
+        private float lastIn = 0;
+        private float lastOut = 0;
+
+        HighPass(int sampleRate, float cutoffHz, boolean enabled) {
+            super(HIGH_PASS, enabled);
+            r = (float) (1.0 - 2.0 * Math.PI * cutoffHz / sampleRate);
+        }
+
+        @Override
+        void process(short[] frame, int length) {
+            float x1 = lastIn;
+            float y1 = lastOut;
+            for (int i = 0; i < length; i++) {
+                float x = frame[i];
+                y1 = x - x1 + r * y1;
+                x1 = x;
+                frame[i] = clip(y1);
+            }
+            lastIn = x1;
+            lastOut = y1;
+        }
+
+        @Override
+        void reset() {
+            lastIn = 0;
+            lastOut = 0;
+        }
+    }
+
+    // y[n] = x[n] - a * x[n-1]. Off by default: Porcupine and Eagle are trained on
+    // unemphasised audio, so this is for A/B runs rather than production.
+    static final class PreEmphasis extends Stage {
+        private final float a;
+        private float lastIn = 0;
+
+        PreEmphasis(float a, boolean enabled) {
+            super(PRE_EMPHASIS, enabled);
+            this.a = a;
+        }
+
+        @Override
+        void process(short[] frame, int length) {
+            float x1 = lastIn;
+            for (int i = 0; i < length; i++) {
+                float x = frame[i];
+                frame[i] = clip(x - a * x1);
+                x1 = x;
+            }
+            lastIn = x1;
+        }
+
+        @Override
+        void reset() {
+            lastIn = 0;
+        }
+    }
+
+    // Frame-level AGC towards a target RMS. The gain only adapts on frames above the
+    // noise gate so silence is not pumped up, drops quickly on loud frames and rises
+    // slowly, and is ramped across the frame to avoid zipper noise.
+    static final class Agc extends Stage {
+        private static final float TARGET_RMS = 3277f;   // -20 dBFS
+        private static final float GATE_RMS = 100f;      // ~-50 dBFS
+        private static final float MIN_GAIN = 0.25f;
+        private static final float MAX_GAIN = 8f;        // +18 dB
+        private static final float ATTACK = 0.5f;
+        private static final float RELEASE = 0.05f;
+
+        private float gain = 1f;
+
+        Agc(boolean enabled) {
+            super(AGC, enabled);
+        }
+
+        @Override
+        void process(short[] frame, int length) {
+            if (length == 0) return;
+            long sum = 0;
+            for (int i = 0; i < length; i++) {
+                int s = frame[i];
+                sum += (long) s * s;
+            }
+            float rms = (float) Math.sqrt((double) sum / length);
+            float from = gain;
+            float to = from;
+            if (rms > GATE_RMS) {
+                float wanted = Math.max(MIN_GAIN, Math.min(MAX_GAIN, TARGET_RMS / rms));
+                to = from + (wanted - from) * (wanted < from ? ATTACK : RELEASE);
+            }
+            float step = (to - from) / length;
+            float g = from;
+            for (int i = 0; i < length; i++) {
+                g += step;
+                frame[i] = clip(frame[i] * g);
+            }
+            gain = to;
+        }
+
+        @Override
+        void reset() {
+            gain = 1f;
+        }
+
+        @Override
+        void putStats(Map<String, Object> stats) {
+            stats.put("gainDb", 20.0 * Math.log10(gain));
+        }
+    }
+
+    private final Stage[] stages;
+
+    public AudioFrontEnd(int sampleRate) {
+        stages = new Stage[]{
+                new HighPass(sampleRate, 60f, true),
+                new PreEmphasis(0.97f, false),
+                new Agc(true),
+        };
+    }
+
+    // Capture thread only. Stages run in declaration order.
+    public void process(short[] frame, int length) {
+        for (Stage stage : stages) {
+            boolean on = stage.enabled;
+            if (!on) {
+                stage.running = false;
+                continue;
+            }
+            if (!stage.running) {
+                stage.reset();
+                stage.running = true;
+            }
+            long start = System.nanoTime();
+            stage.process(frame, length);
+            long elapsed = System.nanoTime() - start;
+            stage.totalNs += elapsed;
+            if (elapsed > stage.maxNs) stage.maxNs = elapsed;
+            stage.frames++;
+        }
+    }
+
+    // Any thread; takes effect from the next frame. Unknown names are ignored.
+    public void setEnabled(String name, boolean enabled) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(name)) stage.enabled = enabled;
+        }
+    }
+
+    public boolean isEnabled(String name) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(name)) return stage.enabled;
+        }
+        return false;
+    }
+
+    public static String[] stageNames() {
+        return new String[]{HIGH_PASS, PRE_EMPHASIS, AGC};
+    }
+
+    // Per stage: enabled, frames, meanUs, maxUs (+ gainDb for the AGC). Counters are
+    // written by the capture thread and read here without locking; good enough for stats.
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Stage stage : stages) {
+            Map<String, Object> s = new HashMap<>();
+            long frames = stage.frames;
+            s.put("enabled", stage.enabled);
+            s.put("frames", frames);
+            s.put("meanUs", frames == 0 ? 0.0 : stage.totalNs / 1000.0 / frames);
+            s.put("maxUs", stage.maxNs / 1000.0);
+            stage.putStats(s);
+            stats.put(stage.name, s);
+        }
+        return stats;
+    }
+
+    // Times each stage alone on the same synthetic frames (noise plus a 200 Hz tone
+    // with a DC offset). Returns mean microseconds per frame by stage name.
+    public static Map<String, Object> benchmark(int sampleRate, int frameLength, int frames) {
+        short[][] input = new short[16][frameLength];
+        Random random = new Random(42);
+        long n = 0;
+        for (short[] frame : input) {
+            for (int i = 0; i < frameLength; i++, n++) {
+                double tone = 3000 * Math.sin(2 * Math.PI * 200 * n / sampleRate);
+                frame[i] = clip((float) (tone + 400 + random.nextGaussian() * 300));
+            }
+        }
+        short[] work = new short[frameLength];
+        Map<String, Object> result = new LinkedHashMap<>();
+        AudioFrontEnd frontEnd = new AudioFrontEnd(sampleRate);
+        for (Stage stage : frontEnd.stages) {
+            stage.reset();
+            // Warm-up pass so the JIT has compiled the loop before it is timed.
+            for (int f = 0; f < Math.min(frames, 200); f++) {
+                System.arraycopy(input[f & 15], 0, work, 0, frameLength);
+                stage.process(work, frameLength);
+            }
+            long total = 0;
+            for (int f = 0; f < frames; f++) {
+                System.arraycopy(input[f & 15], 0, work, 0, frameLength);
+                long start = System.nanoTime();
+                stage.process(work, frameLength);
+                total += System.nanoTime() - start;
+            }
+            result.put(stage.name, frames == 0 ? 0.0 : total / 1000.0 / frames);
+        }
+        return result;
+    }
+
+    static short clip(float value) {
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) value;
+    }
+}
@@ -2,8 +2,6 @@ package com.navia.navia;
 
 import android.accessibilityservice.AccessibilityService;
 import android.content.Intent;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
@@ -12,18 +10,12 @@ import io.flutter.plugin.common.MethodChannel;
 
 import java.util.List;
 
-public class AutoOpenAccessibilityService extends AccessibilityService {
+public class AutoOpenAccessibilityService extends AccessibilityService implements ConnectivitySession.Navigator {
 
     private static AutoOpenAccessibilityService instance;
     private static MethodChannel connectivityChannel;
-    private Handler handler = new Handler(Looper.getMainLooper());
-
-    // Session management
-    private enum Phase {IDLE, NAVIGATING}
-
-    private volatile boolean sessionActive = false;
-    private volatile Phase phase = Phase.IDLE;
-    private long sessionDeadlineMs = 0;
+    // Upper bound on the nodes visited by a matcher without text.
+    private static final int MAX_WALK_NODES = 600;
 
 
     public static AutoOpenAccessibilityService getInstance() {
@@ -34,149 +26,138 @@ public class AutoOpenAccessibilityService extends AccessibilityService {
         connectivityChannel = channel;
     }
 
-    // Session management methods
-    public static void startConnectivitySession() {
-        AutoOpenAccessibilityService svc = getInstance();
-        if (svc != null) svc.startSession();
-    }
-
-    public static void stopConnectivitySession() {
-        AutoOpenAccessibilityService svc = getInstance();
-        if (svc != null) svc.stopSession();
-    }
-
-    private void startSession() {
-        sessionActive = true;
-        phase = Phase.NAVIGATING;
-        sessionDeadlineMs = System.currentTimeMillis() + 20_000; // 20 second timeout
-        Log.d("A11y", "Connectivity session started");
-    }
-
-    private void stopSession() {
-        sessionActive = false;
-        phase = Phase.IDLE;
-        handler.removeCallbacksAndMessages(null);
-        Log.d("A11y", "Connectivity session stopped");
-    }
-
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Session management - do nothing if no active session
-        if (!sessionActive) return;
-        if (System.currentTimeMillis() > sessionDeadlineMs) {
-            Log.d("A11y", "session timeout -> stop");
-            stopSession();
-            return;
-        }
+        // Runs on the main thread: only filter and forward, the session thread does the scanning.
+        ConnectivitySession session = ConnectivitySession.get();
+        if (!session.wantsSettingsEvents()) return;
 
         String pkg = event.getPackageName() == null ? "" : event.getPackageName().toString();
 
-        // Only proceed for Settings app - strict boundary
-        if (!pkg.contains("com.android.settings")) {
+        // Only the Settings screens of the running flow - strict boundary
+        if (!session.wantsEventsFrom(pkg)) {
             return; // Ignore everything outside Settings
         }
 
-        // Route by phase
-        if (phase == Phase.NAVIGATING && (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED ||
-                event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED)) {
-
-            handler.postDelayed(() -> {
-                AccessibilityNodeInfo root = getRootInActiveWindow();
-                if (root == null) return;
-                try {
-                    Log.d("A11y", "Phase NAVIGATING: Attempting to click connected Wi-Fi row...");
-                    clickConnectedRowIfFound(root);
-                } finally {
-                    if (root != null) root.recycle();
-                }
-            }, 300); // Small debounce after content changes
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                session.onSettingsWindowChanged();
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                session.onSettingsContentChanged();
+                break;
+            default:
+                break;
         }
     }
 
-
-    private boolean isSectionHeader(CharSequence text) {
-        if (text == null) return false;
-        String s = text.toString();
-        return s.contains("بالشبكة اللاسلكية"); // Arabic header: "connected to the wireless network"
+    // Called on the ConnectivitySession thread.
+    @Override
+    public SettingsFlow.Outcome perform(SettingsFlow.Step step) {
+        AccessibilityNodeInfo root = getRootInActiveWindow();
+        if (root == null) return SettingsFlow.Outcome.NOT_FOUND;
+        long traceStart = NabdTrace.begin(NabdTrace.S_A11Y_SCAN);
+        try {
+            AccessibilityNodeInfo node = findNode(root, step.match);
+            if (node == null) return SettingsFlow.Outcome.NOT_FOUND;
+            switch (step.action) {
+                case NONE:
+                    return SettingsFlow.Outcome.ACTED;
+                case TOGGLE:
+                    return toggle(node, step.checked);
+                default:
+                    return click(node) ? SettingsFlow.Outcome.ACTED : SettingsFlow.Outcome.NOT_FOUND;
+            }
+        } finally {
+            root.recycle();
+            NabdTrace.end(NabdTrace.S_A11Y_SCAN, traceStart);
+        }
     }
 
-    private AccessibilityNodeInfo findConnectedWifiNode(AccessibilityNodeInfo rootNode) {
-        Log.d("A11y", "Searching for connected Wi-Fi node...");
-
-        // First, try to find by the "متصل" text directly
-        String[] connectedTexts = {"متصل", "Connected", "Connected, secured", "متصل، محمي"};
+    // Called on the ConnectivitySession thread.
+    @Override
+    public boolean isShowing(SettingsFlow.Matcher matcher) {
+        AccessibilityNodeInfo root = getRootInActiveWindow();
+        if (root == null) return false;
+        try {
+            return findNode(root, matcher) != null;
+        } finally {
+            root.recycle();
+        }
+    }
 
-        for (String text : connectedTexts) {
-            List<AccessibilityNodeInfo> nodes = rootNode.findAccessibilityNodeInfosByText(text);
-            Log.d("A11y", "Found " + nodes.size() + " nodes with text: " + text);
+    // Text matchers go through the platform's text search (text and content
+    // description); the others walk the tree.
+    private AccessibilityNodeInfo findNode(AccessibilityNodeInfo root, SettingsFlow.Matcher matcher) {
+        for (int query = 0; query < matcher.text.size(); query++) {
+            List<AccessibilityNodeInfo> nodes = root.findAccessibilityNodeInfosByText(matcher.text.get(query));
+            NabdTrace.event(NabdTrace.A11Y_SCAN, nodes.size(), query);
 
             for (AccessibilityNodeInfo node : nodes) {
-                if (node.getText() != null &&
-                        (node.getText().toString().contains("متصل") ||
-                                node.getText().toString().contains("Connected"))) {
-
-                    // Skip section headers
-                    if (isSectionHeader(node.getText())) {
-                        Log.d("A11y", "Skipping section header: " + node.getText());
-                        continue;
-                    }
-
-                    Log.d("A11y", "Found connected node with text: " + node.getText());
-                    return node;
-                }
+                // Section headers and similar labels are excluded by the matcher
+                boolean accepted = matches(node, matcher);
+                NabdTrace.event(NabdTrace.A11Y_CANDIDATE, query, accepted ? 1 : 0);
+                if (accepted) return node;
             }
         }
+        if (!matcher.text.isEmpty()) return null;
+        int[] budget = {MAX_WALK_NODES};
+        return walk(root, matcher, budget);
+    }
 
-        // Try to find by content description
-        List<AccessibilityNodeInfo> allNodes = rootNode.findAccessibilityNodeInfosByText("");
-        Log.d("AccessibilityService", "Searching " + allNodes.size() + " nodes by content description");
-
-        for (AccessibilityNodeInfo node : allNodes) {
-            if (node.getContentDescription() != null) {
-                String desc = node.getContentDescription().toString();
-                if (desc.contains("متصل") || desc.contains("Connected")) {
-                    Log.d("AccessibilityService", "Found connected node with description: " + desc);
-                    return node;
-                }
-            }
+    private AccessibilityNodeInfo walk(AccessibilityNodeInfo node, SettingsFlow.Matcher matcher, int[] budget) {
+        if (node == null || --budget[0] < 0) return null;
+        if (matches(node, matcher)) return node;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            AccessibilityNodeInfo found = walk(node.getChild(i), matcher, budget);
+            if (found != null) return found;
         }
-
         return null;
     }
 
-    // الدالة المسؤولة عن البحث عن شبكة الواي فاي المتصلة والنقر عليها
-    private void clickConnectedRowIfFound(AccessibilityNodeInfo root) {
-        if (phase != Phase.NAVIGATING) return;
-
-        // البحث عن شبكة الواي فاي المتصلة
-        AccessibilityNodeInfo connectedNode = findConnectedWifiNode(root);
-
-        if (connectedNode != null) {
-            Log.d("A11y", "Connected WiFi node found.");
-
-            // محاولة إيجاد العنصر القابل للنقر (قد يكون الأب أو الجار)
-            AccessibilityNodeInfo clickable = findClickableParent(connectedNode);
-            if (clickable == null) {
-                clickable = findNearbyClickable(connectedNode);
-            }
+    private static boolean matches(AccessibilityNodeInfo node, SettingsFlow.Matcher matcher) {
+        return matcher.matches(node.getText(), node.getContentDescription(),
+                node.getViewIdResourceName(), node.getClassName());
+    }
 
-            if (clickable != null && clickable.performAction(AccessibilityNodeInfo.ACTION_CLICK)) {
-                Log.d("A11y", "Successfully clicked on connected WiFi row. Stopping session.");
-                // **نجاح النقر:** توقف الجلسة فوراً
-                stopSession();
-            }
+    // الضغط على العنصر نفسه أو على أقرب عنصر قابل للنقر (الأب أو الجار)
+    private boolean click(AccessibilityNodeInfo node) {
+        AccessibilityNodeInfo clickable = node.isClickable() ? node : findClickableParent(node);
+        if (clickable == null) {
+            clickable = findNearbyClickable(node);
         }
-
-        Log.d("A11y", "No clickable connected WiFi row found, waiting for next event.");
+        boolean clicked = clickable != null && clickable.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+        NabdTrace.event(NabdTrace.A11Y_CLICK, 1, clicked ? 1 : 0);
+        return clicked;
+    }
+
+    // The switch of the row the label belongs to; clicked only when it is not
+    // already in the wanted position.
+    private SettingsFlow.Outcome toggle(AccessibilityNodeInfo label, boolean checked) {
+        AccessibilityNodeInfo row = label.isCheckable() ? label : findClickableParent(label);
+        AccessibilityNodeInfo toggle = label.isCheckable() ? label : findCheckable(row != null ? row : label.getParent(), 3);
+        if (toggle == null) return SettingsFlow.Outcome.NOT_FOUND;
+        if (toggle.isChecked() == checked) return SettingsFlow.Outcome.ALREADY;
+        return click(toggle) ? SettingsFlow.Outcome.ACTED : SettingsFlow.Outcome.NOT_FOUND;
+    }
+
+    private AccessibilityNodeInfo findCheckable(AccessibilityNodeInfo node, int depth) {
+        if (node == null) return null;
+        if (node.isCheckable()) return node;
+        if (depth == 0) return null;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            AccessibilityNodeInfo found = findCheckable(node.getChild(i), depth - 1);
+            if (found != null) return found;
+        }
+        return null;
     }
 
-
     private AccessibilityNodeInfo findClickableParent(AccessibilityNodeInfo node) {
         AccessibilityNodeInfo parent = node.getParent();
         int depth = 0;
         while (parent != null && depth < 10) { // Prevent infinite loops
             if (parent.isClickable()) {
-                Log.d("AccessibilityService", "Found clickable parent at depth: " + depth);
+                NabdTrace.event(NabdTrace.A11Y_CLICKABLE, depth);
                 return parent;
             }
             parent = parent.getParent();
@@ -192,7 +173,7 @@ public class AutoOpenAccessibilityService extends AccessibilityService {
             for (int i = 0; i < parent.getChildCount(); i++) {
                 AccessibilityNodeInfo sibling = parent.getChild(i);
                 if (sibling != null && sibling.isClickable()) {
-                    Log.d("AccessibilityService", "Found clickable sibling");
+                    NabdTrace.event(NabdTrace.A11Y_CLICKABLE, -1);
                     return sibling;
                 }
             }
@@ -208,20 +189,42 @@ public class AutoOpenAccessibilityService extends AccessibilityService {
     protected void onServiceConnected() {
         super.onServiceConnected();
         instance = this;
+        ConnectivitySession.get().setNavigator(this);
+        // Keeps this process linked to the wake process so verified wake words open the
+        // app through us, even while no activity is up.
+        WakeClient.get(this).connect();
         Log.d("A11y", "Service connected");
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopSession(); // Clean up session on destroy
+        ConnectivitySession.get().setNavigator(null);
+        instance = null;
         Log.d("A11y", "Service destroyed");
     }
 
     public static void launchApp(AutoOpenAccessibilityService service) {
+        launchApp(service, null);
+    }
+
+    public static void launchApp(AutoOpenAccessibilityService service, WakeKeyword keyword) {
+        if (keyword == null) {
+            launchApp(service, null, null, null);
+        } else {
+            launchApp(service, keyword.id, keyword.action, null);
+        }
+    }
+
+    public static void launchApp(AutoOpenAccessibilityService service, String keywordId, String action, String command) {
         if (service != null) {
             Intent intent = new Intent(service, MainActivity.class);
             intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            if (action != null) {
+                intent.putExtra(PorcupainService.EXTRA_WAKE_KEYWORD, keywordId);
+                intent.putExtra(PorcupainService.EXTRA_WAKE_ACTION, action);
+                intent.putExtra(PorcupainService.EXTRA_WAKE_COMMAND, command);
+            }
             service.startActivity(intent);
         }
     }
@@ -0,0 +1,296 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+// One "listen for the command" turn after a verified "open" keyword, run by the wake
+// service entirely outside the activity: show the bubble, recognise the command with
+// the platform SpeechRecognizer and route it through IntentIndex. Commands that can be
+// answered natively finish with an earcon; only those that need a screen open
+// MainActivity, carrying the resolved action and the recognised text. Main thread only.
+//
+// On Android 13+ the recognizer reads the command WakeRelay has been capturing since
+// the end of the keyword (pre-roll, then the live frames) through a PcmPipe, so the
+// words said right after "noor" are not lost to verification and recognizer start-up;
+// the wake capture keeps the mic until the relay ends the command. Below that the
+// listening earcon plays, the capture hands over the mic and the recognizer listens live.
+final class BubbleSession implements RecognitionListener, WakeRelay.Tap {
+    private static final String TAG = "BubbleSession";
+    // Let the listening earcon finish before the recognizer opens the mic.
+    private static final long LISTEN_DELAY_MS = 150;
+    private static final long MAX_LISTEN_MS = 8000;
+    // Keeps the result on screen briefly after a natively handled command.
+    private static final long RESULT_LINGER_MS = 700;
+    private static final String CHECK_WIFI = "connectivity.check_wifi";
+
+    interface Host {
+        // Release / retake the microphone the wake-word capture holds.
+        void pauseCapture();
+
+        void resumeCapture();
+
+        // Opens MainActivity; action is "open", "tab:<index>", "intent:<page>:<id>" or
+        // "command" (command still to be routed, by the app's VoiceRouter).
+        void openApp(String keywordId, String action, String command);
+    }
+
+    private final Context context;
+    private final Host host;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ListeningBubble bubble;
+    private final boolean arabic;
+
+    private SpeechRecognizer recognizer;
+    private WakeKeyword keyword;
+    private boolean active = false;
+    // Set while the recognizer reads the relayed command instead of the mic.
+    private WakeRelay relay;
+    private PcmPipe pipe;
+    private boolean capturePaused = false;
+
+    private final Runnable startListening = this::startListening;
+    private final Runnable listenTimeout = () -> {
+        Log.d(TAG, "No command within " + MAX_LISTEN_MS + "ms");
+        finish(FeedbackEngine.Cue.FAILURE);
+    };
+    private final Runnable dismiss = this::dismiss;
+
+    BubbleSession(Context context, Host host) {
+        this.context = context;
+        this.host = host;
+        this.bubble = new ListeningBubble(context, v -> cancel());
+        this.arabic = "ar".equals(IntentIndex.deviceLanguage());
+    }
+
+    static boolean isAvailable(Context context) {
+        return ListeningBubble.canShow(context) && SpeechRecognizer.isRecognitionAvailable(context);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    // relay holds the command captured since the keyword, at sampleRate.
+    void start(WakeKeyword keyword, WakeRelay relay, int sampleRate) {
+        if (active) return;
+        active = true;
+        this.keyword = keyword;
+        handler.removeCallbacks(dismiss);
+        bubble.show(arabic ? "أستمع…" : "Listening…");
+        if (startRelayed(relay, sampleRate)) {
+            // No earcon: the command is being captured and would record it.
+            handler.postDelayed(listenTimeout, MAX_LISTEN_MS);
+            return;
+        }
+        FeedbackEngine.get(context).play(FeedbackEngine.Cue.LISTENING);
+        host.pauseCapture();
+        capturePaused = true;
+        handler.postDelayed(startListening, LISTEN_DELAY_MS);
+        handler.postDelayed(listenTimeout, LISTEN_DELAY_MS + MAX_LISTEN_MS);
+    }
+
+    private boolean startRelayed(WakeRelay relay, int sampleRate) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) return false;
+        try {
+            pipe = new PcmPipe();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create the audio pipe: " + e.getMessage());
+            return false;
+        }
+        if (!relay.tap(this)) {
+            pipe.close();
+            pipe = null;
+            return false;
+        }
+        this.relay = relay;
+        Intent intent = recognizerIntent();
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE, pipe.source());
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_ENCODING, AudioFormat.ENCODING_PCM_16BIT);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_CHANNEL_COUNT, 1);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_SAMPLING_RATE, sampleRate);
+        recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        recognizer.setRecognitionListener(this);
+        recognizer.startListening(intent);
+        return true;
+    }
+
+    // WakeRelay.Tap, main thread.
+    @Override
+    public void onFrame(short[] frame) {
+        if (pipe != null) pipe.write(frame, frame.length);
+    }
+
+    @Override
+    public void onEnd(String reason) {
+        if (pipe != null) pipe.end();
+    }
+
+    void cancel() {
+        if (!active) {
+            dismiss();
+            return;
+        }
+        Log.d(TAG, "Cancelled");
+        finish(null);
+    }
+
+    private void startListening() {
+        if (!active) return;
+        recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        recognizer.setRecognitionListener(this);
+        recognizer.startListening(recognizerIntent());
+    }
+
+    private Intent recognizerIntent() {
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, arabic ? "ar-SA" : "en-US");
+        intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+        intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 1);
+        return intent;
+    }
+
+    private void onCommand(String text) {
+        IntentIndex index = IntentIndex.peek(IntentIndex.deviceLanguage());
+        if (index == null) {
+            // Grammar not built yet: hand the raw text to the app's router, and build
+            // the index for the next turn.
+            IntentIndex.preload(context, IntentIndex.deviceLanguage());
+            openApp("command", text);
+            return;
+        }
+        Map<String, Object> route = index.route(text, "home");
+        Object type = route.get("type");
+        if ("base".equals(type)) {
+            openApp("tab:" + route.get("tab"), text);
+        } else if ("page".equals(type)) {
+            Object data = route.get("data");
+            Object id = data instanceof Map ? ((Map<?, ?>) data).get("id") : null;
+            if (CHECK_WIFI.equals(id)) {
+                boolean wifi = NetworkStateMonitor.get(context).isOnWifi();
+                bubble.setText(wifi ? (arabic ? "متصل بالواي فاي" : "Wi-Fi connected")
+                        : (arabic ? "غير متصل بالواي فاي" : "Wi-Fi not connected"));
+                finish(wifi ? FeedbackEngine.Cue.SUCCESS : FeedbackEngine.Cue.FAILURE);
+            } else {
+                openApp("intent:" + route.get("page") + ":" + id, text);
+            }
+        } else {
+            bubble.setText(String.valueOf(route.get("message")));
+            finish(FeedbackEngine.Cue.FAILURE);
+        }
+    }
+
+    private void openApp(String action, String command) {
+        String keywordId = keyword != null ? keyword.id : null;
+        finish(null);
+        host.openApp(keywordId, action, command);
+    }
+
+    // Ends the turn: releases the recognizer, gives the mic back to the wake word and
+    // takes the bubble down (after a short linger when there is a result to read).
+    private void finish(FeedbackEngine.Cue cue) {
+        if (!active) return;
+        active = false;
+        handler.removeCallbacks(startListening);
+        handler.removeCallbacks(listenTimeout);
+        if (recognizer != null) {
+            recognizer.destroy();
+            recognizer = null;
+        }
+        if (relay != null) {
+            relay.untap(this);
+            relay = null;
+        }
+        if (pipe != null) {
+            pipe.close();
+            pipe = null;
+        }
+        if (capturePaused) host.resumeCapture();
+        capturePaused = false;
+        if (cue != null) {
+            FeedbackEngine.get(context).play(cue);
+            handler.postDelayed(dismiss, RESULT_LINGER_MS);
+        } else {
+            dismiss();
+        }
+    }
+
+    private void dismiss() {
+        handler.removeCallbacks(dismiss);
+        bubble.dismiss();
+    }
+
+    private static String firstResult(Bundle results) {
+        if (results == null) return null;
+        ArrayList<String> texts = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        return texts == null || texts.isEmpty() ? null : texts.get(0);
+    }
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+        String text = firstResult(partialResults);
+        if (active && text != null && !text.isEmpty()) bubble.setText(text);
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+        if (!active) return;
+        String text = firstResult(results);
+        Log.d(TAG, "Command: " + text);
+        if (text == null || text.trim().isEmpty()) {
+            finish(FeedbackEngine.Cue.FAILURE);
+        } else {
+            bubble.setText(text);
+            onCommand(text);
+        }
+    }
+
+    @Override
+    public void onError(int error) {
+        if (!active) return;
+        Log.d(TAG, "Recognizer error " + error);
+        if (error == SpeechRecognizer.ERROR_NO_MATCH || error == SpeechRecognizer.ERROR_SPEECH_TIMEOUT) {
+            finish(FeedbackEngine.Cue.FAILURE);
+        } else {
+            // Recognizer unusable (busy, no permission, offline): fall back to opening the app.
+            openApp("open", null);
+        }
+    }
+
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {
+    }
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+    }
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {
+    }
+}
@@ -0,0 +1,214 @@
+package com.navia.navia;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+// Hands the audio that follows a wake keyword to Flutter, so the command spoken right
+// after "noor" is not lost while the app is verified, launched and initialised.
+// Lives in the UI process; WakeClient feeds it what the wake process's WakeRelay
+// captured.
+//
+// Lifecycle events (start / end with a reason) go out on the nabd/command_audio
+// EventChannel. PCM goes out as direct ByteBuffers on the nabd/command_audio/pcm
+// binary channel; every chunk is acknowledged by the Dart reply, and at most
+// MAX_IN_FLIGHT chunks are outstanding. Anything beyond that waits in a bounded
+// backlog, which also covers the time before Dart starts listening.
+public final class CommandAudioStream implements EventChannel.StreamHandler {
+    private static final String TAG = "CommandAudioStream";
+    public static final String EVENT_CHANNEL = "nabd/command_audio";
+    public static final String PCM_CHANNEL = "nabd/command_audio/pcm";
+
+    public static final String END_COMPLETE = "complete";
+    public static final String END_REJECTED = "rejected";
+    public static final String END_SUPPRESSED = "suppressed";
+    public static final String END_OVERFLOW = "overflow";
+    public static final String END_TIMEOUT = "timeout";
+    public static final String END_STOPPED = "stopped";
+
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int MAX_BACKLOG_MS = 10000;
+
+    private static CommandAudioStream instance;
+
+    public static synchronized CommandAudioStream get() {
+        if (instance == null) instance = new CommandAudioStream();
+        return instance;
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final ArrayDeque<Map<String, Object>> pendingEvents = new ArrayDeque<>();
+    private final List<Runnable> closeWaiters = new ArrayList<>();
+    private final CommandEndpoint endpoint = new CommandEndpoint();
+
+    // Main-thread state.
+    private BinaryMessenger messenger;
+    private EventChannel.EventSink sink;
+    private int inFlight = 0;
+
+    // Guarded by this.
+    private boolean open = false;
+    private int chunkBytes;
+    private int maxBacklog;
+
+    private CommandAudioStream() {
+    }
+
+    // Main thread. Binds both channels on the engine the service streams into.
+    public void attach(BinaryMessenger binaryMessenger) {
+        messenger = binaryMessenger;
+        new EventChannel(binaryMessenger, EVENT_CHANNEL).setStreamHandler(this);
+        drain();
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        sink = events;
+        drain();
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        sink = null;
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    // Main thread (WakeClient). Starts a command stream; returns false if one is already open.
+    public boolean open(String keywordId, int rate, int frameLength) {
+        Map<String, Object> event = new HashMap<>();
+        synchronized (this) {
+            // A new stream waits until the previous one has been fully delivered.
+            if (open || !pending.isEmpty() || !pendingEvents.isEmpty()) return false;
+            open = true;
+            chunkBytes = frameLength * 2;
+            maxBacklog = Math.max(MAX_IN_FLIGHT, MAX_BACKLOG_MS * rate / 1000 / frameLength);
+            endpoint.reset(rate);
+            event.put("event", "start");
+            event.put("keyword", keywordId);
+            event.put("sampleRate", rate);
+            pendingEvents.add(event);
+        }
+        Log.d(TAG, "Opened for '" + keywordId + "'");
+        NabdTrace.event(NabdTrace.WAKE_COMMAND_STREAM, 1);
+        mainHandler.post(this::drain);
+        return true;
+    }
+
+    // Main thread (WakeClient). Queues one frame of 16-bit PCM; ends the stream on trailing
+    // silence, on the duration cap or when Dart falls too far behind.
+    public void write(short[] frame, int length) {
+        String endReason = null;
+        synchronized (this) {
+            if (!open) return;
+            if (pending.size() >= maxBacklog) {
+                endReason = END_OVERFLOW;
+            } else {
+                ByteBuffer chunk = pool.poll();
+                if (chunk == null || chunk.capacity() < length * 2) {
+                    chunk = ByteBuffer.allocateDirect(Math.max(chunkBytes, length * 2)).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                chunk.clear();
+                // BinaryMessenger sends [0, position), so the buffer is left unflipped.
+                for (int i = 0; i < length; i++) chunk.putShort(frame[i]);
+                pending.add(chunk);
+                endReason = endpoint.onFrame(frame, length);
+            }
+        }
+        if (endReason != null) {
+            close(endReason);
+        } else {
+            mainHandler.post(this::drain);
+        }
+    }
+
+    // Any thread. Queued audio is still delivered before the end event.
+    public void close(String reason) {
+        long durationMs;
+        synchronized (this) {
+            if (!open) return;
+            open = false;
+            durationMs = endpoint.durationMs();
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "end");
+            event.put("reason", reason);
+            event.put("durationMs", durationMs);
+            pendingEvents.add(event);
+        }
+        Log.d(TAG, "Closed (" + reason + ") after " + durationMs + "ms");
+        NabdTrace.event(NabdTrace.WAKE_COMMAND_STREAM, 0, durationMs);
+        mainHandler.post(this::drain);
+    }
+
+    // Main thread. Runs once no command stream is open, immediately if none is.
+    public void runWhenClosed(Runnable action) {
+        synchronized (this) {
+            if (open) {
+                closeWaiters.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    // Main thread. Sends queued start events, then PCM up to the in-flight limit, then
+    // the end event once every chunk before it has been handed over.
+    private void drain() {
+        if (messenger == null) return;
+        while (true) {
+            Map<String, Object> event;
+            ByteBuffer chunk = null;
+            synchronized (this) {
+                event = pendingEvents.peek();
+                boolean isEnd = event != null && "end".equals(event.get("event"));
+                if (event != null && (!isEnd || pending.isEmpty())) {
+                    if (sink == null) return;
+                    pendingEvents.poll();
+                } else {
+                    event = null;
+                    if (pending.isEmpty() || inFlight >= MAX_IN_FLIGHT) break;
+                    chunk = pending.poll();
+                    inFlight++;
+                }
+            }
+            if (event != null) {
+                sink.success(event);
+                continue;
+            }
+            final ByteBuffer sent = chunk;
+            messenger.send(PCM_CHANNEL, sent, reply -> {
+                synchronized (this) {
+                    inFlight--;
+                    pool.add(sent);
+                }
+                drain();
+            });
+        }
+        runCloseWaiters();
+    }
+
+    private void runCloseWaiters() {
+        List<Runnable> ready;
+        synchronized (this) {
+            if (open || closeWaiters.isEmpty()) return;
+            ready = new ArrayList<>(closeWaiters);
+            closeWaiters.clear();
+        }
+        for (Runnable action : ready) action.run();
+    }
+}
@@ -0,0 +1,34 @@
+package com.navia.navia;
+
+// When a command that follows the wake word is over: trailing silence after some
+// voice, or the duration cap. Shared by the relay in the wake process and the
+// Flutter-side CommandAudioStream so both end a command on the same frame.
+final class CommandEndpoint {
+    static final int MAX_DURATION_MS = 8000;
+
+    private final EnergyVad vad = new EnergyVad();
+    private int sampleRate = 1;
+    private long samples;
+    private boolean heardVoice;
+
+    void reset(int rate) {
+        sampleRate = Math.max(1, rate);
+        samples = 0;
+        heardVoice = false;
+        vad.reset();
+    }
+
+    long durationMs() {
+        return samples * 1000 / sampleRate;
+    }
+
+    // Returns the end reason once the command is over, null while it goes on.
+    String onFrame(short[] frame, int length) {
+        samples += length;
+        boolean voice = vad.process(frame, length);
+        if (voice) heardVoice = true;
+        if (heardVoice && !voice) return CommandAudioStream.END_COMPLETE;
+        if (durationMs() >= MAX_DURATION_MS) return CommandAudioStream.END_TIMEOUT;
+        return null;
+    }
+}
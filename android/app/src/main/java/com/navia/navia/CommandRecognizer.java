@@ -0,0 +1,132 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+// Turns the command audio captured after "noor" (CommandAudioStream, buffered by the
+// Dart CommandAudioService) into text with the platform SpeechRecognizer, reading the
+// PCM from a pipe instead of the microphone. Audio sources need Android 13; below that
+// isAvailable() is false and the app listens live instead. Main thread only.
+final class CommandRecognizer implements RecognitionListener {
+    private static final String TAG = "CommandRecognizer";
+
+    interface Callback {
+        // null when nothing was recognised.
+        void onResult(String text);
+    }
+
+    private final Context context;
+    private SpeechRecognizer recognizer;
+    private PcmPipe source;
+    private Callback callback;
+
+    CommandRecognizer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    static boolean isAvailable(Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && SpeechRecognizer.isRecognitionAvailable(context);
+    }
+
+    // pcm is 16-bit little-endian mono. A new call ends the previous one with null.
+    void recognize(byte[] pcm, int sampleRate, String language, Callback result) {
+        finish(null);
+        if (pcm == null || pcm.length == 0 || !isAvailable(context)) {
+            result.onResult(null);
+            return;
+        }
+        try {
+            source = new PcmPipe();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create the audio pipe: " + e.getMessage());
+            result.onResult(null);
+            return;
+        }
+        source.write(pcm);
+        source.end();
+        callback = result;
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
+        intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 1);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE, source.source());
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_ENCODING, AudioFormat.ENCODING_PCM_16BIT);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_CHANNEL_COUNT, 1);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_SAMPLING_RATE, sampleRate);
+        recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        recognizer.setRecognitionListener(this);
+        recognizer.startListening(intent);
+    }
+
+    void release() {
+        finish(null);
+    }
+
+    private void finish(String text) {
+        Callback result = callback;
+        callback = null;
+        if (recognizer != null) {
+            recognizer.destroy();
+            recognizer = null;
+        }
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+        if (result != null) result.onResult(text);
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+        ArrayList<String> texts = results == null ? null
+                : results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        String text = texts == null || texts.isEmpty() ? null : texts.get(0);
+        Log.d(TAG, "Command: " + text);
+        finish(text == null || text.trim().isEmpty() ? null : text);
+    }
+
+    @Override
+    public void onError(int error) {
+        Log.d(TAG, "Recognizer error " + error);
+        finish(null);
+    }
+
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {
+    }
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+    }
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+    }
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {
+    }
+}
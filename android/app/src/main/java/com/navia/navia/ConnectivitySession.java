@@ -0,0 +1,412 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Single owner of the connectivity flow state. Every input (channel calls from
+// Flutter, accessibility events, timeouts) is a message on one HandlerThread, so
+// transitions are serialized without locks and nothing here runs on the main looper.
+//
+// While NAVIGATING it runs the steps of the selected SettingsFlow: a step is tried
+// on every Settings event until the navigator finds its node, then its wait condition
+// is checked on the following events. Each step has its own timeout and is reported
+// to the listener with its timings.
+public final class ConnectivitySession {
+    private static final String TAG = "ConnectivitySession";
+
+    private static final long DEFAULT_TIMEOUT_MS = 20_000;
+
+    public enum State {IDLE, FLOW_ACTIVE, SETTINGS_OPENING, SETTINGS_VISIBLE, NAVIGATING, FLOW_DONE, TIMED_OUT}
+
+    // Callbacks are invoked on the session thread; implementations hop to the
+    // main thread themselves when they touch UI or channels.
+    public interface Listener {
+        void onTransition(State from, State to, String reason);
+
+        // Intent actions to try in order.
+        void launchSettings(List<String> actions);
+
+        void onSettingsVisible();
+
+        // flow, step, index, outcome (done | skipped | already | timeout), scans,
+        // findMs (step start to action), waitMs (action to wait condition), totalMs.
+        void onFlowStep(Map<String, Object> metrics);
+
+        // flow, outcome (done | timeout | ended), totalMs, steps (the onFlowStep maps).
+        void onFlowFinished(Map<String, Object> summary);
+    }
+
+    // Implemented by the accessibility service; runs on the session thread.
+    public interface Navigator {
+        // Finds the step's node on the current screen and applies its action.
+        SettingsFlow.Outcome perform(SettingsFlow.Step step);
+
+        boolean isShowing(SettingsFlow.Matcher matcher);
+    }
+
+    private static final int MSG_FLOW_START = 1;
+    private static final int MSG_FLOW_END = 2;
+    private static final int MSG_OPEN_SETTINGS = 3;
+    private static final int MSG_A11Y_START = 4;
+    private static final int MSG_A11Y_STOP = 5;
+    private static final int MSG_SETTINGS_WINDOW = 6;
+    private static final int MSG_SETTINGS_CONTENT = 7;
+    private static final int MSG_TIMEOUT = 8;
+    private static final int MSG_RESET = 9;
+    private static final int MSG_STEP_TIMEOUT = 10; // arg1 = step index
+
+    private static ConnectivitySession instance;
+
+    private final Handler handler;
+    private volatile State state = State.IDLE;
+    private volatile boolean navigating = false;
+    private boolean settingsLaunched = false;
+    private boolean a11yStarted = false;
+    private long sessionStartMs;
+    private Listener listener;
+    private Navigator navigator;
+
+    // Replaced on the session thread, read by getFlowIds from the channel thread.
+    private volatile Map<String, SettingsFlow> flows = Collections.emptyMap();
+    private volatile SettingsFlow flow;
+    private int stepIndex;
+    private boolean stepWaiting;
+    private int stepScans;
+    private long stepStartMs;
+    private long stepActedMs;
+    private final List<Map<String, Object>> stepMetrics = new ArrayList<>();
+
+    public static synchronized ConnectivitySession get() {
+        if (instance == null) instance = new ConnectivitySession();
+        return instance;
+    }
+
+    private ConnectivitySession() {
+        this(startThread());
+    }
+
+    // Tests run the session on a looper they drive themselves.
+    ConnectivitySession(Looper looper) {
+        handler = new Handler(looper, this::handle);
+    }
+
+    private static Looper startThread() {
+        HandlerThread thread = new HandlerThread("ConnectivitySession");
+        thread.start();
+        return thread.getLooper();
+    }
+
+    public void setListener(Listener listener) {
+        handler.post(() -> this.listener = listener);
+    }
+
+    // Only when it is still `owner`'s: a newer activity may have set its own already.
+    public void clearListener(Listener owner) {
+        handler.post(() -> {
+            if (listener == owner) listener = null;
+        });
+    }
+
+    public void setNavigator(Navigator navigator) {
+        handler.post(() -> this.navigator = navigator);
+    }
+
+    // Parses the flow definitions off the caller's thread.
+    public void loadFlows(Context context) {
+        Context app = context.getApplicationContext();
+        handler.post(() -> useFlows(SettingsFlow.loadAll(app)));
+    }
+
+    // Session thread only.
+    void useFlows(Map<String, SettingsFlow> loaded) {
+        flows = loaded;
+        if (flow == null) flow = loaded.get(SettingsFlow.DEFAULT_FLOW);
+    }
+
+    public List<String> getFlowIds() {
+        return new ArrayList<>(flows.keySet());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Cheap check for the accessibility thread so it can drop events without posting.
+    public boolean wantsSettingsEvents() {
+        State s = state;
+        return s == State.SETTINGS_OPENING || navigating;
+    }
+
+    public boolean wantsEventsFrom(String pkg) {
+        SettingsFlow current = flow;
+        return current != null ? current.handlesPackage(pkg) : pkg.contains("com.android.settings");
+    }
+
+    // flowId selects the SettingsFlow; null keeps the current one.
+    public void flowStart(String flowId) { handler.obtainMessage(MSG_FLOW_START, flowId).sendToTarget(); }
+
+    public void flowEnd() { handler.sendEmptyMessage(MSG_FLOW_END); }
+
+    public void openSettings(String flowId) { handler.obtainMessage(MSG_OPEN_SETTINGS, flowId).sendToTarget(); }
+
+    public void a11yStart() { handler.sendEmptyMessage(MSG_A11Y_START); }
+
+    public void a11yStop() { handler.sendEmptyMessage(MSG_A11Y_STOP); }
+
+    public void resetFlags() { handler.sendEmptyMessage(MSG_RESET); }
+
+    public void onSettingsWindowChanged() { handler.sendEmptyMessage(MSG_SETTINGS_WINDOW); }
+
+    // Content changes arrive in bursts; one pending scan is enough to cover all of them.
+    public void onSettingsContentChanged() {
+        if (!handler.hasMessages(MSG_SETTINGS_CONTENT)) handler.sendEmptyMessage(MSG_SETTINGS_CONTENT);
+    }
+
+    private boolean handle(Message msg) {
+        switch (msg.what) {
+            case MSG_FLOW_START:
+                selectFlow((String) msg.obj);
+                settingsLaunched = false;
+                a11yStarted = false;
+                navigating = false;
+                armTimeout();
+                transition(State.FLOW_ACTIVE, "flow_start");
+                break;
+            case MSG_FLOW_END:
+                endSession(State.IDLE, "flow_end");
+                break;
+            case MSG_RESET:
+                settingsLaunched = false;
+                a11yStarted = false;
+                break;
+            case MSG_OPEN_SETTINGS:
+                if (settingsLaunched) break;
+                settingsLaunched = true;
+                selectFlow((String) msg.obj);
+                if (!isActive()) armTimeout();
+                transition(State.SETTINGS_OPENING, "open_settings");
+                if (listener != null) {
+                    // Without flow definitions this is still the Wi-Fi screen it always was.
+                    listener.launchSettings(flow != null ? flow.settings
+                            : Collections.singletonList("android.settings.WIFI_SETTINGS"));
+                }
+                break;
+            case MSG_A11Y_START:
+                if (a11yStarted) break;
+                a11yStarted = true;
+                navigating = true;
+                if (!isActive()) armTimeout();
+                startStep(0);
+                if (state == State.SETTINGS_VISIBLE) {
+                    transition(State.NAVIGATING, "a11y_start");
+                    onSettingsEvent(false);
+                }
+                break;
+            case MSG_A11Y_STOP:
+                navigating = false;
+                if (state == State.NAVIGATING) transition(State.SETTINGS_VISIBLE, "a11y_stop");
+                break;
+            case MSG_SETTINGS_WINDOW:
+                if (state == State.SETTINGS_OPENING) {
+                    transition(State.SETTINGS_VISIBLE, "settings_window");
+                    if (listener != null) listener.onSettingsVisible();
+                }
+                if (navigating) {
+                    if (state != State.NAVIGATING) transition(State.NAVIGATING, "settings_window");
+                    onSettingsEvent(true);
+                }
+                break;
+            case MSG_SETTINGS_CONTENT:
+                if (navigating) {
+                    if (state != State.NAVIGATING) transition(State.NAVIGATING, "settings_content");
+                    onSettingsEvent(false);
+                }
+                break;
+            case MSG_TIMEOUT:
+                Log.d(TAG, "session timeout after " + (SystemClock.elapsedRealtime() - sessionStartMs) + "ms");
+                if (navigating) finishStep("timeout");
+                endSession(State.TIMED_OUT, "timeout");
+                break;
+            case MSG_STEP_TIMEOUT:
+                if (!navigating || msg.arg1 != stepIndex) break;
+                finishStep("timeout");
+                endSession(State.TIMED_OUT, "step_timeout");
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    // null is the Wi-Fi flow, what callers without a flow id always meant.
+    private void selectFlow(String flowId) {
+        if (flowId == null) flowId = SettingsFlow.DEFAULT_FLOW;
+        SettingsFlow selected = flows.get(flowId);
+        if (selected == null) {
+            Log.w(TAG, "Unknown settings flow '" + flowId + "', keeping " + (flow != null ? flow.id : null));
+            return;
+        }
+        flow = selected;
+    }
+
+    private void startStep(int index) {
+        stepIndex = index;
+        stepWaiting = false;
+        stepScans = 0;
+        stepStartMs = SystemClock.elapsedRealtime();
+        stepActedMs = 0;
+        if (index == 0) stepMetrics.clear();
+        handler.removeMessages(MSG_STEP_TIMEOUT);
+        if (flow != null && index < flow.steps.size()) {
+            handler.sendMessageDelayed(handler.obtainMessage(MSG_STEP_TIMEOUT, index, 0), flow.steps.get(index).timeoutMs);
+        }
+    }
+
+    // One Settings event: check the current step's wait condition, or try its action.
+    // A step that completes lets the next one look at the same screen right away.
+    private void onSettingsEvent(boolean windowChanged) {
+        while (navigator != null && flow != null && state == State.NAVIGATING && stepIndex < flow.steps.size()) {
+            SettingsFlow.Step step = flow.steps.get(stepIndex);
+            if (stepWaiting) {
+                if (!waitSatisfied(step, windowChanged)) return;
+                finishStep("done");
+                windowChanged = false;
+            } else if (!act(step)) {
+                return;
+            }
+            if (!advance()) return;
+        }
+    }
+
+    // Returns true when the step is over (done without a wait, skipped or already in place).
+    private boolean act(SettingsFlow.Step step) {
+        stepScans++;
+        SettingsFlow.Outcome outcome = navigator.perform(step);
+        if (outcome == SettingsFlow.Outcome.NOT_FOUND) {
+            if (!step.optional || stepIndex + 1 >= flow.steps.size()) return false;
+            // Already past this screen: hand the event to the next step instead.
+            SettingsFlow.Step next = flow.steps.get(stepIndex + 1);
+            SettingsFlow.Outcome nextOutcome = navigator.perform(next);
+            if (nextOutcome == SettingsFlow.Outcome.NOT_FOUND) return false;
+            finishStep("skipped");
+            advance();
+            stepScans++;
+            return act(next, nextOutcome);
+        }
+        return act(step, outcome);
+    }
+
+    private boolean act(SettingsFlow.Step step, SettingsFlow.Outcome outcome) {
+        stepActedMs = SystemClock.elapsedRealtime();
+        if (outcome == SettingsFlow.Outcome.ALREADY) {
+            finishStep("already");
+            return true;
+        }
+        if (step.waitKind == SettingsFlow.Wait.NONE) {
+            finishStep("done");
+            return true;
+        }
+        stepWaiting = true;
+        return false;
+    }
+
+    private boolean waitSatisfied(SettingsFlow.Step step, boolean windowChanged) {
+        switch (step.waitKind) {
+            case WINDOW:
+                return windowChanged;
+            case CHANGE:
+                return true;
+            case MATCH:
+                return navigator.isShowing(step.waitFor);
+            case GONE:
+                return !navigator.isShowing(step.match);
+            default:
+                return true;
+        }
+    }
+
+    // After finishStep: moves on, or ends the flow after its last step. Returns
+    // true while there are steps left.
+    private boolean advance() {
+        if (stepIndex + 1 < flow.steps.size()) {
+            startStep(stepIndex + 1);
+            return true;
+        }
+        navigating = false;
+        handler.removeMessages(MSG_SETTINGS_CONTENT);
+        handler.removeMessages(MSG_TIMEOUT);
+        handler.removeMessages(MSG_STEP_TIMEOUT);
+        transition(State.FLOW_DONE, "flow_done");
+        reportFlow("done");
+        return false;
+    }
+
+    private void finishStep(String outcome) {
+        if (flow == null || stepIndex >= flow.steps.size()) return;
+        SettingsFlow.Step step = flow.steps.get(stepIndex);
+        long now = SystemClock.elapsedRealtime();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("flow", flow.id);
+        metrics.put("step", step.id);
+        metrics.put("index", stepIndex);
+        metrics.put("outcome", outcome);
+        metrics.put("scans", stepScans);
+        metrics.put("findMs", stepActedMs != 0 ? stepActedMs - stepStartMs : -1L);
+        metrics.put("waitMs", stepActedMs != 0 ? now - stepActedMs : -1L);
+        metrics.put("totalMs", now - stepStartMs);
+        stepMetrics.add(metrics);
+        NabdTrace.event(NabdTrace.A11Y_STEP, stepIndex, now - stepStartMs);
+        Log.d(TAG, flow.id + "/" + step.id + " " + outcome + " in " + (now - stepStartMs) + "ms, " + stepScans + " scans");
+        if (listener != null) listener.onFlowStep(metrics);
+    }
+
+    private void reportFlow(String outcome) {
+        if (listener == null || flow == null) return;
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("flow", flow.id);
+        summary.put("outcome", outcome);
+        summary.put("totalMs", SystemClock.elapsedRealtime() - sessionStartMs);
+        summary.put("steps", new ArrayList<>(stepMetrics));
+        listener.onFlowFinished(summary);
+    }
+
+    private boolean isActive() {
+        return state != State.IDLE && state != State.TIMED_OUT && state != State.FLOW_DONE;
+    }
+
+    private void armTimeout() {
+        sessionStartMs = SystemClock.elapsedRealtime();
+        handler.removeMessages(MSG_TIMEOUT);
+        handler.sendEmptyMessageDelayed(MSG_TIMEOUT, flow != null ? flow.timeoutMs : DEFAULT_TIMEOUT_MS);
+    }
+
+    private void endSession(State next, String reason) {
+        handler.removeMessages(MSG_TIMEOUT);
+        handler.removeMessages(MSG_STEP_TIMEOUT);
+        handler.removeMessages(MSG_SETTINGS_CONTENT);
+        if (navigating) reportFlow(next == State.TIMED_OUT ? "timeout" : "ended");
+        navigating = false;
+        settingsLaunched = false;
+        a11yStarted = false;
+        transition(next, reason);
+    }
+
+    private void transition(State next, String reason) {
+        State previous = state;
+        if (previous == next) return;
+        state = next;
+        Log.d(TAG, previous + " -> " + next + " (" + reason + ")");
+        if (listener != null) listener.onTransition(previous, next, reason);
+    }
+}
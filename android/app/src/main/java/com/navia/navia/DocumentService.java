@@ -0,0 +1,515 @@
+package com.navia.navia;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+// Document access for the reader, behind the "saf_meta" channel. Resolves content://
+// URIs (and plain paths), reports name and size from the provider without reading the
+// file, sniffs the real type from the first bytes, and streams content to Flutter in
+// chunks so a large Word file never has to sit in memory on either side. PDFs don't
+// come through here: PdfPageEngine renders their pages from the file descriptor.
+//
+// A stream carries the raw bytes, or (format "text") the plain text of a .docx as
+// UTF-8, extracted by DocxText while the file is read. Chunks go over the binary
+// channel "saf_meta/chunks" in pooled direct ByteBuffers, like CommandAudioStream: at
+// most MAX_IN_FLIGHT are unacknowledged, the streaming thread blocks until Dart
+// replies. Each message is a 12-byte little-endian header (streamId, seq, flags)
+// followed by the payload; flags is FLAG_DATA for content and one of the END flags for
+// the last message of a stream (empty payload, or the UTF-8 error text for FLAG_ERROR).
+final class DocumentService implements MethodChannel.MethodCallHandler {
+    private static final String TAG = "DocumentService";
+    static final String CHANNEL = "saf_meta";
+    static final String CHUNK_CHANNEL = "saf_meta/chunks";
+
+    static final String FORMAT_BYTES = "bytes";
+    static final String FORMAT_TEXT = "text";
+
+    static final int FLAG_DATA = 0;
+    static final int FLAG_END = 1;
+    static final int FLAG_CANCELLED = 2;
+    static final int FLAG_ERROR = 3;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int DEFAULT_CHUNK = 256 * 1024;
+    private static final int MIN_CHUNK = 16 * 1024;
+    private static final int MAX_CHUNK = 1024 * 1024;
+    private static final int MAX_IN_FLIGHT = 4;
+    // How often a stream waiting for an acknowledgement checks for cancellation.
+    private static final long SLOT_POLL_MS = 250;
+    // finish() waits this long for the last chunks to be acknowledged.
+    private static final long FINISH_WAIT_MS = 5000;
+
+    private static final int SNIFF_BYTES = 8;
+    // An OOXML zip names its parts in the central directory at the end of the file.
+    private static final int ZIP_TAIL_BYTES = 64 * 1024;
+
+    static final String TYPE_PDF = "pdf";
+    static final String TYPE_DOC = "doc";
+    static final String TYPE_DOCX = "docx";
+    static final String TYPE_ZIP = "zip";
+    static final String TYPE_UNKNOWN = "unknown";
+
+    private final Context context;
+    private final BinaryMessenger messenger;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Provider queries and the sniff are short reads; one thread keeps them in order.
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> new Thread(r, "DocumentReader"));
+    // Streams wait on Dart's acknowledgements, so they get their own thread and never
+    // hold up describe. One at a time keeps disk reads sequential.
+    private final ExecutorService streamer = Executors.newSingleThreadExecutor(r -> new Thread(r, "DocumentStream"));
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+
+    private static final class Stream {
+        final int id;
+        final Uri uri;
+        final boolean text;
+        final int chunkSize;
+        final Semaphore slots = new Semaphore(MAX_IN_FLIGHT);
+        final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+        volatile boolean cancelled;
+
+        Stream(int id, Uri uri, boolean text, int chunkSize) {
+            this.id = id;
+            this.uri = uri;
+            this.text = text;
+            this.chunkSize = chunkSize;
+        }
+
+        synchronized ByteBuffer obtain() {
+            ByteBuffer buffer = pool.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(HEADER_BYTES + chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            buffer.position(HEADER_BYTES);
+            return buffer;
+        }
+
+        synchronized void recycle(ByteBuffer buffer) {
+            pool.add(buffer);
+        }
+    }
+
+    // Thrown out of a stream's reading when it is cancelled.
+    private static final class Cancelled extends InterruptedIOException {
+    }
+
+    DocumentService(Context context, BinaryMessenger messenger) {
+        this.context = context.getApplicationContext();
+        this.messenger = messenger;
+        new MethodChannel(messenger, CHANNEL).setMethodCallHandler(this);
+    }
+
+    @Override
+    public void onMethodCall(MethodCall call, MethodChannel.Result result) {
+        String uriString = call.argument("uri");
+        switch (call.method) {
+            case "getMimeType": {
+                if (uriString == null || uriString.isEmpty()) {
+                    result.error("ARG", "uri missing", null);
+                    return;
+                }
+                String mime = resolver().getType(parse(uriString));
+                result.success(mime == null ? "" : mime);
+                break;
+            }
+            case "getFileSize":
+                if (uriString == null || uriString.isEmpty()) {
+                    result.error("ARG", "uri missing", null);
+                    return;
+                }
+                submit(result, () -> {
+                    long size = size(parse(uriString));
+                    mainHandler.post(() -> result.success(size));
+                });
+                break;
+            case "describe":
+                if (uriString == null || uriString.isEmpty()) {
+                    result.error("ARG", "uri missing", null);
+                    return;
+                }
+                submit(result, () -> {
+                    try {
+                        Map<String, Object> info = describe(parse(uriString));
+                        mainHandler.post(() -> result.success(info));
+                    } catch (IOException | SecurityException e) {
+                        mainHandler.post(() -> result.error("OPEN", e.getMessage(), null));
+                    }
+                });
+                break;
+            case "openStream": {
+                if (uriString == null || uriString.isEmpty()) {
+                    result.error("ARG", "uri missing", null);
+                    return;
+                }
+                String format = call.argument("format");
+                boolean text = FORMAT_TEXT.equals(format);
+                if (!text && format != null && !FORMAT_BYTES.equals(format)) {
+                    result.error("ARG", "unknown format " + format, null);
+                    return;
+                }
+                // Dart picks the id, so its handler knows the stream before the first chunk.
+                Integer id = call.argument("id");
+                if (id == null) {
+                    result.error("ARG", "id missing", null);
+                    return;
+                }
+                Integer requested = call.argument("chunkSize");
+                int chunkSize = requested == null ? DEFAULT_CHUNK
+                        : Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, requested));
+                Stream stream = new Stream(id, parse(uriString), text, chunkSize);
+                if (streams.putIfAbsent(id, stream) != null) {
+                    result.error("BUSY", "stream " + id + " is still open", null);
+                    return;
+                }
+                try {
+                    streamer.execute(() -> pump(stream));
+                } catch (RejectedExecutionException e) {
+                    streams.remove(stream.id);
+                    result.error("CLOSED", "Document service closed", null);
+                    return;
+                }
+                result.success(stream.id);
+                break;
+            }
+            case "cancelStream": {
+                Integer id = call.argument("id");
+                Stream stream = id == null ? null : streams.get(id);
+                if (stream != null) stream.cancelled = true;
+                result.success(stream != null);
+                break;
+            }
+            default:
+                result.notImplemented();
+                break;
+        }
+    }
+
+    // The activity is going away: open streams end as cancelled at their next chunk and
+    // queued reads still finish. The next activity registers its own service on the
+    // (shared) engine, until then calls fail with CLOSED.
+    void close() {
+        for (Stream stream : streams.values()) stream.cancelled = true;
+        reader.shutdown();
+        streamer.shutdown();
+    }
+
+    private void submit(MethodChannel.Result result, Runnable task) {
+        try {
+            reader.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.error("CLOSED", "Document service closed", null);
+        }
+    }
+
+    private ContentResolver resolver() {
+        return context.getContentResolver();
+    }
+
+    static Uri parse(String value) {
+        // file_picker hands back plain paths for files it copied into the cache.
+        return value.startsWith("/") ? Uri.fromFile(new File(value)) : Uri.parse(value);
+    }
+
+    private Map<String, Object> describe(Uri uri) throws IOException {
+        Map<String, Object> info = new HashMap<>();
+        info.put("uri", uri.toString());
+        info.put("name", displayName(uri));
+        long size = size(uri);
+        info.put("size", size);
+        String mime = resolver().getType(uri);
+        info.put("mime", mime == null ? "" : mime);
+        info.put("type", sniff(uri, size));
+        return info;
+    }
+
+    private String displayName(Uri uri) {
+        if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            try (Cursor cursor = resolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME},
+                    null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int index = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    if (index != -1 && !cursor.isNull(index)) return cursor.getString(index);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Name query failed: " + e.getMessage());
+            }
+        }
+        return uri.getLastPathSegment();
+    }
+
+    // -1 when the provider does not know and the descriptor has no size either.
+    private long size(Uri uri) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            File file = new File(uri.getPath());
+            return file.exists() ? file.length() : -1L;
+        }
+        try (Cursor cursor = resolver().query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int index = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (index != -1 && !cursor.isNull(index)) return cursor.getLong(index);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Size query failed: " + e.getMessage());
+        }
+        try (ParcelFileDescriptor pfd = resolver().openFileDescriptor(uri, "r")) {
+            return pfd == null ? -1L : pfd.getStatSize();
+        } catch (IOException | RuntimeException e) {
+            return -1L;
+        }
+    }
+
+    private String sniff(Uri uri, long size) throws IOException {
+        byte[] head = new byte[SNIFF_BYTES];
+        int n;
+        try (InputStream in = open(uri)) {
+            n = readFully(in, head);
+        }
+        if (n >= 4 && head[0] == '%' && head[1] == 'P' && head[2] == 'D' && head[3] == 'F') return TYPE_PDF;
+        if (n == SNIFF_BYTES && startsWith(head, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) return TYPE_DOC;
+        if (n >= 4 && startsWith(head, 0x50, 0x4B, 0x03, 0x04)) {
+            return zipHasWordPart(uri, size) ? TYPE_DOCX : TYPE_ZIP;
+        }
+        return TYPE_UNKNOWN;
+    }
+
+    private boolean zipHasWordPart(Uri uri, long size) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver().openFileDescriptor(uri, "r")) {
+            if (pfd == null) return false;
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+                long total = size > 0 ? size : pfd.getStatSize();
+                int length = (int) Math.min(ZIP_TAIL_BYTES, total > 0 ? total : ZIP_TAIL_BYTES);
+                if (total > length) in.getChannel().position(total - length);
+                byte[] tail = new byte[length];
+                int n = readFully(in, tail);
+                return new String(tail, 0, n, StandardCharsets.ISO_8859_1).contains("word/");
+            }
+        } catch (IOException e) {
+            // Not seekable (some providers pipe); the zip is still a zip.
+            Log.w(TAG, "Zip tail unreadable: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private InputStream open(Uri uri) throws IOException {
+        InputStream in = resolver().openInputStream(uri);
+        if (in == null) throw new IOException("No content for " + uri);
+        return in;
+    }
+
+    // Streaming thread.
+    private void pump(Stream stream) {
+        int[] seq = {0};
+        try (InputStream in = open(stream.uri)) {
+            if (stream.text) {
+                ChunkWriter out = new ChunkWriter(stream, seq);
+                try {
+                    DocxText.extract(in, out);
+                    out.end();
+                } finally {
+                    out.close();
+                }
+            } else {
+                ReadableByteChannel channel = Channels.newChannel(in);
+                while (true) {
+                    acquire(stream);
+                    ByteBuffer buffer = stream.obtain();
+                    while (buffer.hasRemaining() && !stream.cancelled) {
+                        if (channel.read(buffer) < 0) break;
+                    }
+                    if (buffer.position() == HEADER_BYTES) {
+                        stream.recycle(buffer);
+                        stream.slots.release();
+                        break;
+                    }
+                    send(stream, buffer, seq[0]++, FLAG_DATA);
+                }
+            }
+            finish(stream, seq[0], stream.cancelled ? FLAG_CANCELLED : FLAG_END, null);
+        } catch (Cancelled e) {
+            finish(stream, seq[0], FLAG_CANCELLED, null);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Stream " + stream.id + " failed: " + e.getMessage());
+            finish(stream, seq[0], FLAG_ERROR, e.getMessage());
+        }
+    }
+
+    // Takes a free chunk slot; throws Cancelled instead of waiting on a Dart side that
+    // has stopped listening.
+    private static void acquire(Stream stream) throws Cancelled {
+        try {
+            while (!stream.slots.tryAcquire(SLOT_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (stream.cancelled) throw new Cancelled();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Cancelled();
+        }
+        if (stream.cancelled) {
+            stream.slots.release();
+            throw new Cancelled();
+        }
+    }
+
+    // Last message of a stream; waits a bounded time for the data chunks to be
+    // acknowledged so the pool is back in one piece before the stream is forgotten.
+    private void finish(Stream stream, int seq, int flags, String error) {
+        try {
+            stream.slots.tryAcquire(MAX_IN_FLIGHT, FINISH_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] text = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_BYTES + text.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        buffer.put(text);
+        streams.remove(stream.id);
+        send(stream, buffer, seq, flags);
+    }
+
+    private void send(Stream stream, ByteBuffer buffer, int seq, int flags) {
+        int end = buffer.position();
+        buffer.putInt(0, stream.id).putInt(4, seq).putInt(8, flags);
+        buffer.position(0);
+        buffer.limit(end);
+        mainHandler.post(() -> messenger.send(CHUNK_CHANNEL, buffer, reply -> {
+            if (flags == FLAG_DATA) {
+                stream.recycle(buffer);
+                stream.slots.release();
+            }
+        }));
+    }
+
+    // Encodes DocxText's output straight into the stream's chunk buffers as UTF-8. A
+    // surrogate pair split across two writes is held back until its second half.
+    private final class ChunkWriter extends Writer {
+        private final Stream stream;
+        private final int[] seq;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer buffer;
+        private char pendingHigh;
+
+        ChunkWriter(Stream stream, int[] seq) {
+            this.stream = stream;
+            this.seq = seq;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (length == 0) return;
+            CharBuffer input;
+            if (pendingHigh != 0) {
+                char[] joined = new char[length + 1];
+                joined[0] = pendingHigh;
+                System.arraycopy(chars, offset, joined, 1, length);
+                input = CharBuffer.wrap(joined);
+                pendingHigh = 0;
+            } else {
+                input = CharBuffer.wrap(chars, offset, length);
+            }
+            encode(input, false);
+            if (input.remaining() == 1 && Character.isHighSurrogate(input.get(input.position()))) {
+                pendingHigh = input.get();
+            }
+        }
+
+        private void encode(CharBuffer input, boolean endOfInput) throws IOException {
+            while (true) {
+                if (stream.cancelled) throw new Cancelled();
+                if (buffer == null) {
+                    acquire(stream);
+                    buffer = stream.obtain();
+                }
+                CoderResult result = encoder.encode(input, buffer, endOfInput);
+                if (result.isOverflow()) {
+                    send(stream, buffer, seq[0]++, FLAG_DATA);
+                    buffer = null;
+                } else if (result.isUnderflow()) {
+                    return;
+                } else {
+                    result.throwException();
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        // Sends what is left once the text is complete; finish() follows.
+        void end() throws IOException {
+            CharBuffer rest = CharBuffer.wrap(pendingHigh != 0 ? new char[]{pendingHigh} : new char[0]);
+            pendingHigh = 0;
+            encode(rest, true);
+            encoder.flush(buffer);
+            if (buffer.position() > HEADER_BYTES) {
+                send(stream, buffer, seq[0]++, FLAG_DATA);
+                buffer = null;
+            }
+        }
+
+        // Hands back a chunk that was never sent.
+        @Override
+        public void close() {
+            if (buffer == null) return;
+            stream.recycle(buffer);
+            stream.slots.release();
+            buffer = null;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] into) throws IOException {
+        int n = 0;
+        while (n < into.length) {
+            int read = in.read(into, n, into.length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        return n;
+    }
+
+    private static boolean startsWith(byte[] data, int... magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,149 @@
+package com.navia.navia;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Plain text of a .docx, read front to back: the zip is walked with ZipInputStream (no
+// central directory, so a piped provider works too) up to word/document.xml, whose
+// XML is scanned as it inflates. Only w:t text is kept; w:tab becomes a tab, w:br and
+// w:cr a line break and every paragraph ends with one. Memory is one tag and the
+// writer's buffer, whatever the size of the document. Plain Java, runs on the JVM.
+final class DocxText {
+    static final String DOCUMENT_PART = "word/document.xml";
+    // Longer tags are skipped unread; a real one is a few hundred characters at most.
+    private static final int MAX_TAG = 16 * 1024;
+    private static final int MAX_ENTITY = 12;
+
+    private DocxText() {
+    }
+
+    // Throws IOException when the zip has no document part.
+    static void extract(InputStream docx, Writer out) throws IOException {
+        ZipInputStream zip = new ZipInputStream(docx);
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+            if (!DOCUMENT_PART.equals(entry.getName())) continue;
+            Reader xml = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+            Writer text = new BufferedWriter(out);
+            scan(xml, text);
+            text.flush();
+            return;
+        }
+        throw new IOException("Not a Word document: no " + DOCUMENT_PART);
+    }
+
+    private static void scan(Reader xml, Writer out) throws IOException {
+        StringBuilder tag = new StringBuilder();
+        boolean inText = false;
+        int c;
+        while ((c = xml.read()) >= 0) {
+            if (c == '<') {
+                if (!readTag(xml, tag)) continue;
+                boolean end = tag.length() > 0 && tag.charAt(0) == '/';
+                boolean empty = tag.length() > 0 && tag.charAt(tag.length() - 1) == '/';
+                String name = localName(tag, end ? 1 : 0);
+                if (end) {
+                    if ("t".equals(name)) inText = false;
+                    else if ("p".equals(name)) out.write('\n');
+                } else if ("t".equals(name)) {
+                    inText = !empty;
+                } else if ("tab".equals(name)) {
+                    out.write('\t');
+                } else if ("br".equals(name) || "cr".equals(name)) {
+                    out.write('\n');
+                }
+            } else if (inText) {
+                if (c == '&') {
+                    writeEntity(xml, out);
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+    }
+
+    // Reads up to the closing '>' (quoted attribute values may contain one). false for
+    // comments, declarations and tags too long to be Word's.
+    private static boolean readTag(Reader xml, StringBuilder tag) throws IOException {
+        tag.setLength(0);
+        char quote = 0;
+        boolean tooLong = false;
+        int c;
+        while ((c = xml.read()) >= 0) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            if (tag.length() < MAX_TAG) {
+                tag.append((char) c);
+            } else {
+                tooLong = true;
+            }
+        }
+        if (tooLong || tag.length() == 0) return false;
+        char first = tag.charAt(0);
+        return first != '?' && first != '!';
+    }
+
+    // "w:t xml:space=..." -> "t".
+    private static String localName(StringBuilder tag, int from) {
+        int end = from;
+        while (end < tag.length()) {
+            char c = tag.charAt(end);
+            if (c == '/' || Character.isWhitespace(c)) break;
+            end++;
+        }
+        String name = tag.substring(from, end);
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    private static void writeEntity(Reader xml, Writer out) throws IOException {
+        StringBuilder entity = new StringBuilder();
+        int c;
+        while ((c = xml.read()) >= 0 && c != ';' && entity.length() < MAX_ENTITY) entity.append((char) c);
+        String name = entity.toString();
+        switch (name) {
+            case "amp":
+                out.write('&');
+                return;
+            case "lt":
+                out.write('<');
+                return;
+            case "gt":
+                out.write('>');
+                return;
+            case "quot":
+                out.write('"');
+                return;
+            case "apos":
+                out.write('\'');
+                return;
+            default:
+                break;
+        }
+        if (name.startsWith("#")) {
+            try {
+                int code = name.startsWith("#x") || name.startsWith("#X")
+                        ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                out.write(Character.toChars(code));
+                return;
+            } catch (IllegalArgumentException e) {
+                // Malformed; written as is below.
+            }
+        }
+        out.write('&');
+        out.write(name);
+        if (c == ';') out.write(';');
+    }
+}
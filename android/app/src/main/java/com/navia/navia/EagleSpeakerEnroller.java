@@ -0,0 +1,44 @@
+package com.navia.navia;
+
+import android.content.Context;
+
+import ai.picovoice.eagle.EagleException;
+import ai.picovoice.eagle.EagleProfiler;
+
+// SpeakerEnroller backed by Picovoice EagleProfiler.
+public final class EagleSpeakerEnroller implements SpeakerEnroller {
+    private final EagleProfiler profiler;
+
+    public EagleSpeakerEnroller(Context context, String accessKey) throws VoiceEngineException {
+        try {
+            profiler = new EagleProfiler.Builder()
+                    .setAccessKey(accessKey)
+                    .build(context);
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Failed to initialize EagleProfiler: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public float enroll(short[] pcm) throws VoiceEngineException {
+        try {
+            return profiler.enroll(pcm).getPercentage();
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Enrollment failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] export() throws VoiceEngineException {
+        try {
+            return profiler.export().getBytes();
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Profile export failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        profiler.delete();
+    }
+}
@@ -0,0 +1,52 @@
+package com.navia.navia;
+
+import android.content.Context;
+
+import ai.picovoice.eagle.Eagle;
+import ai.picovoice.eagle.EagleException;
+import ai.picovoice.eagle.EagleProfile;
+
+// SpeakerVerifier backed by Picovoice Eagle with a single speaker profile.
+public final class EagleSpeakerVerifier implements SpeakerVerifier {
+    private final Eagle eagle;
+
+    public EagleSpeakerVerifier(Context context, String accessKey, byte[] profile) throws VoiceEngineException {
+        try {
+            eagle = new Eagle.Builder()
+                    .setAccessKey(accessKey)
+                    .setSpeakerProfiles(new EagleProfile[]{new EagleProfile(profile)})
+                    .build(context);
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Failed to initialize Eagle: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getFrameLength() {
+        return eagle.getFrameLength();
+    }
+
+    @Override
+    public float process(short[] frame) throws VoiceEngineException {
+        try {
+            float[] scores = eagle.process(frame);
+            return scores.length > 0 ? scores[0] : 0f;
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Eagle process failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void reset() throws VoiceEngineException {
+        try {
+            eagle.reset();
+        } catch (EagleException e) {
+            throw new VoiceEngineException("Eagle reset failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        eagle.delete();
+    }
+}
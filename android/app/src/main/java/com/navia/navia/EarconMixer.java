@@ -0,0 +1,141 @@
+package com.navia.navia;
+
+import java.util.Arrays;
+
+// Small fixed-voice mixer for earcons. Voices carry a priority: while a voice of
+// higher priority is sounding, lower ones are ducked, and a result cue cancels any
+// looping progress cue. All state is guarded by the mixer lock; mix() does not allocate.
+public final class EarconMixer {
+    public static final int PRIORITY_PROGRESS = 0;
+    public static final int PRIORITY_RESULT = 1;
+
+    private static final int MAX_VOICES = 4;
+    private static final float DUCK_GAIN = 0.3f;
+
+    // Invoked from the render thread the first time a voice is mixed.
+    public interface StartListener {
+        void onVoiceStarted(int id, long requestedAtNs);
+    }
+
+    private static final class Voice {
+        short[] pcm;
+        int position;
+        int priority;
+        boolean loop;
+        boolean started;
+        int id;
+        long requestedAtNs;
+    }
+
+    private final Voice[] voices = new Voice[MAX_VOICES];
+    private final int[] accumulator;
+    private int nextId = 1;
+    private StartListener startListener;
+
+    public EarconMixer(int maxFrames) {
+        accumulator = new int[maxFrames];
+        for (int i = 0; i < MAX_VOICES; i++) voices[i] = new Voice();
+    }
+
+    public synchronized void setStartListener(StartListener listener) {
+        startListener = listener;
+    }
+
+    // Returns the voice id, or 0 if every slot is held by a higher-priority voice.
+    public synchronized int play(short[] pcm, int priority, boolean loop, long requestedAtNs) {
+        if (priority >= PRIORITY_RESULT) {
+            stopLoopingLocked();
+        }
+        Voice slot = null;
+        for (Voice v : voices) {
+            if (v.pcm == null) { slot = v; break; }
+        }
+        if (slot == null) {
+            // Steal the lowest-priority voice that is not above us.
+            for (Voice v : voices) {
+                if (v.priority <= priority && (slot == null || v.priority < slot.priority)) slot = v;
+            }
+            if (slot == null) return 0;
+        }
+        slot.pcm = pcm;
+        slot.position = 0;
+        slot.priority = priority;
+        slot.loop = loop;
+        slot.started = false;
+        slot.id = nextId++;
+        slot.requestedAtNs = requestedAtNs;
+        return slot.id;
+    }
+
+    public synchronized void stop(int id) {
+        for (Voice v : voices) {
+            if (v.id == id) v.pcm = null;
+        }
+    }
+
+    public synchronized void stopLooping() {
+        stopLoopingLocked();
+    }
+
+    public synchronized void stopAll() {
+        for (Voice v : voices) v.pcm = null;
+    }
+
+    public synchronized boolean isActive() {
+        for (Voice v : voices) {
+            if (v.pcm != null) return true;
+        }
+        return false;
+    }
+
+    // Mixes the next `frames` samples into out. Returns false when nothing is playing,
+    // in which case out is filled with silence.
+    public boolean mix(short[] out, int frames) {
+        StartListener listener;
+        synchronized (this) {
+            listener = startListener;
+            int topPriority = -1;
+            for (Voice v : voices) {
+                if (v.pcm != null && v.priority > topPriority) topPriority = v.priority;
+            }
+            if (topPriority < 0) {
+                Arrays.fill(out, 0, frames, (short) 0);
+                return false;
+            }
+
+            Arrays.fill(accumulator, 0, frames, 0);
+            for (Voice v : voices) {
+                if (v.pcm == null) continue;
+                if (!v.started) {
+                    v.started = true;
+                    if (listener != null) listener.onVoiceStarted(v.id, v.requestedAtNs);
+                }
+                float gain = v.priority < topPriority ? DUCK_GAIN : 1f;
+                int written = 0;
+                while (written < frames && v.pcm != null) {
+                    int n = Math.min(frames - written, v.pcm.length - v.position);
+                    for (int i = 0; i < n; i++) {
+                        accumulator[written + i] += (int) (v.pcm[v.position + i] * gain);
+                    }
+                    written += n;
+                    v.position += n;
+                    if (v.position >= v.pcm.length) {
+                        if (v.loop) v.position = 0;
+                        else v.pcm = null;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < frames; i++) {
+            int s = accumulator[i];
+            out[i] = (short) (s > Short.MAX_VALUE ? Short.MAX_VALUE : Math.max(s, Short.MIN_VALUE));
+        }
+        return true;
+    }
+
+    private void stopLoopingLocked() {
+        for (Voice v : voices) {
+            if (v.loop) v.pcm = null;
+        }
+    }
+}
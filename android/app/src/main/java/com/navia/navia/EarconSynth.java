@@ -0,0 +1,85 @@
+package com.navia.navia;
+
+// Pure-Java synthesis of the feedback earcons into 16-bit mono PCM. Everything is
+// rendered once at startup so playback is just a buffer copy in the mixer.
+public final class EarconSynth {
+    private static final double TWO_PI = Math.PI * 2;
+    private static final float ATTACK_MS = 4f;
+    private static final float RELEASE_MS = 12f;
+
+    private EarconSynth() {
+    }
+
+    // Two rising notes (E5 -> A5).
+    public static short[] success(int sampleRate) {
+        return concat(tone(sampleRate, 659.25, 70, 0.55f), silence(sampleRate, 20), tone(sampleRate, 880.0, 110, 0.55f));
+    }
+
+    // Short, soft upward pair (A5 -> E6): "I am listening".
+    public static short[] listening(int sampleRate) {
+        return concat(tone(sampleRate, 880.0, 45, 0.4f), silence(sampleRate, 15), tone(sampleRate, 1318.5, 60, 0.4f));
+    }
+
+    // Two falling notes with a little grit from a second harmonic.
+    public static short[] failure(int sampleRate) {
+        return concat(harmonicTone(sampleRate, 392.0, 110, 0.5f), silence(sampleRate, 30), harmonicTone(sampleRate, 293.66, 170, 0.5f));
+    }
+
+    // One loop period of the loading cue: a short soft tick followed by a rest.
+    public static short[] loading(int sampleRate) {
+        return concat(tone(sampleRate, 1046.5, 35, 0.3f), silence(sampleRate, 565));
+    }
+
+    // One loop period of the waiting cue: a slow, quiet double pulse.
+    public static short[] waiting(int sampleRate) {
+        return concat(tone(sampleRate, 523.25, 60, 0.25f), silence(sampleRate, 90),
+                tone(sampleRate, 523.25, 60, 0.25f), silence(sampleRate, 1190));
+    }
+
+    static short[] tone(int sampleRate, double freq, int durationMs, float gain) {
+        int n = sampleRate * durationMs / 1000;
+        short[] out = new short[n];
+        double phaseStep = TWO_PI * freq / sampleRate;
+        for (int i = 0; i < n; i++) {
+            double s = Math.sin(phaseStep * i) * envelope(i, n, sampleRate) * gain;
+            out[i] = (short) (s * Short.MAX_VALUE);
+        }
+        return out;
+    }
+
+    static short[] harmonicTone(int sampleRate, double freq, int durationMs, float gain) {
+        int n = sampleRate * durationMs / 1000;
+        short[] out = new short[n];
+        double phaseStep = TWO_PI * freq / sampleRate;
+        for (int i = 0; i < n; i++) {
+            double s = (Math.sin(phaseStep * i) * 0.8 + Math.sin(phaseStep * 2 * i) * 0.2) * envelope(i, n, sampleRate) * gain;
+            out[i] = (short) (s * Short.MAX_VALUE);
+        }
+        return out;
+    }
+
+    static short[] silence(int sampleRate, int durationMs) {
+        return new short[sampleRate * durationMs / 1000];
+    }
+
+    // Linear attack/release so cue edges do not click.
+    private static double envelope(int i, int n, int sampleRate) {
+        int attack = (int) (sampleRate * ATTACK_MS / 1000);
+        int release = (int) (sampleRate * RELEASE_MS / 1000);
+        if (i < attack) return (double) i / attack;
+        if (i > n - release) return Math.max(0, (double) (n - i) / release);
+        return 1.0;
+    }
+
+    private static short[] concat(short[]... parts) {
+        int total = 0;
+        for (short[] p : parts) total += p.length;
+        short[] out = new short[total];
+        int pos = 0;
+        for (short[] p : parts) {
+            System.arraycopy(p, 0, out, pos, p.length);
+            pos += p.length;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,45 @@
+package com.navia.navia;
+
+// Cheap frame-energy voice activity gate with an adaptive noise floor. It only has
+// to be good enough to keep the wake-word detector asleep in silence; misses are
+// covered by the hangover and the pre-roll the service replays on activation.
+public final class EnergyVad {
+    private static final double FLOOR_RISE = 0.002;
+    private static final double FLOOR_FALL = 0.1;
+    private static final double MIN_FLOOR = 50;
+    private static final double ACTIVATION_RATIO = 3.0;
+    private static final int HANGOVER_FRAMES = 30; // ~1s at 512/16k
+
+    private double noiseFloor = 200;
+    private int hangover = 0;
+
+    // Returns true while speech-like energy was seen within the hangover window.
+    public boolean process(short[] frame, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            int s = frame[i];
+            sum += (long) s * s;
+        }
+        double rms = Math.sqrt((double) sum / Math.max(1, length));
+
+        boolean active = rms > noiseFloor * ACTIVATION_RATIO;
+        // Track the floor slowly upwards and quickly downwards so speech does not drag it up.
+        if (rms < noiseFloor) {
+            noiseFloor += (rms - noiseFloor) * FLOOR_FALL;
+        } else if (!active) {
+            noiseFloor += (rms - noiseFloor) * FLOOR_RISE;
+        }
+        if (noiseFloor < MIN_FLOOR) noiseFloor = MIN_FLOOR;
+
+        if (active) {
+            hangover = HANGOVER_FRAMES;
+        } else if (hangover > 0) {
+            hangover--;
+        }
+        return active || hangover > 0;
+    }
+
+    public void reset() {
+        hangover = 0;
+    }
+}
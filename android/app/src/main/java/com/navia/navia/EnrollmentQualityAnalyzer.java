@@ -0,0 +1,182 @@
+package com.navia.navia;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Judges an enrollment take while it is being recorded, so a take that is mostly
+// silence, clipped or buried in noise is rejected before the (slow) profiler sees it.
+// Per frame it keeps the level in dBFS and the clipped sample count; speech frames are
+// those well above a running noise floor. Early checks can stop the recording as soon
+// as the take cannot pass any more; finish() applies the full thresholds using
+// percentiles over the whole take. Plain Java; one instance per take.
+public final class EnrollmentQualityAnalyzer {
+    public static final String OK = "OK";
+    public static final String NO_SPEECH = "NO_SPEECH";
+    public static final String TOO_QUIET = "TOO_QUIET";
+    public static final String NOISY = "NOISY";
+    public static final String CLIPPING = "CLIPPING";
+
+    static final float MIN_SPEECH_RATIO = 0.35f;
+    static final float MIN_SNR_DB = 12f;
+    static final float MAX_CLIP_RATE = 0.01f;
+    static final float MIN_SPEECH_DBFS = -40f;
+
+    private static final int CLIP_LEVEL = 32000;
+    private static final float SPEECH_ABOVE_FLOOR_DB = 10f;
+    private static final float SILENCE_DBFS = -90f;
+    // Running floor: falls quickly, rises slowly (per frame, in dB).
+    private static final float FLOOR_FALL = 0.3f;
+    private static final float FLOOR_RISE = 0.02f;
+    // Early checks start after ~1 s; speech can no longer reach the ratio past here.
+    private static final int EARLY_MIN_FRAMES = 31;
+
+    public static final class Report {
+        public final String reason;
+        public final float speechRatio;
+        public final float snrDb;
+        public final float clipRate;
+        public final float levelDbfs;
+        public final float noiseDbfs;
+        public final int frames;
+
+        Report(String reason, float speechRatio, float snrDb, float clipRate, float levelDbfs,
+               float noiseDbfs, int frames) {
+            this.reason = reason;
+            this.speechRatio = speechRatio;
+            this.snrDb = snrDb;
+            this.clipRate = clipRate;
+            this.levelDbfs = levelDbfs;
+            this.noiseDbfs = noiseDbfs;
+            this.frames = frames;
+        }
+
+        public boolean ok() {
+            return OK.equals(reason);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("reason", reason);
+            map.put("speechRatio", (double) speechRatio);
+            map.put("snrDb", (double) snrDb);
+            map.put("clipRate", (double) clipRate);
+            map.put("levelDbfs", (double) levelDbfs);
+            map.put("noiseDbfs", (double) noiseDbfs);
+            map.put("frames", frames);
+            return map;
+        }
+    }
+
+    private final int expectedFrames;
+    private final float[] frameDb;
+    private int frames = 0;
+    private long samples = 0;
+    private long clipped = 0;
+    private int speechFrames = 0;
+    private float floorDb = 0;
+
+    // expectedFrames: frames in a full take; later frames still count but are not kept.
+    public EnrollmentQualityAnalyzer(int expectedFrames) {
+        this.expectedFrames = Math.max(1, expectedFrames);
+        this.frameDb = new float[this.expectedFrames];
+    }
+
+    public void accept(short[] frame, int length) {
+        if (length <= 0) return;
+        long sum = 0;
+        int clips = 0;
+        for (int i = 0; i < length; i++) {
+            int s = frame[i];
+            sum += (long) s * s;
+            if (s >= CLIP_LEVEL || s <= -CLIP_LEVEL) clips++;
+        }
+        float db = toDbfs(Math.sqrt((double) sum / length));
+        if (frames == 0) floorDb = db;
+        boolean speech = db > floorDb + SPEECH_ABOVE_FLOOR_DB && db > MIN_SPEECH_DBFS;
+        // Like EnergyVad: speech never drags the floor up.
+        if (db < floorDb) {
+            floorDb += (db - floorDb) * FLOOR_FALL;
+        } else if (!speech) {
+            floorDb += (db - floorDb) * FLOOR_RISE;
+        }
+        if (speech) speechFrames++;
+        if (frames < frameDb.length) frameDb[frames] = db;
+        frames++;
+        samples += length;
+        clipped += clips;
+    }
+
+    // Non-null once the take is already lost; the caller can stop recording.
+    public String earlyFailure() {
+        if (frames < EARLY_MIN_FRAMES) return null;
+        if ((float) clipped / samples > MAX_CLIP_RATE * 3) return CLIPPING;
+        // Even if every remaining frame were speech the ratio would stay too low.
+        int remaining = Math.max(0, expectedFrames - frames);
+        if ((float) (speechFrames + remaining) / expectedFrames < MIN_SPEECH_RATIO) return NO_SPEECH;
+        return null;
+    }
+
+    // The report to fail with once earlyFailure() fires: the metrics so far, with the
+    // most specific reason they already show.
+    public Report failFast() {
+        String early = earlyFailure();
+        if (early == null) return null;
+        Report partial = finish();
+        if (!partial.ok()) return partial;
+        return new Report(early, partial.speechRatio, partial.snrDb, partial.clipRate,
+                partial.levelDbfs, partial.noiseDbfs, partial.frames);
+    }
+
+    public Report finish() {
+        int kept = Math.min(frames, frameDb.length);
+        if (kept == 0) return new Report(NO_SPEECH, 0, 0, 0, SILENCE_DBFS, SILENCE_DBFS, 0);
+        float[] sorted = Arrays.copyOf(frameDb, kept);
+        Arrays.sort(sorted);
+        float noise = sorted[(int) (kept * 0.1f)];
+        float level = sorted[Math.min(kept - 1, (int) (kept * 0.9f))];
+
+        int speech = 0;
+        for (int i = 0; i < kept; i++) {
+            if (frameDb[i] > noise + SPEECH_ABOVE_FLOOR_DB && frameDb[i] > MIN_SPEECH_DBFS) speech++;
+        }
+        float speechRatio = (float) speech / kept;
+        float snr = level - noise;
+        float clipRate = samples == 0 ? 0 : (float) clipped / samples;
+
+        String reason;
+        if (clipRate > MAX_CLIP_RATE) {
+            reason = CLIPPING;
+        } else if (level < MIN_SPEECH_DBFS) {
+            reason = TOO_QUIET;
+        } else if (snr < MIN_SNR_DB) {
+            reason = NOISY;
+        } else if (speechRatio < MIN_SPEECH_RATIO) {
+            reason = NO_SPEECH;
+        } else {
+            reason = OK;
+        }
+        return new Report(reason, speechRatio, snr, clipRate, level, noise, frames);
+    }
+
+    // User-facing explanation for a failed take (the reason codes go to Flutter as-is).
+    public static String describe(String reason) {
+        switch (reason) {
+            case NO_SPEECH:
+                return "Not enough speech in the recording; keep talking for the whole take.";
+            case TOO_QUIET:
+                return "The recording is too quiet; speak closer to the phone.";
+            case NOISY:
+                return "Too much background noise; try a quieter place.";
+            case CLIPPING:
+                return "The recording is distorted; speak a little further from the phone.";
+            default:
+                return "Recording quality is good.";
+        }
+    }
+
+    private static float toDbfs(double rms) {
+        if (rms < 1) return SILENCE_DBFS;
+        return (float) Math.max(SILENCE_DBFS, 20.0 * Math.log10(rms / 32768.0));
+    }
+}
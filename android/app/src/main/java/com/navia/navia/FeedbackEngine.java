@@ -0,0 +1,201 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Earcon playback for the navia/feedback channel. Cues are synthesized once into
+// PCM, mixed by EarconMixer and pushed through a single low-latency AudioTrack
+// that is fed in device-burst-sized chunks from an urgent-audio thread. The track
+// keeps running for a short idle window after the last cue so back-to-back cues do
+// not pay the restart cost, then pauses until the next one.
+public class FeedbackEngine {
+    private static final String TAG = "FeedbackEngine";
+    private static final long IDLE_PAUSE_MS = 3000;
+
+    public enum Cue {SUCCESS, FAILURE, LOADING, WAITING, LISTENING}
+
+    private static FeedbackEngine instance;
+
+    // One engine per process; it outlives activities so cues stay warm across attaches.
+    public static synchronized FeedbackEngine get(Context context) {
+        if (instance == null) instance = new FeedbackEngine(context.getApplicationContext());
+        return instance;
+    }
+
+    private final int sampleRate;
+    private final int burstFrames;
+    private final AudioTrack track;
+    private final EarconMixer mixer;
+    private final Map<Cue, short[]> earcons = new HashMap<>();
+    private final Object wakeLock = new Object();
+    private final Thread renderThread;
+    private volatile boolean running = true;
+
+    private long framesWritten = 0;
+    private final AudioTimestamp timestamp = new AudioTimestamp();
+
+    // Latency from play() to the cue's first sample leaving the speaker (estimated).
+    private volatile double lastLatencyMs = 0;
+    private double totalLatencyMs = 0;
+    private double maxLatencyMs = 0;
+    private int latencySamples = 0;
+    private volatile double outputLatencyMs = 0;
+
+    private FeedbackEngine(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        sampleRate = parseOr(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE), 48000);
+        burstFrames = parseOr(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER), 256);
+
+        earcons.put(Cue.SUCCESS, EarconSynth.success(sampleRate));
+        earcons.put(Cue.FAILURE, EarconSynth.failure(sampleRate));
+        earcons.put(Cue.LOADING, EarconSynth.loading(sampleRate));
+        earcons.put(Cue.WAITING, EarconSynth.waiting(sampleRate));
+        earcons.put(Cue.LISTENING, EarconSynth.listening(sampleRate));
+
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setBufferSizeInBytes(Math.max(minBuffer, burstFrames * 2 * 2));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        track = builder.build();
+
+        mixer = new EarconMixer(burstFrames);
+        mixer.setStartListener(this::onVoiceStarted);
+
+        renderThread = new Thread(this::renderLoop, "FeedbackEngine");
+        renderThread.start();
+        Log.d(TAG, "Initialized rate=" + sampleRate + " burst=" + burstFrames);
+    }
+
+    public void play(Cue cue) {
+        boolean loop = cue == Cue.LOADING || cue == Cue.WAITING;
+        int priority = loop ? EarconMixer.PRIORITY_PROGRESS : EarconMixer.PRIORITY_RESULT;
+        if (loop) mixer.stopLooping();
+        mixer.play(earcons.get(cue), priority, loop, System.nanoTime());
+        synchronized (wakeLock) {
+            wakeLock.notifyAll();
+        }
+    }
+
+    public void stopLooping() {
+        mixer.stopLooping();
+    }
+
+    public void stopAll() {
+        mixer.stopAll();
+    }
+
+    public synchronized Map<String, Object> getLatencyStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lastMs", lastLatencyMs);
+        stats.put("meanMs", latencySamples == 0 ? 0.0 : totalLatencyMs / latencySamples);
+        stats.put("maxMs", maxLatencyMs);
+        stats.put("count", latencySamples);
+        stats.put("outputLatencyMs", outputLatencyMs);
+        stats.put("sampleRate", sampleRate);
+        stats.put("burstFrames", burstFrames);
+        return stats;
+    }
+
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        short[] buffer = new short[burstFrames];
+        long lastActiveMs = 0;
+        boolean playing = false;
+
+        while (running) {
+            if (!mixer.isActive() && System.currentTimeMillis() - lastActiveMs > IDLE_PAUSE_MS) {
+                if (playing) {
+                    track.pause();
+                    track.flush();
+                    framesWritten = 0;
+                    playing = false;
+                }
+                synchronized (wakeLock) {
+                    while (running && !mixer.isActive()) {
+                        try {
+                            wakeLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                if (!running) break;
+            }
+            if (!playing) {
+                track.play();
+                playing = true;
+            }
+            if (mixer.mix(buffer, burstFrames)) {
+                lastActiveMs = System.currentTimeMillis();
+            }
+            int written = track.write(buffer, 0, burstFrames);
+            if (written > 0) framesWritten += written;
+            updateOutputLatency();
+        }
+    }
+
+    // Frames queued ahead of the DAC, from the track's presentation timestamp.
+    private void updateOutputLatency() {
+        if (track.getTimestamp(timestamp)) {
+            long queued = framesWritten - timestamp.framePosition;
+            outputLatencyMs = Math.max(0, queued) * 1000.0 / sampleRate;
+        }
+    }
+
+    private void onVoiceStarted(int id, long requestedAtNs) {
+        double renderMs = (System.nanoTime() - requestedAtNs) / 1e6;
+        double latencyMs = renderMs + outputLatencyMs;
+        synchronized (this) {
+            lastLatencyMs = latencyMs;
+            totalLatencyMs += latencyMs;
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+            latencySamples++;
+        }
+    }
+
+    public void release() {
+        synchronized (FeedbackEngine.class) {
+            if (instance == this) instance = null;
+        }
+        running = false;
+        mixer.stopAll();
+        synchronized (wakeLock) {
+            wakeLock.notifyAll();
+        }
+        try {
+            renderThread.join(500);
+        } catch (InterruptedException ignored) {
+        }
+        track.release();
+    }
+
+    private static int parseOr(String value, int fallback) {
+        try {
+            return value == null ? fallback : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.navia.navia;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Single-producer triple buffer for screen frames.
+// The producer (ImageReader thread) always has a private back slot to write into,
+// the consumer side owns the front slot, and the middle slot is exchanged
+// atomically, so the producer never waits. Readers on any thread go through read():
+// the front slot is only touched under the lock and never handed out, so one
+// reader's frame cannot be swapped away under another.
+public final class FrameTripleBuffer {
+    public interface Reader<T> {
+        // Runs under the consumer lock; must not keep a reference to the frame.
+        T read(ScreenFrame frame);
+    }
+
+    private static final int INDEX_MASK = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final ScreenFrame[] slots = {new ScreenFrame(), new ScreenFrame(), new ScreenFrame()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;   // producer-owned
+    private int front = 2;  // consumer-owned
+    private long nextSequence = 1;
+    // Sequence of the newest published frame, 0 when there is none.
+    private volatile long lastSequence = 0;
+
+    // Producer side: the slot to fill before calling publish().
+    public ScreenFrame backFrame() {
+        return slots[back];
+    }
+
+    // Returns the sequence number given to the published frame.
+    public long publish() {
+        long sequence = nextSequence++;
+        slots[back].sequence = sequence;
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    // Applies reader to the newest published frame and returns its result, or null
+    // if nothing was published since the last clear().
+    public synchronized <T> T read(Reader<T> reader) {
+        if ((middle.get() & FRESH) != 0) {
+            int previous = middle.getAndSet(front);
+            front = previous & INDEX_MASK;
+        }
+        ScreenFrame frame = slots[front];
+        return frame.hasData() ? reader.read(frame) : null;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    // Producer thread only: drops every retained frame and its pixel memory.
+    public synchronized void clear() {
+        for (ScreenFrame slot : slots) slot.release();
+        middle.set(middle.get() & INDEX_MASK);
+        lastSequence = 0;
+    }
+
+    public boolean hasFreshFrame() {
+        return (middle.get() & FRESH) != 0;
+    }
+}
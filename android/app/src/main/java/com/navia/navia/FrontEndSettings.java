@@ -0,0 +1,62 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Which capture conditioning stages are on, kept in SharedPreferences so a restarted
+// wake service comes back with the same front end. Software stages are the
+// AudioFrontEnd stage names; platformNs / platformAgc select the platform effects.
+public final class FrontEndSettings {
+    public static final String PLATFORM_NS = "platformNs";
+    public static final String PLATFORM_AGC = "platformAgc";
+
+    static final String PREFS = "audio_front_end";
+
+    private FrontEndSettings() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static boolean defaultFor(String key) {
+        return AudioFrontEnd.HIGH_PASS.equals(key) || AudioFrontEnd.AGC.equals(key);
+    }
+
+    public static boolean isEnabled(Context context, String key) {
+        return prefs(context).getBoolean(key, defaultFor(key));
+    }
+
+    // config: any of highPass, preEmphasis, agc, platformNs, platformAgc -> bool.
+    // Keys left out keep their current value.
+    public static void configure(Context context, Map<String, Object> config) {
+        SharedPreferences.Editor editor = prefs(context).edit();
+        for (String key : keys()) {
+            Object value = config.get(key);
+            if (value instanceof Boolean) editor.putBoolean(key, (Boolean) value);
+        }
+        editor.apply();
+    }
+
+    public static Map<String, Object> describe(Context context) {
+        Map<String, Object> state = new HashMap<>();
+        for (String key : keys()) state.put(key, isEnabled(context, key));
+        return state;
+    }
+
+    public static void applyTo(Context context, AudioFrontEnd frontEnd) {
+        for (String name : AudioFrontEnd.stageNames()) frontEnd.setEnabled(name, isEnabled(context, name));
+    }
+
+    private static String[] keys() {
+        String[] stages = AudioFrontEnd.stageNames();
+        String[] keys = new String[stages.length + 2];
+        System.arraycopy(stages, 0, keys, 0, stages.length);
+        keys[stages.length] = PLATFORM_NS;
+        keys[stages.length + 1] = PLATFORM_AGC;
+        return keys;
+    }
+}
@@ -0,0 +1,342 @@
+package com.navia.navia;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// On-device document framing guidance, the offline counterpart of the guidance server.
+// Works on a luma plane (the caller may already have subsampled it; anything wider than
+// WORK_WIDTH is box-averaged down further):
+//   Otsu threshold -> largest bright component (the paper) -> coverage, border contact,
+//   corner quad from the component's extreme points -> direction, tilt, confidence.
+// Directions use the server's classes: the visible corner of the paper (top_left etc.;
+// the UI inverts it into a move), paper_face_only when the paper fills the frame,
+// no_document, and perfect once the whole page is in view, large enough and square on.
+// Plain Java; one instance per guidance session (it smooths coverage across frames).
+public final class GuidanceEstimator {
+    public static final String TOP_LEFT = "top_left";
+    public static final String TOP_RIGHT = "top_right";
+    public static final String BOTTOM_LEFT = "bottom_left";
+    public static final String BOTTOM_RIGHT = "bottom_right";
+    public static final String PAPER_FACE_ONLY = "paper_face_only";
+    public static final String PERFECT = "perfect";
+    public static final String NO_DOCUMENT = "no_document";
+
+    public static final String TILT_NONE = "none";
+    public static final String TILT_TOP_AWAY = "top_away";
+    public static final String TILT_BOTTOM_AWAY = "bottom_away";
+    public static final String TILT_LEFT_AWAY = "left_away";
+    public static final String TILT_RIGHT_AWAY = "right_away";
+
+    static final int WORK_WIDTH = 160;
+    static final float MIN_COVERAGE = 0.08f;
+    static final float READY_COVERAGE = 0.25f;
+    static final float FACE_ONLY_COVERAGE = 0.90f;
+    static final float MIN_RECTANGULARITY = 0.85f;
+    // Opposite edges shorter than this ratio of each other mean the page is tilted.
+    static final float TILT_RATIO = 0.85f;
+    private static final int MIN_CONTRAST = 30;
+    // A frame this flat and this bright is all paper.
+    private static final float FLAT_STDDEV = 12f;
+    private static final float FLAT_BRIGHT_MEAN = 140f;
+    // A flat frame that is not bright may still be a dim page filling the view: say
+    // no_document, but not with enough confidence to stand in for the server.
+    static final float FLAT_DIM_CONFIDENCE = 0.2f;
+    // The paper touches a frame edge when this share of the edge is paper.
+    private static final float TOUCH_SHARE = 0.15f;
+    private static final float COVERAGE_SMOOTHING = 0.5f;
+
+    public static final class Guidance {
+        public final String direction;
+        public final float coverage;
+        public final float confidence;
+        public final boolean ready;
+        public final String tilt;
+        // Normalized corners tl, tr, br, bl as x,y pairs; null without a document.
+        public final float[] quad;
+        public final float elapsedMs;
+
+        Guidance(String direction, float coverage, float confidence, boolean ready, String tilt,
+                 float[] quad, float elapsedMs) {
+            this.direction = direction;
+            this.coverage = coverage;
+            this.confidence = confidence;
+            this.ready = ready;
+            this.tilt = tilt;
+            this.quad = quad;
+            this.elapsedMs = elapsedMs;
+        }
+
+        // Same keys as the server's guidance message, plus the local extras.
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("type", "guidance");
+            map.put("class", direction);
+            map.put("coverage", (double) coverage);
+            map.put("conf", (double) confidence);
+            map.put("ready", ready);
+            map.put("tilt", tilt);
+            map.put("source", "local");
+            map.put("elapsedMs", (double) elapsedMs);
+            if (quad != null) {
+                double[] corners = new double[quad.length];
+                for (int i = 0; i < quad.length; i++) corners[i] = quad[i];
+                map.put("quad", corners);
+            }
+            return map;
+        }
+    }
+
+    private float smoothedCoverage = -1f;
+    private byte[] work = new byte[0];
+    private int[] stack = new int[0];
+    private boolean[] visited = new boolean[0];
+
+    public void reset() {
+        smoothedCoverage = -1f;
+    }
+
+    // luma: width x height plane with rowStride bytes per row.
+    public Guidance estimate(byte[] luma, int width, int height, int rowStride) {
+        long t0 = System.nanoTime();
+        int scale = Math.max(1, (width + WORK_WIDTH - 1) / WORK_WIDTH);
+        int w = width / scale;
+        int h = height / scale;
+        if (w < 8 || h < 8) return result(NO_DOCUMENT, 0, 0, false, TILT_NONE, null, t0);
+        int n = w * h;
+        if (work.length < n) {
+            work = new byte[n];
+            stack = new int[n];
+            visited = new boolean[n];
+        }
+        int[] histogram = downsample(luma, rowStride, scale, w, h);
+
+        // Mean and spread first: a flat bright frame is the paper face with no edges.
+        double sum = 0;
+        double sumSq = 0;
+        for (int v = 0; v < 256; v++) {
+            sum += (double) v * histogram[v];
+            sumSq += (double) v * v * histogram[v];
+        }
+        double mean = sum / n;
+        double stddev = Math.sqrt(Math.max(0, sumSq / n - mean * mean));
+        if (stddev < FLAT_STDDEV) {
+            if (mean > FLAT_BRIGHT_MEAN) {
+                return result(PAPER_FACE_ONLY, smooth(1f), 0.7f, false, TILT_NONE, null, t0);
+            }
+            return result(NO_DOCUMENT, smooth(0f), FLAT_DIM_CONFIDENCE, false, TILT_NONE, null, t0);
+        }
+
+        int threshold = otsu(histogram, n);
+        double hiSum = 0;
+        int hiCount = 0;
+        for (int v = threshold + 1; v < 256; v++) {
+            hiSum += (double) v * histogram[v];
+            hiCount += histogram[v];
+        }
+        int loCount = n - hiCount;
+        if (hiCount == 0 || loCount == 0) return result(NO_DOCUMENT, smooth(0f), 0.5f, false, TILT_NONE, null, t0);
+        double contrast = hiSum / hiCount - (sum - hiSum) / loCount;
+        if (contrast < MIN_CONTRAST) {
+            return result(NO_DOCUMENT, smooth(0f), 0.5f, false, TILT_NONE, null, t0);
+        }
+
+        Component paper = largestBright(threshold, w, h);
+        float coverage = (float) paper.area / n;
+        if (paper.area == 0 || coverage < MIN_COVERAGE) {
+            return result(NO_DOCUMENT, smooth(coverage), clamp01((float) contrast / 80f), false,
+                    TILT_NONE, null, t0);
+        }
+        float smoothed = smooth(coverage);
+
+        float[] quad = paper.quad(w, h);
+        float quadArea = polygonArea(quad) * w * h;
+        float rectangularity = quadArea <= 0 ? 0 : clamp01(paper.area / quadArea);
+        float confidence = clamp01((float) contrast / 80f) * (0.5f + 0.5f * rectangularity);
+
+        boolean left = paper.touchLeft > TOUCH_SHARE * h;
+        boolean right = paper.touchRight > TOUCH_SHARE * h;
+        boolean top = paper.touchTop > TOUCH_SHARE * w;
+        boolean bottom = paper.touchBottom > TOUCH_SHARE * w;
+        int touches = (left ? 1 : 0) + (right ? 1 : 0) + (top ? 1 : 0) + (bottom ? 1 : 0);
+
+        if (touches >= 3 || coverage > FACE_ONLY_COVERAGE) {
+            return result(PAPER_FACE_ONLY, smoothed, confidence, false, TILT_NONE, quad, t0);
+        }
+        float cx = (float) paper.sumX / paper.area / w;
+        float cy = (float) paper.sumY / paper.area / h;
+        if (touches > 0) {
+            // The paper runs off the frame on these sides; the opposite corner is the one in view.
+            boolean runsRight = right || (!left && cx > 0.5f);
+            boolean runsDown = bottom || (!top && cy > 0.5f);
+            return result(visibleCorner(runsRight, runsDown), smoothed, confidence, false, TILT_NONE, quad, t0);
+        }
+
+        String tilt = tilt(quad, w, h);
+        boolean framed = smoothed >= READY_COVERAGE && rectangularity >= MIN_RECTANGULARITY
+                && TILT_NONE.equals(tilt);
+        if (framed) return result(PERFECT, smoothed, confidence, true, tilt, quad, t0);
+        // Whole page in view but small or skewed: steer toward the centre meanwhile.
+        return result(visibleCorner(cx > 0.5f, cy > 0.5f), smoothed, confidence, false, tilt, quad, t0);
+    }
+
+    // The corner class for a paper that extends right/down past the visible part.
+    private static String visibleCorner(boolean extendsRight, boolean extendsDown) {
+        if (extendsRight) return extendsDown ? TOP_LEFT : BOTTOM_LEFT;
+        return extendsDown ? TOP_RIGHT : BOTTOM_RIGHT;
+    }
+
+    private int[] downsample(byte[] luma, int rowStride, int scale, int w, int h) {
+        int[] histogram = new int[256];
+        int area = scale * scale;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int acc = 0;
+                for (int dy = 0; dy < scale; dy++) {
+                    int row = (y * scale + dy) * rowStride + x * scale;
+                    for (int dx = 0; dx < scale; dx++) acc += luma[row + dx] & 0xFF;
+                }
+                int v = acc / area;
+                work[y * w + x] = (byte) v;
+                histogram[v]++;
+            }
+        }
+        return histogram;
+    }
+
+    private static int otsu(int[] histogram, int n) {
+        double total = 0;
+        for (int v = 0; v < 256; v++) total += (double) v * histogram[v];
+        double sumLo = 0;
+        int countLo = 0;
+        double best = -1;
+        int threshold = 127;
+        for (int t = 0; t < 256; t++) {
+            countLo += histogram[t];
+            if (countLo == 0) continue;
+            int countHi = n - countLo;
+            if (countHi == 0) break;
+            sumLo += (double) t * histogram[t];
+            double meanLo = sumLo / countLo;
+            double meanHi = (total - sumLo) / countHi;
+            double between = (double) countLo * countHi * (meanLo - meanHi) * (meanLo - meanHi);
+            if (between > best) {
+                best = between;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    private static final class Component {
+        int area;
+        long sumX;
+        long sumY;
+        int touchLeft;
+        int touchRight;
+        int touchTop;
+        int touchBottom;
+        // Extreme points: min/max of x+y and x-y give the four corners of a quad-like blob.
+        int tl = -1;
+        int br = -1;
+        int tr = -1;
+        int bl = -1;
+
+        float[] quad(int w, int h) {
+            return new float[]{
+                    (float) (tl % w) / w, (float) (tl / w) / h,
+                    (float) (tr % w) / w, (float) (tr / w) / h,
+                    (float) (br % w) / w, (float) (br / w) / h,
+                    (float) (bl % w) / w, (float) (bl / w) / h,
+            };
+        }
+    }
+
+    // 4-connected flood fill over pixels above the threshold, keeping the largest blob.
+    private Component largestBright(int threshold, int w, int h) {
+        int n = w * h;
+        Arrays.fill(visited, 0, n, false);
+        Component best = new Component();
+        for (int start = 0; start < n; start++) {
+            if (visited[start] || (work[start] & 0xFF) <= threshold) continue;
+            Component c = new Component();
+            int top = 0;
+            stack[top++] = start;
+            visited[start] = true;
+            while (top > 0) {
+                int p = stack[--top];
+                int x = p % w;
+                int y = p / w;
+                c.area++;
+                c.sumX += x;
+                c.sumY += y;
+                if (x == 0) c.touchLeft++;
+                if (x == w - 1) c.touchRight++;
+                if (y == 0) c.touchTop++;
+                if (y == h - 1) c.touchBottom++;
+                if (c.tl < 0 || x + y < c.tl % w + c.tl / w) c.tl = p;
+                if (c.br < 0 || x + y > c.br % w + c.br / w) c.br = p;
+                if (c.tr < 0 || x - y > c.tr % w - c.tr / w) c.tr = p;
+                if (c.bl < 0 || x - y < c.bl % w - c.bl / w) c.bl = p;
+                if (x > 0) top = push(p - 1, threshold, top);
+                if (x < w - 1) top = push(p + 1, threshold, top);
+                if (y > 0) top = push(p - w, threshold, top);
+                if (y < h - 1) top = push(p + w, threshold, top);
+            }
+            if (c.area > best.area) best = c;
+        }
+        return best;
+    }
+
+    private int push(int p, int threshold, int top) {
+        if (visited[p] || (work[p] & 0xFF) <= threshold) return top;
+        visited[p] = true;
+        stack[top] = p;
+        return top + 1;
+    }
+
+    // A page seen at an angle is a trapezoid: the far edge is the shorter one.
+    private static String tilt(float[] quad, int w, int h) {
+        float top = distance(quad, 0, 1, w, h);
+        float right = distance(quad, 1, 2, w, h);
+        float bottom = distance(quad, 2, 3, w, h);
+        float left = distance(quad, 3, 0, w, h);
+        if (top < bottom * TILT_RATIO) return TILT_TOP_AWAY;
+        if (bottom < top * TILT_RATIO) return TILT_BOTTOM_AWAY;
+        if (left < right * TILT_RATIO) return TILT_LEFT_AWAY;
+        if (right < left * TILT_RATIO) return TILT_RIGHT_AWAY;
+        return TILT_NONE;
+    }
+
+    private static float distance(float[] quad, int a, int b, int w, int h) {
+        float dx = (quad[a * 2] - quad[b * 2]) * w;
+        float dy = (quad[a * 2 + 1] - quad[b * 2 + 1]) * h;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Shoelace area of the normalized quad.
+    private static float polygonArea(float[] quad) {
+        float area = 0;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            area += quad[i * 2] * quad[j * 2 + 1] - quad[j * 2] * quad[i * 2 + 1];
+        }
+        return Math.abs(area) / 2f;
+    }
+
+    private float smooth(float coverage) {
+        smoothedCoverage = smoothedCoverage < 0 ? coverage
+                : smoothedCoverage + (coverage - smoothedCoverage) * COVERAGE_SMOOTHING;
+        return smoothedCoverage;
+    }
+
+    private static float clamp01(float v) {
+        return Math.max(0f, Math.min(1f, v));
+    }
+
+    private static Guidance result(String direction, float coverage, float confidence, boolean ready,
+                                   String tilt, float[] quad, long t0) {
+        return new Guidance(direction, coverage, confidence, ready, tilt, quad,
+                (System.nanoTime() - t0) / 1e6f);
+    }
+}
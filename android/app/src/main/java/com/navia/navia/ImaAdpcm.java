@@ -0,0 +1,153 @@
+package com.navia.navia;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// IMA ADPCM (4 bits per sample) in a standard mono WAV container, so a diagnostics
+// clip is a quarter of its PCM size and still opens in any audio tool. Blocks of
+// BLOCK_ALIGN bytes each start with the predictor and step index, then 2 samples
+// per byte, low nibble first.
+final class ImaAdpcm {
+    static final int BLOCK_ALIGN = 256;
+    static final int SAMPLES_PER_BLOCK = (BLOCK_ALIGN - 4) * 2 + 1;
+
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+            253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+            1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+            3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487,
+            12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private ImaAdpcm() {
+    }
+
+    static int encodedSize(int samples) {
+        int blocks = (samples + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK;
+        return 60 + blocks * BLOCK_ALIGN;
+    }
+
+    static void writeWav(OutputStream target, short[] pcm, int offset, int length, int sampleRate)
+            throws IOException {
+        int blocks = (length + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK;
+        int dataBytes = blocks * BLOCK_ALIGN;
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeBytes("RIFF");
+        writeIntLe(out, 4 + (8 + 20) + (8 + 4) + (8 + dataBytes));
+        out.writeBytes("WAVE");
+        out.writeBytes("fmt ");
+        writeIntLe(out, 20);
+        writeShortLe(out, 0x0011);  // WAVE_FORMAT_IMA_ADPCM
+        writeShortLe(out, 1);
+        writeIntLe(out, sampleRate);
+        writeIntLe(out, sampleRate * BLOCK_ALIGN / SAMPLES_PER_BLOCK);
+        writeShortLe(out, BLOCK_ALIGN);
+        writeShortLe(out, 4);
+        writeShortLe(out, 2);
+        writeShortLe(out, SAMPLES_PER_BLOCK);
+        out.writeBytes("fact");
+        writeIntLe(out, 4);
+        writeIntLe(out, length);
+        out.writeBytes("data");
+        writeIntLe(out, dataBytes);
+
+        byte[] block = new byte[BLOCK_ALIGN];
+        int index = 0;
+        for (int start = 0; start < length; start += SAMPLES_PER_BLOCK) {
+            index = encodeBlock(pcm, offset + start, Math.min(SAMPLES_PER_BLOCK, length - start), index, block);
+            out.write(block);
+        }
+        out.flush();
+    }
+
+    // Encodes up to SAMPLES_PER_BLOCK samples (the tail is padded with silence) and
+    // returns the step index the next block starts from.
+    static int encodeBlock(short[] pcm, int offset, int count, int index, byte[] block) {
+        int predictor = pcm[offset];
+        block[0] = (byte) predictor;
+        block[1] = (byte) (predictor >> 8);
+        block[2] = (byte) index;
+        block[3] = 0;
+        for (int i = 1, out = 4; i < SAMPLES_PER_BLOCK; i += 2, out++) {
+            int low = encodeSample(i < count ? pcm[offset + i] : 0, predictor, index);
+            predictor = nextPredictor(predictor, index, low);
+            index = nextIndex(index, low);
+            int high = encodeSample(i + 1 < count ? pcm[offset + i + 1] : 0, predictor, index);
+            predictor = nextPredictor(predictor, index, high);
+            index = nextIndex(index, high);
+            block[out] = (byte) (low | (high << 4));
+        }
+        return index;
+    }
+
+    // Decodes the first `count` samples of one block (at most (block length - 4) * 2 + 1)
+    // into out[offset...]; any block align, so clips from other tools read too.
+    static void decodeBlock(byte[] block, int blockOffset, int count, short[] out, int offset) {
+        int predictor = (short) ((block[blockOffset] & 0xff) | (block[blockOffset + 1] << 8));
+        int index = Math.max(0, Math.min(STEP_TABLE.length - 1, block[blockOffset + 2]));
+        if (count > 0) out[offset] = (short) predictor;
+        for (int i = 1, in = blockOffset + 4; i < count; i += 2, in++) {
+            int low = block[in] & 0x0f;
+            predictor = nextPredictor(predictor, index, low);
+            index = nextIndex(index, low);
+            out[offset + i] = (short) predictor;
+            if (i + 1 >= count) break;
+            int high = (block[in] >> 4) & 0x0f;
+            predictor = nextPredictor(predictor, index, high);
+            index = nextIndex(index, high);
+            out[offset + i + 1] = (short) predictor;
+        }
+    }
+
+    private static int encodeSample(int sample, int predictor, int index) {
+        int step = STEP_TABLE[index];
+        int diff = sample - predictor;
+        int nibble = 0;
+        if (diff < 0) {
+            nibble = 8;
+            diff = -diff;
+        }
+        if (diff >= step) {
+            nibble |= 4;
+            diff -= step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 2;
+            diff -= step;
+        }
+        step >>= 1;
+        if (diff >= step) nibble |= 1;
+        return nibble;
+    }
+
+    // The decoder's reconstruction, so encoder and decoder drift together.
+    static int nextPredictor(int predictor, int index, int nibble) {
+        int step = STEP_TABLE[index];
+        int delta = step >> 3;
+        if ((nibble & 4) != 0) delta += step;
+        if ((nibble & 2) != 0) delta += step >> 1;
+        if ((nibble & 1) != 0) delta += step >> 2;
+        predictor += (nibble & 8) != 0 ? -delta : delta;
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+    }
+
+    static int nextIndex(int index, int nibble) {
+        return Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[nibble & 7]));
+    }
+
+    private static void writeIntLe(DataOutputStream out, int v) throws IOException {
+        out.write(v);
+        out.write(v >> 8);
+        out.write(v >> 16);
+        out.write(v >> 24);
+    }
+
+    private static void writeShortLe(DataOutputStream out, int v) throws IOException {
+        out.write(v);
+        out.write(v >> 8);
+    }
+}
@@ -0,0 +1,248 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Compiled form of the chat_compilation command grammar (assets/chat_compilation/<lang>),
+// built once per language from the same YAML files VoiceRouter reads. Matching keeps
+// VoiceRouter's rules: a tab synonym anywhere in the text wins first (lowest tab, then
+// synonym order), otherwise the whole text must equal a page intent synonym, preferring
+// the current page and then the pages in PAGE_ORDER. Text and synonyms go through
+// ArabicNormalizer, tabs through one Aho-Corasick pass and intents through a hash lookup.
+public final class IntentIndex {
+    private static final String TAG = "IntentIndex";
+    // Flutter assets as packaged in the APK.
+    private static final String ASSET_ROOT = "flutter_assets/assets/chat_compilation/";
+    private static final List<String> PAGE_ORDER = Arrays.asList("home", "reader", "history", "connectivity", "settings");
+    private static final String UNKNOWN_MESSAGE = "لم أفهم، أعد الكلام";
+
+    private static final Map<String, IntentIndex> cache = new HashMap<>();
+
+    private static final class PageIntent {
+        final String page;
+        final Map<String, Object> data;
+
+        PageIntent(String page, Map<String, Object> data) {
+            this.page = page;
+            this.data = data;
+        }
+    }
+
+    private final String lang;
+    private final AhoCorasick tabMatcher;
+    private final List<String> tabKeys;
+    private final Map<String, List<PageIntent>> intentsBySynonym;
+    private final int synonymCount;
+    private final long buildMs;
+
+    private long routeCount = 0;
+    private long routeNsTotal = 0;
+    private long routeNsMax = 0;
+
+    private IntentIndex(String lang, AhoCorasick tabMatcher, List<String> tabKeys,
+                        Map<String, List<PageIntent>> intentsBySynonym, int synonymCount, long buildMs) {
+        this.lang = lang;
+        this.tabMatcher = tabMatcher;
+        this.tabKeys = tabKeys;
+        this.intentsBySynonym = intentsBySynonym;
+        this.synonymCount = synonymCount;
+        this.buildMs = buildMs;
+    }
+
+    // Builds on first use; cheap afterwards. Callable from any thread.
+    public static IntentIndex get(Context context, String lang) throws IOException {
+        synchronized (cache) {
+            IntentIndex index = cache.get(lang);
+            if (index == null) {
+                index = load(context.getAssets(), lang);
+                cache.put(lang, index);
+            }
+            return index;
+        }
+    }
+
+    // The index for lang if it has been built already, without blocking on a build.
+    public static IntentIndex peek(String lang) {
+        synchronized (cache) {
+            return cache.get(lang);
+        }
+    }
+
+    // Same language choice as the Flutter side: Arabic devices use ar, everything else en.
+    public static String deviceLanguage() {
+        return "ar".equals(Locale.getDefault().getLanguage()) ? "ar" : "en";
+    }
+
+    public static void preload(Context context, String lang) {
+        Context app = context.getApplicationContext();
+        new Thread(() -> {
+            try {
+                get(app, lang);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to build index for " + lang + ": " + e.getMessage());
+            }
+        }, "IntentIndex").start();
+    }
+
+    private static IntentIndex load(AssetManager assets, String lang) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        String root = ASSET_ROOT + lang + "/";
+        Map<String, Object> base = readYaml(assets, root + "base.yaml");
+
+        // Known pages first, in VoiceRouter's order, then any page added since.
+        List<String> pages = new ArrayList<>();
+        String[] files = assets.list(root + "pages");
+        List<String> found = new ArrayList<>();
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(".yaml")) found.add(file.substring(0, file.length() - 5));
+            }
+        }
+        for (String page : PAGE_ORDER) {
+            if (found.remove(page)) pages.add(page);
+        }
+        Collections.sort(found);
+        pages.addAll(found);
+
+        Map<String, Map<String, Object>> pageYaml = new LinkedHashMap<>();
+        for (String page : pages) {
+            pageYaml.put(page, readYaml(assets, root + "pages/" + page + ".yaml"));
+        }
+        IntentIndex index = build(lang, base, pageYaml, start);
+        Log.d(TAG, index.describe());
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IntentIndex build(String lang, Map<String, Object> base,
+                                     Map<String, Map<String, Object>> pages, long startMs) {
+        AhoCorasick.Builder tabs = new AhoCorasick.Builder();
+        List<String> tabKeys = new ArrayList<>();
+        int synonyms = 0;
+
+        // Rank = tab position * 1024 + synonym position, mirroring the first-hit loop order.
+        Object tabMap = base.get("tabs");
+        if (tabMap instanceof Map) {
+            for (Map.Entry<Object, Object> tab : ((Map<Object, Object>) tabMap).entrySet()) {
+                int tabRank = tabKeys.size();
+                tabKeys.add(String.valueOf(tab.getKey()));
+                if (!(tab.getValue() instanceof List)) continue;
+                int synRank = 0;
+                for (Object syn : (List<Object>) tab.getValue()) {
+                    tabs.add(ArabicNormalizer.normalize(String.valueOf(syn)), tabRank * 1024 + synRank++);
+                    synonyms++;
+                }
+            }
+        }
+
+        Map<String, List<PageIntent>> bySynonym = new HashMap<>();
+        for (Map.Entry<String, Map<String, Object>> page : pages.entrySet()) {
+            Object intents = page.getValue().get("intents");
+            if (!(intents instanceof List)) continue;
+            for (Object item : (List<Object>) intents) {
+                if (!(item instanceof Map)) continue;
+                Map<String, Object> data = (Map<String, Object>) item;
+                Object list = data.get("synonyms");
+                if (!(list instanceof List)) continue;
+                PageIntent intent = new PageIntent(page.getKey(), data);
+                for (Object syn : (List<Object>) list) {
+                    String key = ArabicNormalizer.normalize(String.valueOf(syn));
+                    List<PageIntent> bucket = bySynonym.get(key);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>(1);
+                        bySynonym.put(key, bucket);
+                    }
+                    bucket.add(intent);
+                    synonyms++;
+                }
+            }
+        }
+        return new IntentIndex(lang, tabs.build(), tabKeys, bySynonym, synonyms,
+                SystemClock.elapsedRealtime() - startMs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readYaml(AssetManager assets, String path) throws IOException {
+        try (InputStream in = assets.open(path)) {
+            Object doc = new Yaml(new SafeConstructor(new LoaderOptions())).load(in);
+            return doc instanceof Map ? (Map<String, Object>) doc : new HashMap<>();
+        }
+    }
+
+    // Same result shape as VoiceRouter.route: {type: base, tab}, {type: page, page, data}
+    // or {type: unknown, message}.
+    public Map<String, Object> route(String text, String currentPage) {
+        long start = System.nanoTime();
+        String normalized = ArabicNormalizer.normalize(text);
+        Map<String, Object> result = new HashMap<>();
+
+        int rank = tabMatcher.bestMatch(normalized);
+        if (rank != AhoCorasick.NO_MATCH) {
+            result.put("type", "base");
+            result.put("tab", tabKeys.get(rank / 1024));
+        } else {
+            PageIntent match = null;
+            List<PageIntent> bucket = intentsBySynonym.get(normalized);
+            if (bucket != null) {
+                for (PageIntent intent : bucket) {
+                    if (intent.page.equals(currentPage)) {
+                        match = intent;
+                        break;
+                    }
+                }
+                if (match == null) match = bucket.get(0);
+            }
+            if (match != null) {
+                result.put("type", "page");
+                result.put("page", match.page);
+                result.put("data", match.data);
+            } else {
+                result.put("type", "unknown");
+                result.put("message", UNKNOWN_MESSAGE);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            routeCount++;
+            routeNsTotal += elapsed;
+            routeNsMax = Math.max(routeNsMax, elapsed);
+        }
+        return result;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lang", lang);
+        stats.put("buildMs", buildMs);
+        stats.put("tabs", tabKeys.size());
+        stats.put("synonyms", synonymCount);
+        stats.put("states", tabMatcher.stateCount());
+        stats.put("routes", routeCount);
+        stats.put("meanUs", routeCount == 0 ? 0.0 : routeNsTotal / 1000.0 / routeCount);
+        stats.put("maxUs", routeNsMax / 1000.0);
+        return stats;
+    }
+
+    private String describe() {
+        return "Built " + lang + " index: " + tabKeys.size() + " tabs, " + synonymCount
+                + " synonyms, " + tabMatcher.stateCount() + " states in " + buildMs + "ms";
+    }
+}
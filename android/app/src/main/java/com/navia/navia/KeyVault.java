@@ -0,0 +1,85 @@
+package com.navia.navia;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+// Seals secrets the services must survive process death with (the Picovoice access
+// key) under an AES-GCM key that never leaves the Android keystore. The sealed form
+// is a Base64 handle that is safe to keep in SharedPreferences; it is useless off
+// this device. Needs API 23; on older devices nothing is sealed and callers fall
+// back to waiting for the app to pass the secret again.
+final class KeyVault {
+    private static final String TAG = "KeyVault";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String ALIAS = "nabd_service_secrets";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private KeyVault() {
+    }
+
+    // Returns null when sealing is unavailable or fails.
+    static String seal(String secret) {
+        if (secret == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return null;
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key());
+            byte[] iv = cipher.getIV();
+            byte[] sealed = cipher.doFinal(secret.getBytes(StandardCharsets.UTF_8));
+            byte[] out = new byte[iv.length + sealed.length];
+            System.arraycopy(iv, 0, out, 0, iv.length);
+            System.arraycopy(sealed, 0, out, iv.length, sealed.length);
+            return Base64.encodeToString(out, Base64.NO_WRAP);
+        } catch (GeneralSecurityException | IOException e) {
+            Log.e(TAG, "Seal failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Returns null for a missing, foreign or tampered handle.
+    static String open(String handle) {
+        if (handle == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return null;
+        try {
+            byte[] in = Base64.decode(handle, Base64.NO_WRAP);
+            if (in.length <= IV_BYTES) return null;
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key(), new GCMParameterSpec(TAG_BITS, in, 0, IV_BYTES));
+            byte[] plain = cipher.doFinal(in, IV_BYTES, in.length - IV_BYTES);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Open failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static SecretKey key() throws GeneralSecurityException, IOException {
+        KeyStore store = KeyStore.getInstance(KEYSTORE);
+        store.load(null);
+        KeyStore.Entry entry = store.getEntry(ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
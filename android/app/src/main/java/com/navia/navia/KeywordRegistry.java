@@ -0,0 +1,70 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Loads the wake keywords from assets/wake_keywords.json. The file lists only models
+// that are bundled (KeywordRegistryTest checks it); an entry whose .ppn is missing
+// anyway is skipped rather than failing the detector. Shape of an entry:
+// {"id": "noor_read", "model": "noor_read.ppn", "sensitivity": 0.65, "action": "tab:1"}
+public final class KeywordRegistry {
+    private static final String TAG = "KeywordRegistry";
+    private static final String CONFIG = "wake_keywords.json";
+    private static final WakeKeyword DEFAULT = new WakeKeyword("noor", "noor.ppn", 0.7f, "open");
+
+    private KeywordRegistry() {
+    }
+
+    public static List<WakeKeyword> load(Context context) {
+        List<WakeKeyword> keywords = new ArrayList<>();
+        try {
+            Set<String> bundled = new HashSet<>(Arrays.asList(context.getAssets().list("")));
+            JSONArray entries = new JSONArray(readAsset(context, CONFIG));
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject e = entries.getJSONObject(i);
+                String model = e.getString("model");
+                if (!bundled.contains(model)) {
+                    Log.d(TAG, "Skipping keyword " + e.optString("id") + ", model not bundled: " + model);
+                    continue;
+                }
+                keywords.add(new WakeKeyword(
+                        e.getString("id"),
+                        model,
+                        (float) e.optDouble("sensitivity", DEFAULT.sensitivity),
+                        e.optString("action", "open")));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to load " + CONFIG + ": " + e.getMessage());
+        }
+        if (keywords.isEmpty()) {
+            keywords.add(DEFAULT);
+        }
+        Log.d(TAG, "Loaded " + keywords.size() + " wake keywords");
+        return Collections.unmodifiableList(keywords);
+    }
+
+    private static String readAsset(Context context, String name) throws IOException {
+        try (InputStream in = context.getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.TextView;
+
+// Small overlay pill the wake service shows while it listens for the command, so a
+// verified wake word gets visible feedback without bringing up the Flutter activity.
+// The view and its layout params are built once up front; show() is a single
+// addView on the main thread and lands on the next frame.
+final class ListeningBubble {
+    private final WindowManager windowManager;
+    private final TextView view;
+    private final WindowManager.LayoutParams params;
+    private boolean showing = false;
+
+    ListeningBubble(Context context, View.OnClickListener onTap) {
+        windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+
+        float density = context.getResources().getDisplayMetrics().density;
+        GradientDrawable background = new GradientDrawable();
+        background.setColor(Color.argb(230, 20, 20, 20));
+        background.setCornerRadius(28 * density);
+
+        view = new TextView(context);
+        view.setBackground(background);
+        view.setTextColor(Color.WHITE);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_SP, 18);
+        view.setGravity(Gravity.CENTER);
+        int pad = (int) (16 * density);
+        view.setPadding(pad * 2, pad, pad * 2, pad);
+        view.setMaxLines(2);
+        // The earcons carry the state for TalkBack users; a spoken announcement here
+        // would end up in the recognizer's audio.
+        view.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO);
+        view.setOnClickListener(onTap);
+
+        int type = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
+                : WindowManager.LayoutParams.TYPE_PHONE;
+        params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                type,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+                PixelFormat.TRANSLUCENT);
+        params.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL;
+        params.y = (int) (96 * density);
+    }
+
+    static boolean canShow(Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || Settings.canDrawOverlays(context);
+    }
+
+    // Main thread only.
+    void show(String text) {
+        view.setText(text);
+        if (showing) return;
+        windowManager.addView(view, params);
+        showing = true;
+    }
+
+    void setText(String text) {
+        view.setText(text);
+    }
+
+    void dismiss() {
+        if (!showing) return;
+        windowManager.removeViewImmediate(view);
+        showing = false;
+    }
+
+    boolean isShowing() {
+        return showing;
+    }
+}
@@ -2,6 +2,7 @@ package com.navia.navia;
 
 import android.content.Context;
 import android.content.Intent;
+import android.media.projection.MediaProjectionManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.PowerManager;
@@ -11,47 +12,109 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
-import android.media.AudioManager;
-import android.media.ToneGenerator;
 import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 
 
 import io.flutter.embedding.android.FlutterFragmentActivity;
 import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugins.GeneratedPluginRegistrant;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import android.app.Activity;
 
 public class MainActivity extends FlutterFragmentActivity {
     private static final String CHANNEL = "nabd/foreground";
     private static final String VOICE_ID_CHANNEL = "nabd/voiceid";
     private static final String CONNECTIVITY_CHANNEL = "nabd/connectivity";
+    private static final String WAKE_ACTION_CHANNEL = "nabd/wake_action";
+    private static final String INTENT_INDEX_CHANNEL = "nabd/intent_index";
+    private static final String TRACE_CHANNEL = "nabd/trace";
+    private static final String GUIDANCE_CHANNEL = "nabd/guidance";
+    private static final String FEEDBACK_CHANNEL = "navia/feedback";
+    // Channels whose handlers hold this activity. The engine is cached and outlives it,
+    // so they are cleared in cleanUpFlutterEngine; WarmFlutterEngine's own channels are
+    // process-wide and stay.
+    private static final String[] ACTIVITY_CHANNELS = {
+            CHANNEL, VOICE_ID_CHANNEL, CONNECTIVITY_CHANNEL, WAKE_ACTION_CHANNEL, INTENT_INDEX_CHANNEL,
+            TRACE_CHANNEL, GUIDANCE_CHANNEL, FEEDBACK_CHANNEL, DocumentService.CHANNEL, PdfPageEngine.CHANNEL,
+    };
+    // Main thread. The activity whose handlers are on the engine; a newer activity may
+    // have configured it before an older one is cleaned up.
+    private static MainActivity engineOwner;
     private VoiceIdService voiceIdService;
 
-    // إضافة هذا السطر: تعريف ToneGenerator كمتغير عام للكلاس
-    private ToneGenerator toneGen;
+    private FeedbackEngine feedbackEngine;
 
-    private Handler mainHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ConnectivitySession connectivitySession = ConnectivitySession.get();
+    // This activity's listener, so onDestroy does not clear a newer activity's one.
+    private ConnectivitySession.Listener sessionListener;
+
+    // Action of the wake keyword that opened the app, until Flutter consumes it.
+    private MethodChannel wakeActionChannel;
+    private Map<String, Object> pendingWakeAction;
+    // Recognises the command audio that followed an "open" keyword.
+    private CommandRecognizer commandRecognizer;
 
 
     // Connectivity channel field
     private MethodChannel connectivityChannel;
+    private NetworkStateMonitor networkMonitor;
+    // Pushes network changes to the connectivity screen while this activity is alive.
+    private final NetworkStateMonitor.Listener networkListener = state -> {
+        if (connectivityChannel != null) connectivityChannel.invokeMethod("network_state", state);
+    };
+
+    private static final int REQUEST_SCREEN_CAPTURE = 4201;
+    private MethodChannel.Result pendingScreenCaptureResult;
+    private WifiQrReader wifiQrReader;
+    private DocumentService documentService;
+    private PdfPageEngine pdfPageEngine;
+    private WakeClient wakeClient;
+    // Offline document framing guidance; frames are estimated one at a time, off the main thread.
+    private final GuidanceEstimator guidanceEstimator = new GuidanceEstimator();
+    private final ExecutorService guidanceExecutor = Executors.newSingleThreadExecutor();
+
+    // Attach to the process-wide warm engine (started by WakeClient while the wake
+    // service listens) instead of letting the fragment build a fresh one. The engine is owned
+    // by FlutterEngineCache and is not destroyed with this activity.
+    @Override
+    public FlutterEngine provideFlutterEngine(@NonNull Context context) {
+        return WarmFlutterEngine.warmUp(context);
+    }
 
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
-        GeneratedPluginRegistrant.registerWith(flutterEngine);
+        if (flutterEngine != WarmFlutterEngine.get()) {
+            GeneratedPluginRegistrant.registerWith(flutterEngine);
+        }
+        engineOwner = this;
+
+        // The wake service runs in its own process; this is how we talk to it.
+        wakeClient = WakeClient.get(this);
+        wakeClient.connect();
 
-        Intent stopIntent = new Intent(this, PorcupainService.class);
-        stopService(stopIntent);
+        // Not on the first-frame path: the listener can stop once we are drawing, and
+        // not before the command spoken after the wake word has been handed over.
+        mainHandler.post(() -> wakeClient.runWhenIdle(
+                () -> stopService(new Intent(this, PorcupainService.class))));
 
         voiceIdService = new VoiceIdService(this);
+        NabdTrace.init(this);
 
-        // إضافة هذا السطر: تهيئة ToneGenerator مرة واحدة
-        toneGen = new ToneGenerator(AudioManager.STREAM_SYSTEM, 100);
+        // محرك الأصوات واحد لكل العملية (الأصوات تُولّد مسبقاً)
+        feedbackEngine = FeedbackEngine.get(this);
 
 
         new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL).setMethodCallHandler((call, result) -> {
@@ -62,9 +125,8 @@ public class MainActivity extends FlutterFragmentActivity {
                         result.error("API_KEY_MISSING", "API key not provided.", null);
                         return;
                     }
-                    Intent startServiceIntent = new Intent(this, PorcupainService.class);
-                    startServiceIntent.putExtra("apiKey", apiKey);
-                    startService(startServiceIntent);
+                    startService(wakeClient.startIntent(apiKey));
+                    wakeClient.connect();
                     result.success("Service Started");
                     break;
                 case "stopService":
@@ -90,6 +152,64 @@ public class MainActivity extends FlutterFragmentActivity {
                     requestOverlayPermission();
                     result.success(null);
                     break;
+                case "suppressWakeWord":
+                    result.success(wakeClient.suppress());
+                    break;
+                case "resumeWakeWord":
+                    result.success(wakeClient.resume());
+                    break;
+                case "setWakeWordPowerMode": {
+                    String mode = call.argument("mode");
+                    PowerMode forced = null;
+                    if (mode != null && !mode.isEmpty() && !"AUTO".equals(mode)) {
+                        try {
+                            forced = PowerMode.valueOf(mode);
+                        } catch (IllegalArgumentException e) {
+                            result.error("INVALID_MODE", "Unknown power mode: " + mode, null);
+                            return;
+                        }
+                    }
+                    result.success(wakeClient.setPowerModeOverride(forced));
+                    break;
+                }
+                case "getWakeWordState":
+                    wakeClient.getState(result::success);
+                    break;
+                case "setVoiceEngine": {
+                    // Applies from the next service start / verifier build.
+                    Map<String, Object> config = call.arguments();
+                    VoiceEngines.configure(this, config != null ? config : new HashMap<>());
+                    wakeClient.syncSettings();
+                    result.success(VoiceEngines.describe(this));
+                    break;
+                }
+                case "getVoiceEngine":
+                    result.success(VoiceEngines.describe(this));
+                    break;
+                case "setFrontEnd": {
+                    Map<String, Object> config = call.arguments();
+                    FrontEndSettings.configure(this, config != null ? config : new HashMap<>());
+                    wakeClient.syncSettings();
+                    result.success(FrontEndSettings.describe(this));
+                    break;
+                }
+                case "getFrontEnd": {
+                    Map<String, Object> state = FrontEndSettings.describe(this);
+                    wakeClient.getFrontEndStats(stats -> {
+                        state.put("stats", stats);
+                        result.success(state);
+                    });
+                    break;
+                }
+                case "benchmarkFrontEnd": {
+                    Integer frames = call.argument("frames");
+                    int count = frames != null ? frames : 2000;
+                    new Thread(() -> {
+                        Map<String, Object> timings = AudioFrontEnd.benchmark(16000, 512, count);
+                        mainHandler.post(() -> result.success(timings));
+                    }, "FrontEndBenchmark").start();
+                    break;
+                }
                 case "requestAccessibilityPermission":
                     requestAccessibilityPermission();
                     result.success(null);
@@ -113,6 +233,9 @@ public class MainActivity extends FlutterFragmentActivity {
                 case "resetEnrollment":
                     voiceIdService.resetEnrollment(this, result);
                     break;
+                case "getEnrollmentQuality":
+                    result.success(voiceIdService.getLastEnrollmentQuality());
+                    break;
                 case "isProfileEnrolled":
                     boolean enrolled = voiceIdService.isProfileEnrolled(this);
                     result.success(enrolled);
@@ -131,24 +254,202 @@ public class MainActivity extends FlutterFragmentActivity {
             }
         });
 
-        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), "navia/feedback").setMethodCallHandler((call, result) -> {
+        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), FEEDBACK_CHANNEL).setMethodCallHandler((call, result) -> {
             switch (call.method) {
                 case "playSuccessTone":
-                    toneGen.startTone(ToneGenerator.TONE_PROP_ACK);
+                    feedbackEngine.play(FeedbackEngine.Cue.SUCCESS);
                     result.success(null);
                     break;
                 case "playFailureTone":
-                    toneGen.startTone(ToneGenerator.TONE_PROP_NACK);
+                    feedbackEngine.play(FeedbackEngine.Cue.FAILURE);
                     result.success(null);
                     break;
                 case "playLoadingTone":
-                    toneGen.startTone(ToneGenerator.TONE_SUP_DIAL);
+                    feedbackEngine.play(FeedbackEngine.Cue.LOADING);
                     result.success(null);
                     break;
                 case "playWaitingTone":
-                    toneGen.startTone(ToneGenerator.TONE_SUP_CALL_WAITING);
+                    feedbackEngine.play(FeedbackEngine.Cue.WAITING);
                     result.success(null);
                     break;
+                case "stopProgressTone":
+                    feedbackEngine.stopLooping();
+                    result.success(null);
+                    break;
+                case "stopAllTones":
+                    feedbackEngine.stopAll();
+                    result.success(null);
+                    break;
+                case "getToneLatency":
+                    result.success(feedbackEngine.getLatencyStats());
+                    break;
+                default:
+                    result.notImplemented();
+                    break;
+            }
+        });
+
+        wakeActionChannel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), WAKE_ACTION_CHANNEL);
+        wakeActionChannel.setMethodCallHandler((call, result) -> {
+            switch (call.method) {
+                case "consumePendingAction":
+                    result.success(pendingWakeAction);
+                    pendingWakeAction = null;
+                    break;
+                case "canRecognizeCommand":
+                    result.success(CommandRecognizer.isAvailable(this));
+                    break;
+                case "recognizeCommand": {
+                    byte[] pcm = call.argument("pcm");
+                    Integer rate = call.argument("sampleRate");
+                    String language = call.argument("language");
+                    if (commandRecognizer == null) commandRecognizer = new CommandRecognizer(this);
+                    commandRecognizer.recognize(pcm, rate != null ? rate : 16000,
+                            language != null ? language : "en-US", result::success);
+                    break;
+                }
+                default:
+                    result.notImplemented();
+                    break;
+            }
+        });
+        captureWakeAction(getIntent());
+
+        // Trace Channel: binary event ring for diagnostics
+        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), TRACE_CHANNEL).setMethodCallHandler((call, result) -> {
+            switch (call.method) {
+                case "dump":
+                    // process: "wake" for the listener's ring, else this process's.
+                    if ("wake".equals(call.argument("process"))) {
+                        wakeClient.dumpTrace(result::success);
+                    } else {
+                        result.success(NabdTrace.dump());
+                    }
+                    break;
+                case "clear":
+                    NabdTrace.clear();
+                    wakeClient.clearTrace();
+                    result.success(null);
+                    break;
+                case "setEnabled": {
+                    boolean on = Boolean.TRUE.equals(call.argument("enabled"));
+                    NabdTrace.setEnabled(on);
+                    wakeClient.setTraceEnabled(on);
+                    result.success(null);
+                    break;
+                }
+                case "isEnabled":
+                    result.success(NabdTrace.isEnabled());
+                    break;
+                case "setWakeRecorder": {
+                    Map<String, Object> config = call.arguments();
+                    WakeDiagnostics diagnostics = WakeDiagnostics.get(this);
+                    diagnostics.configure(config != null ? config : new HashMap<>());
+                    wakeClient.syncSettings();
+                    result.success(diagnostics.describe());
+                    break;
+                }
+                case "getWakeRecorder":
+                    // Counters live in the wake process, which records the events.
+                    wakeClient.getDiagnostics(state ->
+                            result.success(state != null ? state : WakeDiagnostics.get(this).describe()));
+                    break;
+                case "listWakeEvents":
+                    result.success(WakeDiagnostics.get(this).list());
+                    break;
+                case "exportWakeEvents": {
+                    String id = call.argument("id");
+                    new Thread(() -> {
+                        try {
+                            File archive = WakeDiagnostics.get(this).export(id);
+                            mainHandler.post(() -> result.success(archive != null ? archive.getAbsolutePath() : null));
+                        } catch (IOException e) {
+                            mainHandler.post(() -> result.error("EXPORT_FAILED", e.getMessage(), null));
+                        }
+                    }, "WakeDiagnosticsExport").start();
+                    break;
+                }
+                case "clearWakeEvents":
+                    // The wake process writes the events; with no listener running
+                    // nothing is writing and the files can go from here.
+                    if (!wakeClient.clearDiagnostics()) WakeDiagnostics.get(this).clear();
+                    result.success(null);
+                    break;
+                default:
+                    result.notImplemented();
+                    break;
+            }
+        });
+
+        // Document Channel: SAF metadata and type sniffing for the reader
+        documentService = new DocumentService(this, flutterEngine.getDartExecutor().getBinaryMessenger());
+        // PDF Channel: background page rendering with an LRU of rendered pages, shown on a texture
+        pdfPageEngine = new PdfPageEngine(this, flutterEngine.getDartExecutor().getBinaryMessenger(),
+                flutterEngine.getRenderer());
+
+        // Guidance Channel: local framing estimate when the guidance server is unavailable
+        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), GUIDANCE_CHANNEL).setMethodCallHandler((call, result) -> {
+            switch (call.method) {
+                case "estimate": {
+                    byte[] luma = call.argument("y");
+                    Integer width = call.argument("width");
+                    Integer height = call.argument("height");
+                    Integer rowStride = call.argument("rowStride");
+                    if (luma == null || width == null || height == null) {
+                        result.error("ARG", "y, width and height are required", null);
+                        return;
+                    }
+                    int stride = rowStride == null ? width : rowStride;
+                    if (luma.length < stride * (height - 1) + width) {
+                        result.error("ARG", "luma plane smaller than width x height", null);
+                        return;
+                    }
+                    guidanceExecutor.execute(() -> {
+                        Map<String, Object> guidance = guidanceEstimator.estimate(luma, width, height, stride).toMap();
+                        mainHandler.post(() -> result.success(guidance));
+                    });
+                    break;
+                }
+                case "reset":
+                    guidanceExecutor.execute(guidanceEstimator::reset);
+                    result.success(null);
+                    break;
+                default:
+                    result.notImplemented();
+                    break;
+            }
+        });
+
+        // Intent Index Channel: compiled chat_compilation grammar
+        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), INTENT_INDEX_CHANNEL).setMethodCallHandler((call, result) -> {
+            String lang = call.argument("lang");
+            if (lang == null) lang = IntentIndex.deviceLanguage();
+            switch (call.method) {
+                case "route": {
+                    String text = call.argument("text");
+                    String page = call.argument("page");
+                    IntentIndex index = IntentIndex.peek(lang);
+                    if (index != null) {
+                        result.success(index.route(text, page));
+                        break;
+                    }
+                    // First query for this language builds the index off the main thread.
+                    final String buildLang = lang;
+                    new Thread(() -> {
+                        try {
+                            Map<String, Object> routed = IntentIndex.get(this, buildLang).route(text, page);
+                            mainHandler.post(() -> result.success(routed));
+                        } catch (IOException e) {
+                            mainHandler.post(() -> result.error("INDEX_ERROR", e.getMessage(), null));
+                        }
+                    }, "IntentIndex").start();
+                    break;
+                }
+                case "getStats": {
+                    IntentIndex index = IntentIndex.peek(lang);
+                    result.success(index == null ? null : index.getStats());
+                    break;
+                }
                 default:
                     result.notImplemented();
                     break;
@@ -159,82 +460,267 @@ public class MainActivity extends FlutterFragmentActivity {
         connectivityChannel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CONNECTIVITY_CHANNEL);
         connectivityChannel.setMethodCallHandler((call, result) -> {
             switch (call.method) {
+                case "get_network_state":
+                    result.success(networkMonitor.snapshot());
+                    break;
                 case "open_wifi_settings":
-                    if (settingsLaunchedThisSession) { result.success(null); break; }
-                    settingsLaunchedThisSession = true;
-                    openWifiSettings();
+                    connectivitySession.openSettings(SettingsFlow.DEFAULT_FLOW);
+                    result.success(null);
+                    break;
+                case "open_settings_flow":
+                    connectivitySession.openSettings(call.argument("flow"));
                     result.success(null);
                     break;
+                case "settings_flows":
+                    result.success(connectivitySession.getFlowIds());
+                    break;
                 case "a11y_start":
-                    if (a11yStartedThisSession) { result.success(null); break; }
-                    a11yStartedThisSession = true;
-                    AutoOpenAccessibilityService.startConnectivitySession();
+                    connectivitySession.a11yStart();
                     result.success(null);
                     break;
                 case "a11y_stop":
-                    AutoOpenAccessibilityService.stopConnectivitySession();
+                    connectivitySession.a11yStop();
                     result.success(null);
                     break;
                 case "reset_connectivity_session_flags":
-                    settingsLaunchedThisSession = false;
-                    a11yStartedThisSession = false;
+                    connectivitySession.resetFlags();
                     result.success(null);
                     break;
+                case "connectivity_session_state":
+                    result.success(connectivitySession.getState().name());
+                    break;
                 case "connectivity_flow_start":
-                    connectivityFlowActive = true;
-                    settingsLaunchedThisSession = false;
-                    a11yStartedThisSession = false;
+                    // flow: SettingsFlow id, the Wi-Fi flow when absent
+                    connectivitySession.flowStart(call.argument("flow"));
                     // (optional) tell PorcupainService to suppress
-                    sendBroadcast(new Intent("com.navia.navia.PORCUPINE_SUPPRESS").putExtra("suppress", true));
+                    wakeClient.suppress();
                     result.success(null);
                     break;
                 case "connectivity_flow_end":
-                    connectivityFlowActive = false;
+                    connectivitySession.flowEnd();
                     // (optional) remove suppression
-                    sendBroadcast(new Intent("com.navia.navia.PORCUPINE_SUPPRESS").putExtra("suppress", false));
-                    // reset flags
-                    settingsLaunchedThisSession = false;
-                    a11yStartedThisSession = false;
+                    wakeClient.resume();
+                    result.success(null);
+                    break;
+                case "request_screen_capture":
+                    requestScreenCapture(result);
+                    break;
+                case "is_screen_capture_ready":
+                    result.success(ScreenCaptureService.isReady());
+                    break;
+                case "prewarm_start": {
+                    ScreenCaptureService svc = ScreenCaptureService.getInstance();
+                    result.success(svc != null && svc.startPrewarm());
+                    break;
+                }
+                case "prewarm_stop": {
+                    ScreenCaptureService svc = ScreenCaptureService.getInstance();
+                    if (svc != null) svc.stopPrewarm();
                     result.success(null);
                     break;
+                }
+                case "capture_once": {
+                    ScreenCaptureService svc = ScreenCaptureService.getInstance();
+                    if (svc == null) { result.success(false); break; }
+                    new Thread(() -> {
+                        boolean ok = svc.captureOnce();
+                        mainHandler.post(() -> result.success(ok));
+                    }, "CaptureOnce").start();
+                    break;
+                }
+                case "capture_from_prewarm": {
+                    ScreenCaptureService svc = ScreenCaptureService.getInstance();
+                    result.success(svc != null && svc.isPrewarmed() && svc.hasFrame());
+                    break;
+                }
+                case "get_wifi_password":
+                    readWifiPassword(call.argument("ssid"), result);
+                    break;
                 default:
                     result.notImplemented();
                     break;
             }
         });
 
+        networkMonitor = NetworkStateMonitor.get(this);
+        networkMonitor.addListener(networkListener);
+
         // Set up connectivity channel for accessibility service
         AutoOpenAccessibilityService.setConnectivityChannel(connectivityChannel);
+        connectivitySession.loadFlows(this);
+        sessionListener = new ConnectivitySession.Listener() {
+            @Override
+            public void onTransition(ConnectivitySession.State from, ConnectivitySession.State to, String reason) {
+                Map<String, Object> args = new HashMap<>();
+                args.put("state", to.name());
+                args.put("previous", from.name());
+                args.put("reason", reason);
+                mainHandler.post(() -> {
+                    connectivityChannel.invokeMethod("session_state", args);
+                    if (to == ConnectivitySession.State.TIMED_OUT) {
+                        Map<String, Object> failure = new HashMap<>();
+                        failure.put("reason", "TIMEOUT");
+                        connectivityChannel.invokeMethod("failure", failure);
+                    }
+                });
+            }
+
+            @Override
+            public void launchSettings(List<String> actions) {
+                mainHandler.post(() -> openSettings(actions));
+            }
+
+            @Override
+            public void onSettingsVisible() {
+                mainHandler.post(() -> {
+                    connectivityChannel.invokeMethod("settings_list_visible", null);
+                    moveTaskToBackSafely();
+                });
+            }
+
+            @Override
+            public void onFlowStep(Map<String, Object> step) {
+                mainHandler.post(() -> connectivityChannel.invokeMethod("flow_step", step));
+            }
+
+            @Override
+            public void onFlowFinished(Map<String, Object> summary) {
+                mainHandler.post(() -> connectivityChannel.invokeMethod("flow_done", summary));
+            }
+        };
+        connectivitySession.setListener(sessionListener);
+
+        // Every channel is in place: the warm engine can start the app now.
+        if (flutterEngine == WarmFlutterEngine.get()) {
+            WarmFlutterEngine.attach();
+        }
+    }
+
+    @Override
+    protected void onNewIntent(@NonNull Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        if (captureWakeAction(intent) && wakeActionChannel != null) {
+            // Flutter is already running: deliver directly instead of waiting for a pull.
+            wakeActionChannel.invokeMethod("wake_action", pendingWakeAction);
+            pendingWakeAction = null;
+        }
+    }
+
+    private boolean captureWakeAction(Intent intent) {
+        if (intent == null) return false;
+        String action = intent.getStringExtra(PorcupainService.EXTRA_WAKE_ACTION);
+        if (action == null) return false;
+        Map<String, Object> wake = new HashMap<>();
+        wake.put("keyword", intent.getStringExtra(PorcupainService.EXTRA_WAKE_KEYWORD));
+        wake.put("action", action);
+        // Command already recognised by the listening bubble, if it opened the app.
+        wake.put("command", intent.getStringExtra(PorcupainService.EXTRA_WAKE_COMMAND));
+        pendingWakeAction = wake;
+        intent.removeExtra(PorcupainService.EXTRA_WAKE_ACTION);
+        return true;
+    }
+
+    private void requestScreenCapture(MethodChannel.Result result) {
+        if (ScreenCaptureService.isReady()) {
+            result.success(true);
+            return;
+        }
+        if (pendingScreenCaptureResult != null) {
+            result.error("IN_PROGRESS", "Screen capture request already pending", null);
+            return;
+        }
+        pendingScreenCaptureResult = result;
+        MediaProjectionManager mpm = (MediaProjectionManager) getSystemService(MEDIA_PROJECTION_SERVICE);
+        startActivityForResult(mpm.createScreenCaptureIntent(), REQUEST_SCREEN_CAPTURE);
+    }
+
+    // expectedSsid is the connected network; without it any Wi-Fi QR on screen could
+    // be announced as this network's password, so nothing is read.
+    private void readWifiPassword(String expectedSsid, MethodChannel.Result result) {
+        if (expectedSsid == null || expectedSsid.isEmpty()) {
+            Log.w("Connectivity", "Connected network unknown, not reading the QR");
+            result.success("");
+            return;
+        }
+        ScreenCaptureService svc = ScreenCaptureService.getInstance();
+        if (svc == null) {
+            result.success("");
+            return;
+        }
+        if (wifiQrReader == null) wifiQrReader = new WifiQrReader();
+        WifiQrReader reader = wifiQrReader;
+        new Thread(() -> {
+            WifiQrPayload payload = reader.read(svc);
+            mainHandler.post(() -> {
+                if (payload == null) {
+                    result.success("");
+                    return;
+                }
+                if (!expectedSsid.equals(payload.ssid)) {
+                    // QR لشبكة أخرى ظاهر على الشاشة: لا نعلن كلمة مرور ليست للشبكة المطلوبة
+                    Log.w("Connectivity", "QR ssid does not match the requested network");
+                    result.success(null);
+                    return;
+                }
+                Map<String, Object> args = new HashMap<>();
+                args.put("ssid", payload.ssid);
+                args.put("password", payload.password);
+                connectivityChannel.invokeMethod("qr_parsed", args);
+                result.success(payload.password);
+            });
+        }, "WifiQrReader").start();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_SCREEN_CAPTURE) return;
+
+        MethodChannel.Result result = pendingScreenCaptureResult;
+        pendingScreenCaptureResult = null;
+        boolean granted = resultCode == Activity.RESULT_OK && data != null;
+        if (granted) {
+            ScreenCaptureService.start(this, resultCode, data);
+        } else {
+            Log.w("Connectivity", "Screen capture permission denied");
+        }
+        if (result != null) result.success(granted);
     }
 
-    private void openWifiSettings() {
+    // First of the flow's Settings screens that exists on this device.
+    private void openSettings(List<String> actions) {
         try {
-            Intent intent = new Intent(Settings.ACTION_WIFI_SETTINGS);
+            Intent intent = null;
+            for (String action : actions) {
+                Intent candidate = new Intent(action);
+                if (candidate.resolveActivity(getPackageManager()) != null) {
+                    intent = candidate;
+                    break;
+                }
+            }
+            if (intent == null) intent = new Intent(Settings.ACTION_SETTINGS);
             intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             startActivity(intent);
 
-            // Keep Settings on top, push our task to background.
-            mainHandler.postDelayed(() -> {
-                try {
-                    Activity activity = this;
-                    if (activity != null) activity.moveTaskToBack(true);
-                } catch (Throwable t) {
-                    Log.w("Connectivity", "moveTaskToBack failed: " + t);
-                }
-            }, 150);
+            // Keep Settings on top, push our task to background once Settings is
+            // actually showing. Without the accessibility service there is no such
+            // event, so do it on the next loop instead.
+            if (AutoOpenAccessibilityService.getInstance() == null) {
+                mainHandler.post(this::moveTaskToBackSafely);
+            }
         } catch (Exception e) {
-            Log.e("Connectivity", "openWifiSettings failed", e);
+            Log.e("Connectivity", "openSettings failed", e);
         }
     }
 
-
-
-    // Session management flags to prevent duplicate actions
-    private volatile boolean settingsLaunchedThisSession = false;
-    private volatile boolean a11yStartedThisSession = false;
-
-    // Global connectivity flow management
-    private volatile boolean connectivityFlowActive = false;
+    private void moveTaskToBackSafely() {
+        try {
+            moveTaskToBack(true);
+        } catch (Throwable t) {
+            Log.w("Connectivity", "moveTaskToBack failed: " + t);
+        }
+    }
 
 
 
@@ -253,15 +739,40 @@ public class MainActivity extends FlutterFragmentActivity {
         }
     }
 
+    // The engine stays cached for the next activity; drop the handlers that reference this one.
+    @Override
+    public void cleanUpFlutterEngine(@NonNull FlutterEngine flutterEngine) {
+        super.cleanUpFlutterEngine(flutterEngine);
+        if (engineOwner != this) return;
+        engineOwner = null;
+        BinaryMessenger messenger = flutterEngine.getDartExecutor().getBinaryMessenger();
+        for (String name : ACTIVITY_CHANNELS) {
+            new MethodChannel(messenger, name).setMethodCallHandler(null);
+        }
+        AutoOpenAccessibilityService.setConnectivityChannel(null);
+    }
+
     // إضافة هذه الدالة لتحرير الموارد عند إغلاق التطبيق
     @Override
     protected void onDestroy() {
-        if (toneGen != null) {
-            toneGen.release();
+        if (wifiQrReader != null) {
+            wifiQrReader.close();
         }
+        if (sessionListener != null) connectivitySession.clearListener(sessionListener);
+        if (networkMonitor != null) networkMonitor.removeListener(networkListener);
+        if (documentService != null) documentService.close();
+        if (pdfPageEngine != null) pdfPageEngine.release();
+        if (commandRecognizer != null) commandRecognizer.release();
+        guidanceExecutor.shutdown();
         super.onDestroy();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (pdfPageEngine != null) pdfPageEngine.trimMemory(level);
+    }
+
     // إضافة دوال التحقق من الأذونات المفقودة
     private boolean isIgnoringBatteryOptimizations() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -0,0 +1,176 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Diagnostics for the capture, verification and accessibility paths without building
+// log strings. Sections go to android.os.Trace so they show up in Perfetto; events are
+// written as fixed-size binary records into an in-memory ring that is dumped on demand
+// over the nabd/trace channel. Callers pass primitive ids and values only, and every
+// entry point returns after one volatile read while the ring is disabled.
+public final class NabdTrace {
+    // Event ids. Keep in sync with EVENT_NAMES and lib/core/services/trace_service.dart.
+    public static final int SECTION_BEGIN = 1;        // a = section id
+    public static final int SECTION_END = 2;          // a = section id, b = duration ns
+    public static final int WAKE_DETECTED = 10;       // a = keyword index, b = frame number
+    public static final int WAKE_VERIFY_SCORE = 11;   // a = score * 1000, b = 1 if matched
+    public static final int WAKE_DETECTOR_REBUILT = 12; // a = power mode ordinal
+    public static final int WAKE_COMMAND_STREAM = 13; // a = 1 open / 0 close, b = duration ms on close
+    public static final int WAKE_VERIFY_DECISION = 14; // a = deciding window, b = decision time us
+    public static final int WAKE_SERVICE_RESTORED = 15; // a = ms from sticky restart to first frame, b = ms since process start (-1 if unknown)
+    public static final int A11Y_SCAN = 20;           // a = nodes returned, b = query (0-3 text, 4 description)
+    public static final int A11Y_CANDIDATE = 21;      // a = query, b = 1 if accepted, 0 if a section header
+    public static final int A11Y_CLICKABLE = 22;      // a = parent depth, -1 for a sibling
+    public static final int A11Y_CLICK = 23;          // a = 1 if a connected row was found, b = 1 if clicked
+    public static final int A11Y_STEP = 24;           // a = settings flow step index, b = step ms
+    public static final int SCREEN_FRAME = 30;        // a = frame sequence
+    public static final int SCREEN_FRAME_DROPPED = 31;
+    public static final int QR_READ = 32;             // a = read ms (frame, locate, decode), b = 1 if a payload was found
+
+    // Section ids, also used as the Trace section names below.
+    public static final int S_WAKE_FRAME = 1;
+    public static final int S_VERIFY = 2;
+    public static final int S_A11Y_SCAN = 3;
+    public static final int S_SCREEN_FRAME = 4;
+    public static final int S_QR_DECODE = 5;
+
+    private static final String[] SECTION_NAMES = {
+            "", "Nabd.wakeFrame", "Nabd.verify", "Nabd.a11yScan", "Nabd.screenFrame", "Nabd.qrDecode"
+    };
+
+    private static final Map<Integer, String> EVENT_NAMES = new HashMap<>();
+
+    static {
+        EVENT_NAMES.put(SECTION_BEGIN, "section_begin");
+        EVENT_NAMES.put(SECTION_END, "section_end");
+        EVENT_NAMES.put(WAKE_DETECTED, "wake_detected");
+        EVENT_NAMES.put(WAKE_VERIFY_SCORE, "wake_verify_score");
+        EVENT_NAMES.put(WAKE_DETECTOR_REBUILT, "wake_detector_rebuilt");
+        EVENT_NAMES.put(WAKE_COMMAND_STREAM, "wake_command_stream");
+        EVENT_NAMES.put(WAKE_VERIFY_DECISION, "wake_verify_decision");
+        EVENT_NAMES.put(WAKE_SERVICE_RESTORED, "wake_service_restored");
+        EVENT_NAMES.put(A11Y_SCAN, "a11y_scan");
+        EVENT_NAMES.put(A11Y_CANDIDATE, "a11y_candidate");
+        EVENT_NAMES.put(A11Y_CLICKABLE, "a11y_clickable");
+        EVENT_NAMES.put(A11Y_CLICK, "a11y_click");
+        EVENT_NAMES.put(A11Y_STEP, "a11y_step");
+        EVENT_NAMES.put(SCREEN_FRAME, "screen_frame");
+        EVENT_NAMES.put(SCREEN_FRAME_DROPPED, "screen_frame_dropped");
+        EVENT_NAMES.put(QR_READ, "qr_read");
+    }
+
+    // Record: elapsedRealtimeNanos, (event id << 32 | thread id), a, b.
+    private static final int RECORD_LONGS = 4;
+    private static final int CAPACITY = 4096; // records, power of two
+    private static final long[] ring = new long[CAPACITY * RECORD_LONGS];
+    // Sequence number + 1 of the record in each slot, set once the record is written.
+    private static final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong next = new AtomicLong();
+    // First sequence number after the last clear(); the sequence itself never restarts.
+    private static volatile long clearedAt = 0;
+
+    private static volatile boolean enabled = false;
+
+    private NabdTrace() {
+    }
+
+    // Debuggable builds record by default; release builds only after setEnabled(true).
+    public static void init(Context context) {
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            enabled = true;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void event(int id, long a, long b) {
+        if (!enabled) return;
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & (CAPACITY - 1));
+        int base = slot * RECORD_LONGS;
+        ring[base] = SystemClock.elapsedRealtimeNanos();
+        ring[base + 1] = ((long) id << 32) | (Process.myTid() & 0xffffffffL);
+        ring[base + 2] = a;
+        ring[base + 3] = b;
+        stamps.lazySet(slot, seq + 1);
+    }
+
+    public static void event(int id, long a) {
+        event(id, a, 0);
+    }
+
+    // Returns a start timestamp to hand to end(); 0 when nothing is recorded.
+    public static long begin(int section) {
+        if (!enabled) return 0;
+        Trace.beginSection(SECTION_NAMES[section]);
+        event(SECTION_BEGIN, section, 0);
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static void end(int section, long startNs) {
+        if (startNs == 0) return;
+        Trace.endSection();
+        event(SECTION_END, section, SystemClock.elapsedRealtimeNanos() - startNs);
+    }
+
+    // Scores and other fractions travel as fixed point.
+    public static long milli(float value) {
+        return Math.round(value * 1000.0);
+    }
+
+    // Little-endian copy of the ring since the last clear(), oldest record first. A record
+    // is kept only if its slot carries its own stamp before and after the copy, which
+    // leaves out slots still being written and slots a newer record took over meanwhile;
+    // a writer caught between its fields and its stamp can still tear one.
+    public static Map<String, Object> dump() {
+        long end = next.get();
+        long start = Math.max(clearedAt, end - CAPACITY);
+        ByteBuffer out = ByteBuffer.allocate((int) (end - start) * RECORD_LONGS * 8).order(ByteOrder.LITTLE_ENDIAN);
+        int count = 0;
+        for (long i = start; i < end; i++) {
+            int slot = (int) (i & (CAPACITY - 1));
+            int base = slot * RECORD_LONGS;
+            if (stamps.get(slot) != i + 1) continue;
+            int mark = out.position();
+            for (int k = 0; k < RECORD_LONGS; k++) out.putLong(ring[base + k]);
+            if (stamps.get(slot) != i + 1) {
+                out.position(mark);
+                continue;
+            }
+            count++;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("recordBytes", RECORD_LONGS * 8);
+        result.put("count", count);
+        result.put("dropped", end - clearedAt - count);
+        result.put("records", Arrays.copyOf(out.array(), out.position()));
+        result.put("events", new HashMap<>(EVENT_NAMES));
+        Map<Integer, String> sections = new HashMap<>();
+        for (int i = 1; i < SECTION_NAMES.length; i++) sections.put(i, SECTION_NAMES[i]);
+        result.put("sections", sections);
+        return result;
+    }
+
+    // Records claimed before this call are never dumped, even if they finish after it.
+    public static void clear() {
+        clearedAt = next.get();
+    }
+}
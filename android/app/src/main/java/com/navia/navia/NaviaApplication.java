@@ -0,0 +1,40 @@
+package com.navia.navia;
+
+import android.app.Application;
+import android.os.Build;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import io.flutter.FlutterInjector;
+
+// Replaces FlutterApplication so the :wake process (PorcupainService) never loads the
+// Flutter engine; the UI process starts its initialization early, as before.
+public class NaviaApplication extends Application {
+    static final String WAKE_PROCESS_SUFFIX = ":wake";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (isWakeProcess()) return;
+        FlutterInjector.instance().flutterLoader().startInitialization(this);
+    }
+
+    static boolean isWakeProcess() {
+        String name = processName();
+        return name != null && name.endsWith(WAKE_PROCESS_SUFFIX);
+    }
+
+    private static String processName() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) return Application.getProcessName();
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            byte[] buffer = new byte[256];
+            int length = in.read(buffer);
+            int end = 0;
+            while (end < length && buffer[end] != 0) end++;
+            return length > 0 ? new String(buffer, 0, end) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
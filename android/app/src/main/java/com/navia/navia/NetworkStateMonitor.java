@@ -0,0 +1,266 @@
+package com.navia.navia;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.LocationManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Current network state straight from ConnectivityManager and WifiManager: whether
+// there is a default network, its transport, validated internet and, on Wi-Fi, the
+// SSID, RSSI and link speed. Answering "am I connected, to what, how well" this way
+// needs no Settings launch or accessibility scan; the Settings flow is left for what
+// the APIs do not expose (the network's share QR). While listeners are registered a
+// default-network callback keeps the snapshot current and pushes changes on the main
+// thread. One instance per process.
+//
+// The SSID is location data: Android redacts it without ACCESS_FINE_LOCATION and with
+// location turned off, and from Android 12 also in NetworkCapabilities unless the
+// callback asks for it with FLAG_INCLUDE_LOCATION_INFO. "ssidStatus" says why "ssid"
+// is null: available, no_permission, location_off or unknown.
+public final class NetworkStateMonitor {
+    private static final String TAG = "NetworkStateMonitor";
+    // What WifiInfo reports when the caller may not see the SSID (no location permission).
+    private static final String UNKNOWN_SSID = "<unknown ssid>";
+    static final String SSID_AVAILABLE = "available";
+    static final String SSID_NO_PERMISSION = "no_permission";
+    static final String SSID_LOCATION_OFF = "location_off";
+    static final String SSID_UNKNOWN = "unknown";
+
+    public interface Listener {
+        void onNetworkState(Map<String, Object> state);
+    }
+
+    private static NetworkStateMonitor instance;
+
+    public static synchronized NetworkStateMonitor get(Context context) {
+        if (instance == null) instance = new NetworkStateMonitor(context.getApplicationContext());
+        return instance;
+    }
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final WifiManager wifiManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private ConnectivityManager.NetworkCallback callback;
+    // Kept by the callback while registered; null means "read it fresh".
+    private Map<String, Object> current;
+
+    private NetworkStateMonitor(Context context) {
+        this.context = context;
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+    }
+
+    // Cached while a callback is registered, otherwise one round of binder calls. A
+    // cached Wi-Fi state without the SSID is read again: the permission or location
+    // may have been granted since, which raises no network callback.
+    public synchronized Map<String, Object> snapshot() {
+        if (current != null && !SSID_NO_PERMISSION.equals(current.get("ssidStatus"))
+                && !SSID_LOCATION_OFF.equals(current.get("ssidStatus"))) {
+            return new HashMap<>(current);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivityManager.getActiveNetwork();
+            return describe(network, network == null ? null : connectivityManager.getNetworkCapabilities(network));
+        }
+        return describeLegacy();
+    }
+
+    public boolean isOnWifi() {
+        return Boolean.TRUE.equals(snapshot().get("wifi"));
+    }
+
+    public synchronized void addListener(Listener listener) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+        if (callback == null) register();
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && callback != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(callback);
+            } catch (IllegalArgumentException ignored) {
+            }
+            callback = null;
+            current = null;
+        }
+    }
+
+    private void register() {
+        callback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? new Callback(ConnectivityManager.NetworkCallback.FLAG_INCLUDE_LOCATION_INFO)
+                : new Callback();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } else {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            connectivityManager.registerNetworkCallback(request, callback);
+        }
+        Log.d(TAG, "Network callback registered");
+    }
+
+    private final class Callback extends ConnectivityManager.NetworkCallback {
+        Callback() {
+        }
+
+        // Android 12+: without the flag the WifiInfo in the capabilities has no SSID.
+        Callback(int flags) {
+            super(flags);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+            update(describe(network, caps));
+        }
+
+        @Override
+        public void onLost(Network network) {
+            update(describe(null, null));
+        }
+    }
+
+    // Callback thread. Repeated identical capability callbacks are not pushed.
+    private void update(Map<String, Object> state) {
+        List<Listener> targets;
+        synchronized (this) {
+            if (callback == null || state.equals(current)) return;
+            current = state;
+            targets = new ArrayList<>(listeners);
+        }
+        Map<String, Object> copy = new HashMap<>(state);
+        mainHandler.post(() -> {
+            for (Listener listener : targets) listener.onNetworkState(copy);
+        });
+    }
+
+    private Map<String, Object> describe(Network network, NetworkCapabilities caps) {
+        Map<String, Object> state = new HashMap<>();
+        boolean connected = network != null && caps != null;
+        boolean wifi = connected && caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI);
+        state.put("connected", connected);
+        state.put("wifi", wifi);
+        state.put("transport", !connected ? "none" : transportName(caps));
+        state.put("validated", connected && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+        WifiInfo info = null;
+        if (wifi) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && caps.getTransportInfo() instanceof WifiInfo) {
+                info = (WifiInfo) caps.getTransportInfo();
+            }
+            // getNetworkCapabilities() is always redacted on Android 12+; WifiManager
+            // still answers when the app holds the location permission.
+            if ((info == null || ssidOf(info) == null) && wifiManager != null) {
+                info = connectionInfo();
+            }
+        }
+        putWifi(state, info);
+        putSsidStatus(state, wifi);
+        return state;
+    }
+
+    @SuppressWarnings("deprecation")
+    private WifiInfo connectionInfo() {
+        return wifiManager.getConnectionInfo();
+    }
+
+    private void putSsidStatus(Map<String, Object> state, boolean wifi) {
+        String status;
+        if (!wifi) {
+            status = null;
+        } else if (state.get("ssid") != null) {
+            status = SSID_AVAILABLE;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && context.checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            status = SSID_NO_PERMISSION;
+        } else if (!isLocationEnabled()) {
+            status = SSID_LOCATION_OFF;
+        } else {
+            status = SSID_UNKNOWN;
+        }
+        state.put("ssidStatus", status);
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean isLocationEnabled() {
+        LocationManager location = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (location == null) return true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) return location.isLocationEnabled();
+        return location.isProviderEnabled(LocationManager.GPS_PROVIDER)
+                || location.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+    }
+
+    @SuppressWarnings("deprecation")
+    private Map<String, Object> describeLegacy() {
+        Map<String, Object> state = new HashMap<>();
+        NetworkInfo active = connectivityManager.getActiveNetworkInfo();
+        boolean connected = active != null && active.isConnected();
+        boolean wifi = connected && active.getType() == ConnectivityManager.TYPE_WIFI;
+        state.put("connected", connected);
+        state.put("wifi", wifi);
+        state.put("transport", !connected ? "none" : wifi ? "wifi"
+                : active.getType() == ConnectivityManager.TYPE_MOBILE ? "cellular" : "other");
+        state.put("validated", false);
+        putWifi(state, wifi && wifiManager != null ? wifiManager.getConnectionInfo() : null);
+        putSsidStatus(state, wifi);
+        return state;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void putWifi(Map<String, Object> state, WifiInfo info) {
+        if (info == null) {
+            state.put("ssid", null);
+            state.put("rssi", null);
+            state.put("signalLevel", null);
+            state.put("linkSpeedMbps", null);
+            state.put("frequencyMhz", null);
+            return;
+        }
+        int rssi = info.getRssi();
+        state.put("ssid", ssidOf(info));
+        state.put("rssi", rssi);
+        state.put("signalLevel", WifiManager.calculateSignalLevel(rssi, 5));
+        state.put("linkSpeedMbps", info.getLinkSpeed());
+        state.put("frequencyMhz", info.getFrequency());
+    }
+
+    // Unquoted SSID, null when redacted.
+    private static String ssidOf(WifiInfo info) {
+        String ssid = info.getSSID();
+        if (ssid == null || UNKNOWN_SSID.equals(ssid)) return null;
+        if (ssid.length() >= 2 && ssid.startsWith("\"") && ssid.endsWith("\"")) {
+            return ssid.substring(1, ssid.length() - 1);
+        }
+        return ssid;
+    }
+
+    private static String transportName(NetworkCapabilities caps) {
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "wifi";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "cellular";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ethernet";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) return "vpn";
+        return "other";
+    }
+}
@@ -0,0 +1,75 @@
+package com.navia.navia;
+
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// A pipe that feeds 16-bit little-endian mono PCM to a SpeechRecognizer through
+// RecognizerIntent.EXTRA_AUDIO_SOURCE (Android 13+). Writes only queue; one thread
+// drains the queue into the pipe at the recognizer's pace, so a caller on the main
+// thread never blocks. The caller bounds how much it writes. end() lets the
+// recognizer see the end of the audio; close() also drops whatever it has not read.
+final class PcmPipe {
+    private static final String TAG = "PcmPipe";
+    private static final byte[] END = new byte[0];
+
+    private final ParcelFileDescriptor source;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    PcmPipe() throws IOException {
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        source = pipe[0];
+        ParcelFileDescriptor sink = pipe[1];
+        new Thread(() -> drain(sink), "PcmPipe").start();
+    }
+
+    // The read end, for EXTRA_AUDIO_SOURCE.
+    ParcelFileDescriptor source() {
+        return source;
+    }
+
+    void write(byte[] pcm) {
+        if (!closed && pcm.length > 0) queue.add(pcm);
+    }
+
+    void write(short[] frame, int length) {
+        byte[] bytes = new byte[length * 2];
+        for (int i = 0; i < length; i++) {
+            bytes[2 * i] = (byte) frame[i];
+            bytes[2 * i + 1] = (byte) (frame[i] >> 8);
+        }
+        write(bytes);
+    }
+
+    void end() {
+        queue.add(END);
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+        queue.add(END);
+        try {
+            source.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void drain(ParcelFileDescriptor sink) {
+        try (OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(sink)) {
+            while (true) {
+                byte[] pcm = queue.take();
+                if (pcm == END || closed) return;
+                out.write(pcm);
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Recognizer stopped reading: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
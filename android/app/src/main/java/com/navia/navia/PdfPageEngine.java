@@ -0,0 +1,526 @@
+package com.navia.navia;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.view.TextureRegistry;
+
+// Renders PDF pages for the reader with PdfRenderer, behind "nabd/pdf".
+//
+// A page is rendered once into its own Bitmap, and that bitmap is the cache entry. Each
+// open document has a Flutter texture (a SurfaceProducer); showing a page draws the
+// bitmap onto the texture's surface, which is the only copy, straight to the GPU. No
+// pixels cross the channel. The cache is an LRU over the bitmaps, keyed by document,
+// page and width, bounded by a byte budget taken from the device's memory class. The
+// only bitmaps outside it are the ones being rendered (one per pool thread at most);
+// the cache shrinks by their size while they are drawn, so together they stay within
+// the budget.
+//
+// Renders run on a small pool ordered by priority: the page the reader asked for
+// first, then prefetch of the next PREFETCH_PAGES pages in reading order. PdfRenderer
+// allows one open page per instance, so each document keeps one renderer per pool
+// thread, all on the same file. A prefetch the reader has already moved past is
+// dropped when its turn comes.
+final class PdfPageEngine implements MethodChannel.MethodCallHandler {
+    private static final String TAG = "PdfPageEngine";
+    static final String CHANNEL = "nabd/pdf";
+
+    private static final int PREFETCH_PAGES = 2;
+    private static final int MIN_WIDTH = 64;
+    private static final int MAX_WIDTH = 4096;
+    private static final int MAX_CACHE_BYTES = 48 * 1024 * 1024;
+    private static final int PRIORITY_VISIBLE = 0;
+
+    private final Context context;
+    private final TextureRegistry textures;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int threads;
+    private final ThreadPoolExecutor pool;
+    private final LruCache<String, Bitmap> cache;
+    private final int budget;
+    // Guarded by cache: bytes of the bitmaps being rendered right now.
+    private long renderingBytes = 0;
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+    private final Map<String, RenderJob> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger nextDocId = new AtomicInteger(1);
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong renderMsTotal = new AtomicLong();
+    private final AtomicLong prefetchDropped = new AtomicLong();
+
+    private static final class Document {
+        final int id;
+        final String uri;
+        final int pageCount;
+        final BlockingQueue<PdfRenderer> renderers;
+        int opened = 1;
+        volatile int currentPage;
+        volatile boolean closed;
+        // Main thread: the document's texture, the page last asked for and the one on it.
+        TextureRegistry.SurfaceProducer view;
+        String wantedKey;
+        String shownKey;
+
+        Document(int id, String uri, int pageCount, int renderers) {
+            this.id = id;
+            this.uri = uri;
+            this.pageCount = pageCount;
+            this.renderers = new ArrayBlockingQueue<>(renderers);
+        }
+    }
+
+    // One render of one page at one width. It can be queued twice (as a prefetch and
+    // again when the reader asks for it); whichever entry runs first does the work.
+    private final class RenderJob {
+        final Document doc;
+        final int page;
+        final int width;
+        final String key;
+        final AtomicBoolean started = new AtomicBoolean();
+        final List<MethodChannel.Result> waiters = new ArrayList<>();
+        boolean done;
+
+        RenderJob(Document doc, int page, int width) {
+            this.doc = doc;
+            this.page = page;
+            this.width = width;
+            this.key = key(doc.id, page, width);
+        }
+
+        void runOnce(boolean prefetch) {
+            if (!started.compareAndSet(false, true)) return;
+            Bitmap pixels = null;
+            String error = null;
+            if (prefetch && !wanted()) {
+                prefetchDropped.incrementAndGet();
+            } else {
+                try {
+                    pixels = render(doc, page, width);
+                } catch (IOException | RuntimeException e) {
+                    error = e.getMessage();
+                    Log.e(TAG, "Render " + key + " failed: " + error);
+                }
+            }
+            if (pixels != null && !doc.closed) cache.put(key, pixels);
+            inFlight.remove(key);
+            deliver(pixels, error);
+        }
+
+        // A prefetch is still worth doing while the reader is near the page and before it,
+        // or once the reader has asked for it.
+        private boolean wanted() {
+            synchronized (this) {
+                if (!waiters.isEmpty()) return !doc.closed;
+            }
+            int ahead = page - doc.currentPage;
+            return !doc.closed && ahead > 0 && ahead <= PREFETCH_PAGES;
+        }
+
+        void addWaiter(MethodChannel.Result result) {
+            boolean ready;
+            synchronized (this) {
+                ready = done;
+                if (!ready) waiters.add(result);
+            }
+            // Finished between the lookup and now: the page is in the cache (or failed).
+            if (ready) mainHandler.post(() -> sendCachedOrRetry(this, result));
+        }
+
+        private void deliver(Bitmap pixels, String error) {
+            List<MethodChannel.Result> ready;
+            synchronized (this) {
+                done = true;
+                ready = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            if (ready.isEmpty()) return;
+            final String failure = error;
+            mainHandler.post(() -> {
+                for (MethodChannel.Result result : ready) {
+                    if (pixels != null) {
+                        show(doc, key, pixels, result, false);
+                    } else if (failure != null) {
+                        result.error("RENDER", failure, null);
+                    } else {
+                        // Dropped as a stale prefetch after the reader asked for it anyway.
+                        sendCachedOrRetry(this, result);
+                    }
+                }
+            });
+        }
+    }
+
+    private final class QueuedRender implements Runnable, Comparable<QueuedRender> {
+        final Runnable task;
+        final int priority;
+        final long order = sequence.getAndIncrement();
+
+        QueuedRender(Runnable task, int priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(QueuedRender other) {
+            if (priority != other.priority) return Integer.compare(priority, other.priority);
+            return Long.compare(order, other.order);
+        }
+    }
+
+    PdfPageEngine(Context context, BinaryMessenger messenger, TextureRegistry textures) {
+        this.context = context.getApplicationContext();
+        this.textures = textures;
+        threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+        pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        budget = cacheBudget(this.context);
+        cache = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        new MethodChannel(messenger, CHANNEL).setMethodCallHandler(this);
+    }
+
+    // An eighth of the app's heap class, a sixteenth on low-RAM devices, at most 48 MB.
+    private static int cacheBudget(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassMb = am == null ? 64 : am.getMemoryClass();
+        int share = am != null && am.isLowRamDevice() ? 16 : 8;
+        return Math.min(MAX_CACHE_BYTES, memoryClassMb * 1024 * 1024 / share);
+    }
+
+    // Moves bytes between the cache and the bitmaps being rendered; evicts as needed.
+    private void reserve(long bytes) {
+        synchronized (cache) {
+            renderingBytes += bytes;
+            cache.resize((int) Math.max(1, budget - renderingBytes));
+        }
+    }
+
+    @Override
+    public void onMethodCall(MethodCall call, MethodChannel.Result result) {
+        if (pool.isShutdown()) {
+            result.error("CLOSED", "PDF engine released", null);
+            return;
+        }
+        switch (call.method) {
+            case "open": {
+                String uri = call.argument("uri");
+                if (uri == null || uri.isEmpty()) {
+                    result.error("ARG", "uri missing", null);
+                    return;
+                }
+                // Opening touches the file, so it goes through the pool too (ahead of prefetch).
+                pool.execute(new QueuedRender(() -> {
+                    try {
+                        Document doc = open(uri);
+                        mainHandler.post(() -> {
+                            if (pool.isShutdown()) {
+                                close(doc);
+                                result.error("CLOSED", "PDF engine released", null);
+                                return;
+                            }
+                            attachView(doc);
+                            Map<String, Object> info = new HashMap<>();
+                            info.put("docId", doc.id);
+                            info.put("pageCount", doc.pageCount);
+                            info.put("textureId", doc.view.id());
+                            result.success(info);
+                        });
+                    } catch (IOException | RuntimeException e) {
+                        Log.e(TAG, "Open failed: " + e.getMessage());
+                        mainHandler.post(() -> result.error("OPEN", e.getMessage(), null));
+                    }
+                }, PRIORITY_VISIBLE));
+                break;
+            }
+            case "render": {
+                Document doc = document(call);
+                Integer page = call.argument("page");
+                Integer width = call.argument("width");
+                if (doc == null || page == null || width == null || page < 0 || page >= doc.pageCount) {
+                    result.error("ARG", "unknown document or page", null);
+                    return;
+                }
+                render(doc, page, Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, width)), result);
+                break;
+            }
+            case "close": {
+                Document doc = document(call);
+                if (doc != null) close(doc);
+                result.success(doc != null);
+                break;
+            }
+            case "getStats":
+                result.success(stats());
+                break;
+            default:
+                result.notImplemented();
+                break;
+        }
+    }
+
+    private Document document(MethodCall call) {
+        Integer id = call.argument("docId");
+        return id == null ? null : documents.get(id);
+    }
+
+    private Document open(String uri) throws IOException {
+        PdfRenderer first = new PdfRenderer(descriptor(uri));
+        Document doc = new Document(nextDocId.getAndIncrement(), uri, first.getPageCount(), threads);
+        doc.renderers.add(first);
+        documents.put(doc.id, doc);
+        return doc;
+    }
+
+    // Main thread. The texture the reader shows; redrawn if Flutter drops its surface
+    // while the app is in the background.
+    private void attachView(Document doc) {
+        doc.view = textures.createSurfaceProducer();
+        doc.view.setCallback(new TextureRegistry.SurfaceProducer.Callback() {
+            @Override
+            public void onSurfaceAvailable() {
+                Bitmap shown = doc.shownKey == null ? null : cache.get(doc.shownKey);
+                if (shown != null && !doc.closed) draw(doc, shown);
+            }
+
+            @Override
+            public void onSurfaceCleanup() {
+            }
+        });
+    }
+
+    private ParcelFileDescriptor descriptor(String uri) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(DocumentService.parse(uri), "r");
+        if (pfd == null) throw new IOException("No content for " + uri);
+        return pfd;
+    }
+
+    private void render(Document doc, int page, int width, MethodChannel.Result result) {
+        doc.currentPage = page;
+        String key = key(doc.id, page, width);
+        doc.wantedKey = key;
+        Bitmap cached = cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            show(doc, key, cached, result, true);
+        } else {
+            misses.incrementAndGet();
+            RenderJob job = inFlight.computeIfAbsent(key, k -> new RenderJob(doc, page, width));
+            job.addWaiter(result);
+            pool.execute(new QueuedRender(() -> job.runOnce(false), PRIORITY_VISIBLE));
+        }
+        prefetch(doc, page, width);
+    }
+
+    private void prefetch(Document doc, int page, int width) {
+        for (int next = page + 1; next <= page + PREFETCH_PAGES && next < doc.pageCount; next++) {
+            String key = key(doc.id, next, width);
+            if (cache.get(key) != null || inFlight.containsKey(key)) continue;
+            final int target = next;
+            RenderJob job = inFlight.computeIfAbsent(key, k -> new RenderJob(doc, target, width));
+            pool.execute(new QueuedRender(() -> job.runOnce(true), next - page));
+        }
+    }
+
+    // Runs on a pool thread. Borrows one of the document's renderers (opening another
+    // on the same file while the pool has more threads than the document has renderers).
+    private Bitmap render(Document doc, int page, int width) throws IOException {
+        if (doc.closed) throw new IOException("Document closed");
+        long t0 = SystemClock.elapsedRealtime();
+        PdfRenderer renderer = borrow(doc);
+        try {
+            try (PdfRenderer.Page pdfPage = renderer.openPage(page)) {
+                float scale = (float) width / pdfPage.getWidth();
+                int height = Math.max(1, Math.round(pdfPage.getHeight() * scale));
+                long bytes = (long) width * height * 4;
+                reserve(bytes);
+                try {
+                    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    bitmap.eraseColor(Color.WHITE);
+                    Matrix matrix = new Matrix();
+                    matrix.setScale(scale, scale);
+                    pdfPage.render(bitmap, null, matrix, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                    renders.incrementAndGet();
+                    renderMsTotal.addAndGet(SystemClock.elapsedRealtime() - t0);
+                    return bitmap;
+                } finally {
+                    // The caller puts the bitmap in the cache, where it is counted again.
+                    reserve(-bytes);
+                }
+            }
+        } finally {
+            synchronized (doc) {
+                if (doc.closed) {
+                    renderer.close();
+                } else {
+                    doc.renderers.offer(renderer);
+                }
+            }
+        }
+    }
+
+    private PdfRenderer borrow(Document doc) throws IOException {
+        PdfRenderer renderer = doc.renderers.poll();
+        if (renderer != null) return renderer;
+        synchronized (doc) {
+            if (doc.opened < threads) {
+                renderer = new PdfRenderer(descriptor(doc.uri));
+                doc.opened++;
+                return renderer;
+            }
+        }
+        try {
+            while (!doc.closed) {
+                renderer = doc.renderers.poll(200, TimeUnit.MILLISECONDS);
+                if (renderer != null) return renderer;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IOException("Document closed");
+    }
+
+    // Main thread. Puts the page on the document's texture before answering, so the
+    // frame that shows the result already has it. A slower render the reader has since
+    // turned past still answers, but leaves the texture to the newer page.
+    private void show(Document doc, String key, Bitmap page, MethodChannel.Result result, boolean fromCache) {
+        if (doc.closed || doc.view == null) {
+            result.error("RENDER", "Document closed", null);
+            return;
+        }
+        if (key.equals(doc.wantedKey)) {
+            doc.shownKey = key;
+            draw(doc, page);
+        }
+        Map<String, Object> info = new HashMap<>();
+        info.put("textureId", doc.view.id());
+        info.put("width", page.getWidth());
+        info.put("height", page.getHeight());
+        info.put("cached", fromCache);
+        result.success(info);
+    }
+
+    private static void draw(Document doc, Bitmap page) {
+        doc.view.setSize(page.getWidth(), page.getHeight());
+        Surface surface = doc.view.getSurface();
+        if (surface == null || !surface.isValid()) return;
+        Canvas canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                ? surface.lockHardwareCanvas() : surface.lockCanvas(null);
+        try {
+            canvas.drawBitmap(page, 0, 0, null);
+        } finally {
+            surface.unlockCanvasAndPost(canvas);
+        }
+    }
+
+    private void sendCachedOrRetry(RenderJob job, MethodChannel.Result result) {
+        Bitmap cached = cache.get(job.key);
+        if (cached != null) {
+            show(job.doc, job.key, cached, result, true);
+        } else if (!job.doc.closed && job.key.equals(job.doc.wantedKey)) {
+            render(job.doc, job.page, job.width, result);
+        } else if (!job.doc.closed) {
+            result.error("RENDER", "Page no longer wanted", null);
+        } else {
+            result.error("RENDER", "Document closed", null);
+        }
+    }
+
+    // Main thread.
+    private void close(Document doc) {
+        doc.closed = true;
+        documents.remove(doc.id);
+        if (doc.view != null) {
+            doc.view.release();
+            doc.view = null;
+        }
+        synchronized (doc) {
+            PdfRenderer renderer;
+            while ((renderer = doc.renderers.poll()) != null) renderer.close();
+        }
+        String prefix = doc.id + ":";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) cache.remove(key);
+        }
+    }
+
+    // Main thread, from the activity's onDestroy: the next activity builds its own engine.
+    void release() {
+        for (Document doc : documents.values()) close(doc);
+        pool.shutdown();
+        cache.evictAll();
+    }
+
+    // From the activity's onTrimMemory: give back half the cache when the system asks,
+    // all of it once the app is in the background.
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    private Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = renders.get();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("renders", count);
+        stats.put("avgRenderMs", count == 0 ? 0.0 : (double) renderMsTotal.get() / count);
+        stats.put("prefetchDropped", prefetchDropped.get());
+        stats.put("cacheBytes", cache.size());
+        stats.put("budgetBytes", cache.maxSize());
+        stats.put("threads", threads);
+        stats.put("documents", documents.size());
+        return stats;
+    }
+
+    private static String key(int docId, int page, int width) {
+        return docId + ":" + page + ":" + width;
+    }
+}
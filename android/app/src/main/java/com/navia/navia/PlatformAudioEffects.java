@@ -0,0 +1,83 @@
+package com.navia.navia;
+
+import android.media.audiofx.AudioEffect;
+import android.media.audiofx.AutomaticGainControl;
+import android.media.audiofx.NoiseSuppressor;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The platform's NoiseSuppressor / AutomaticGainControl on the capture session, when
+// the device has them. They run inside the audio HAL before the frames reach us, so
+// they complement AudioFrontEnd rather than replace it. Created per AudioRecord
+// session; enabling or disabling one takes effect on the live session.
+final class PlatformAudioEffects {
+    private static final String TAG = "PlatformAudioEffects";
+
+    private NoiseSuppressor noiseSuppressor;
+    private AutomaticGainControl gainControl;
+    private volatile boolean wantNs;
+    private volatile boolean wantAgc;
+
+    synchronized void attach(int sessionId, boolean ns, boolean agc) {
+        release();
+        wantNs = ns;
+        wantAgc = agc;
+        if (NoiseSuppressor.isAvailable()) {
+            noiseSuppressor = NoiseSuppressor.create(sessionId);
+        }
+        if (AutomaticGainControl.isAvailable()) {
+            gainControl = AutomaticGainControl.create(sessionId);
+        }
+        apply();
+    }
+
+    synchronized void setEnabled(boolean ns, boolean agc) {
+        wantNs = ns;
+        wantAgc = agc;
+        apply();
+    }
+
+    private void apply() {
+        enable(noiseSuppressor, wantNs);
+        enable(gainControl, wantAgc);
+    }
+
+    private static void enable(AudioEffect effect, boolean on) {
+        if (effect == null) return;
+        try {
+            effect.setEnabled(on);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Could not switch " + effect.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    synchronized void release() {
+        if (noiseSuppressor != null) {
+            noiseSuppressor.release();
+            noiseSuppressor = null;
+        }
+        if (gainControl != null) {
+            gainControl.release();
+            gainControl = null;
+        }
+    }
+
+    synchronized Map<String, Object> describe() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("nsAvailable", NoiseSuppressor.isAvailable());
+        state.put("agcAvailable", AutomaticGainControl.isAvailable());
+        state.put("nsActive", isOn(noiseSuppressor));
+        state.put("agcActive", isOn(gainControl));
+        return state;
+    }
+
+    private static boolean isOn(AudioEffect effect) {
+        try {
+            return effect != null && effect.getEnabled();
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
@@ -6,28 +6,40 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Debug;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
 import android.util.Log;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 import android.Manifest;
 import android.content.pm.PackageManager;
-import ai.picovoice.porcupine.PorcupineManager;
-import ai.picovoice.porcupine.PorcupineException;
-import ai.picovoice.porcupine.PorcupineManagerCallback;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.os.SystemClock;
 import java.util.Arrays; // Import the Arrays class to use it
-import android.content.BroadcastReceiver;
-import android.content.IntentFilter;
-import android.content.Context;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class PorcupainService extends Service {
+// Runs in its own :wake process (see the manifest) so the always-on listener does
+// not keep the Flutter heap resident and outlives the UI process. The UI reaches it
+// through WakeClient; nothing in here may touch Flutter.
+public class PorcupainService extends Service implements WakeWordControl {
     private static final String TAG = "PorcupainService";
+    public static final String EXTRA_WAKE_KEYWORD = "wake_keyword";
+    public static final String EXTRA_WAKE_ACTION = "wake_action";
+    public static final String EXTRA_WAKE_COMMAND = "wake_command";
     private static final String CHANNEL_ID = "WakeWordChannel";
     private static final int NOTIFICATION_ID = 1;
-    private PorcupineManager porcupineManager;
     private boolean isRunning = false;
     private NotificationManager notificationManager;
     private VoiceIdService voiceIdService;
@@ -38,15 +50,67 @@ public class PorcupainService extends Service {
     private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
     private static final int FRAME_LENGTH = 512;
     private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNELS, ENCODING);
+    // Frames replayed into the detector when the VAD gate opens (~256 ms).
+    private static final int PRE_ROLL_FRAMES = 8;
+    private static final int CPU_SAMPLE_FRAMES = 32;
     private AudioRecord audioRecord;
     private short[] audioBuffer;
     private int bufferIndex = 0;
-    private boolean isRecording = false;
+    // Frames written to audioBuffer since capture started; the newest is frameCount - 1.
+    private long frameCount = 0;
+    private volatile boolean isRecording = false;
     private volatile boolean suppressed = false;
-    
-    // Fix receiver leak
-    private boolean receiverRegistered = false;
-    private BroadcastReceiver porcupineReceiver;
+
+    // Capture thread parks on this lock while suppressed or paused.
+    private final Object captureLock = new Object();
+    private Thread captureThread;
+    private volatile long suppressRequestedNs = 0;
+    private volatile long resumeRequestedNs = 0;
+    private volatile double lastSuppressMs = -1;
+    private volatile double lastResumeMs = -1;
+
+    // Detector state below is owned by the capture thread once it is running.
+    private List<WakeKeyword> keywords;
+    private WakeWordEngine detector;
+    private float detectorSensitivity;
+    private final EnergyVad vad = new EnergyVad();
+    private boolean detectorAwake = false;
+    private int gateFrameCounter = 0;
+    // Newest frame the detector has seen, so the pre-roll never feeds it a frame twice.
+    private long lastDetectedFrame = -1;
+    private final short[] preRollFrame = new short[FRAME_LENGTH];
+    // Conditioning between the mic and everything that reads the ring buffer.
+    private final AudioFrontEnd frontEnd = new AudioFrontEnd(SAMPLE_RATE);
+    private final PlatformAudioEffects platformEffects = new PlatformAudioEffects();
+
+    private PowerPolicyScheduler powerScheduler;
+    private volatile PowerMode powerMode = PowerMode.FULL;
+    // Set by the scheduler (main thread); the capture thread resets the gate when it sees it.
+    private volatile boolean powerModeChanged = false;
+    private final ExecutorService verifyExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "WakeVerify"));
+    // Command audio and events for the UI process; main thread apart from the command calls.
+    private final WakeRelay relay = new WakeRelay();
+    private final Messenger messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+    // Listening bubble for "open" keywords; main thread only.
+    private BubbleSession bubbleSession;
+    private boolean bubblePausedCapture = false;
+
+    private static volatile PorcupainService instance;
+
+    // Sticky restart after process death: rebuild from WakeServiceConfig, retrying a
+    // few times (engine init can fail right after boot) and then giving up.
+    private static final long[] RESTORE_RETRY_MS = {1000, 5000, 15000};
+    // A suppression older than this belonged to a UI flow that died with the process.
+    private static final long SUPPRESS_RESTORE_TTL_MS = 60_000;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int restoreAttempts = 0;
+    private volatile long restoreStartNs = 0;
+    private volatile double lastRestoreMs = -1;
+    private volatile double lastRestoreSinceProcessStartMs = -1;
+
+    public static WakeWordControl getControl() {
+        return instance;
+    }
 
     @Override
     public void onCreate() {
@@ -56,49 +120,67 @@ public class PorcupainService extends Service {
         createNotificationChannel();
 
         voiceIdService = new VoiceIdService(this);
-        
-        // Register receiver for suppression control
-        if (!receiverRegistered) {
-            porcupineReceiver = new BroadcastReceiver() {
-                @Override public void onReceive(Context c, Intent i) {
-                    if ("com.navia.navia.PORCUPINE_SUPPRESS".equals(i.getAction())) {
-                        boolean s = i.getBooleanExtra("suppress", false);
-                        if (s && !suppressed) {
-                            suppressed = true;
-                            stopListeningSafely(); // stop Porcupine without destroying the service
-                        } else if (!s && suppressed) {
-                            suppressed = false;
-                            startListeningSafely(); // restart Porcupine
-                        }
-                        Log.d(TAG, "suppressed=" + suppressed);
-                    }
-                }
-            };
-            IntentFilter f = new IntentFilter();
-            f.addAction("com.navia.navia.PORCUPINE_SUPPRESS");
-            registerReceiver(porcupineReceiver, f);
-            receiverRegistered = true;
-        }
+        instance = this;
+        NabdTrace.init(this);
 
         // قم بزيادة حجم المخزن المؤقت للاحتفاظ ببيانات صوتية كافية (على سبيل المثال، 4 ثوانٍ).
         // هذا يضمن وجود بيانات صوتية كافية للتحقق بعد اكتشاف الكلمة المفتاحية.
         int bufferSizeInFrames = SAMPLE_RATE * 4 / FRAME_LENGTH; // 4 seconds of audio
         audioBuffer = new short[bufferSizeInFrames * FRAME_LENGTH];
+
+        FrontEndSettings.applyTo(this, frontEnd);
+
+        bubbleSession = new BubbleSession(this, new BubbleSession.Host() {
+            @Override
+            public void pauseCapture() {
+                bubblePausedCapture = !suppressed;
+                if (bubblePausedCapture) suppress();
+            }
+
+            @Override
+            public void resumeCapture() {
+                if (bubblePausedCapture) resume();
+                bubblePausedCapture = false;
+            }
+
+            @Override
+            public void openApp(String keywordId, String action, String command) {
+                PorcupainService.this.openApp(keywordId, action, command);
+            }
+        });
+
+        powerScheduler = new PowerPolicyScheduler(this, PowerPolicyScheduler.defaultPolicies(),
+                (from, to, signals) -> onPowerModeChanged(to));
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent == null) {
-            Log.w(TAG, "onStartCommand called with null intent");
-            return START_STICKY;
+            // Sticky restart after the process was killed.
+            if (isRunning) return START_STICKY;
+            if (!WakeServiceConfig.isActive(this)) {
+                Log.d(TAG, "Null intent but listening was stopped explicitly, not restoring");
+                stopSelf();
+                return START_NOT_STICKY;
+            }
+            Log.w(TAG, "Sticky restart, restoring saved configuration");
+            restoreStartNs = SystemClock.elapsedRealtimeNanos();
+            restoreAttempts = 0;
+            return restore();
         }
         final String action = intent.getStringExtra("action"); // may be null, handle safely
-        
+        // The UI's current settings; this process may have cached older ones.
+        Bundle settings = intent.getBundleExtra(WakeProtocol.EXTRA_SETTINGS);
+        if (settings != null) {
+            WakeProtocol.applySettings(this, settings);
+            reloadFrontEnd();
+        }
+
         if (suppressed) {
             Log.d(TAG, "Suppressed: skip starting listening");
             return START_STICKY;
         }
-        
+
         if (!isRunning) {
             apiKey = intent.getStringExtra("apiKey");
             if (apiKey == null || apiKey.isEmpty()) {
@@ -106,165 +188,500 @@ public class PorcupainService extends Service {
                 stopSelf();
                 return START_NOT_STICKY;
             }
+            keywords = KeywordRegistry.load(this);
+            WakeServiceConfig.saveStart(this, apiKey, keywords);
+            return startListening();
+        }
+        return START_STICKY;
+    }
+
+    // Rebuilds the service from WakeServiceConfig without the app.
+    private int restore() {
+        apiKey = WakeServiceConfig.accessKey(this);
+        if (apiKey == null || apiKey.isEmpty()) {
+            Log.e(TAG, "No saved access key, waiting for the app to start listening");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        List<WakeKeyword> saved = WakeServiceConfig.keywords(this);
+        keywords = saved != null ? saved : KeywordRegistry.load(this);
+        powerScheduler.setOverride(WakeServiceConfig.powerOverride(this));
 
-            isRunning = true;
-            Notification notification = createNotification();
+        long suppressedAt = WakeServiceConfig.suppressedAt(this);
+        long suppressedFor = System.currentTimeMillis() - suppressedAt;
+        if (suppressedAt != 0 && suppressedFor >= 0 && suppressedFor < SUPPRESS_RESTORE_TTL_MS) {
+            suppressed = true;
+            mainHandler.postDelayed(this::resume, SUPPRESS_RESTORE_TTL_MS - suppressedFor);
+        } else if (suppressedAt != 0) {
+            WakeServiceConfig.setSuppressedAt(this, 0);
+        }
+        return startListening();
+    }
+
+    private void retryRestore() {
+        if (restoreAttempts >= RESTORE_RETRY_MS.length || !WakeServiceConfig.isActive(this)) {
+            Log.e(TAG, "Restore failed after " + restoreAttempts + " retries, stopping");
+            restoreStartNs = 0;
+            stopSelf();
+            return;
+        }
+        long delay = RESTORE_RETRY_MS[restoreAttempts++];
+        Log.w(TAG, "Restore retry " + restoreAttempts + " in " + delay + "ms");
+        mainHandler.postDelayed(() -> {
+            if (!isRunning) restore();
+        }, delay);
+    }
+
+    private int startListening() {
+        isRunning = true;
+        Notification notification = createNotification();
+        try {
             startForeground(NOTIFICATION_ID, notification);
-            Log.d(TAG, "Foreground service started with notification");
+        } catch (RuntimeException e) {
+            // Android 14+ refuses a microphone foreground service started from the
+            // background without while-in-use access; nothing to do until the app runs.
+            Log.e(TAG, "startForeground refused: " + e.getMessage());
+            isRunning = false;
+            restoreStartNs = 0;
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        Log.d(TAG, "Foreground service started with notification");
 
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
-                Log.e(TAG, "Microphone permission not granted, stopping service");
-                stopSelf();
-                return START_NOT_STICKY;
-            }
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Microphone permission not granted, stopping service");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
 
-            try {
-                porcupineManager = new PorcupineManager.Builder()
-                        .setAccessKey(apiKey)
-                        .setKeywordPath("noor.ppn")
-                        .setSensitivity(0.7f)
-                        .build(this, new PorcupineManagerCallback() {
-                            @Override
-                            public void invoke(int keywordIndex) {
-                                if (keywordIndex == 0) {
-                                    Log.d(TAG, "Keyword 'noor' detected!");
-                                    // الخطوة الحاسمة: قم بنسخ المخزن المؤقت الصوتي الحالي قبل التحقق.
-                                    // هذا يضمن أن البيانات لا تتغير أثناء عملية التحقق.
-                                    short[] snapshotBuffer;
-                                    synchronized (audioBuffer) {
-                                        snapshotBuffer = Arrays.copyOf(audioBuffer, audioBuffer.length);
-                                    }
-                                    verifyAndOpenApp(snapshotBuffer, apiKey);
-                                }
-                            }
-                        });
-                Log.d(TAG, "PorcupineManager initialized successfully");
-            } catch (PorcupineException e) {
-                Log.e(TAG, "Failed to initialize PorcupineManager: " + e.getMessage());
-                porcupineManager = null;
-                stopSelf();
-                return START_NOT_STICKY;
+        powerScheduler.start();
+        try {
+            buildDetector(powerMode == PowerMode.PAUSED ? PowerMode.FULL : powerMode);
+            Log.d(TAG, "Wake-word engine initialized (" + VoiceEngines.getEngine(this) + ")");
+        } catch (VoiceEngineException e) {
+            Log.e(TAG, e.getMessage());
+            detector = null;
+            if (restoreStartNs != 0) {
+                powerScheduler.stop();
+                isRunning = false;
+                retryRestore();
+                return START_STICKY;
             }
-
-            startListening();
-            startRecording();
+            stopSelf();
+            return START_NOT_STICKY;
         }
+
+        startRecording();
+        // Have the command grammar the first utterance is routed through ready. The
+        // Flutter engine is warmed by WakeClient, in the UI process.
+        IntentIndex.preload(this, IntentIndex.deviceLanguage());
         return START_STICKY;
     }
 
-    private void startRecording() {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "Microphone permission not granted, cannot start recording");
-            stopSelf();
-            return;
+    private void buildDetector(PowerMode mode) throws VoiceEngineException {
+        if (detector != null) {
+            detector.delete();
+            detector = null;
+        }
+        String[] paths = new String[keywords.size()];
+        float[] sensitivities = new float[keywords.size()];
+        for (int i = 0; i < keywords.size(); i++) {
+            paths[i] = keywords.get(i).modelPath;
+            sensitivities[i] = keywords.get(i).sensitivityFor(mode);
         }
+        detector = VoiceEngines.createWakeWordEngine(this, apiKey, paths, sensitivities);
+        detectorSensitivity = mode.sensitivity;
+    }
 
-        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, CHANNELS, ENCODING, BUFFER_SIZE);
-        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-            Log.e(TAG, "Failed to initialize AudioRecord");
+    private void startRecording() {
+        if (!openAudioRecord()) {
             stopSelf();
             return;
         }
-
-        audioRecord.startRecording();
         isRecording = true;
 
-        new Thread(() -> {
+        captureThread = new Thread(() -> {
+            short[] frameBuffer = new short[FRAME_LENGTH];
+            long cpuMark = Debug.threadCpuTimeNanos();
+            int framesSinceCpuSample = 0;
             // قم بقراءة البيانات من المايكروفون باستمرار
             while (isRecording) {
-                short[] frameBuffer = new short[FRAME_LENGTH];
+                if (suppressed || powerMode == PowerMode.PAUSED) {
+                    parkWhilePaused();
+                    cpuMark = Debug.threadCpuTimeNanos();
+                    continue;
+                }
                 int numRead = audioRecord.read(frameBuffer, 0, frameBuffer.length);
                 if (numRead > 0) {
+                    if (restoreStartNs != 0) onFirstFrameAfterRestore();
+                    frontEnd.process(frameBuffer, numRead);
+                    long resumeNs = resumeRequestedNs;
+                    if (resumeNs != 0) {
+                        resumeRequestedNs = 0;
+                        lastResumeMs = (SystemClock.elapsedRealtimeNanos() - resumeNs) / 1e6;
+                        Log.d(TAG, "Capture resumed in " + lastResumeMs + "ms");
+                    }
                     synchronized (audioBuffer) {
                         // قم بنسخ البيانات إلى المخزن المؤقت الدائري
                         System.arraycopy(frameBuffer, 0, audioBuffer, bufferIndex * FRAME_LENGTH, numRead);
                         bufferIndex = (bufferIndex + 1) % (audioBuffer.length / FRAME_LENGTH);
+                        frameCount++;
+                    }
+                    relay.write(frameBuffer, numRead);
+                    if (numRead == FRAME_LENGTH) {
+                        long traceStart = NabdTrace.begin(NabdTrace.S_WAKE_FRAME);
+                        powerScheduler.onFrame(processFrame(frameBuffer));
+                        NabdTrace.end(NabdTrace.S_WAKE_FRAME, traceStart);
+                    }
+                    if (++framesSinceCpuSample >= CPU_SAMPLE_FRAMES) {
+                        long now = Debug.threadCpuTimeNanos();
+                        powerScheduler.addCpuNs(now - cpuMark);
+                        cpuMark = now;
+                        framesSinceCpuSample = 0;
                     }
                 }
             }
-        }).start();
+            releaseAudioRecord();
+            if (detector != null) {
+                detector.delete();
+                detector = null;
+            }
+        }, "WakeCapture");
+        captureThread.start();
         Log.d(TAG, "Recording started successfully");
     }
 
-    private void startListening() {
-        if (suppressed) {
-            Log.d(TAG, "Suppressed: skip starting listening");
-            return;
+    // Capture thread: listening is back. Measured from the sticky restart's
+    // onStartCommand and, where the platform reports it, from process start.
+    private void onFirstFrameAfterRestore() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        lastRestoreMs = (now - restoreStartNs) / 1e6;
+        restoreStartNs = 0;
+        long sinceProcessMs = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            sinceProcessMs = now / 1_000_000 - android.os.Process.getStartElapsedRealtime();
         }
-        
-        if (porcupineManager == null) {
-            Log.e(TAG, "PorcupineManager is null. Cannot start listening.");
-            stopSelf();
-            return;
+        lastRestoreSinceProcessStartMs = sinceProcessMs;
+        NabdTrace.event(NabdTrace.WAKE_SERVICE_RESTORED, Math.round(lastRestoreMs), sinceProcessMs);
+        Log.d(TAG, "Listening restored in " + lastRestoreMs + "ms (" + sinceProcessMs + "ms since process start)");
+    }
+
+    // Runs on the capture thread. Returns true when the frame reached the detector.
+    private boolean processFrame(short[] frame) {
+        PowerMode mode = powerMode;
+        // PAUSED parks on the next loop pass; its 0 sensitivity is not a detector setting.
+        if (mode == PowerMode.PAUSED) return false;
+        if (powerModeChanged) {
+            powerModeChanged = false;
+            detectorAwake = false;
+            vad.reset();
+        }
+        if (mode.sensitivity != detectorSensitivity) {
+            try {
+                buildDetector(mode);
+                NabdTrace.event(NabdTrace.WAKE_DETECTOR_REBUILT, mode.ordinal());
+            } catch (VoiceEngineException e) {
+                Log.e(TAG, "Failed to rebuild detector: " + e.getMessage());
+                return false;
+            }
         }
 
-        try {
-            porcupineManager.start();
-            Log.d(TAG, "PorcupineManager started listening");
-        } catch (PorcupineException e) {
-            Log.e(TAG, "Failed to start PorcupineManager: " + e.getMessage());
-            stopSelf();
+        if (mode.vadGated) {
+            boolean wasAwake = detectorAwake;
+            if (!wasAwake && (++gateFrameCounter % mode.cadence) != 0) return false;
+            boolean voice = vad.process(frame, FRAME_LENGTH);
+            if (!wasAwake) {
+                if (!voice) return false;
+                detectorAwake = true;
+                replayPreRoll();
+            } else if (!voice) {
+                detectorAwake = false;
+            }
         }
+        detect(frame, frameCount - 1);
+        return true;
     }
 
-    private void stopListeningSafely() {
-        try {
-            if (porcupineManager != null) {
-                porcupineManager.stop();
-                Log.d(TAG, "PorcupineManager stopped safely");
+    // Feeds the frames just before the current one so the keyword onset that opened
+    // the gate still reaches the detector. Frames it already saw (the tail of the last
+    // awake stretch, or a cadence frame) are skipped.
+    private void replayPreRoll() {
+        int frames = audioBuffer.length / FRAME_LENGTH;
+        int replay = (int) Math.min(PRE_ROLL_FRAMES, frameCount - 2 - lastDetectedFrame);
+        for (int i = replay; i >= 1; i--) {
+            // bufferIndex - 1 is the frame being processed right now.
+            int index = ((bufferIndex - 1 - i) % frames + frames) % frames;
+            synchronized (audioBuffer) {
+                System.arraycopy(audioBuffer, index * FRAME_LENGTH, preRollFrame, 0, FRAME_LENGTH);
             }
-        } catch (Throwable ignored) {}
+            detect(preRollFrame, frameCount - 1 - i);
+        }
     }
 
-    private void startListeningSafely() {
+    // frameNumber is the position of the frame in the capture, see frameCount.
+    private void detect(short[] frame, long frameNumber) {
+        if (detector == null) return;
+        lastDetectedFrame = frameNumber;
         try {
-            if (!suppressed && porcupineManager != null) {
-                porcupineManager.start();
-                Log.d(TAG, "PorcupineManager started safely");
+            int keywordIndex = detector.process(frame);
+            if (keywordIndex >= 0 && keywordIndex < keywords.size()) {
+                NabdTrace.event(NabdTrace.WAKE_DETECTED, keywordIndex, frameNumber);
+                onKeywordDetected(keywords.get(keywordIndex), frameNumber);
             }
-        } catch (Throwable ignored) {}
+        } catch (VoiceEngineException e) {
+            Log.e(TAG, e.getMessage());
+        }
     }
 
-    private void verifyAndOpenApp(short[] audioBuffer, String apiKey) {
-        io.flutter.plugin.common.MethodChannel.Result callback = new io.flutter.plugin.common.MethodChannel.Result() {
-            @Override
-            public void success(Object result) {
-                if (result instanceof Boolean) {
-                    if ((Boolean) result) {
-                        Log.d(TAG, "Voice verified, opening app...");
-                        openApp();
-                    } else {
-                        Log.d(TAG, "Voice not matched, ignoring...");
-                    }
-                } else {
-                    Log.d(TAG, "Unexpected result format, ignoring...");
+    private void onKeywordDetected(WakeKeyword keyword, long keywordEndFrame) {
+        if (relay.isOpen()) {
+            // Still capturing the command of the previous detection.
+            return;
+        }
+        Log.d(TAG, "Keyword '" + keyword.id + "' detected!");
+        // الخطوة الحاسمة: قم بنسخ المخزن المؤقت الصوتي الحالي قبل التحقق.
+        // هذا يضمن أن البيانات لا تتغير أثناء عملية التحقق.
+        short[] snapshotBuffer = new short[audioBuffer.length];
+        synchronized (audioBuffer) {
+            // Unroll the ring so the snapshot is in chronological order.
+            int split = bufferIndex * FRAME_LENGTH;
+            int tail = audioBuffer.length - split;
+            System.arraycopy(audioBuffer, split, snapshotBuffer, 0, tail);
+            System.arraycopy(audioBuffer, 0, snapshotBuffer, tail, split);
+        }
+        long detectedNs = SystemClock.elapsedRealtimeNanos();
+        verifyExecutor.execute(() -> verifyAndOpenApp(snapshotBuffer, apiKey, keyword, keywordEndFrame, detectedNs));
+        startCommandStream(keyword, keywordEndFrame);
+    }
+
+    // Runs on the capture thread. Opens the command stream at the end of the keyword:
+    // the frames already captured after it are queued now, the capture loop appends
+    // the live ones until the stream ends or the verifier rejects the speaker.
+    private void startCommandStream(WakeKeyword keyword, long keywordEndFrame) {
+        if (!relay.open(keyword.id, SAMPLE_RATE, FRAME_LENGTH)) return;
+        int frames = audioBuffer.length / FRAME_LENGTH;
+        long first = Math.max(keywordEndFrame + 1, frameCount - frames);
+        short[] frame = new short[FRAME_LENGTH];
+        for (long n = first; n < frameCount; n++) {
+            synchronized (audioBuffer) {
+                System.arraycopy(audioBuffer, (int) (n % frames) * FRAME_LENGTH, frame, 0, FRAME_LENGTH);
+            }
+            relay.write(frame, FRAME_LENGTH);
+        }
+    }
+
+    private void onPowerModeChanged(PowerMode mode) {
+        powerMode = mode;
+        powerModeChanged = true;
+        if (mode != PowerMode.PAUSED) {
+            synchronized (captureLock) {
+                captureLock.notifyAll();
+            }
+        }
+    }
+
+    // Runs on the capture thread: give the mic back to the system, wait for resume()
+    // or a non-paused power mode and reopen it. Stale audio from before the pause is
+    // cleared so verification never mixes the two.
+    private void parkWhilePaused() {
+        relay.close(suppressed ? CommandAudioStream.END_SUPPRESSED : CommandAudioStream.END_STOPPED);
+        releaseAudioRecord();
+        long suppressNs = suppressRequestedNs;
+        if (suppressNs != 0) {
+            suppressRequestedNs = 0;
+            lastSuppressMs = (SystemClock.elapsedRealtimeNanos() - suppressNs) / 1e6;
+            Log.d(TAG, "Capture parked in " + lastSuppressMs + "ms");
+        }
+        synchronized (captureLock) {
+            while ((suppressed || powerMode == PowerMode.PAUSED) && isRecording) {
+                try {
+                    captureLock.wait();
+                } catch (InterruptedException e) {
+                    return;
                 }
             }
+        }
+        if (!isRecording) return;
+        synchronized (audioBuffer) {
+            Arrays.fill(audioBuffer, (short) 0);
+            bufferIndex = 0;
+            frameCount = 0;
+        }
+        detectorAwake = false;
+        lastDetectedFrame = -1;
+        if (!openAudioRecord()) {
+            Log.e(TAG, "Failed to reopen AudioRecord after resume");
+            isRecording = false;
+        }
+    }
+
+    private boolean openAudioRecord() {
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Microphone permission not granted, cannot start recording");
+            return false;
+        }
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, CHANNELS, ENCODING, BUFFER_SIZE);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(TAG, "Failed to initialize AudioRecord");
+            audioRecord.release();
+            audioRecord = null;
+            return false;
+        }
+        platformEffects.attach(audioRecord.getAudioSessionId(),
+                FrontEndSettings.isEnabled(this, FrontEndSettings.PLATFORM_NS),
+                FrontEndSettings.isEnabled(this, FrontEndSettings.PLATFORM_AGC));
+        audioRecord.startRecording();
+        return true;
+    }
+
+    private void releaseAudioRecord() {
+        platformEffects.release();
+        if (audioRecord != null) {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException ignored) {
+            }
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
 
+    @Override
+    public synchronized void suppress() {
+        if (suppressed) return;
+        suppressRequestedNs = SystemClock.elapsedRealtimeNanos();
+        suppressed = true;
+        WakeServiceConfig.setSuppressedAt(this, System.currentTimeMillis());
+        Log.d(TAG, "suppressed=true");
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (!suppressed) return;
+        resumeRequestedNs = SystemClock.elapsedRealtimeNanos();
+        suppressed = false;
+        WakeServiceConfig.setSuppressedAt(this, 0);
+        synchronized (captureLock) {
+            captureLock.notifyAll();
+        }
+        Log.d(TAG, "suppressed=false");
+    }
+
+    @Override
+    public boolean isSuppressed() {
+        return suppressed;
+    }
+
+    @Override
+    public void setPowerModeOverride(PowerMode mode) {
+        powerScheduler.setOverride(mode);
+        WakeServiceConfig.setPowerOverride(this, mode);
+    }
+
+    @Override
+    public void reloadFrontEnd() {
+        FrontEndSettings.applyTo(this, frontEnd);
+        platformEffects.setEnabled(FrontEndSettings.isEnabled(this, FrontEndSettings.PLATFORM_NS),
+                FrontEndSettings.isEnabled(this, FrontEndSettings.PLATFORM_AGC));
+    }
+
+    @Override
+    public Map<String, Object> getFrontEndStats() {
+        Map<String, Object> stats = frontEnd.getStats();
+        stats.put("platform", platformEffects.describe());
+        return stats;
+    }
+
+    @Override
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("running", isRunning);
+        state.put("suppressed", suppressed);
+        state.put("lastSuppressMs", lastSuppressMs);
+        state.put("lastResumeMs", lastResumeMs);
+        state.put("lastRestoreMs", lastRestoreMs);
+        state.put("lastRestoreSinceProcessStartMs", lastRestoreSinceProcessStartMs);
+        state.put("powerMode", powerMode.name());
+        state.put("power", powerScheduler.getStats());
+        state.put("pid", android.os.Process.myPid());
+        return state;
+    }
+
+    private void verifyAndOpenApp(short[] audioBuffer, String apiKey, WakeKeyword keyword,
+                                  long keywordEndFrame, long detectedNs) {
+        VoiceIdService.VerifyCallback callback = new VoiceIdService.VerifyCallback() {
             @Override
-            public void error(String errorCode, String errorMessage, Object errorDetails) {
-                Log.e(TAG, "Voice verification error: " + errorMessage);
+            public void onResult(boolean matched) {
+                if (matched) {
+                    recordDiagnostics(WakeDiagnostics.ACCEPTED, null, audioBuffer, keyword, keywordEndFrame, detectedNs);
+                    onVerified(keyword);
+                } else {
+                    Log.d(TAG, "Voice not matched, ignoring...");
+                    recordDiagnostics(WakeDiagnostics.REJECTED, null, audioBuffer, keyword, keywordEndFrame, detectedNs);
+                    relay.close(CommandAudioStream.END_REJECTED);
+                }
             }
 
             @Override
-            public void notImplemented() {
-                Log.w(TAG, "Method not implemented");
+            public void onError(String errorCode, String errorMessage) {
+                Log.e(TAG, "Voice verification error: " + errorMessage);
+                recordDiagnostics(WakeDiagnostics.ERROR, errorCode, audioBuffer, keyword, keywordEndFrame, detectedNs);
+                relay.close(CommandAudioStream.END_REJECTED);
             }
         };
         voiceIdService.verifyVoice(this, audioBuffer, apiKey, callback);
     }
 
-    private void openApp() {
-        Log.d(TAG, "Trying to open app using AccessibilityService...");
-        if (AutoOpenAccessibilityService.getInstance() != null) {
-            AutoOpenAccessibilityService.launchApp(AutoOpenAccessibilityService.getInstance());
-            Log.d(TAG, "App launched using AccessibilityService");
+    // Main thread, on the verification result. The recorder only queues the event.
+    private void recordDiagnostics(String outcome, String detail, short[] audio, WakeKeyword keyword,
+                                   long keywordEndFrame, long detectedNs) {
+        WakeDiagnostics diagnostics = WakeDiagnostics.get(this);
+        if (!diagnostics.isEnabled()) return;
+        VerifierPool.Decision decision = voiceIdService.getLastDecision();
+        diagnostics.record(new WakeDiagnostics.Event(
+                keyword.id, outcome, detail,
+                decision != null ? decision.score : Float.NaN,
+                decision != null ? decision.window : -1,
+                decision != null ? decision.elapsedNs / 1e6 : -1,
+                (SystemClock.elapsedRealtimeNanos() - detectedNs) / 1e6,
+                keywordEndFrame, System.currentTimeMillis(),
+                powerMode.name(), detectorSensitivity, SAMPLE_RATE, audio));
+    }
+
+    // Main thread. A bare "open" keyword still needs its command, which the bubble
+    // captures without the activity; keywords bound to a command open the app directly.
+    private void onVerified(WakeKeyword keyword) {
+        if ("open".equals(keyword.action) && BubbleSession.isAvailable(this)) {
+            if (bubbleSession.isActive()) return;
+            Log.d(TAG, "Voice verified, recognising the command...");
+            // The bubble's recognizer reads the command captured since the keyword.
+            bubbleSession.start(keyword, relay, SAMPLE_RATE);
             return;
         }
+        Log.d(TAG, "Voice verified, opening app...");
+        openApp(keyword.id, keyword.action, null);
+    }
+
+    // The accessibility service lives in the UI process; when that process is up its
+    // WakeClient launches the app through it.
+    private void openApp(String keywordId, String action, String command) {
+        if (relay.hasClients()) {
+            Bundle data = new Bundle();
+            data.putString(WakeProtocol.KEY_KEYWORD, keywordId);
+            data.putString(WakeProtocol.KEY_ACTION, action);
+            data.putString(WakeProtocol.KEY_COMMAND, command);
+            if (relay.broadcast(WakeProtocol.EVT_OPEN_APP, data) > 0) {
+                Log.d(TAG, "App launch handed to the UI process");
+                return;
+            }
+        }
 
         Intent launchIntent = getPackageManager().getLaunchIntentForPackage(getPackageName());
         if (launchIntent != null) {
             launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            launchIntent.putExtra(EXTRA_WAKE_KEYWORD, keywordId);
+            launchIntent.putExtra(EXTRA_WAKE_ACTION, action);
+            launchIntent.putExtra(EXTRA_WAKE_COMMAND, command);
             startActivity(launchIntent);
             Log.d(TAG, "App launched via getLaunchIntentForPackage");
         } else {
@@ -296,48 +713,101 @@ public class PorcupainService extends Service {
 
     @Override
     public void onDestroy() {
+        instance = null;
+        // Reached on an explicit stop; a process kill never gets here.
+        WakeServiceConfig.setActive(this, false);
+        mainHandler.removeCallbacksAndMessages(null);
         isRunning = false;
         isRecording = false;
-        
-        // Fix receiver leak
-        try {
-            if (receiverRegistered && porcupineReceiver != null) {
-                unregisterReceiver(porcupineReceiver);
-                receiverRegistered = false;
-            }
-        } catch (Throwable ignored) {}
-        
-        if (audioRecord != null) {
-            audioRecord.stop();
-            audioRecord.release();
-            audioRecord = null;
+        relay.close(CommandAudioStream.END_STOPPED);
+        relay.shutdown();
+        bubbleSession.cancel();
+        powerScheduler.stop();
+        synchronized (captureLock) {
+            captureLock.notifyAll();
         }
-        if (porcupineManager != null) {
+        if (captureThread != null) {
             try {
-                porcupineManager.stop();
-                porcupineManager.delete();
-                Log.d(TAG, "PorcupineManager stopped and deleted");
-            } catch (PorcupineException e) {
-                Log.e(TAG, "Error stopping PorcupineManager: " + e.getMessage());
+                captureThread.join(200);
+            } catch (InterruptedException ignored) {
             }
+            captureThread = null;
+        } else if (detector != null) {
+            detector.delete();
+            detector = null;
         }
+        verifyExecutor.shutdownNow();
         super.onDestroy();
         Log.d(TAG, "Service Destroyed");
     }
 
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
+    // Main thread: requests from WakeClient, see WakeProtocol.
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case WakeProtocol.MSG_REGISTER:
+                relay.register(msg.replyTo);
+                break;
+            case WakeProtocol.MSG_UNREGISTER:
+                relay.unregister(msg.replyTo);
+                break;
+            case WakeProtocol.MSG_SUPPRESS:
+                suppress();
+                break;
+            case WakeProtocol.MSG_RESUME:
+                resume();
+                break;
+            case WakeProtocol.MSG_SET_POWER_MODE: {
+                String mode = msg.getData().getString(WakeProtocol.KEY_MODE);
+                setPowerModeOverride(mode != null ? PowerMode.valueOf(mode) : null);
+                break;
+            }
+            case WakeProtocol.MSG_SYNC_SETTINGS:
+                WakeProtocol.applySettings(this, msg.getData());
+                reloadFrontEnd();
+                break;
+            case WakeProtocol.MSG_QUERY:
+                if (msg.replyTo == null) break;
+                Message reply = Message.obtain(null, WakeProtocol.EVT_REPLY, msg.arg1, 0);
+                reply.setData(WakeProtocol.value(query(msg.arg2)));
+                try {
+                    msg.replyTo.send(reply);
+                } catch (RemoteException e) {
+                    Log.w(TAG, "Query reply lost: " + e.getMessage());
+                }
+                break;
+            case WakeProtocol.MSG_TRACE:
+                if (msg.arg1 == WakeProtocol.TRACE_CLEAR) {
+                    NabdTrace.clear();
+                } else {
+                    NabdTrace.setEnabled(msg.arg1 == WakeProtocol.TRACE_ENABLE);
+                }
+                break;
+            case WakeProtocol.MSG_CLEAR_DIAGNOSTICS:
+                WakeDiagnostics.get(this).clear();
+                break;
+            default:
+                return false;
+        }
+        return true;
     }
 
-    private void stopListening() {
-        if (porcupineManager != null) {
-            try {
-                porcupineManager.stop();
-                Log.d(TAG, "PorcupineManager stopped listening");
-            } catch (PorcupineException e) {
-                Log.e(TAG, "Failed to stop PorcupineManager: " + e.getMessage());
-            }
+    private Map<String, Object> query(int what) {
+        switch (what) {
+            case WakeProtocol.QUERY_STATE:
+                return getState();
+            case WakeProtocol.QUERY_FRONT_END_STATS:
+                return getFrontEndStats();
+            case WakeProtocol.QUERY_TRACE:
+                return NabdTrace.dump();
+            case WakeProtocol.QUERY_DIAGNOSTICS:
+                return WakeDiagnostics.get(this).describe();
+            default:
+                return null;
         }
     }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
 }
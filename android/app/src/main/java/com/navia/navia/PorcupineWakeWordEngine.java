@@ -0,0 +1,48 @@
+package com.navia.navia;
+
+import android.content.Context;
+
+import ai.picovoice.porcupine.Porcupine;
+import ai.picovoice.porcupine.PorcupineException;
+
+// WakeWordEngine backed by Picovoice Porcupine.
+public final class PorcupineWakeWordEngine implements WakeWordEngine {
+    private final Porcupine porcupine;
+
+    public PorcupineWakeWordEngine(Context context, String accessKey, String[] keywordPaths,
+                                   float[] sensitivities) throws VoiceEngineException {
+        try {
+            porcupine = new Porcupine.Builder()
+                    .setAccessKey(accessKey)
+                    .setKeywordPaths(keywordPaths)
+                    .setSensitivities(sensitivities)
+                    .build(context);
+        } catch (PorcupineException e) {
+            throw new VoiceEngineException("Failed to initialize Porcupine: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getFrameLength() {
+        return porcupine.getFrameLength();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return porcupine.getSampleRate();
+    }
+
+    @Override
+    public int process(short[] frame) throws VoiceEngineException {
+        try {
+            return porcupine.process(frame);
+        } catch (PorcupineException e) {
+            throw new VoiceEngineException("Porcupine process failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        porcupine.delete();
+    }
+}
@@ -0,0 +1,26 @@
+package com.navia.navia;
+
+// Listening modes of the wake-word pipeline, from most to least power hungry.
+// cadence is "run the gate/detector on every Nth frame while idle"; 0 means the
+// capture thread is parked and the mic is released.
+public enum PowerMode {
+    FULL(1, 0.7f, false),
+    VAD_GATED(1, 0.65f, true),
+    DUTY_CYCLED(4, 0.6f, true),
+    PAUSED(0, 0f, true);
+
+    public final int cadence;
+    public final float sensitivity;
+    public final boolean vadGated;
+
+    PowerMode(int cadence, float sensitivity, boolean vadGated) {
+        this.cadence = cadence;
+        this.sensitivity = sensitivity;
+        this.vadGated = vadGated;
+    }
+
+    // The more restrictive of the two.
+    public PowerMode atLeast(PowerMode other) {
+        return other != null && other.ordinal() > ordinal() ? other : this;
+    }
+}
@@ -0,0 +1,23 @@
+package com.navia.navia;
+
+// A rule that proposes a listening mode for the current system state, or null to
+// abstain. PowerPolicyScheduler applies the most restrictive proposal.
+public interface PowerPolicy {
+    PowerMode propose(PowerSignals signals);
+
+    // Screen off: nobody is looking at the phone, gate the detector on voice activity.
+    PowerPolicy SCREEN = s -> s.screenOn ? null : PowerMode.VAD_GATED;
+
+    // Low battery and not charging: sample sparsely.
+    PowerPolicy BATTERY = s -> !s.charging && s.batteryPercent >= 0 && s.batteryPercent < 15 ? PowerMode.DUTY_CYCLED : null;
+
+    // System battery saver is on.
+    PowerPolicy POWER_SAVE = s -> s.powerSave && !s.charging ? PowerMode.DUTY_CYCLED : null;
+
+    // Back off when the device is hot; stop entirely when it is throttling hard.
+    PowerPolicy THERMAL = s -> {
+        if (s.thermalStatus >= PowerSignals.THERMAL_SEVERE) return PowerMode.PAUSED;
+        if (s.thermalStatus >= PowerSignals.THERMAL_MODERATE) return PowerMode.DUTY_CYCLED;
+        return null;
+    };
+}
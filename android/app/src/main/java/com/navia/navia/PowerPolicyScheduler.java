@@ -0,0 +1,212 @@
+package com.navia.navia;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Picks the wake-word listening mode from screen, battery, power-save and thermal
+// signals by asking each PowerPolicy and applying the most restrictive proposal.
+// Also keeps per-mode counters (time, frames, detector CPU, battery charge) so the
+// effect of each mode can be measured on real devices.
+public class PowerPolicyScheduler {
+    private static final String TAG = "PowerPolicyScheduler";
+
+    public interface Listener {
+        // Called on the main thread.
+        void onModeChanged(PowerMode from, PowerMode to, PowerSignals signals);
+    }
+
+    private static final class ModeCounters {
+        long timeMs;
+        long framesRead;
+        long framesProcessed;
+        long cpuNs;
+        long chargeUah;
+    }
+
+    private final Context context;
+    private final List<PowerPolicy> policies;
+    private final Listener listener;
+    private final PowerManager powerManager;
+    private final BatteryManager batteryManager;
+    private final ModeCounters[] counters = new ModeCounters[PowerMode.values().length];
+
+    private volatile PowerMode mode = PowerMode.FULL;
+    private PowerMode override;
+    private PowerSignals signals = new PowerSignals(true, false, -1, false, PowerSignals.THERMAL_NONE);
+    private long modeEnteredMs;
+    private long modeEnteredChargeUah;
+    private boolean registered = false;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            reevaluate();
+        }
+    };
+
+    public PowerPolicyScheduler(Context context, List<PowerPolicy> policies, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.policies = new ArrayList<>(policies);
+        this.listener = listener;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        for (int i = 0; i < counters.length; i++) counters[i] = new ModeCounters();
+    }
+
+    public static List<PowerPolicy> defaultPolicies() {
+        List<PowerPolicy> list = new ArrayList<>();
+        list.add(PowerPolicy.SCREEN);
+        list.add(PowerPolicy.BATTERY);
+        list.add(PowerPolicy.POWER_SAVE);
+        list.add(PowerPolicy.THERMAL);
+        return list;
+    }
+
+    public void start() {
+        if (registered) return;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        context.registerReceiver(receiver, filter);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalListener = status -> reevaluate();
+            powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(context), thermalListener);
+        }
+        registered = true;
+        synchronized (this) {
+            modeEnteredMs = SystemClock.elapsedRealtime();
+            modeEnteredChargeUah = readChargeUah();
+        }
+        reevaluate();
+    }
+
+    public void stop() {
+        if (!registered) return;
+        try {
+            context.unregisterReceiver(receiver);
+        } catch (IllegalArgumentException ignored) {
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+        }
+        registered = false;
+        closeModeInterval();
+    }
+
+    public PowerMode getMode() {
+        return mode;
+    }
+
+    // Forces a mode regardless of the policies; null returns control to them.
+    public void setOverride(PowerMode forced) {
+        override = forced;
+        reevaluate();
+    }
+
+    // Called from the capture thread once per frame read.
+    public synchronized void onFrame(boolean processed) {
+        ModeCounters c = counters[mode.ordinal()];
+        c.framesRead++;
+        if (processed) c.framesProcessed++;
+    }
+
+    // Called from the capture thread with the CPU time it spent in the current mode.
+    public synchronized void addCpuNs(long cpuNs) {
+        counters[mode.ordinal()].cpuNs += cpuNs;
+    }
+
+    public void reevaluate() {
+        PowerSignals current = readSignals();
+        PowerMode next = PowerMode.FULL;
+        if (override != null) {
+            next = override;
+        } else {
+            for (PowerPolicy policy : policies) {
+                next = next.atLeast(policy.propose(current));
+            }
+        }
+        PowerMode previous;
+        synchronized (this) {
+            signals = current;
+            previous = mode;
+            if (previous == next) return;
+            closeModeInterval();
+            mode = next;
+        }
+        Log.d(TAG, "mode " + previous + " -> " + next + " (" + current + ")");
+        if (listener != null) listener.onModeChanged(previous, next, current);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        closeModeInterval();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode.name());
+        stats.put("signals", signals.toString());
+        for (PowerMode m : PowerMode.values()) {
+            ModeCounters c = counters[m.ordinal()];
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("timeMs", c.timeMs);
+            entry.put("framesRead", c.framesRead);
+            entry.put("framesProcessed", c.framesProcessed);
+            entry.put("cpuMs", c.cpuNs / 1_000_000L);
+            entry.put("chargeUah", c.chargeUah);
+            stats.put(m.name(), entry);
+        }
+        return stats;
+    }
+
+    // Accounts the time and charge since the last mode boundary to the current mode.
+    private synchronized void closeModeInterval() {
+        long now = SystemClock.elapsedRealtime();
+        long charge = readChargeUah();
+        ModeCounters c = counters[mode.ordinal()];
+        c.timeMs += now - modeEnteredMs;
+        if (!signals.charging && charge > 0 && modeEnteredChargeUah > 0 && modeEnteredChargeUah > charge) {
+            c.chargeUah += modeEnteredChargeUah - charge;
+        }
+        modeEnteredMs = now;
+        modeEnteredChargeUah = charge;
+    }
+
+    private PowerSignals readSignals() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int percent = -1;
+        boolean charging = false;
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) percent = level * 100 / scale;
+            int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            charging = plugged != 0;
+        }
+        int thermal = PowerSignals.THERMAL_NONE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermal = powerManager.getCurrentThermalStatus();
+        }
+        return new PowerSignals(powerManager.isInteractive(), charging, percent, powerManager.isPowerSaveMode(), thermal);
+    }
+
+    private long readChargeUah() {
+        long value = batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+        return value == Long.MIN_VALUE ? -1 : value;
+    }
+}
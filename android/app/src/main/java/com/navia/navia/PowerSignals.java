@@ -0,0 +1,29 @@
+package com.navia.navia;
+
+// Snapshot of the system state the power policies look at.
+public final class PowerSignals {
+    // Mirrors PowerManager.THERMAL_STATUS_* so policies stay platform-free.
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    public final boolean screenOn;
+    public final boolean charging;
+    public final int batteryPercent;
+    public final boolean powerSave;
+    public final int thermalStatus;
+
+    public PowerSignals(boolean screenOn, boolean charging, int batteryPercent, boolean powerSave, int thermalStatus) {
+        this.screenOn = screenOn;
+        this.charging = charging;
+        this.batteryPercent = batteryPercent;
+        this.powerSave = powerSave;
+        this.thermalStatus = thermalStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "screenOn=" + screenOn + " charging=" + charging + " battery=" + batteryPercent
+                + "% powerSave=" + powerSave + " thermal=" + thermalStatus;
+    }
+}
@@ -0,0 +1,153 @@
+package com.navia.navia;
+
+import java.nio.ByteBuffer;
+
+// Finds the QR code region in an RGBA screen frame with a coarse luma scan and
+// produces a cropped, downscaled luma plane for the decoder. The scan samples a
+// 4x4 grid per 32px cell, so a 1080x2400 frame costs ~40k luma reads instead of 2.6M.
+public final class QrRegionLocator {
+    private static final int CELL = 32;
+    private static final int SAMPLES_PER_SIDE = 4;
+    private static final int MIN_CONTRAST = 96;
+    private static final int DARK = 96;
+    private static final int LIGHT = 160;
+    private static final int MIN_CELLS = 9;
+    private static final int MAX_OUTPUT_SIDE = 480;
+
+    // Cropped luma plane handed to the decoder. Both sides are even so the plane
+    // can be wrapped as NV21.
+    public static final class Crop {
+        public final byte[] luma;
+        public final int width;
+        public final int height;
+        public final int left;
+        public final int top;
+        public final int scale;
+
+        Crop(byte[] luma, int width, int height, int left, int top, int scale) {
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+            this.left = left;
+            this.top = top;
+            this.scale = scale;
+        }
+    }
+
+    private QrRegionLocator() {
+    }
+
+    // Returns {left, top, right, bottom} in pixels, or null if no QR-like region was found.
+    public static int[] locate(ScreenFrame frame) {
+        int gw = frame.width / CELL;
+        int gh = frame.height / CELL;
+        if (gw == 0 || gh == 0) return null;
+
+        boolean[] textured = new boolean[gw * gh];
+        int step = CELL / SAMPLES_PER_SIDE;
+        for (int cy = 0; cy < gh; cy++) {
+            for (int cx = 0; cx < gw; cx++) {
+                int min = 255, max = 0;
+                for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+                    int y = cy * CELL + sy * step + step / 2;
+                    for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+                        int x = cx * CELL + sx * step + step / 2;
+                        int l = luma(frame, x, y);
+                        if (l < min) min = l;
+                        if (l > max) max = l;
+                    }
+                }
+                textured[cy * gw + cx] = max - min >= MIN_CONTRAST && min < DARK && max > LIGHT;
+            }
+        }
+
+        // Largest, squarest 4-connected blob of textured cells.
+        int[] queue = new int[gw * gh];
+        boolean[] seen = new boolean[gw * gh];
+        int[] best = null;
+        double bestScore = 0;
+        for (int start = 0; start < textured.length; start++) {
+            if (!textured[start] || seen[start]) continue;
+            int head = 0, tail = 0, count = 0;
+            int minX = gw, minY = gh, maxX = -1, maxY = -1;
+            queue[tail++] = start;
+            seen[start] = true;
+            while (head < tail) {
+                int c = queue[head++];
+                int cx = c % gw, cy = c / gw;
+                count++;
+                if (cx < minX) minX = cx;
+                if (cx > maxX) maxX = cx;
+                if (cy < minY) minY = cy;
+                if (cy > maxY) maxY = cy;
+                if (cx > 0) tail = visit(c - 1, textured, seen, queue, tail);
+                if (cx < gw - 1) tail = visit(c + 1, textured, seen, queue, tail);
+                if (cy > 0) tail = visit(c - gw, textured, seen, queue, tail);
+                if (cy < gh - 1) tail = visit(c + gw, textured, seen, queue, tail);
+            }
+            if (count < MIN_CELLS) continue;
+            int bw = maxX - minX + 1, bh = maxY - minY + 1;
+            double squareness = (double) Math.min(bw, bh) / Math.max(bw, bh);
+            double fill = (double) count / (bw * bh);
+            if (squareness < 0.5) continue;
+            double score = count * squareness * fill;
+            if (score > bestScore) {
+                bestScore = score;
+                best = new int[]{minX, minY, maxX, maxY};
+            }
+        }
+        if (best == null) return null;
+
+        // One cell of margin for the quiet zone.
+        int left = Math.max(0, (best[0] - 1) * CELL);
+        int top = Math.max(0, (best[1] - 1) * CELL);
+        int right = Math.min(frame.width, (best[2] + 2) * CELL);
+        int bottom = Math.min(frame.height, (best[3] + 2) * CELL);
+        return new int[]{left, top, right, bottom};
+    }
+
+    // Box-filtered luma crop of the region, downscaled by an integer factor so the
+    // longest side is at most MAX_OUTPUT_SIDE.
+    public static Crop crop(ScreenFrame frame, int[] region) {
+        int rw = region[2] - region[0];
+        int rh = region[3] - region[1];
+        int scale = Math.max(1, (Math.max(rw, rh) + MAX_OUTPUT_SIDE - 1) / MAX_OUTPUT_SIDE);
+        int ow = (rw / scale) & ~1;
+        int oh = (rh / scale) & ~1;
+        if (ow <= 0 || oh <= 0) return null;
+
+        byte[] out = new byte[ow * oh];
+        int area = scale * scale;
+        for (int oy = 0; oy < oh; oy++) {
+            int y0 = region[1] + oy * scale;
+            for (int ox = 0; ox < ow; ox++) {
+                int x0 = region[0] + ox * scale;
+                int sum = 0;
+                for (int dy = 0; dy < scale; dy++) {
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += luma(frame, x0 + dx, y0 + dy);
+                    }
+                }
+                out[oy * ow + ox] = (byte) (sum / area);
+            }
+        }
+        return new Crop(out, ow, oh, region[0], region[1], scale);
+    }
+
+    private static int visit(int c, boolean[] textured, boolean[] seen, int[] queue, int tail) {
+        if (textured[c] && !seen[c]) {
+            seen[c] = true;
+            queue[tail++] = c;
+        }
+        return tail;
+    }
+
+    private static int luma(ScreenFrame frame, int x, int y) {
+        ByteBuffer px = frame.pixels;
+        int i = y * frame.rowStride + x * frame.pixelStride;
+        int r = px.get(i) & 0xFF;
+        int g = px.get(i + 1) & 0xFF;
+        int b = px.get(i + 2) & 0xFF;
+        return (r * 77 + g * 150 + b * 29) >> 8;
+    }
+}
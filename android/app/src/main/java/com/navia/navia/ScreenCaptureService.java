@@ -0,0 +1,322 @@
+package com.navia.navia;
+
+import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.PixelFormat;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.projection.MediaProjection;
+import android.media.projection.MediaProjectionManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.WindowManager;
+
+import androidx.core.app.NotificationCompat;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Foreground service that owns the MediaProjection for the connectivity flow.
+// The VirtualDisplay is created once per projection (Android 14 forbids creating a
+// second one) and prewarming just attaches/detaches the ImageReader surface, so
+// capture_from_prewarm can hand out the latest frame without any setup cost.
+public class ScreenCaptureService extends Service {
+    private static final String TAG = "ScreenCaptureService";
+    private static final String CHANNEL_ID = "ScreenCaptureChannel";
+    private static final int NOTIFICATION_ID = 2;
+    private static final int MAX_IMAGES = 3;
+    private static final long CAPTURE_ONCE_TIMEOUT_MS = 1000;
+    // A mirrored display only produces frames when the screen changes; after this
+    // long without one, the surface is re-attached to force a frame.
+    private static final long FRESH_FRAME_WAIT_MS = 150;
+
+    public static final String EXTRA_RESULT_CODE = "resultCode";
+    public static final String EXTRA_RESULT_DATA = "resultData";
+
+    private static volatile ScreenCaptureService instance;
+
+    private final FrameTripleBuffer frames = new FrameTripleBuffer();
+    private HandlerThread captureThread;
+    private Handler captureHandler;
+    private MediaProjection projection;
+    private VirtualDisplay virtualDisplay;
+    private ImageReader imageReader;
+    private volatile boolean prewarmed = false;
+    // Notified on every published frame, for captureOnce() callers.
+    private final Object frameSignal = new Object();
+
+    public static ScreenCaptureService getInstance() {
+        return instance;
+    }
+
+    public static boolean isReady() {
+        ScreenCaptureService svc = instance;
+        return svc != null && svc.projection != null;
+    }
+
+    public static void start(Context context, int resultCode, Intent data) {
+        Intent intent = new Intent(context, ScreenCaptureService.class);
+        intent.putExtra(EXTRA_RESULT_CODE, resultCode);
+        intent.putExtra(EXTRA_RESULT_DATA, data);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        captureThread = new HandlerThread("ScreenCapture");
+        captureThread.start();
+        captureHandler = new Handler(captureThread.getLooper());
+        createNotificationChannel();
+        Log.d(TAG, "Service Created");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Must be in the foreground before getMediaProjection() on Android 10+.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, createNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PROJECTION);
+        } else {
+            startForeground(NOTIFICATION_ID, createNotification());
+        }
+
+        if (intent == null) {
+            Log.w(TAG, "onStartCommand called with null intent, projection token is gone");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        int resultCode = intent.getIntExtra(EXTRA_RESULT_CODE, Activity.RESULT_CANCELED);
+        Intent data = intent.getParcelableExtra(EXTRA_RESULT_DATA);
+        if (resultCode != Activity.RESULT_OK || data == null) {
+            Log.e(TAG, "Screen capture permission was not granted");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        releaseProjection();
+        MediaProjectionManager mpm = (MediaProjectionManager) getSystemService(MEDIA_PROJECTION_SERVICE);
+        projection = mpm.getMediaProjection(resultCode, data);
+        if (projection == null) {
+            Log.e(TAG, "getMediaProjection returned null");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        projection.registerCallback(new MediaProjection.Callback() {
+            @Override
+            public void onStop() {
+                Log.d(TAG, "Projection stopped by system");
+                captureHandler.post(ScreenCaptureService.this::releaseDisplay);
+                projection = null;
+            }
+        }, captureHandler);
+
+        instance = this;
+        Log.d(TAG, "Projection ready");
+        return START_NOT_STICKY;
+    }
+
+    public synchronized boolean startPrewarm() {
+        if (!ensureDisplay()) return false;
+        if (!prewarmed) {
+            virtualDisplay.setSurface(imageReader.getSurface());
+            prewarmed = true;
+            Log.d(TAG, "Prewarm started");
+        }
+        return true;
+    }
+
+    public synchronized void stopPrewarm() {
+        if (prewarmed && virtualDisplay != null) {
+            // Detaching the surface stops composition for the display but keeps it alive.
+            virtualDisplay.setSurface(null);
+            Log.d(TAG, "Prewarm stopped");
+        }
+        prewarmed = false;
+        // On the producer thread, after any frame still queued for it.
+        captureHandler.post(frames::clear);
+    }
+
+    public boolean isPrewarmed() {
+        return prewarmed;
+    }
+
+    // Runs reader on the latest frame under the buffer's lock (see FrameTripleBuffer);
+    // null when there is no frame.
+    public <T> T readLatestFrame(FrameTripleBuffer.Reader<T> reader) {
+        return frames.read(reader);
+    }
+
+    public boolean hasFrame() {
+        return frames.lastSequence() != 0;
+    }
+
+    // Blocking: returns once a frame published after this call is available, so the
+    // next readLatestFrame() shows the screen as it is now. Prewarmed, that is the
+    // next composed frame; otherwise the surface is attached for this one frame.
+    // Must not be called on the main thread.
+    public boolean captureOnce() {
+        long after = frames.lastSequence();
+        if (prewarmed) {
+            if (awaitFrameAfter(after, FRESH_FRAME_WAIT_MS)) return true;
+            // Static screen: nothing new to compose, re-attaching forces a frame.
+            synchronized (this) {
+                if (!prewarmed || virtualDisplay == null) return false;
+                virtualDisplay.setSurface(null);
+                virtualDisplay.setSurface(imageReader.getSurface());
+            }
+            return awaitFrameAfter(after, CAPTURE_ONCE_TIMEOUT_MS - FRESH_FRAME_WAIT_MS);
+        }
+        synchronized (this) {
+            if (!ensureDisplay()) return false;
+            virtualDisplay.setSurface(imageReader.getSurface());
+        }
+        try {
+            return awaitFrameAfter(after, CAPTURE_ONCE_TIMEOUT_MS);
+        } finally {
+            synchronized (this) {
+                if (!prewarmed && virtualDisplay != null) virtualDisplay.setSurface(null);
+            }
+        }
+    }
+
+    private boolean awaitFrameAfter(long sequence, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (frameSignal) {
+            while (frames.lastSequence() <= sequence) {
+                long leftMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (leftMs <= 0) return false;
+                try {
+                    frameSignal.wait(leftMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private boolean ensureDisplay() {
+        if (projection == null) {
+            Log.e(TAG, "No projection, request_screen_capture first");
+            return false;
+        }
+        if (virtualDisplay != null) return true;
+
+        DisplayMetrics metrics = new DisplayMetrics();
+        WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
+        wm.getDefaultDisplay().getRealMetrics(metrics);
+        int width = metrics.widthPixels;
+        int height = metrics.heightPixels;
+
+        imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
+        imageReader.setOnImageAvailableListener(this::onImageAvailable, captureHandler);
+        try {
+            virtualDisplay = projection.createVirtualDisplay("nabd-capture", width, height, metrics.densityDpi,
+                    DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR, null, null, captureHandler);
+        } catch (SecurityException e) {
+            Log.e(TAG, "createVirtualDisplay failed: " + e.getMessage());
+            imageReader.close();
+            imageReader = null;
+            return false;
+        }
+        Log.d(TAG, "VirtualDisplay created " + width + "x" + height);
+        return true;
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        Image image = null;
+        long traceStart = NabdTrace.begin(NabdTrace.S_SCREEN_FRAME);
+        try {
+            image = reader.acquireLatestImage();
+            if (image == null) return;
+            Image.Plane plane = image.getPlanes()[0];
+            ByteBuffer src = plane.getBuffer();
+            frames.backFrame().copyFrom(src, image.getWidth(), image.getHeight(),
+                    plane.getRowStride(), plane.getPixelStride(), image.getTimestamp());
+            NabdTrace.event(NabdTrace.SCREEN_FRAME, frames.publish());
+            synchronized (frameSignal) {
+                frameSignal.notifyAll();
+            }
+        } catch (IllegalStateException e) {
+            NabdTrace.event(NabdTrace.SCREEN_FRAME_DROPPED, 0);
+        } finally {
+            if (image != null) image.close();
+            NabdTrace.end(NabdTrace.S_SCREEN_FRAME, traceStart);
+        }
+    }
+
+    private synchronized void releaseDisplay() {
+        prewarmed = false;
+        captureHandler.post(frames::clear);
+        if (virtualDisplay != null) {
+            virtualDisplay.release();
+            virtualDisplay = null;
+        }
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+    }
+
+    private void releaseProjection() {
+        releaseDisplay();
+        if (projection != null) {
+            projection.stop();
+            projection = null;
+        }
+    }
+
+    private Notification createNotification() {
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_menu_camera)
+                .setContentTitle("Screen capture active")
+                .setContentText("Reading the Wi-Fi QR code...")
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOngoing(true)
+                .build();
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Screen Capture Channel",
+                    NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("Used while reading the Wi-Fi QR code");
+            ((NotificationManager) getSystemService(NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        instance = null;
+        releaseProjection();
+        captureThread.quitSafely();
+        super.onDestroy();
+        Log.d(TAG, "Service Destroyed");
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.navia.navia;
+
+import java.nio.ByteBuffer;
+
+// Reusable RGBA_8888 frame slot. The pixel buffer is kept between frames and only
+// reallocated when the incoming frame no longer fits, so steady-state capture does
+// not allocate.
+public final class ScreenFrame {
+    public ByteBuffer pixels;
+    public int width;
+    public int height;
+    public int rowStride;
+    public int pixelStride;
+    public long timestampNs;
+    public long sequence;
+
+    void copyFrom(ByteBuffer src, int width, int height, int rowStride, int pixelStride, long timestampNs) {
+        int bytes = src.remaining();
+        if (pixels == null || pixels.capacity() < bytes) {
+            pixels = ByteBuffer.allocateDirect(bytes);
+        }
+        pixels.clear();
+        pixels.put(src);
+        pixels.flip();
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.timestampNs = timestampNs;
+    }
+
+    void release() {
+        pixels = null;
+        width = 0;
+        height = 0;
+    }
+
+    public boolean hasData() {
+        return pixels != null && width > 0 && height > 0;
+    }
+}
@@ -0,0 +1,35 @@
+package com.navia.navia;
+
+import java.nio.charset.StandardCharsets;
+
+// Deterministic SpeakerEnroller: progress is the share of requiredSamples consumed so
+// far and the exported profile is a fixed marker, which VoiceIdService keeps apart
+// from the real profile file. Plain Java, runs on the JVM.
+public final class ScriptedSpeakerEnroller implements SpeakerEnroller {
+    public static final byte[] PROFILE = "scripted-speaker-profile".getBytes(StandardCharsets.US_ASCII);
+
+    private final long requiredSamples;
+    private long enrolledSamples = 0;
+
+    public ScriptedSpeakerEnroller(long requiredSamples) {
+        this.requiredSamples = Math.max(1, requiredSamples);
+    }
+
+    @Override
+    public float enroll(short[] pcm) {
+        enrolledSamples += pcm.length;
+        return Math.min(100f, enrolledSamples * 100f / requiredSamples);
+    }
+
+    @Override
+    public byte[] export() throws VoiceEngineException {
+        if (enrolledSamples < requiredSamples) {
+            throw new VoiceEngineException("Enrollment incomplete");
+        }
+        return PROFILE.clone();
+    }
+
+    @Override
+    public void delete() {
+    }
+}
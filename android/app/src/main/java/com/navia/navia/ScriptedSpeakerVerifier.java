@@ -0,0 +1,41 @@
+package com.navia.navia;
+
+// Deterministic SpeakerVerifier: the n-th frame after a reset scores scores[n], and
+// the last entry repeats once the script runs out. Burns an optional per-frame cost
+// like ScriptedWakeWordEngine. Plain Java, runs on the JVM.
+public final class ScriptedSpeakerVerifier implements SpeakerVerifier {
+    private final int frameLength;
+    private final float[] scores;
+    private final long costNsPerFrame;
+    private int frame = 0;
+
+    public ScriptedSpeakerVerifier(int frameLength, float[] scores, long costNsPerFrame) {
+        if (scores.length == 0) throw new IllegalArgumentException("scores is empty");
+        this.frameLength = frameLength;
+        this.scores = scores.clone();
+        this.costNsPerFrame = costNsPerFrame;
+    }
+
+    @Override
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public float process(short[] pcm) throws VoiceEngineException {
+        if (pcm == null || pcm.length != frameLength) {
+            throw new VoiceEngineException("Expected a frame of " + frameLength + " samples");
+        }
+        ScriptedWakeWordEngine.burn(costNsPerFrame);
+        return scores[Math.min(frame++, scores.length - 1)];
+    }
+
+    @Override
+    public void reset() {
+        frame = 0;
+    }
+
+    @Override
+    public void delete() {
+    }
+}
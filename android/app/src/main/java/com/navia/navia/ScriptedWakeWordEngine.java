@@ -0,0 +1,77 @@
+package com.navia.navia;
+
+// Deterministic WakeWordEngine for load and latency tests: fires the scripted keyword
+// on the frame that contains each scripted sample offset, counted from the first
+// processed sample. An optional per-frame cost is burned on the calling thread so
+// scheduling and CPU accounting behave like a real detector. Plain Java, runs on the JVM.
+public final class ScriptedWakeWordEngine implements WakeWordEngine {
+    private final int frameLength;
+    private final int sampleRate;
+    private final long[] fireAtSamples;
+    private final int[] keywordIndexes;
+    private final long costNsPerFrame;
+    private long samplesSeen = 0;
+    private int nextFire = 0;
+
+    // fireAtSamples must be ascending; keywordIndexes[i] is returned for fireAtSamples[i].
+    // When several offsets fall into one frame, the last of them is reported.
+    public ScriptedWakeWordEngine(int frameLength, int sampleRate, long[] fireAtSamples,
+                                  int[] keywordIndexes, long costNsPerFrame) {
+        if (fireAtSamples.length != keywordIndexes.length) {
+            throw new IllegalArgumentException("fireAtSamples and keywordIndexes differ in length");
+        }
+        this.frameLength = frameLength;
+        this.sampleRate = sampleRate;
+        this.fireAtSamples = fireAtSamples.clone();
+        this.keywordIndexes = keywordIndexes.clone();
+        this.costNsPerFrame = costNsPerFrame;
+    }
+
+    @Override
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int process(short[] frame) throws VoiceEngineException {
+        if (frame == null || frame.length != frameLength) {
+            throw new VoiceEngineException("Expected a frame of " + frameLength + " samples");
+        }
+        burn(costNsPerFrame);
+        long end = samplesSeen + frameLength;
+        int result = -1;
+        // Offsets that fell into frames already processed are skipped, not replayed.
+        while (nextFire < fireAtSamples.length && fireAtSamples[nextFire] < end) {
+            if (fireAtSamples[nextFire] >= samplesSeen) result = keywordIndexes[nextFire];
+            nextFire++;
+        }
+        samplesSeen = end;
+        return result;
+    }
+
+    public long getSamplesProcessed() {
+        return samplesSeen;
+    }
+
+    public void rewind() {
+        samplesSeen = 0;
+        nextFire = 0;
+    }
+
+    @Override
+    public void delete() {
+    }
+
+    static void burn(long ns) {
+        if (ns <= 0) return;
+        long until = System.nanoTime() + ns;
+        while (System.nanoTime() < until) {
+            // busy on purpose: stands in for detector CPU time
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// A Settings walk-through loaded from assets/settings_flows.json: which Settings
+// screen to open and the steps to take on it. Each step is a matcher (which node),
+// an action on the matched node and a wait condition that has to hold before the
+// next step starts. ConnectivitySession runs the steps, the accessibility service
+// (ConnectivitySession.Navigator) finds and acts on the nodes.
+public final class SettingsFlow {
+    private static final String TAG = "SettingsFlow";
+    private static final String CONFIG = "settings_flows.json";
+    private static final long DEFAULT_TIMEOUT_MS = 20_000;
+    private static final long DEFAULT_STEP_TIMEOUT_MS = 8_000;
+    public static final String DEFAULT_FLOW = "wifi";
+
+    public enum Action {
+        CLICK,  // the matched node or the nearest clickable around it
+        TOGGLE, // the switch of the matched row, only when it is not already in `checked`
+        NONE    // just wait for the node to be on screen
+    }
+
+    public enum Wait {
+        NONE,   // next step right away
+        WINDOW, // next window change (a new screen)
+        CHANGE, // next window or content change
+        MATCH,  // until `waitFor` is on screen
+        GONE    // until the step's own node has left the screen
+    }
+
+    // What the navigator did with a step.
+    public enum Outcome {
+        NOT_FOUND,
+        ACTED,
+        ALREADY // nothing to do (toggle already in place), the wait is skipped
+    }
+
+    // All given criteria must hold. Texts are compared case-insensitively against the
+    // node's text and content description.
+    public static final class Matcher {
+        public final List<String> text;
+        public final List<String> exclude;
+        public final String viewId;
+        public final String className;
+
+        Matcher(List<String> text, List<String> exclude, String viewId, String className) {
+            this.text = text;
+            this.exclude = exclude;
+            this.viewId = viewId;
+            this.className = className;
+        }
+
+        public boolean matches(CharSequence nodeText, CharSequence description, String nodeViewId, CharSequence nodeClass) {
+            String label = lower(nodeText) + "\n" + lower(description);
+            if (!text.isEmpty() && !containsAny(label, text)) return false;
+            if (containsAny(label, exclude)) return false;
+            if (viewId != null && (nodeViewId == null || !nodeViewId.endsWith(viewId))) return false;
+            return className == null || (nodeClass != null && nodeClass.toString().endsWith(className));
+        }
+
+        private static boolean containsAny(String label, List<String> needles) {
+            for (String needle : needles) {
+                if (label.contains(needle.toLowerCase(Locale.ROOT))) return true;
+            }
+            return false;
+        }
+
+        private static String lower(CharSequence value) {
+            return value == null ? "" : value.toString().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static final class Step {
+        public final String id;
+        public final Matcher match;
+        public final Action action;
+        public final boolean checked;
+        public final Wait waitKind;
+        public final Matcher waitFor;
+        public final long timeoutMs;
+        // Skipped when the next step can already be done (the screen it leads to is showing).
+        public final boolean optional;
+
+        Step(String id, Matcher match, Action action, boolean checked, Wait waitKind, Matcher waitFor,
+             long timeoutMs, boolean optional) {
+            this.id = id;
+            this.match = match;
+            this.action = action;
+            this.checked = checked;
+            this.waitKind = waitKind;
+            this.waitFor = waitFor;
+            this.timeoutMs = timeoutMs;
+            this.optional = optional;
+        }
+    }
+
+    public final String id;
+    // Intent actions tried in order until one opens.
+    public final List<String> settings;
+    // Packages whose accessibility events drive the steps.
+    public final List<String> packages;
+    public final long timeoutMs;
+    public final List<Step> steps;
+
+    SettingsFlow(String id, List<String> settings, List<String> packages, long timeoutMs, List<Step> steps) {
+        this.id = id;
+        this.settings = settings;
+        this.packages = packages;
+        this.timeoutMs = timeoutMs;
+        this.steps = steps;
+    }
+
+    public boolean handlesPackage(String pkg) {
+        for (String candidate : packages) {
+            if (pkg.startsWith(candidate)) return true;
+        }
+        return false;
+    }
+
+    // Flows by id, in file order. Broken entries are skipped with a log line.
+    public static Map<String, SettingsFlow> loadAll(Context context) {
+        Map<String, SettingsFlow> flows = new LinkedHashMap<>();
+        try {
+            JSONArray entries = new JSONObject(readAsset(context, CONFIG)).getJSONArray("flows");
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                try {
+                    SettingsFlow flow = parse(entry);
+                    flows.put(flow.id, flow);
+                } catch (JSONException | IllegalArgumentException e) {
+                    Log.e(TAG, "Skipping flow " + entry.optString("id") + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to load " + CONFIG + ": " + e.getMessage());
+        }
+        Log.d(TAG, "Loaded " + flows.size() + " settings flows");
+        return Collections.unmodifiableMap(flows);
+    }
+
+    static SettingsFlow parse(JSONObject entry) throws JSONException {
+        List<Step> steps = new ArrayList<>();
+        JSONArray stepList = entry.getJSONArray("steps");
+        for (int i = 0; i < stepList.length(); i++) {
+            JSONObject s = stepList.getJSONObject(i);
+            Wait waitKind = Wait.NONE;
+            Matcher waitFor = null;
+            JSONObject wait = s.optJSONObject("wait");
+            if (wait != null) {
+                waitKind = Wait.valueOf(wait.getString("until").toUpperCase(Locale.ROOT));
+                if (waitKind == Wait.MATCH) waitFor = parseMatcher(wait.getJSONObject("match"));
+            }
+            steps.add(new Step(
+                    s.getString("id"),
+                    parseMatcher(s.getJSONObject("match")),
+                    Action.valueOf(s.optString("action", "click").toUpperCase(Locale.ROOT)),
+                    s.optBoolean("checked", true),
+                    waitKind,
+                    waitFor,
+                    s.optLong("timeoutMs", DEFAULT_STEP_TIMEOUT_MS),
+                    s.optBoolean("optional", false)));
+        }
+        if (steps.isEmpty()) throw new IllegalArgumentException("no steps");
+        List<String> packages = strings(entry.optJSONArray("packages"));
+        if (packages.isEmpty()) packages = Collections.singletonList("com.android.settings");
+        return new SettingsFlow(
+                entry.getString("id"),
+                strings(entry.getJSONArray("settings")),
+                packages,
+                entry.optLong("timeoutMs", DEFAULT_TIMEOUT_MS),
+                Collections.unmodifiableList(steps));
+    }
+
+    private static Matcher parseMatcher(JSONObject m) {
+        Matcher matcher = new Matcher(strings(m.optJSONArray("text")), strings(m.optJSONArray("exclude")),
+                m.optString("viewId", null), m.optString("className", null));
+        if (matcher.text.isEmpty() && matcher.viewId == null && matcher.className == null) {
+            throw new IllegalArgumentException("matcher needs text, viewId or className");
+        }
+        return matcher;
+    }
+
+    private static List<String> strings(JSONArray array) {
+        if (array == null) return Collections.emptyList();
+        List<String> values = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) values.add(array.optString(i));
+        return Collections.unmodifiableList(values);
+    }
+
+    private static String readAsset(Context context, String name) throws IOException {
+        try (InputStream in = context.getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
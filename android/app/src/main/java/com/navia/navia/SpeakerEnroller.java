@@ -0,0 +1,12 @@
+package com.navia.navia;
+
+// Builds a speaker profile from enrollment audio; the exported bytes are what
+// SpeakerVerifier instances are created from.
+public interface SpeakerEnroller {
+    // Returns the enrollment progress in percent after consuming pcm.
+    float enroll(short[] pcm) throws VoiceEngineException;
+
+    byte[] export() throws VoiceEngineException;
+
+    void delete();
+}
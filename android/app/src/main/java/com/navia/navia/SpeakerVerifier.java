@@ -0,0 +1,14 @@
+package com.navia.navia;
+
+// Scores frames against one enrolled speaker profile. Scores are in [0, 1] and
+// accumulate over the frames since the last reset(); not thread-safe.
+public interface SpeakerVerifier {
+    int getFrameLength();
+
+    float process(short[] frame) throws VoiceEngineException;
+
+    // Forgets the audio seen so far so the instance can score an unrelated window.
+    void reset() throws VoiceEngineException;
+
+    void delete();
+}
@@ -0,0 +1,243 @@
+package com.navia.navia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Scores several candidate alignments of the keyword inside a verification snapshot
+// in parallel, one SpeakerVerifier instance per worker. The keyword ends close to the
+// end of the snapshot but exactly where is uncertain, so each candidate is a window
+// ending a little earlier than the previous one. The first window whose score crosses
+// the threshold decides and the others stop at their next frame. Instances are reset
+// before every window. Plain Java, so it runs on the JVM with the scripted engines.
+public final class VerifierPool {
+    // ~2 s windows (63 frames of 512 samples at 16 kHz), shifted by ~256 ms. Against the
+    // wake service's 4 s snapshot (125 frames) the CANDIDATES windows reach back
+    // 63 + 3 * 8 = 87 frames, ~2.8 s: the first ~1.2 s of the snapshot is never scored,
+    // and each window scores about half of it.
+    public static final int WINDOW_FRAMES = 63;
+    public static final int STEP_FRAMES = 8;
+    public static final int CANDIDATES = 4;
+    private static final long IDLE_POLL_MS = 20;
+
+    public interface Factory {
+        SpeakerVerifier create() throws VoiceEngineException;
+    }
+
+    public static final class Decision {
+        public final boolean matched;
+        public final float score;
+        // Candidate that decided (or scored best when nothing matched); 0 ends at the snapshot end.
+        public final int window;
+        public final int windowsScored;
+        public final long elapsedNs;
+
+        Decision(boolean matched, float score, int window, int windowsScored, long elapsedNs) {
+            this.matched = matched;
+            this.score = score;
+            this.window = window;
+            this.windowsScored = windowsScored;
+            this.elapsedNs = elapsedNs;
+        }
+    }
+
+    private static final class WindowScore {
+        final int window;
+        final float score;
+        final boolean completed;
+
+        WindowScore(int window, float score, boolean completed) {
+            this.window = window;
+            this.score = score;
+            this.completed = completed;
+        }
+    }
+
+    private final BlockingQueue<SpeakerVerifier> idle;
+    private final List<SpeakerVerifier> all = new ArrayList<>();
+    private final ExecutorService workers;
+    // Set by close(); windows stop at their next frame and hand their instance back.
+    private volatile boolean closed;
+
+    public VerifierPool(int size, Factory factory) throws VoiceEngineException {
+        int n = Math.max(1, size);
+        idle = new ArrayBlockingQueue<>(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                SpeakerVerifier verifier = factory.create();
+                all.add(verifier);
+                idle.add(verifier);
+            }
+        } catch (VoiceEngineException e) {
+            for (SpeakerVerifier verifier : all) verifier.delete();
+            throw e;
+        }
+        final int[] counter = {0};
+        workers = Executors.newFixedThreadPool(n, r -> new Thread(r, "VerifyWorker-" + counter[0]++));
+    }
+
+    // One worker per spare core, capped at the number of candidates.
+    public static int defaultSize() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(CANDIDATES, cores - 1));
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    // audio is chronological, newest sample last.
+    public Decision verify(short[] audio, int frameLength, float threshold)
+            throws VoiceEngineException, InterruptedException {
+        long start = System.nanoTime();
+        int totalFrames = audio.length / frameLength;
+        int windowFrames = Math.min(WINDOW_FRAMES, totalFrames);
+        int candidates = candidates(totalFrames, windowFrames);
+
+        AtomicBoolean decided = new AtomicBoolean(false);
+        CompletionService<WindowScore> completion = new ExecutorCompletionService<>(workers);
+        List<Future<WindowScore>> futures = new ArrayList<>();
+        try {
+            for (int w = 0; w < candidates; w++) {
+                int endFrame = totalFrames - w * STEP_FRAMES;
+                int window = w;
+                futures.add(completion.submit(() ->
+                        scoreWindow(audio, frameLength, endFrame - windowFrames, endFrame, window, threshold, decided)));
+            }
+        } catch (RejectedExecutionException e) {
+            // close() raced this call; the windows already submitted still complete.
+            candidates = futures.size();
+        }
+
+        WindowScore best = null;
+        int scored = 0;
+        VoiceEngineException failure = null;
+        try {
+            for (int i = 0; i < candidates; i++) {
+                WindowScore result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof VoiceEngineException ? (VoiceEngineException) cause
+                            : new VoiceEngineException("Verification failed: " + cause, cause);
+                    continue;
+                }
+                if (result.completed) scored++;
+                if (best == null || result.score > best.score) best = result;
+                if (result.score > threshold) {
+                    decided.set(true);
+                    break;
+                }
+            }
+        } finally {
+            decided.set(true);
+            for (Future<WindowScore> future : futures) future.cancel(false);
+        }
+
+        if (closed) throw new VoiceEngineException("Verifier pool closed");
+        if (best == null) {
+            throw failure != null ? failure : new VoiceEngineException("No window was scored");
+        }
+        return new Decision(best.score > threshold, best.score, best.window, scored, System.nanoTime() - start);
+    }
+
+    // The same windows in turn on the caller's thread with one instance, for callers
+    // that bring their own parallelism (CorpusEvaluator runs one per fork-join pass).
+    // The caller owns the instance and deletes it.
+    public static Decision verifyInline(SpeakerVerifier verifier, short[] audio, int frameLength, float threshold)
+            throws VoiceEngineException {
+        long start = System.nanoTime();
+        int totalFrames = audio.length / frameLength;
+        int windowFrames = Math.min(WINDOW_FRAMES, totalFrames);
+        int candidates = candidates(totalFrames, windowFrames);
+        short[] frame = new short[frameLength];
+        WindowScore best = null;
+        int scored = 0;
+        for (int w = 0; w < candidates; w++) {
+            int endFrame = totalFrames - w * STEP_FRAMES;
+            verifier.reset();
+            float highest = 0;
+            for (int f = endFrame - windowFrames; f < endFrame; f++) {
+                System.arraycopy(audio, f * frameLength, frame, 0, frameLength);
+                float score = verifier.process(frame);
+                if (score > highest) highest = score;
+                if (highest > threshold) break;
+            }
+            scored++;
+            if (best == null || highest > best.score) best = new WindowScore(w, highest, true);
+            if (highest > threshold) break;
+        }
+        if (best == null) throw new VoiceEngineException("No window was scored");
+        return new Decision(best.score > threshold, best.score, best.window, scored, System.nanoTime() - start);
+    }
+
+    // Windows that fit, each STEP_FRAMES earlier than the last, at most CANDIDATES.
+    private static int candidates(int totalFrames, int windowFrames) {
+        int candidates = 1;
+        while (candidates < CANDIDATES && windowFrames + candidates * STEP_FRAMES <= totalFrames) {
+            candidates++;
+        }
+        return candidates;
+    }
+
+    // Runs on a worker. Stops early once the running score is confident or another
+    // window has already decided.
+    private WindowScore scoreWindow(short[] audio, int frameLength, int fromFrame, int toFrame, int window,
+                                    float threshold, AtomicBoolean decided) throws Exception {
+        // Polls so a window queued behind close() sees the flag instead of waiting for an
+        // instance that is about to be deleted.
+        SpeakerVerifier verifier;
+        while ((verifier = idle.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS)) == null) {
+            if (closed) return new WindowScore(window, 0, false);
+        }
+        try {
+            if (closed) return new WindowScore(window, 0, false);
+            verifier.reset();
+            short[] frame = new short[frameLength];
+            float highest = 0;
+            for (int f = fromFrame; f < toFrame; f++) {
+                if (decided.get() || closed) return new WindowScore(window, highest, false);
+                System.arraycopy(audio, f * frameLength, frame, 0, frameLength);
+                float score = verifier.process(frame);
+                if (score > highest) highest = score;
+                if (highest > threshold) break;
+            }
+            return new WindowScore(window, highest, true);
+        } finally {
+            idle.add(verifier);
+        }
+    }
+
+    // Blocks until every instance is back from its window, at most one frame's
+    // process() call, so no native engine is deleted while it is still in use.
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        // No interrupts: queued windows still run, see the flag and finish at once, so
+        // a verify() racing this call gets all its results.
+        workers.shutdown();
+        boolean interrupted = false;
+        List<SpeakerVerifier> returned = new ArrayList<>(all.size());
+        while (returned.size() < all.size()) {
+            try {
+                returned.add(idle.take());
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (SpeakerVerifier verifier : returned) verifier.delete();
+        all.clear();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,13 @@
+package com.navia.navia;
+
+// Vendor-neutral failure of a wake-word or speaker engine; adapters wrap the vendor's
+// own exception as the cause.
+public class VoiceEngineException extends Exception {
+    public VoiceEngineException(String message) {
+        super(message);
+    }
+
+    public VoiceEngineException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
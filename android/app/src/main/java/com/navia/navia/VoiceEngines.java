@@ -0,0 +1,132 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Chooses the wake-word and speaker engines the services run on. The choice is kept
+// in SharedPreferences so a restarted service uses the same engines; "picovoice" is
+// the production setting, "scripted" swaps in the deterministic stand-ins for load
+// and latency runs on devices without real keyword audio.
+public final class VoiceEngines {
+    public static final String PICOVOICE = "picovoice";
+    public static final String SCRIPTED = "scripted";
+
+    static final String PREFS = "voice_engines";
+    private static final String KEY_ENGINE = "engine";
+    private static final String KEY_WAKE_SCRIPT = "wake_script";
+    private static final String KEY_SCORE_SCRIPT = "score_script";
+    private static final String KEY_COST_NS = "cost_ns";
+
+    private static final int SCRIPTED_FRAME_LENGTH = 512;
+    private static final int SCRIPTED_SAMPLE_RATE = 16000;
+    private static final long SCRIPTED_ENROLL_SAMPLES = SCRIPTED_SAMPLE_RATE * 7L;
+
+    private VoiceEngines() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public static String getEngine(Context context) {
+        return prefs(context).getString(KEY_ENGINE, PICOVOICE);
+    }
+
+    // config: engine ("picovoice" | "scripted"), wakeScript ([[sampleOffset, keywordIndex], ...]),
+    // scores ([score per frame, ...]), costNs (per-frame CPU cost of the stand-ins).
+    @SuppressWarnings("unchecked")
+    public static void configure(Context context, Map<String, Object> config) {
+        SharedPreferences.Editor editor = prefs(context).edit();
+        Object engine = config.get("engine");
+        editor.putString(KEY_ENGINE, SCRIPTED.equals(engine) ? SCRIPTED : PICOVOICE);
+
+        StringBuilder wake = new StringBuilder();
+        Object script = config.get("wakeScript");
+        if (script instanceof List) {
+            for (Object entry : (List<Object>) script) {
+                if (!(entry instanceof List) || ((List<Object>) entry).size() < 2) continue;
+                List<Object> pair = (List<Object>) entry;
+                if (wake.length() > 0) wake.append(',');
+                wake.append(((Number) pair.get(0)).longValue()).append(':').append(((Number) pair.get(1)).intValue());
+            }
+        }
+        editor.putString(KEY_WAKE_SCRIPT, wake.toString());
+
+        StringBuilder scores = new StringBuilder();
+        Object scoreList = config.get("scores");
+        if (scoreList instanceof List) {
+            for (Object score : (List<Object>) scoreList) {
+                if (scores.length() > 0) scores.append(',');
+                scores.append(((Number) score).floatValue());
+            }
+        }
+        editor.putString(KEY_SCORE_SCRIPT, scores.toString());
+
+        Object cost = config.get("costNs");
+        editor.putLong(KEY_COST_NS, cost instanceof Number ? ((Number) cost).longValue() : 0L);
+        editor.apply();
+    }
+
+    public static Map<String, Object> describe(Context context) {
+        SharedPreferences p = prefs(context);
+        Map<String, Object> state = new HashMap<>();
+        state.put("engine", p.getString(KEY_ENGINE, PICOVOICE));
+        state.put("wakeScript", p.getString(KEY_WAKE_SCRIPT, ""));
+        state.put("scores", p.getString(KEY_SCORE_SCRIPT, ""));
+        state.put("costNs", p.getLong(KEY_COST_NS, 0L));
+        return state;
+    }
+
+    public static WakeWordEngine createWakeWordEngine(Context context, String accessKey, String[] keywordPaths,
+                                                      float[] sensitivities) throws VoiceEngineException {
+        if (!SCRIPTED.equals(getEngine(context))) {
+            return new PorcupineWakeWordEngine(context, accessKey, keywordPaths, sensitivities);
+        }
+        SharedPreferences p = prefs(context);
+        List<long[]> entries = new ArrayList<>();
+        for (String item : split(p.getString(KEY_WAKE_SCRIPT, ""))) {
+            String[] parts = item.split(":");
+            entries.add(new long[]{Long.parseLong(parts[0]), Integer.parseInt(parts[1])});
+        }
+        long[] offsets = new long[entries.size()];
+        int[] indexes = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i] = entries.get(i)[0];
+            indexes[i] = (int) entries.get(i)[1];
+        }
+        return new ScriptedWakeWordEngine(SCRIPTED_FRAME_LENGTH, SCRIPTED_SAMPLE_RATE, offsets, indexes,
+                p.getLong(KEY_COST_NS, 0L));
+    }
+
+    public static SpeakerVerifier createSpeakerVerifier(Context context, String accessKey,
+                                                        byte[] profile) throws VoiceEngineException {
+        if (!SCRIPTED.equals(getEngine(context))) {
+            return new EagleSpeakerVerifier(context, accessKey, profile);
+        }
+        SharedPreferences p = prefs(context);
+        List<String> items = split(p.getString(KEY_SCORE_SCRIPT, ""));
+        float[] scores = new float[Math.max(1, items.size())];
+        for (int i = 0; i < items.size(); i++) scores[i] = Float.parseFloat(items.get(i));
+        return new ScriptedSpeakerVerifier(SCRIPTED_FRAME_LENGTH, scores, p.getLong(KEY_COST_NS, 0L));
+    }
+
+    public static SpeakerEnroller createSpeakerEnroller(Context context, String accessKey) throws VoiceEngineException {
+        if (!SCRIPTED.equals(getEngine(context))) {
+            return new EagleSpeakerEnroller(context, accessKey);
+        }
+        return new ScriptedSpeakerEnroller(SCRIPTED_ENROLL_SAMPLES);
+    }
+
+    private static List<String> split(String csv) {
+        List<String> items = new ArrayList<>();
+        for (String item : csv.split(",")) {
+            if (!item.trim().isEmpty()) items.add(item.trim());
+        }
+        return items;
+    }
+}
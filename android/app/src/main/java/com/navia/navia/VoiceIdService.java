@@ -18,12 +18,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
-import ai.picovoice.eagle.Eagle;
-import ai.picovoice.eagle.EagleException;
-import ai.picovoice.eagle.EagleProfile;
-import ai.picovoice.eagle.EagleProfiler;
-import ai.picovoice.eagle.EagleProfilerEnrollResult;
 import io.flutter.plugin.common.MethodChannel;
 
 public class VoiceIdService {
@@ -34,14 +30,35 @@ public class VoiceIdService {
     private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNELS, ENCODING);
     private static final int FRAME_LENGTH = 512;
     private static final String PROFILE_FILE = "voice_profile.bin";
+    // The scripted enroller's marker is kept apart so a load run never replaces the real profile.
+    private static final String SCRIPTED_PROFILE_FILE = "voice_profile_scripted.bin";
     private static final int RECORD_DURATION_SECONDS = 7;
     private static final int ENROLLMENT_MULTIPLIER = 4;
-
-    private Eagle eagle;
-    private EagleProfiler eagleProfiler;
+    // Enrollment and verification both see FrontEndSettings-conditioned audio (the wake
+    // capture feeds verification), so the score scale this was chosen on still holds;
+    // re-tune with evaluateCorpus --front-end when the stage defaults change.
+    private static final float VERIFY_THRESHOLD = 0.6f;
+
+    // Engines come from VoiceEngines, so the vendor behind them is a configuration choice.
+    private VerifierPool verifierPool;
+    private String verifierEngine;
+    private SpeakerEnroller enroller;
     private AudioRecord audioRecord;
-    private EagleProfile speakerProfile;
+    private final PlatformAudioEffects platformEffects = new PlatformAudioEffects();
+    private byte[] speakerProfile;
+    // Engine speakerProfile was enrolled or loaded for.
+    private String profileEngine;
     private boolean isRecording = false;
+    private volatile Map<String, Object> lastQuality;
+    // Score and timing behind the last verification result, for wake diagnostics.
+    private volatile VerifierPool.Decision lastDecision;
+
+    // Verification result without the Flutter types, for the :wake process.
+    public interface VerifyCallback {
+        void onResult(boolean matched);
+
+        void onError(String code, String message);
+    }
 
     public VoiceIdService(Context context) {
     }
@@ -79,11 +96,9 @@ public class VoiceIdService {
 
     private void startEnrollment(Context context, MethodChannel.Result result, String accessKey) {
         try {
-            Log.d(TAG, "Initializing EagleProfiler...");
-            eagleProfiler = new EagleProfiler.Builder()
-                    .setAccessKey(accessKey)
-                    .build(context);
-            Log.d(TAG, "EagleProfiler initialized successfully");
+            Log.d(TAG, "Initializing speaker enroller...");
+            enroller = VoiceEngines.createSpeakerEnroller(context, accessKey);
+            Log.d(TAG, "Speaker enroller initialized (" + VoiceEngines.getEngine(context) + ")");
 
             Log.d(TAG, "Starting audio recording...");
             audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, CHANNELS, ENCODING, BUFFER_SIZE);
@@ -93,6 +108,13 @@ public class VoiceIdService {
                 stopRecording();
                 return;
             }
+            // Same conditioning as the wake capture whose audio gets verified against
+            // this profile; a profile of raw audio would score low against it.
+            platformEffects.attach(audioRecord.getAudioSessionId(),
+                    FrontEndSettings.isEnabled(context, FrontEndSettings.PLATFORM_NS),
+                    FrontEndSettings.isEnabled(context, FrontEndSettings.PLATFORM_AGC));
+            AudioFrontEnd frontEnd = new AudioFrontEnd(SAMPLE_RATE);
+            FrontEndSettings.applyTo(context, frontEnd);
             audioRecord.startRecording();
             isRecording = true;
             Log.d(TAG, "Audio recording started");
@@ -102,6 +124,8 @@ public class VoiceIdService {
                     int totalSamples = SAMPLE_RATE * RECORD_DURATION_SECONDS;
                     short[] enrollBuffer = new short[totalSamples];
                     int totalSamplesRead = 0;
+                    EnrollmentQualityAnalyzer quality = new EnrollmentQualityAnalyzer(totalSamples / FRAME_LENGTH);
+                    lastQuality = null;
 
                     Log.d(TAG, "Recording audio for " + RECORD_DURATION_SECONDS + " seconds...");
                     while (isRecording && totalSamplesRead < totalSamples) {
@@ -113,8 +137,17 @@ public class VoiceIdService {
                             return;
                         }
                         int samplesToCopy = Math.min(numRead, totalSamples - totalSamplesRead);
+                        // Quality is judged on the microphone level, before AGC evens it out.
+                        quality.accept(frameBuffer, samplesToCopy);
+                        frontEnd.process(frameBuffer, numRead);
                         System.arraycopy(frameBuffer, 0, enrollBuffer, totalSamplesRead, samplesToCopy);
                         totalSamplesRead += samplesToCopy;
+                        EnrollmentQualityAnalyzer.Report lost = quality.failFast();
+                        if (lost != null) {
+                            // No point recording the rest of a take that cannot pass.
+                            rejectTake(lost, result);
+                            return;
+                        }
                     }
                     Log.d(TAG, "Finished recording audio, total samples read: " + totalSamplesRead);
 
@@ -123,6 +156,14 @@ public class VoiceIdService {
                         return;
                     }
 
+                    EnrollmentQualityAnalyzer.Report report = quality.finish();
+                    lastQuality = report.toMap();
+                    Log.d(TAG, "Enrollment take quality: " + lastQuality);
+                    if (!report.ok()) {
+                        rejectTake(report, result);
+                        return;
+                    }
+
                     int multipliedSamples = totalSamples * ENROLLMENT_MULTIPLIER;
                     short[] multipliedEnrollBuffer = new short[multipliedSamples];
                     for (int i = 0; i < ENROLLMENT_MULTIPLIER; i++) {
@@ -132,22 +173,23 @@ public class VoiceIdService {
 
                     Log.d(TAG, "Starting voice enrollment with multiplied audio...");
                     try {
-                        if (eagleProfiler == null) {
-                            Log.e(TAG, "EagleProfiler is null before enrollment");
-                            runOnUiThread(() -> result.error("ENROLL_ERROR", "EagleProfiler is null", null));
+                        if (enroller == null) {
+                            Log.e(TAG, "Speaker enroller is null before enrollment");
+                            runOnUiThread(() -> result.error("ENROLL_ERROR", "Speaker enroller is null", null));
                             return;
                         }
 
-                        EagleProfilerEnrollResult feedbackResult = eagleProfiler.enroll(multipliedEnrollBuffer);
-                        Log.d(TAG, "Enrollment percentage after single pass: " + feedbackResult.getPercentage());
+                        float percentage = enroller.enroll(multipliedEnrollBuffer);
+                        Log.d(TAG, "Enrollment percentage after single pass: " + percentage);
 
-                        speakerProfile = eagleProfiler.export();
+                        speakerProfile = enroller.export();
+                        profileEngine = VoiceEngines.getEngine(context);
 
-                        saveProfile(context, speakerProfile);
-                        byte[] profileBytes = speakerProfile.getBytes();
+                        saveProfile(profileFile(context, profileEngine), speakerProfile);
+                        byte[] profileBytes = speakerProfile;
                         runOnUiThread(() -> result.success(profileBytes)); // إرسال البيانات الثنائية إلى Dart
 
-                    } catch (EagleException e) {
+                    } catch (VoiceEngineException e) {
                         Log.e(TAG, "Enrollment error: " + e.getMessage(), e);
                         runOnUiThread(() -> result.error("ENROLL_ERROR", e.getMessage(), null));
                     }
@@ -160,8 +202,8 @@ public class VoiceIdService {
                     Log.d(TAG, "Recording stopped");
                 }
             }).start();
-        } catch (EagleException e) {
-            Log.e(TAG, "Failed to initialize EagleProfiler: " + e.getMessage(), e);
+        } catch (VoiceEngineException e) {
+            Log.e(TAG, e.getMessage(), e);
             result.error("ENROLL_INIT_ERROR", e.getMessage(), null);
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error during setup: " + e.getMessage(), e);
@@ -169,19 +211,35 @@ public class VoiceIdService {
         }
     }
 
+    // Fails the enrollment call before the profiler runs; the metrics travel as details.
+    private void rejectTake(EnrollmentQualityAnalyzer.Report report, MethodChannel.Result result) {
+        Map<String, Object> metrics = report.toMap();
+        lastQuality = metrics;
+        Log.w(TAG, "Enrollment take rejected: " + metrics);
+        runOnUiThread(() -> result.error("ENROLL_QUALITY",
+                EnrollmentQualityAnalyzer.describe(report.reason), metrics));
+    }
+
+    // Metrics of the last enrollment take, null before the first one.
+    public Map<String, Object> getLastEnrollmentQuality() {
+        return lastQuality;
+    }
+
+    // Set before the result is posted, so a result callback sees its own decision.
+    public VerifierPool.Decision getLastDecision() {
+        return lastDecision;
+    }
+
     public void resetEnrollment(Context context, MethodChannel.Result result) {
         try {
-            File file = new File(context.getFilesDir(), PROFILE_FILE);
+            File file = profileFile(context, VoiceEngines.getEngine(context));
             if (file.exists()) {
                 file.delete();
             }
             if (speakerProfile != null) {
                 speakerProfile = null;
             }
-            if (eagle != null) {
-                eagle.delete();
-                eagle = null;
-            }
+            releaseVerifier();
             Log.d(TAG, "Enrollment reset successfully");
             result.success("Enrollment reset successfully");
         } catch (Exception e) {
@@ -191,8 +249,7 @@ public class VoiceIdService {
     }
 
     public boolean isProfileEnrolled(Context context) {
-        File profileFile = new File(context.getFilesDir(), PROFILE_FILE);
-        return profileFile.exists();
+        return profileFile(context, VoiceEngines.getEngine(context)).exists();
     }
 
     public void saveVoiceProfile(Context context, List<Integer> voiceProfileBytes, MethodChannel.Result result) {
@@ -203,14 +260,13 @@ public class VoiceIdService {
                 bytes[i] = voiceProfileBytes.get(i).byteValue();
             }
             
-            // Create EagleProfile from bytes
-            EagleProfile profile = new EagleProfile(bytes);
+            // Save to local file; a profile from the server is always a real one
+            saveProfile(profileFile(context, VoiceEngines.PICOVOICE), bytes);
             
-            // Save to local file
-            saveProfile(context, profile);
-            
-            // Store in memory for immediate use
-            speakerProfile = profile;
+            // Store in memory for immediate use; the next verification builds a verifier for it
+            speakerProfile = bytes;
+            profileEngine = VoiceEngines.PICOVOICE;
+            releaseVerifier();
             
             Log.d(TAG, "Voice profile saved successfully from login");
             runOnUiThread(() -> result.success(true));
@@ -220,23 +276,28 @@ public class VoiceIdService {
         }
     }
 
-    private void saveProfile(Context context, EagleProfile profile) throws IOException {
-        File file = new File(context.getFilesDir(), PROFILE_FILE);
+    private static File profileFile(Context context, String engine) {
+        String name = VoiceEngines.SCRIPTED.equals(engine) ? SCRIPTED_PROFILE_FILE : PROFILE_FILE;
+        return new File(context.getFilesDir(), name);
+    }
+
+    private void saveProfile(File file, byte[] profile) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(profile.getBytes());
+            fos.write(profile);
             Log.d(TAG, "Voice profile saved successfully locally");
         }
     }
 
-    private void loadSpeakerProfile(Context context) {
+    private void loadSpeakerProfile(Context context, String engine) {
         try {
-            File file = new File(context.getFilesDir(), PROFILE_FILE);
+            File file = profileFile(context, engine);
             if (file.exists()) {
                 FileInputStream fis = new FileInputStream(file);
                 byte[] data = new byte[(int) file.length()];
                 fis.read(data);
                 fis.close();
-                speakerProfile = new EagleProfile(data);
+                speakerProfile = data;
+                profileEngine = engine;
                 Log.d(TAG, "Speaker profile loaded successfully");
             }
         } catch (Exception e) {
@@ -246,6 +307,7 @@ public class VoiceIdService {
 
     private void stopRecording() {
         isRecording = false;
+        platformEffects.release();
         if (audioRecord != null) {
             try {
                 audioRecord.stop();
@@ -256,71 +318,83 @@ public class VoiceIdService {
                 audioRecord = null;
             }
         }
-        if (eagleProfiler != null) {
+        if (enroller != null) {
             try {
-                eagleProfiler.delete();
+                enroller.delete();
             } catch (Exception e) {
-                Log.e(TAG, "Error deleting EagleProfiler: " + e.getMessage(), e);
+                Log.e(TAG, "Error deleting speaker enroller: " + e.getMessage(), e);
             } finally {
-                eagleProfiler = null;
+                enroller = null;
             }
         }
     }
 
-    public void verifyVoice(Context context, short[] audioBuffer, String accessKey, MethodChannel.Result result) {
+    private void releaseVerifier() {
+        if (verifierPool != null) {
+            verifierPool.close();
+            verifierPool = null;
+            verifierEngine = null;
+        }
+    }
+
+    // Callbacks run on the main thread.
+    public void verifyVoice(Context context, short[] audioBuffer, String accessKey, VerifyCallback result) {
+        lastDecision = null;
+        String engine = VoiceEngines.getEngine(context);
+        if (speakerProfile != null && !engine.equals(profileEngine)) {
+            // The engine was switched since: its profile lives in its own file.
+            speakerProfile = null;
+            releaseVerifier();
+        }
         if (speakerProfile == null) {
             Log.e(TAG, "No voice profile enrolled, attempting to load from file...");
-            loadSpeakerProfile(context);
+            loadSpeakerProfile(context, engine);
             if (speakerProfile == null) {
                 Log.e(TAG, "Voice profile is not enrolled or loaded.");
-                runOnUiThread(() -> result.error("NO_PROFILE", "No voice profile enrolled", null));
+                runOnUiThread(() -> result.onError("NO_PROFILE", "No voice profile enrolled"));
                 return;
             }
         }
 
-        if (eagle == null) {
+        if (verifierPool != null && !engine.equals(verifierEngine)) {
+            releaseVerifier();
+        }
+        if (verifierPool == null) {
             try {
-                eagle = new Eagle.Builder()
-                        .setAccessKey(accessKey)
-                        .setSpeakerProfiles(new EagleProfile[]{speakerProfile})
-                        .build(context);
-                Log.d(TAG, "Eagle initialized for verification.");
-            } catch (EagleException e) {
-                Log.e(TAG, "Failed to initialize Eagle for verification: " + e.getMessage(), e);
-                runOnUiThread(() -> result.error("VERIFY_INIT_ERROR", "Failed to initialize Eagle for verification", null));
+                final byte[] profile = speakerProfile;
+                verifierPool = new VerifierPool(VerifierPool.defaultSize(),
+                        () -> VoiceEngines.createSpeakerVerifier(context, accessKey, profile));
+                verifierEngine = engine;
+                Log.d(TAG, "Speaker verifier pool initialized (" + engine + ", " + verifierPool.size() + " instances).");
+            } catch (VoiceEngineException e) {
+                Log.e(TAG, "Failed to initialize speaker verifier: " + e.getMessage(), e);
+                runOnUiThread(() -> result.onError("VERIFY_INIT_ERROR", "Failed to initialize speaker verifier"));
                 return;
             }
         }
 
         if (audioBuffer == null || audioBuffer.length == 0) {
             Log.e(TAG, "Audio buffer is empty or null");
-            runOnUiThread(() -> result.error("INVALID_BUFFER", "Audio buffer is empty or null", null));
+            runOnUiThread(() -> result.onError("INVALID_BUFFER", "Audio buffer is empty or null"));
             return;
         }
 
+        long traceStart = NabdTrace.begin(NabdTrace.S_VERIFY);
         try {
-            int numFrames = audioBuffer.length / FRAME_LENGTH;
-            float highestScore = 0;
-
-            for (int i = 0; i < numFrames; i++) {
-                short[] frame = new short[FRAME_LENGTH];
-                System.arraycopy(audioBuffer, i * FRAME_LENGTH, frame, 0, FRAME_LENGTH);
-                float[] scores = eagle.process(frame);
-                if (scores.length > 0 && scores[0] > highestScore) {
-                    highestScore = scores[0];
-                }
-            }
-            Log.d(TAG, "Voice verification score: " + highestScore);
-            if (highestScore > 0.6) {
-                Log.d(TAG, "Voice matched");
-                runOnUiThread(() -> result.success(true));
-            } else {
-                Log.d(TAG, "Voice not matched");
-                runOnUiThread(() -> result.success(false));
-            }
-        } catch (EagleException e) {
+            // Candidate keyword alignments are scored in parallel; the first confident one decides.
+            VerifierPool.Decision decision = verifierPool.verify(audioBuffer, FRAME_LENGTH, VERIFY_THRESHOLD);
+            lastDecision = decision;
+            NabdTrace.event(NabdTrace.WAKE_VERIFY_SCORE, NabdTrace.milli(decision.score), decision.matched ? 1 : 0);
+            NabdTrace.event(NabdTrace.WAKE_VERIFY_DECISION, decision.window, decision.elapsedNs / 1000);
+            runOnUiThread(() -> result.onResult(decision.matched));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            runOnUiThread(() -> result.onError("VERIFY_ERROR", "Verification interrupted"));
+        } catch (VoiceEngineException e) {
             Log.e(TAG, "Verification error: " + e.getMessage(), e);
-            runOnUiThread(() -> result.error("VERIFY_ERROR", e.getMessage(), null));
+            runOnUiThread(() -> result.onError("VERIFY_ERROR", e.getMessage()));
+        } finally {
+            NabdTrace.end(NabdTrace.S_VERIFY, traceStart);
         }
     }
 
@@ -0,0 +1,291 @@
+package com.navia.navia;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// UI-process handle on PorcupainService, which runs in the :wake process. Binds
+// without creating the service, so it never starts listening by itself, and binds
+// again whenever the service stops. While connected it feeds the relayed command
+// audio into CommandAudioStream, launches the app for verified wake words and keeps
+// the Flutter engine warm. Main thread only.
+public final class WakeClient {
+    private static final String TAG = "WakeClient";
+    private static final long REPLY_TIMEOUT_MS = 1000;
+    // How long runWhenIdle waits for a service that may not be running at all.
+    private static final long REGISTER_TIMEOUT_MS = 1500;
+
+    public interface Reply {
+        // value is null when the service is not running or did not answer.
+        void onReply(Map<String, Object> value);
+    }
+
+    private static WakeClient instance;
+
+    public static synchronized WakeClient get(Context context) {
+        if (instance == null) instance = new WakeClient(context.getApplicationContext());
+        return instance;
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Messenger incoming = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+    private final Map<Integer, Reply> pendingReplies = new HashMap<>();
+    private final List<Runnable> idleWaiters = new ArrayList<>();
+    private final Runnable idleTimeout = this::runIdleWaiters;
+    private Messenger service;
+    private boolean bound = false;
+    private boolean registered = false;
+    private int nextRequestId = 1;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = new Messenger(binder);
+            Message register = Message.obtain(null, WakeProtocol.MSG_REGISTER);
+            register.replyTo = incoming;
+            if (send(register)) Log.d(TAG, "Connected to the wake process");
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The wake process died; the binding comes back with the sticky restart.
+            Log.w(TAG, "Wake process gone");
+            onLost();
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            onLost();
+            rebind();
+        }
+    };
+
+    private WakeClient(Context context) {
+        this.context = context;
+    }
+
+    // Idempotent. Connects now if the service runs, otherwise as soon as it starts.
+    public void connect() {
+        if (bound) return;
+        bound = context.bindService(new Intent(context, PorcupainService.class), connection, 0);
+        if (!bound) Log.e(TAG, "Cannot bind to the wake service");
+    }
+
+    public boolean isConnected() {
+        return registered;
+    }
+
+    // Start intent for the service, with the UI's settings for the wake process.
+    public Intent startIntent(String apiKey) {
+        Intent intent = new Intent(context, PorcupainService.class);
+        intent.putExtra("apiKey", apiKey);
+        intent.putExtra(WakeProtocol.EXTRA_SETTINGS, WakeProtocol.settingsSnapshot(context));
+        return intent;
+    }
+
+    // The calls below return false when no service is connected, like the old
+    // in-process control being null.
+    public boolean suppress() {
+        return send(Message.obtain(null, WakeProtocol.MSG_SUPPRESS));
+    }
+
+    public boolean resume() {
+        return send(Message.obtain(null, WakeProtocol.MSG_RESUME));
+    }
+
+    // null hands control back to the power policies.
+    public boolean setPowerModeOverride(PowerMode mode) {
+        Message message = Message.obtain(null, WakeProtocol.MSG_SET_POWER_MODE);
+        if (mode != null) message.getData().putString(WakeProtocol.KEY_MODE, mode.name());
+        return send(message);
+    }
+
+    // After FrontEndSettings / VoiceEngines / WakeDiagnostics changed in this process.
+    public boolean syncSettings() {
+        Message message = Message.obtain(null, WakeProtocol.MSG_SYNC_SETTINGS);
+        message.setData(WakeProtocol.settingsSnapshot(context));
+        return send(message);
+    }
+
+    public boolean setTraceEnabled(boolean enabled) {
+        return send(Message.obtain(null, WakeProtocol.MSG_TRACE,
+                enabled ? WakeProtocol.TRACE_ENABLE : WakeProtocol.TRACE_DISABLE, 0));
+    }
+
+    public boolean clearTrace() {
+        return send(Message.obtain(null, WakeProtocol.MSG_TRACE, WakeProtocol.TRACE_CLEAR, 0));
+    }
+
+    // Runs WakeDiagnostics.clear() in the wake process, on the writer that records.
+    public boolean clearDiagnostics() {
+        return send(Message.obtain(null, WakeProtocol.MSG_CLEAR_DIAGNOSTICS));
+    }
+
+    public void getState(Reply reply) {
+        query(WakeProtocol.QUERY_STATE, reply);
+    }
+
+    public void getFrontEndStats(Reply reply) {
+        query(WakeProtocol.QUERY_FRONT_END_STATS, reply);
+    }
+
+    // NabdTrace.dump() of the wake process.
+    public void dumpTrace(Reply reply) {
+        query(WakeProtocol.QUERY_TRACE, reply);
+    }
+
+    // WakeDiagnostics.describe() of the wake process, where events are recorded.
+    public void getDiagnostics(Reply reply) {
+        query(WakeProtocol.QUERY_DIAGNOSTICS, reply);
+    }
+
+    // Runs once the service has handed over any pending command and the command
+    // stream is closed; right away when no service is bound.
+    public void runWhenIdle(Runnable action) {
+        if (registered || !bound) {
+            CommandAudioStream.get().runWhenClosed(action);
+            return;
+        }
+        idleWaiters.add(action);
+        mainHandler.removeCallbacks(idleTimeout);
+        mainHandler.postDelayed(idleTimeout, REGISTER_TIMEOUT_MS);
+    }
+
+    private void query(int what, Reply reply) {
+        if (!registered) {
+            reply.onReply(null);
+            return;
+        }
+        int id = nextRequestId++;
+        Message message = Message.obtain(null, WakeProtocol.MSG_QUERY, id, what);
+        message.replyTo = incoming;
+        pendingReplies.put(id, reply);
+        if (!send(message)) {
+            pendingReplies.remove(id);
+            reply.onReply(null);
+            return;
+        }
+        mainHandler.postDelayed(() -> {
+            Reply late = pendingReplies.remove(id);
+            if (late != null) late.onReply(null);
+        }, REPLY_TIMEOUT_MS);
+    }
+
+    private boolean handleMessage(Message msg) {
+        Bundle data = msg.getData();
+        CommandAudioStream stream = CommandAudioStream.get();
+        switch (msg.what) {
+            case WakeProtocol.EVT_REGISTERED:
+                registered = true;
+                // Have the UI engine ready by the time someone says the wake word.
+                WarmFlutterEngine.warmUpWhenIdle(context);
+                runIdleWaiters();
+                break;
+            case WakeProtocol.EVT_REPLY: {
+                Reply reply = pendingReplies.remove(msg.arg1);
+                if (reply != null) reply.onReply(WakeProtocol.value(data));
+                break;
+            }
+            case WakeProtocol.EVT_COMMAND_START:
+                if (!stream.open(data.getString(WakeProtocol.KEY_KEYWORD),
+                        data.getInt(WakeProtocol.KEY_SAMPLE_RATE), data.getInt(WakeProtocol.KEY_FRAME_LENGTH))) {
+                    Log.w(TAG, "Previous command still being delivered, dropping this one");
+                }
+                break;
+            case WakeProtocol.EVT_COMMAND_PCM: {
+                short[] pcm = data.getShortArray(WakeProtocol.KEY_PCM);
+                if (pcm != null) stream.write(pcm, pcm.length);
+                break;
+            }
+            case WakeProtocol.EVT_COMMAND_END:
+                stream.close(data.getString(WakeProtocol.KEY_REASON));
+                break;
+            case WakeProtocol.EVT_OPEN_APP:
+                openApp(data.getString(WakeProtocol.KEY_KEYWORD), data.getString(WakeProtocol.KEY_ACTION),
+                        data.getString(WakeProtocol.KEY_COMMAND));
+                break;
+            case WakeProtocol.EVT_STOPPED:
+                Log.d(TAG, "Wake service stopped");
+                stream.close(CommandAudioStream.END_STOPPED);
+                onLost();
+                rebind();
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private void openApp(String keywordId, String action, String command) {
+        AutoOpenAccessibilityService a11y = AutoOpenAccessibilityService.getInstance();
+        if (a11y != null) {
+            AutoOpenAccessibilityService.launchApp(a11y, keywordId, action, command);
+            Log.d(TAG, "App launched using AccessibilityService");
+            return;
+        }
+        Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (launchIntent == null) {
+            Log.e(TAG, "Launch intent is null.");
+            return;
+        }
+        launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        launchIntent.putExtra(PorcupainService.EXTRA_WAKE_KEYWORD, keywordId);
+        launchIntent.putExtra(PorcupainService.EXTRA_WAKE_ACTION, action);
+        launchIntent.putExtra(PorcupainService.EXTRA_WAKE_COMMAND, command);
+        context.startActivity(launchIntent);
+        Log.d(TAG, "App launched via getLaunchIntentForPackage");
+    }
+
+    private boolean send(Message message) {
+        if (service == null) return false;
+        try {
+            service.send(message);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "Wake process unreachable: " + e.getMessage());
+            onLost();
+            return false;
+        }
+    }
+
+    private void onLost() {
+        service = null;
+        registered = false;
+        List<Reply> replies = new ArrayList<>(pendingReplies.values());
+        pendingReplies.clear();
+        for (Reply reply : replies) reply.onReply(null);
+    }
+
+    // A stopped service does not bring an unbound-flag binding back; bind afresh so
+    // the next start connects again.
+    private void rebind() {
+        if (bound) {
+            context.unbindService(connection);
+            bound = false;
+        }
+        connect();
+    }
+
+    private void runIdleWaiters() {
+        mainHandler.removeCallbacks(idleTimeout);
+        if (idleWaiters.isEmpty()) return;
+        List<Runnable> ready = new ArrayList<>(idleWaiters);
+        idleWaiters.clear();
+        for (Runnable action : ready) CommandAudioStream.get().runWhenClosed(action);
+    }
+}
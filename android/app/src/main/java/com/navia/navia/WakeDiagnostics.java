@@ -0,0 +1,356 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Keeps the last few wake events, accepted and rejected, for "it doesn't wake for me"
+// reports: the audio the verifier saw (IMA ADPCM WAV), the verification score and the
+// timings, as a .wav plus a .json sidecar per event under files/wake_diagnostics.
+// Off by default. record() only queues: encoding and file I/O run on one background
+// writer, events that would push the queued audio past MEMORY_BUDGET_BYTES are
+// dropped, and the oldest events are deleted to stay within maxEvents and
+// DISK_BUDGET_BYTES. Nothing here runs on the capture thread.
+public final class WakeDiagnostics {
+    private static final String TAG = "WakeDiagnostics";
+    static final String PREFS = "wake_diagnostics";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_MAX_EVENTS = "maxEvents";
+    private static final String DIR = "wake_diagnostics";
+    private static final String EXPORT_NAME = "wake_diagnostics.zip";
+
+    public static final String ACCEPTED = "accepted";
+    public static final String REJECTED = "rejected";
+    public static final String ERROR = "error";
+
+    static final int DEFAULT_MAX_EVENTS = 20;
+    static final int MAX_EVENTS_LIMIT = 100;
+    static final long DISK_BUDGET_BYTES = 4L * 1024 * 1024;
+    static final long MEMORY_BUDGET_BYTES = 1024 * 1024;
+
+    private static volatile WakeDiagnostics instance;
+
+    public static final class Event {
+        final String keyword;
+        final String outcome;
+        final String detail;
+        final float score;
+        final int window;
+        final double verifyMs;
+        final double decisionMs;
+        final long frameNumber;
+        final long wallTimeMs;
+        final String powerMode;
+        final float sensitivity;
+        final int sampleRate;
+        // Shared with the verifier, never written after the snapshot.
+        final short[] audio;
+
+        public Event(String keyword, String outcome, String detail, float score, int window,
+                     double verifyMs, double decisionMs, long frameNumber, long wallTimeMs,
+                     String powerMode, float sensitivity, int sampleRate, short[] audio) {
+            this.keyword = keyword;
+            this.outcome = outcome;
+            this.detail = detail;
+            this.score = score;
+            this.window = window;
+            this.verifyMs = verifyMs;
+            this.decisionMs = decisionMs;
+            this.frameNumber = frameNumber;
+            this.wallTimeMs = wallTimeMs;
+            this.powerMode = powerMode;
+            this.sensitivity = sensitivity;
+            this.sampleRate = sampleRate;
+            this.audio = audio;
+        }
+
+        long bytes() {
+            return (long) audio.length * 2;
+        }
+    }
+
+    private final Context context;
+    private final File dir;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "WakeDiagnostics"));
+    private final Object budgetLock = new Object();
+    private long pendingBytes = 0;
+    private volatile boolean enabled;
+    private volatile int maxEvents;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong writeNsTotal = new AtomicLong();
+
+    public static WakeDiagnostics get(Context context) {
+        WakeDiagnostics local = instance;
+        if (local == null) {
+            synchronized (WakeDiagnostics.class) {
+                local = instance;
+                if (local == null) {
+                    local = new WakeDiagnostics(context.getApplicationContext());
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    private WakeDiagnostics(Context context) {
+        this.context = context;
+        this.dir = new File(context.getFilesDir(), DIR);
+        SharedPreferences prefs = prefs();
+        enabled = prefs.getBoolean(KEY_ENABLED, false);
+        maxEvents = prefs.getInt(KEY_MAX_EVENTS, DEFAULT_MAX_EVENTS);
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // config: enabled (bool), maxEvents (int, 1..MAX_EVENTS_LIMIT). Keys left out keep
+    // their current value; lowering maxEvents trims the store right away.
+    public void configure(Map<String, Object> config) {
+        SharedPreferences.Editor editor = prefs().edit();
+        Object on = config.get(KEY_ENABLED);
+        if (on instanceof Boolean) {
+            enabled = (Boolean) on;
+            editor.putBoolean(KEY_ENABLED, enabled);
+        }
+        Object max = config.get(KEY_MAX_EVENTS);
+        if (max instanceof Number) {
+            maxEvents = Math.max(1, Math.min(MAX_EVENTS_LIMIT, ((Number) max).intValue()));
+            editor.putInt(KEY_MAX_EVENTS, maxEvents);
+            writer.execute(this::enforceBudget);
+        }
+        editor.apply();
+    }
+
+    // Never blocks: the event is queued for the writer or dropped.
+    public void record(Event event) {
+        if (!enabled || event.audio == null || event.audio.length == 0) return;
+        long bytes = event.bytes();
+        synchronized (budgetLock) {
+            if (pendingBytes + bytes > MEMORY_BUDGET_BYTES) {
+                dropped.incrementAndGet();
+                return;
+            }
+            pendingBytes += bytes;
+        }
+        writer.execute(() -> {
+            try {
+                write(event);
+                enforceBudget();
+            } finally {
+                synchronized (budgetLock) {
+                    pendingBytes -= bytes;
+                }
+            }
+        });
+    }
+
+    private void write(Event event) {
+        long t0 = SystemClock.elapsedRealtimeNanos();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            writeErrors.incrementAndGet();
+            return;
+        }
+        String base = String.format(Locale.US, "%013d_%s", event.wallTimeMs, event.outcome);
+        File wav = new File(dir, base + ".wav");
+        File json = new File(dir, base + ".json");
+        File wavTmp = new File(dir, base + ".wav.tmp");
+        File jsonTmp = new File(dir, base + ".json.tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(wavTmp))) {
+                ImaAdpcm.writeWav(out, event.audio, 0, event.audio.length, event.sampleRate);
+            }
+            try (OutputStream out = new FileOutputStream(jsonTmp)) {
+                out.write(metadata(event, wav.getName()).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            // Both files appear only once complete, the sidecar last: list() reads
+            // sidecars, so it never offers an event whose clip is missing or partial.
+            if (!wavTmp.renameTo(wav)) throw new IOException("rename failed");
+            if (!jsonTmp.renameTo(json)) {
+                wav.delete();
+                throw new IOException("rename failed");
+            }
+            recorded.incrementAndGet();
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to write " + base + ": " + e.getMessage());
+            writeErrors.incrementAndGet();
+            wavTmp.delete();
+            jsonTmp.delete();
+        }
+        writeNsTotal.addAndGet(SystemClock.elapsedRealtimeNanos() - t0);
+    }
+
+    private static JSONObject metadata(Event event, String clip) throws JSONException {
+        return new JSONObject()
+                .put("id", clip.substring(0, clip.length() - 4))
+                .put("clip", clip)
+                .put("keyword", event.keyword)
+                .put("outcome", event.outcome)
+                .put("detail", event.detail)
+                .put("score", Float.isNaN(event.score) ? JSONObject.NULL : (double) event.score)
+                .put("window", event.window)
+                .put("verifyMs", event.verifyMs)
+                .put("decisionMs", event.decisionMs)
+                .put("frameNumber", event.frameNumber)
+                .put("wallTimeMs", event.wallTimeMs)
+                .put("powerMode", event.powerMode)
+                .put("sensitivity", (double) event.sensitivity)
+                .put("sampleRate", event.sampleRate)
+                .put("samples", event.audio.length)
+                .put("encoding", "ima_adpcm");
+    }
+
+    // Writer thread. Oldest first (names start with the wall time) until both budgets hold.
+    private void enforceBudget() {
+        File[] clips = dir.listFiles((d, name) -> name.endsWith(".wav"));
+        if (clips == null) return;
+        Arrays.sort(clips, (a, b) -> a.getName().compareTo(b.getName()));
+        long total = 0;
+        for (File clip : clips) total += clip.length() + sidecar(clip).length();
+        int count = clips.length;
+        for (File clip : clips) {
+            if (count <= maxEvents && total <= DISK_BUDGET_BYTES) break;
+            File json = sidecar(clip);
+            total -= clip.length() + json.length();
+            clip.delete();
+            json.delete();
+            count--;
+        }
+    }
+
+    private static File sidecar(File clip) {
+        String name = clip.getName();
+        return new File(clip.getParentFile(), name.substring(0, name.length() - 4) + ".json");
+    }
+
+    // Saved events, newest first, each the sidecar's fields.
+    public List<Map<String, Object>> list() {
+        List<Map<String, Object>> events = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) return events;
+        Arrays.sort(files, (a, b) -> b.getName().compareTo(a.getName()));
+        for (File file : files) {
+            try {
+                JSONObject json = new JSONObject(new String(readAll(file), StandardCharsets.UTF_8));
+                Map<String, Object> event = new HashMap<>();
+                for (Iterator<String> keys = json.keys(); keys.hasNext(); ) {
+                    String key = keys.next();
+                    event.put(key, json.get(key));
+                }
+                events.add(event);
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Unreadable " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    // Blocking; call off the main thread. Zips every saved event (or just the clip
+    // with this id) into the cache directory and returns the archive, null when empty.
+    public File export(String id) throws IOException {
+        File[] files = dir.listFiles((d, name) -> (name.endsWith(".wav") || name.endsWith(".json"))
+                && (id == null || name.startsWith(id + ".")));
+        if (files == null || files.length == 0) return null;
+        File archive = new File(context.getCacheDir(), EXPORT_NAME);
+        byte[] buffer = new byte[16 * 1024];
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)))) {
+            for (File file : files) {
+                zip.putNextEntry(new ZipEntry(file.getName()));
+                try (InputStream in = new FileInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) zip.write(buffer, 0, n);
+                }
+                zip.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    // Deletes on this process's writer, so call it where events are recorded: the UI
+    // process goes through WakeClient.clearDiagnostics().
+    public void clear() {
+        writer.execute(() -> {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            for (File file : files) file.delete();
+        });
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> state = new HashMap<>();
+        File[] clips = dir.listFiles((d, name) -> name.endsWith(".wav") || name.endsWith(".json"));
+        long diskBytes = 0;
+        int count = 0;
+        if (clips != null) {
+            for (File file : clips) {
+                diskBytes += file.length();
+                if (file.getName().endsWith(".wav")) count++;
+            }
+        }
+        long written = recorded.get();
+        state.put("enabled", enabled);
+        state.put("maxEvents", maxEvents);
+        state.put("events", count);
+        state.put("diskBytes", diskBytes);
+        state.put("diskBudgetBytes", DISK_BUDGET_BYTES);
+        synchronized (budgetLock) {
+            state.put("pendingBytes", pendingBytes);
+        }
+        state.put("memoryBudgetBytes", MEMORY_BUDGET_BYTES);
+        state.put("recorded", written);
+        state.put("dropped", dropped.get());
+        state.put("writeErrors", writeErrors.get());
+        state.put("avgWriteMs", written == 0 ? 0.0 : writeNsTotal.get() / 1e6 / written);
+        return state;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int n = 0;
+            while (n < data.length) {
+                int read = in.read(data, n, data.length - n);
+                if (read < 0) break;
+                n += read;
+            }
+            return n == data.length ? data : Arrays.copyOf(data, n);
+        }
+    }
+}
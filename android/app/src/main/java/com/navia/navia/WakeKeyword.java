@@ -0,0 +1,24 @@
+package com.navia.navia;
+
+// One wake keyword: a Porcupine model in assets, its sensitivity and the app action
+// it triggers once the speaker is verified. Actions are "open", "tab:<index>" or
+// "intent:<page>:<intent id>" and are interpreted on the Flutter side.
+public final class WakeKeyword {
+    public final String id;
+    public final String modelPath;
+    public final float sensitivity;
+    public final String action;
+
+    public WakeKeyword(String id, String modelPath, float sensitivity, String action) {
+        this.id = id;
+        this.modelPath = modelPath;
+        this.sensitivity = sensitivity;
+        this.action = action;
+    }
+
+    // Sensitivity after the power mode's offset from full-power listening.
+    public float sensitivityFor(PowerMode mode) {
+        float s = sensitivity + (mode.sensitivity - PowerMode.FULL.sensitivity);
+        return Math.max(0f, Math.min(1f, s));
+    }
+}
@@ -0,0 +1,109 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+// Messages between WakeClient (UI process) and PorcupainService (:wake process).
+// Payloads travel in the message's data Bundle; queries carry a request id in arg1
+// that the EVT_REPLY echoes back.
+final class WakeProtocol {
+    // UI -> wake
+    static final int MSG_REGISTER = 1;
+    static final int MSG_UNREGISTER = 2;
+    static final int MSG_SUPPRESS = 3;
+    static final int MSG_RESUME = 4;
+    static final int MSG_SET_POWER_MODE = 5;   // KEY_MODE, absent for automatic
+    static final int MSG_SYNC_SETTINGS = 6;    // settingsSnapshot()
+    static final int MSG_QUERY = 7;            // arg1 = request id, arg2 = QUERY_*
+    static final int MSG_TRACE = 8;            // arg1 = TRACE_*
+    static final int MSG_CLEAR_DIAGNOSTICS = 9;
+
+    // wake -> UI
+    static final int EVT_REGISTERED = 101;     // after the replay of a pending command
+    static final int EVT_REPLY = 102;          // arg1 = request id, KEY_VALUE
+    static final int EVT_COMMAND_START = 103;  // KEY_KEYWORD, KEY_SAMPLE_RATE, KEY_FRAME_LENGTH
+    static final int EVT_COMMAND_PCM = 104;    // KEY_PCM
+    static final int EVT_COMMAND_END = 105;    // KEY_REASON
+    static final int EVT_OPEN_APP = 106;       // KEY_KEYWORD, KEY_ACTION, KEY_COMMAND
+    static final int EVT_STOPPED = 107;
+
+    static final int QUERY_STATE = 1;
+    static final int QUERY_FRONT_END_STATS = 2;
+    static final int QUERY_TRACE = 3;
+    static final int QUERY_DIAGNOSTICS = 4;
+
+    static final int TRACE_DISABLE = 0;
+    static final int TRACE_ENABLE = 1;
+    static final int TRACE_CLEAR = 2;
+
+    static final String KEY_MODE = "mode";
+    static final String KEY_VALUE = "value";
+    static final String KEY_KEYWORD = "keyword";
+    static final String KEY_ACTION = "action";
+    static final String KEY_COMMAND = "command";
+    static final String KEY_SAMPLE_RATE = "sampleRate";
+    static final String KEY_FRAME_LENGTH = "frameLength";
+    static final String KEY_PCM = "pcm";
+    static final String KEY_REASON = "reason";
+
+    // Start intent extra carrying settingsSnapshot().
+    static final String EXTRA_SETTINGS = "settings";
+
+    // Settings the UI writes and the wake process reads. SharedPreferences are cached
+    // per process, so the UI's values are handed over instead of re-read from disk.
+    private static final String[] SHARED_PREFS = {FrontEndSettings.PREFS, VoiceEngines.PREFS};
+
+    private WakeProtocol() {
+    }
+
+    static Bundle settingsSnapshot(Context context) {
+        Bundle settings = new Bundle();
+        for (String name : SHARED_PREFS) settings.putSerializable(name, new HashMap<>(prefs(context, name).getAll()));
+        settings.putSerializable(WakeDiagnostics.PREFS,
+                new HashMap<>(prefs(context, WakeDiagnostics.PREFS).getAll()));
+        return settings;
+    }
+
+    // Wake process. Overwrites its copy of the settings with the UI's snapshot.
+    @SuppressWarnings("unchecked")
+    static void applySettings(Context context, Bundle settings) {
+        for (String name : SHARED_PREFS) {
+            Serializable values = settings.getSerializable(name);
+            if (!(values instanceof Map)) continue;
+            SharedPreferences.Editor editor = prefs(context, name).edit().clear();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) values).entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Boolean) editor.putBoolean(entry.getKey(), (Boolean) value);
+                else if (value instanceof Integer) editor.putInt(entry.getKey(), (Integer) value);
+                else if (value instanceof Long) editor.putLong(entry.getKey(), (Long) value);
+                else if (value instanceof Float) editor.putFloat(entry.getKey(), (Float) value);
+                else if (value instanceof String) editor.putString(entry.getKey(), (String) value);
+            }
+            editor.apply();
+        }
+        // The recorder keeps its switches in memory; its prefs keys are its config keys.
+        Serializable diagnostics = settings.getSerializable(WakeDiagnostics.PREFS);
+        if (diagnostics instanceof Map) WakeDiagnostics.get(context).configure((Map<String, Object>) diagnostics);
+    }
+
+    static Bundle value(Map<String, Object> value) {
+        Bundle data = new Bundle();
+        data.putSerializable(KEY_VALUE, value != null ? new HashMap<>(value) : null);
+        return data;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> value(Bundle data) {
+        Serializable value = data.getSerializable(KEY_VALUE);
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    private static SharedPreferences prefs(Context context, String name) {
+        return context.getApplicationContext().getSharedPreferences(name, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,215 @@
+package com.navia.navia;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Wake-process end of the link to the UI process: the registered WakeClients and the
+// command audio that follows a wake word. The capture thread opens, writes and closes
+// a command here the way it used to on CommandAudioStream; the relay forwards it to
+// the clients, which feed their CommandAudioStream.
+//
+// A command nobody received is kept (bounded by CommandEndpoint's duration cap) and
+// replayed to the next client that registers, so a UI process that is only starting
+// because of this wake word still gets the whole command. Inside the wake process a
+// Tap (the bubble's recognizer) can read the same command.
+final class WakeRelay {
+    private static final String TAG = "WakeRelay";
+    // An undelivered command is dropped after this long; the UI never came up.
+    private static final long REPLAY_TTL_MS = 15_000;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CommandEndpoint endpoint = new CommandEndpoint();
+    private final Runnable expire = this::dropCommand;
+
+    // Main thread. Gets the frames captured so far, then each new one, then the end.
+    interface Tap {
+        void onFrame(short[] frame);
+
+        void onEnd(String reason);
+    }
+
+    // Guarded by this.
+    private boolean open = false;
+
+    // Main-thread state.
+    private final List<Messenger> clients = new ArrayList<>();
+    private Bundle start;
+    private final List<short[]> frames = new ArrayList<>();
+    private Bundle end;
+    private Tap tap;
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    // Capture thread. Starts a command; returns false if one is already open.
+    boolean open(String keywordId, int rate, int frameLength) {
+        synchronized (this) {
+            if (open) return false;
+            open = true;
+            endpoint.reset(rate);
+        }
+        Bundle data = new Bundle();
+        data.putString(WakeProtocol.KEY_KEYWORD, keywordId);
+        data.putInt(WakeProtocol.KEY_SAMPLE_RATE, rate);
+        data.putInt(WakeProtocol.KEY_FRAME_LENGTH, frameLength);
+        Log.d(TAG, "Opened for '" + keywordId + "'");
+        NabdTrace.event(NabdTrace.WAKE_COMMAND_STREAM, 1);
+        mainHandler.post(() -> {
+            mainHandler.removeCallbacks(expire);
+            start = data;
+            frames.clear();
+            end = null;
+            broadcast(WakeProtocol.EVT_COMMAND_START, data);
+        });
+        return true;
+    }
+
+    // Capture thread. Forwards one frame; ends the command on trailing silence or
+    // on the duration cap.
+    void write(short[] frame, int length) {
+        String endReason;
+        synchronized (this) {
+            if (!open) return;
+            endReason = endpoint.onFrame(frame, length);
+        }
+        short[] copy = Arrays.copyOf(frame, length);
+        mainHandler.post(() -> {
+            frames.add(copy);
+            if (tap != null) tap.onFrame(copy);
+            broadcast(WakeProtocol.EVT_COMMAND_PCM, pcm(copy));
+        });
+        if (endReason != null) close(endReason);
+    }
+
+    // Any thread.
+    void close(String reason) {
+        long durationMs;
+        synchronized (this) {
+            if (!open) return;
+            open = false;
+            durationMs = endpoint.durationMs();
+        }
+        Bundle data = new Bundle();
+        data.putString(WakeProtocol.KEY_REASON, reason);
+        Log.d(TAG, "Closed (" + reason + ") after " + durationMs + "ms");
+        NabdTrace.event(NabdTrace.WAKE_COMMAND_STREAM, 0, durationMs);
+        mainHandler.post(() -> {
+            end = data;
+            boolean tapped = endTap(reason);
+            if (broadcast(WakeProtocol.EVT_COMMAND_END, data) > 0 || tapped) {
+                dropCommand();
+            } else {
+                mainHandler.postDelayed(expire, REPLAY_TTL_MS);
+            }
+        });
+    }
+
+    // Main thread. Hands the command in progress (or the finished, undelivered one) to
+    // tap; false when there is none. The capture thread may still be opening it, in
+    // which case the frames arrive with the start.
+    boolean tap(Tap tap) {
+        if (start == null && !isOpen()) return false;
+        this.tap = tap;
+        if (start == null) return true;
+        for (short[] frame : frames) tap.onFrame(frame);
+        if (end != null) {
+            endTap(end.getString(WakeProtocol.KEY_REASON));
+            dropCommand();
+        }
+        return true;
+    }
+
+    void untap(Tap tap) {
+        if (this.tap == tap) this.tap = null;
+    }
+
+    private boolean endTap(String reason) {
+        Tap local = tap;
+        tap = null;
+        if (local != null) local.onEnd(reason);
+        return local != null;
+    }
+
+    // Main thread. Replays the command in progress or the undelivered one, then
+    // confirms the registration.
+    void register(Messenger client) {
+        if (client == null || clients.contains(client)) return;
+        clients.add(client);
+        Log.d(TAG, "Client registered (" + clients.size() + ")");
+        if (start != null) {
+            boolean sent = send(client, WakeProtocol.EVT_COMMAND_START, start);
+            for (int i = 0; sent && i < frames.size(); i++) {
+                sent = send(client, WakeProtocol.EVT_COMMAND_PCM, pcm(frames.get(i)));
+            }
+            if (sent && end != null) {
+                send(client, WakeProtocol.EVT_COMMAND_END, end);
+                dropCommand();
+            }
+        }
+        send(client, WakeProtocol.EVT_REGISTERED, null);
+    }
+
+    void unregister(Messenger client) {
+        clients.remove(client);
+    }
+
+    boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    // Main thread. Returns how many clients got the message; dead ones are dropped.
+    int broadcast(int what, Bundle data) {
+        int delivered = 0;
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            if (send(clients.get(i), what, data)) delivered++;
+        }
+        return delivered;
+    }
+
+    // Main thread. The service is going away: pending deliveries first, then the
+    // stop notice, after which clients re-bind and wait for the next start.
+    void shutdown() {
+        mainHandler.post(() -> {
+            endTap(CommandAudioStream.END_STOPPED);
+            broadcast(WakeProtocol.EVT_STOPPED, null);
+            clients.clear();
+            dropCommand();
+        });
+    }
+
+    boolean send(Messenger client, int what, Bundle data) {
+        Message message = Message.obtain(null, what);
+        if (data != null) message.setData(data);
+        try {
+            client.send(message);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "Client gone, unregistering");
+            clients.remove(client);
+            return false;
+        }
+    }
+
+    private void dropCommand() {
+        mainHandler.removeCallbacks(expire);
+        start = null;
+        frames.clear();
+        end = null;
+    }
+
+    private static Bundle pcm(short[] frame) {
+        Bundle data = new Bundle();
+        data.putShortArray(WakeProtocol.KEY_PCM, frame);
+        return data;
+    }
+}
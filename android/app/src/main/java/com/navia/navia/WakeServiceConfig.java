@@ -0,0 +1,112 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// What PorcupainService needs to come back on its own after the process is killed:
+// the sealed access key handle, the keyword set it was listening for, the power mode
+// override and the suppression state. Written on every explicit start and on each
+// change, read when the system restarts the sticky service with a null intent.
+public final class WakeServiceConfig {
+    private static final String TAG = "WakeServiceConfig";
+    private static final String PREFS = "wake_service";
+    private static final String KEY_ACTIVE = "active";
+    private static final String KEY_ACCESS_KEY = "access_key_handle";
+    private static final String KEY_KEYWORDS = "keywords";
+    private static final String KEY_POWER_OVERRIDE = "power_override";
+    private static final String KEY_SUPPRESSED_AT = "suppressed_at";
+
+    private WakeServiceConfig() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    // An explicit start: remember the key and keywords and that listening should survive.
+    public static void saveStart(Context context, String accessKey, List<WakeKeyword> keywords) {
+        JSONArray list = new JSONArray();
+        try {
+            for (WakeKeyword keyword : keywords) {
+                list.put(new JSONObject()
+                        .put("id", keyword.id)
+                        .put("model", keyword.modelPath)
+                        .put("sensitivity", keyword.sensitivity)
+                        .put("action", keyword.action));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to save keywords: " + e.getMessage());
+        }
+        String handle = KeyVault.seal(accessKey);
+        if (handle == null) Log.w(TAG, "Access key not sealed; a restart will wait for the app");
+        prefs(context).edit()
+                .putBoolean(KEY_ACTIVE, true)
+                .putString(KEY_ACCESS_KEY, handle)
+                .putString(KEY_KEYWORDS, list.toString())
+                .apply();
+    }
+
+    // An explicit stop: a later sticky restart should not bring listening back.
+    public static void setActive(Context context, boolean active) {
+        prefs(context).edit().putBoolean(KEY_ACTIVE, active).apply();
+    }
+
+    public static boolean isActive(Context context) {
+        return prefs(context).getBoolean(KEY_ACTIVE, false);
+    }
+
+    public static String accessKey(Context context) {
+        return KeyVault.open(prefs(context).getString(KEY_ACCESS_KEY, null));
+    }
+
+    // Null when nothing usable was saved.
+    public static List<WakeKeyword> keywords(Context context) {
+        String json = prefs(context).getString(KEY_KEYWORDS, null);
+        if (json == null) return null;
+        try {
+            JSONArray list = new JSONArray(json);
+            List<WakeKeyword> keywords = new ArrayList<>();
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject e = list.getJSONObject(i);
+                keywords.add(new WakeKeyword(e.getString("id"), e.getString("model"),
+                        (float) e.getDouble("sensitivity"), e.getString("action")));
+            }
+            return keywords.isEmpty() ? null : Collections.unmodifiableList(keywords);
+        } catch (JSONException e) {
+            Log.e(TAG, "Saved keywords unreadable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void setPowerOverride(Context context, PowerMode mode) {
+        prefs(context).edit().putString(KEY_POWER_OVERRIDE, mode == null ? null : mode.name()).apply();
+    }
+
+    public static PowerMode powerOverride(Context context) {
+        String name = prefs(context).getString(KEY_POWER_OVERRIDE, null);
+        if (name == null) return null;
+        try {
+            return PowerMode.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Wall-clock time suppression started, 0 when not suppressed.
+    public static void setSuppressedAt(Context context, long wallMs) {
+        prefs(context).edit().putLong(KEY_SUPPRESSED_AT, wallMs).apply();
+    }
+
+    public static long suppressedAt(Context context) {
+        return prefs(context).getLong(KEY_SUPPRESSED_AT, 0L);
+    }
+}
@@ -0,0 +1,29 @@
+package com.navia.navia;
+
+import java.util.Map;
+
+// Control surface of the wake-word service inside the :wake process, obtained through
+// PorcupainService.getControl(). The UI process goes through WakeClient, whose
+// messages (WakeProtocol) map onto these calls.
+public interface WakeWordControl {
+    // Stops wake-word detection, parks the capture thread and releases the mic.
+    void suppress();
+
+    // Reopens the mic and resumes detection.
+    void resume();
+
+    boolean isSuppressed();
+
+    // Pins the listening mode; null hands control back to the power policies.
+    void setPowerModeOverride(PowerMode mode);
+
+    // Re-reads FrontEndSettings into the live capture; applies from the next frame.
+    void reloadFrontEnd();
+
+    // Per-stage timings of the software front end plus the platform effects' state.
+    Map<String, Object> getFrontEndStats();
+
+    // running, suppressed, lastSuppressMs, lastResumeMs, lastRestoreMs,
+    // lastRestoreSinceProcessStartMs, powerMode, per-mode power counters
+    Map<String, Object> getState();
+}
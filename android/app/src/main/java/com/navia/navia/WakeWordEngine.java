@@ -0,0 +1,14 @@
+package com.navia.navia;
+
+// Frame-level keyword spotter. Fed 16 kHz mono PCM in frames of getFrameLength()
+// samples; not thread-safe, the caller owns the instance.
+public interface WakeWordEngine {
+    int getFrameLength();
+
+    int getSampleRate();
+
+    // Index of the keyword that ended in this frame, or -1.
+    int process(short[] frame) throws VoiceEngineException;
+
+    void delete();
+}
@@ -0,0 +1,77 @@
+package com.navia.navia;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.plugin.common.MethodChannel;
+
+// Process-wide FlutterEngine that is started in the background while the wake-word
+// service runs, so MainActivity can attach to an engine whose Dart isolate, plugins
+// and first route are already up instead of cold-starting one after verification.
+// The engine runs warmMain (lib/main.dart), which initializes everything but only
+// starts the app once an activity attaches, so no screen runs headless.
+public final class WarmFlutterEngine {
+    private static final String TAG = "WarmFlutterEngine";
+    public static final String ENGINE_ID = "nabd_main";
+    private static final String ENTRYPOINT = "warmMain";
+    private static final String CHANNEL = "nabd/warm_engine";
+
+    // Main thread only.
+    private static MethodChannel channel;
+    private static boolean attached = false;
+
+    private WarmFlutterEngine() {
+    }
+
+    public static FlutterEngine get() {
+        return FlutterEngineCache.getInstance().get(ENGINE_ID);
+    }
+
+    // Must be called on the main thread. The work is deferred to the next idle slot of
+    // the main looper so it never competes with whatever the caller is doing.
+    public static void warmUpWhenIdle(Context context) {
+        if (get() != null) return;
+        Context app = context.getApplicationContext();
+        Looper.myQueue().addIdleHandler(() -> {
+            warmUp(app);
+            return false;
+        });
+    }
+
+    public static synchronized FlutterEngine warmUp(Context context) {
+        FlutterEngine engine = get();
+        if (engine != null) return engine;
+
+        long start = System.currentTimeMillis();
+        // Plugins are registered by the engine constructor (automaticallyRegisterPlugins).
+        engine = new FlutterEngine(context.getApplicationContext());
+        engine.getDartExecutor().executeDartEntrypoint(new DartExecutor.DartEntrypoint(
+                FlutterInjector.instance().flutterLoader().findAppBundlePath(), ENTRYPOINT));
+        FlutterEngineCache.getInstance().put(ENGINE_ID, engine);
+        // warmMain asks once it is initialized, in case attach() ran before it listened.
+        channel = new MethodChannel(engine.getDartExecutor().getBinaryMessenger(), CHANNEL);
+        channel.setMethodCallHandler((call, result) -> {
+            if ("isAttached".equals(call.method)) {
+                result.success(attached);
+            } else {
+                result.notImplemented();
+            }
+        });
+        CommandAudioStream.get().attach(engine.getDartExecutor().getBinaryMessenger());
+        FeedbackEngine.get(context);
+        Log.d(TAG, "Engine warmed in " + (System.currentTimeMillis() - start) + "ms");
+        return engine;
+    }
+
+    // Called by MainActivity once its channels are registered: lets warmMain run the app.
+    public static void attach() {
+        if (attached || channel == null) return;
+        attached = true;
+        channel.invokeMethod("attach", null);
+    }
+}
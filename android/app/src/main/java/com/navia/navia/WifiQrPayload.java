@@ -0,0 +1,56 @@
+package com.navia.navia;
+
+// Parser for the ZXing-style Wi-Fi payload: WIFI:T:WPA;S:<ssid>;P:<password>;H:false;;
+// Special characters (\ ; , : ") are backslash-escaped inside values.
+public final class WifiQrPayload {
+    public final String ssid;
+    public final String password;
+    public final String security;
+    public final boolean hidden;
+
+    private WifiQrPayload(String ssid, String password, String security, boolean hidden) {
+        this.ssid = ssid;
+        this.password = password;
+        this.security = security;
+        this.hidden = hidden;
+    }
+
+    // Returns null if the text is not a WIFI: payload.
+    public static WifiQrPayload parse(String text) {
+        if (text == null || !text.regionMatches(true, 0, "WIFI:", 0, 5)) return null;
+
+        String ssid = null, password = "", security = "", hidden = "";
+        int i = 5;
+        int n = text.length();
+        while (i < n) {
+            int colon = text.indexOf(':', i);
+            if (colon < 0) break;
+            String key = text.substring(i, colon);
+            StringBuilder value = new StringBuilder();
+            int j = colon + 1;
+            while (j < n) {
+                char c = text.charAt(j);
+                if (c == '\\' && j + 1 < n) {
+                    value.append(text.charAt(j + 1));
+                    j += 2;
+                } else if (c == ';') {
+                    break;
+                } else {
+                    value.append(c);
+                    j++;
+                }
+            }
+            switch (key) {
+                case "S": ssid = value.toString(); break;
+                case "P": password = value.toString(); break;
+                case "T": security = value.toString(); break;
+                case "H": hidden = value.toString(); break;
+                default: break;
+            }
+            i = j + 1;
+            if (i < n && text.charAt(i) == ';') break;
+        }
+        if (ssid == null) return null;
+        return new WifiQrPayload(ssid, password, security, "true".equalsIgnoreCase(hidden));
+    }
+}
@@ -0,0 +1,76 @@
+package com.navia.navia;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// On-device Wi-Fi QR reader: latest prewarmed frame -> coarse luma ROI -> cropped
+// luma plane -> ML Kit QR decode. Only the cropped region reaches the decoder.
+public class WifiQrReader {
+    private static final String TAG = "WifiQrReader";
+    private static final long DECODE_TIMEOUT_MS = 2000;
+
+    private final BarcodeScanner scanner;
+
+    public WifiQrReader() {
+        scanner = BarcodeScanning.getClient(new BarcodeScannerOptions.Builder()
+                .setBarcodeFormats(Barcode.FORMAT_QR_CODE)
+                .build());
+    }
+
+    // Blocking; call from a background thread. Returns null when no Wi-Fi QR was found.
+    public WifiQrPayload read(ScreenCaptureService capture) {
+        long t0 = SystemClock.elapsedRealtime();
+        // A frame of the screen as it is now, not whatever the prewarmed display kept.
+        if (!capture.captureOnce()) {
+            Log.w(TAG, "No frame available");
+            return null;
+        }
+        // Locate and crop under the frame lock; only the crop leaves it.
+        QrRegionLocator.Crop crop = capture.readLatestFrame(frame -> {
+            int[] region = QrRegionLocator.locate(frame);
+            return region != null ? QrRegionLocator.crop(frame, region) : null;
+        });
+        if (crop == null) {
+            Log.d(TAG, "No QR-like region in frame");
+            return null;
+        }
+
+        long traceStart = NabdTrace.begin(NabdTrace.S_QR_DECODE);
+        WifiQrPayload payload = decode(crop);
+        NabdTrace.end(NabdTrace.S_QR_DECODE, traceStart);
+        NabdTrace.event(NabdTrace.QR_READ, SystemClock.elapsedRealtime() - t0, payload != null ? 1 : 0);
+        return payload;
+    }
+
+    private WifiQrPayload decode(QrRegionLocator.Crop crop) {
+        // NV21 with neutral chroma: the decoder only looks at luma.
+        byte[] nv21 = Arrays.copyOf(crop.luma, crop.width * crop.height * 3 / 2);
+        Arrays.fill(nv21, crop.luma.length, nv21.length, (byte) 128);
+        InputImage image = InputImage.fromByteArray(nv21, crop.width, crop.height, 0, InputImage.IMAGE_FORMAT_NV21);
+        try {
+            List<Barcode> barcodes = Tasks.await(scanner.process(image), DECODE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            for (Barcode barcode : barcodes) {
+                WifiQrPayload payload = WifiQrPayload.parse(barcode.getRawValue());
+                if (payload != null) return payload;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "QR decode failed: " + e.getMessage());
+        }
+        return null;
+    }
+
+    public void close() {
+        scanner.close();
+    }
+}
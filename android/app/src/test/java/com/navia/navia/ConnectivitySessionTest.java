@@ -0,0 +1,289 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The session runs on the paused main looper, so every input is delivered by idle()
+// and the timeouts fire when the test moves the clock.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ConnectivitySessionTest {
+    // open (optional, waits for a new window) -> turn_on (waits for any change) -> confirm.
+    private static final String FLOW = "{"
+            + "\"id\": \"test\", \"settings\": [\"android.settings.TEST\"], \"timeoutMs\": 10000,"
+            + "\"steps\": ["
+            + "  {\"id\": \"open\", \"optional\": true, \"match\": {\"text\": [\"Open\"]},"
+            + "   \"wait\": {\"until\": \"window\"}, \"timeoutMs\": 3000},"
+            + "  {\"id\": \"turn_on\", \"match\": {\"text\": [\"Use\"]}, \"action\": \"toggle\","
+            + "   \"wait\": {\"until\": \"change\"}, \"timeoutMs\": 3000},"
+            + "  {\"id\": \"confirm\", \"match\": {\"text\": [\"OK\"]}}"
+            + "]}";
+
+    private final Map<String, SettingsFlow.Outcome> screen = new HashMap<>();
+    private final List<String> performed = new ArrayList<>();
+    private final List<ConnectivitySession.State> states = new ArrayList<>();
+    private final List<Map<String, Object>> steps = new ArrayList<>();
+    private final List<List<String>> launched = new ArrayList<>();
+    private Map<String, Object> summary;
+    private ConnectivitySession session;
+
+    @Before
+    public void setUp() throws Exception {
+        session = new ConnectivitySession(Looper.getMainLooper());
+        SettingsFlow flow = SettingsFlow.parse(new JSONObject(FLOW));
+        session.useFlows(Collections.singletonMap(flow.id, flow));
+        session.setNavigator(new ConnectivitySession.Navigator() {
+            @Override
+            public SettingsFlow.Outcome perform(SettingsFlow.Step step) {
+                performed.add(step.id);
+                SettingsFlow.Outcome outcome = screen.get(step.id);
+                return outcome != null ? outcome : SettingsFlow.Outcome.NOT_FOUND;
+            }
+
+            @Override
+            public boolean isShowing(SettingsFlow.Matcher matcher) {
+                return false;
+            }
+        });
+        session.setListener(new ConnectivitySession.Listener() {
+            @Override
+            public void onTransition(ConnectivitySession.State from, ConnectivitySession.State to, String reason) {
+                states.add(to);
+            }
+
+            @Override
+            public void launchSettings(List<String> actions) {
+                launched.add(actions);
+            }
+
+            @Override
+            public void onSettingsVisible() {
+            }
+
+            @Override
+            public void onFlowStep(Map<String, Object> metrics) {
+                steps.add(metrics);
+            }
+
+            @Override
+            public void onFlowFinished(Map<String, Object> flowSummary) {
+                summary = flowSummary;
+            }
+        });
+        idle();
+    }
+
+    @Test
+    public void runsStepsInOrderWaitingForEachCondition() {
+        start();
+        screen.put("open", SettingsFlow.Outcome.ACTED);
+        session.a11yStart();
+        idle();
+        assertEquals(Collections.singletonList("android.settings.TEST"), launched.get(0));
+        assertEquals(ConnectivitySession.State.NAVIGATING, session.getState());
+
+        // open waits for a new window; content changes don't count.
+        screen.put("turn_on", SettingsFlow.Outcome.ACTED);
+        session.onSettingsContentChanged();
+        idle();
+        assertTrue(steps.isEmpty());
+
+        // The new window finishes open and turn_on acts on it right away.
+        session.onSettingsWindowChanged();
+        idle();
+        assertEquals(outcomes("done"), stepOutcomes());
+        assertEquals("turn_on", last(performed));
+
+        screen.put("confirm", SettingsFlow.Outcome.ALREADY);
+        session.onSettingsContentChanged();
+        idle();
+        assertEquals(outcomes("done", "done", "already"), stepOutcomes());
+        assertEquals(ConnectivitySession.State.FLOW_DONE, session.getState());
+        assertEquals("done", summary.get("outcome"));
+        assertEquals(3, ((List<?>) summary.get("steps")).size());
+    }
+
+    @Test
+    public void skipsOptionalStepWhenTheNextOneIsAlreadyOnScreen() {
+        start();
+        screen.put("turn_on", SettingsFlow.Outcome.ACTED);
+        session.a11yStart();
+        idle();
+        assertEquals(outcomes("skipped"), stepOutcomes());
+        assertEquals(Arrays.asList("open", "turn_on"), performed);
+
+        screen.put("confirm", SettingsFlow.Outcome.ACTED);
+        session.onSettingsContentChanged();
+        idle();
+        assertEquals(outcomes("skipped", "done", "done"), stepOutcomes());
+        assertEquals("done", summary.get("outcome"));
+    }
+
+    @Test
+    public void requiredStepKeepsLookingUntilItsTimeout() {
+        start();
+        screen.put("open", SettingsFlow.Outcome.ACTED);
+        session.a11yStart();
+        session.onSettingsWindowChanged();
+        idle();
+        // turn_on is not on screen: every event retries it, nothing is skipped.
+        session.onSettingsContentChanged();
+        idle();
+        session.onSettingsContentChanged();
+        idle();
+        assertEquals(outcomes("done"), stepOutcomes());
+        assertEquals(ConnectivitySession.State.NAVIGATING, session.getState());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(3100));
+        assertEquals(outcomes("done", "timeout"), stepOutcomes());
+        assertEquals(ConnectivitySession.State.TIMED_OUT, session.getState());
+        assertEquals("timeout", summary.get("outcome"));
+    }
+
+    @Test
+    public void optionalStepIsNotSkippedWithoutTheNextOne() {
+        start();
+        session.a11yStart();
+        idle();
+        // Neither open nor turn_on is on screen: open stays current until its timeout.
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(3100));
+        assertEquals(outcomes("timeout"), stepOutcomes());
+        assertEquals(ConnectivitySession.State.TIMED_OUT, session.getState());
+        assertTrue(states.contains(ConnectivitySession.State.TIMED_OUT));
+    }
+
+    @Test
+    public void sessionTimeoutEndsTheFlowBeforeStepTimeouts() throws Exception {
+        SettingsFlow quick = SettingsFlow.parse(new JSONObject(FLOW).put("timeoutMs", 1000));
+        session.useFlows(Collections.singletonMap(quick.id, quick));
+        start();
+        screen.put("open", SettingsFlow.Outcome.ACTED);
+        session.a11yStart();
+        idle();
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1100));
+        assertEquals(outcomes("timeout"), stepOutcomes());
+        assertEquals("open", steps.get(0).get("step"));
+        assertEquals(ConnectivitySession.State.TIMED_OUT, session.getState());
+        assertEquals("timeout", summary.get("outcome"));
+    }
+
+    @Test
+    public void flowEndReportsAnUnfinishedFlowAsEnded() {
+        start();
+        session.a11yStart();
+        idle();
+        session.flowEnd();
+        idle();
+        assertEquals(ConnectivitySession.State.IDLE, session.getState());
+        assertEquals("ended", summary.get("outcome"));
+        // Nothing left armed.
+        steps.clear();
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(20_000));
+        assertTrue(steps.isEmpty());
+        assertEquals(ConnectivitySession.State.IDLE, session.getState());
+    }
+
+    @Test
+    public void unknownFlowIdIsIgnored() {
+        session.flowStart("missing");
+        idle();
+        assertNull(summary);
+        assertEquals(ConnectivitySession.State.FLOW_ACTIVE, session.getState());
+        assertEquals(Collections.singletonList("test"), session.getFlowIds());
+        // No flow selected: the stock Settings package still drives it.
+        assertTrue(session.wantsEventsFrom("com.android.settings"));
+    }
+
+    @Test
+    public void clearingAnOldListenerKeepsTheNewOne() {
+        List<ConnectivitySession.State> oldStates = new ArrayList<>();
+        ConnectivitySession.Listener old = new RecordingTransitions(oldStates);
+        session.setListener(old);
+        List<ConnectivitySession.State> newStates = new ArrayList<>();
+        session.setListener(new RecordingTransitions(newStates));
+        // The destroyed activity clears after the new one has registered.
+        session.clearListener(old);
+        session.flowStart("test");
+        idle();
+        assertTrue(oldStates.isEmpty());
+        assertEquals(Collections.singletonList(ConnectivitySession.State.FLOW_ACTIVE), newStates);
+    }
+
+    // flow_start, open Settings and let its window appear.
+    private void start() {
+        session.flowStart("test");
+        session.openSettings("test");
+        idle();
+        session.onSettingsWindowChanged();
+        idle();
+        assertEquals(ConnectivitySession.State.SETTINGS_VISIBLE, session.getState());
+    }
+
+    private static final class RecordingTransitions implements ConnectivitySession.Listener {
+        private final List<ConnectivitySession.State> states;
+
+        RecordingTransitions(List<ConnectivitySession.State> states) {
+            this.states = states;
+        }
+
+        @Override
+        public void onTransition(ConnectivitySession.State from, ConnectivitySession.State to, String reason) {
+            states.add(to);
+        }
+
+        @Override
+        public void launchSettings(List<String> actions) {
+        }
+
+        @Override
+        public void onSettingsVisible() {
+        }
+
+        @Override
+        public void onFlowStep(Map<String, Object> metrics) {
+        }
+
+        @Override
+        public void onFlowFinished(Map<String, Object> summary) {
+        }
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private List<Object> stepOutcomes() {
+        List<Object> outcomes = new ArrayList<>();
+        for (Map<String, Object> step : steps) outcomes.add(step.get("outcome"));
+        return outcomes;
+    }
+
+    private static List<Object> outcomes(Object... values) {
+        List<Object> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static <T> T last(List<T> list) {
+        return list.get(list.size() - 1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class CorpusEvaluatorTest {
+    private static final int RATE = CorpusEvaluator.PCM_SAMPLE_RATE;
+    private static final float[] SENSITIVITIES = {0.5f, 0.9f};
+    private static final float[] THRESHOLDS = {0.4f, 0.6f, 0.8f};
+
+    private Path corpus;
+
+    @Before
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("corpus");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(corpus)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void sweepRunsEveryClipAtEverySensitivity() throws IOException {
+        // One of each container the loader reads, 5 s keyword clips and 60 s of background.
+        writePcmWav(corpus.resolve("target/a.wav"), tone(5 * RATE));
+        writeAdpcmWav(corpus.resolve("target/b.wav"), tone(5 * RATE));
+        writeRaw(corpus.resolve("impostor/c.pcm"), tone(5 * RATE));
+        writeRaw(corpus.resolve("background/d.pcm"), tone(60 * RATE));
+        writeRaw(corpus.resolve("notes/e.pcm"), tone(RATE));
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        CorpusEvaluator evaluator = evaluator();
+        assertTrue(evaluator.run(corpus, 2, new PrintStream(report, true, "UTF-8")));
+        String text = new String(report.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(text, text.contains("Corpus: 2 target, 1 impostor, 1 background clips"));
+        assertTrue(text, text.contains("Ignored 1 files"));
+        // 4 clips x 2 sensitivities.
+        assertTrue(text, text.contains("  8 passes,"));
+
+        Path csv = corpus.resolve("sweep.csv");
+        evaluator.writeCsv(csv);
+        List<String> rows = Files.readAllLines(csv);
+        assertEquals(1 + SENSITIVITIES.length * THRESHOLDS.length, rows.size());
+
+        // The stand-in draws from the clip names, so a rerun on more threads agrees.
+        CorpusEvaluator again = evaluator();
+        assertTrue(again.run(corpus, 4, new PrintStream(new ByteArrayOutputStream())));
+        Path csvAgain = corpus.resolve("sweep_again.csv");
+        again.writeCsv(csvAgain);
+        assertEquals(rows, Files.readAllLines(csvAgain));
+    }
+
+    @Test
+    public void emptyCorpusIsNotEvaluated() throws IOException {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertFalse(evaluator().run(corpus, 1, new PrintStream(report)));
+    }
+
+    @Test
+    public void loadsPcmWav() throws IOException {
+        short[] pcm = tone(1000);
+        Path file = corpus.resolve("target/pcm.wav");
+        writePcmWav(file, pcm);
+        CorpusEvaluator.Recording recording = CorpusEvaluator.load(file, "pcm.wav", CorpusEvaluator.Label.TARGET);
+        assertEquals(RATE, recording.sampleRate);
+        assertArrayEquals(pcm, recording.pcm);
+    }
+
+    @Test
+    public void loadsAdpcmWavAsTheRecorderWritesIt() throws IOException {
+        // Not a whole number of blocks, so the fact chunk trims the last one.
+        short[] pcm = tone(3 * ImaAdpcm.SAMPLES_PER_BLOCK + 100);
+        Path file = corpus.resolve("target/adpcm.wav");
+        writeAdpcmWav(file, pcm);
+        CorpusEvaluator.Recording recording = CorpusEvaluator.load(file, "adpcm.wav", CorpusEvaluator.Label.TARGET);
+        assertEquals(RATE, recording.sampleRate);
+        assertEquals(pcm.length, recording.pcm.length);
+        // Lossy, but close on a slow tone once the step size has adapted from its
+        // initial index; each block starts from an exact sample.
+        for (int i = 50; i < pcm.length; i++) {
+            assertTrue("sample " + i, Math.abs(pcm[i] - recording.pcm[i]) < 200);
+        }
+        assertEquals(pcm[ImaAdpcm.SAMPLES_PER_BLOCK], recording.pcm[ImaAdpcm.SAMPLES_PER_BLOCK]);
+    }
+
+    @Test
+    public void rejectsStereoWav() throws IOException {
+        Path file = corpus.resolve("target/stereo.wav");
+        Files.createDirectories(file.getParent());
+        Files.write(file, wavHeader(1, 2, 16, 4, 0));
+        assertThrows(IOException.class, () -> CorpusEvaluator.load(file, "stereo.wav", CorpusEvaluator.Label.TARGET));
+    }
+
+    @Test
+    public void rejectsOutOfRangeOptions() {
+        String dir = corpus.toString();
+        assertThrows(IllegalArgumentException.class,
+                () -> CorpusEvaluator.Options.parse(new String[]{dir, "--threads", "0"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> CorpusEvaluator.Options.parse(new String[]{dir, "--cost-ns", "-1"}));
+        assertThrows(IllegalArgumentException.class, () -> evaluator().run(corpus, 0, System.out));
+        assertEquals(3, CorpusEvaluator.Options.parse(new String[]{dir, "--threads", "3"}).threads);
+    }
+
+    private static CorpusEvaluator evaluator() {
+        return new CorpusEvaluator(new CorpusEvaluator.StandInEngines(), SENSITIVITIES, THRESHOLDS,
+                Collections.emptyList());
+    }
+
+    private static short[] tone(int samples) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 200 * i / RATE));
+        return pcm;
+    }
+
+    private static void writeRaw(Path file, short[] pcm) throws IOException {
+        Files.createDirectories(file.getParent());
+        ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(pcm);
+        Files.write(file, bytes.array());
+    }
+
+    private static void writePcmWav(Path file, short[] pcm) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] header = wavHeader(1, 1, 16, 2, pcm.length * 2);
+        ByteBuffer wav = ByteBuffer.allocate(header.length + pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put(header);
+        for (short sample : pcm) wav.putShort(sample);
+        Files.write(file, wav.array());
+    }
+
+    private static void writeAdpcmWav(Path file, short[] pcm) throws IOException {
+        Files.createDirectories(file.getParent());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImaAdpcm.writeWav(out, pcm, 0, pcm.length, RATE);
+        Files.write(file, out.toByteArray());
+    }
+
+    // RIFF header with a 16-byte fmt chunk and a data chunk of dataBytes.
+    private static byte[] wavHeader(int format, int channels, int bits, int blockAlign, int dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + dataBytes)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) format).putShort((short) channels).putInt(RATE)
+                .putInt(RATE * blockAlign).putShort((short) blockAlign).putShort((short) bits)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(dataBytes);
+        return Arrays.copyOf(header.array(), 44);
+    }
+}
@@ -0,0 +1,76 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DocxTextTest {
+    private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>";
+    private static final String TAIL = "<w:sectPr/></w:body></w:document>";
+
+    @Test
+    public void keepsRunTextAndEndsParagraphs() throws IOException {
+        String body = "<w:p><w:pPr><w:jc w:val=\"right\"/></w:pPr>"
+                + "<w:r><w:t>مرحبا</w:t></w:r><w:r><w:t xml:space=\"preserve\"> بالعالم</w:t></w:r></w:p>"
+                + "<w:p><w:r><w:t>a</w:t><w:tab/><w:t>b</w:t><w:br/><w:t>c</w:t></w:r></w:p>"
+                + "<w:p><w:r><w:instrText>PAGE</w:instrText><w:t/></w:r></w:p>";
+        assertEquals("مرحبا بالعالم\na\tb\nc\n\n", extract(docx(HEAD + body + TAIL)));
+    }
+
+    @Test
+    public void decodesEntitiesAndSkipsMarkupInAttributes() throws IOException {
+        String body = "<w:p><w:bookmarkStart w:name=\"a>b\"/>"
+                + "<w:r><w:t>&lt;x&gt; &amp; &quot;y&quot; &#1606;&#x1F600; &bogus;</w:t></w:r></w:p>";
+        assertEquals("<x> & \"y\" ن😀 &bogus;\n", extract(docx(HEAD + body + TAIL)));
+    }
+
+    @Test
+    public void findsTheDocumentPartAfterOtherEntries() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            put(zip, "[Content_Types].xml", "<Types/>");
+            put(zip, "word/styles.xml", "<w:styles><w:t>not text</w:t></w:styles>");
+            put(zip, DocxText.DOCUMENT_PART, HEAD + "<w:p><w:r><w:t>body</w:t></w:r></w:p>" + TAIL);
+        }
+        assertEquals("body\n", extract(bytes.toByteArray()));
+    }
+
+    @Test
+    public void zipWithoutDocumentPartIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            put(zip, "readme.txt", "hello");
+        }
+        assertThrows(IOException.class, () -> extract(bytes.toByteArray()));
+    }
+
+    private static String extract(byte[] docx) throws IOException {
+        StringWriter out = new StringWriter();
+        DocxText.extract(new ByteArrayInputStream(docx), out);
+        return out.toString();
+    }
+
+    private static byte[] docx(String documentXml) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            put(zip, DocxText.DOCUMENT_PART, documentXml);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,199 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Synthetic luma frames: a bright page (PAPER) on a dark table (TABLE), drawn as a
+// convex quad in normalized coordinates so each guidance class has a known answer.
+public class GuidanceEstimatorTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int PAPER = 220;
+    private static final int TABLE = 40;
+
+    private GuidanceEstimator estimator;
+
+    @Before
+    public void setUp() {
+        estimator = new GuidanceEstimator();
+    }
+
+    @Test
+    public void centredSquarePageIsPerfect() {
+        GuidanceEstimator.Guidance g = estimate(page(0.2f, 0.2f, 0.8f, 0.8f));
+        assertEquals(GuidanceEstimator.PERFECT, g.direction);
+        assertTrue(g.ready);
+        assertEquals(GuidanceEstimator.TILT_NONE, g.tilt);
+        assertEquals(0.36f, g.coverage, 0.03f);
+        assertTrue(g.confidence > 0.9f);
+        assertNotNull(g.quad);
+    }
+
+    @Test
+    public void smallPageIsNotReady() {
+        // Whole page in view at ~12% coverage, right of centre and low: move toward it.
+        GuidanceEstimator.Guidance g = estimate(page(0.55f, 0.55f, 0.9f, 0.9f));
+        assertFalse(g.ready);
+        assertEquals(GuidanceEstimator.TOP_LEFT, g.direction);
+        assertEquals(0.1225f, g.coverage, 0.02f);
+    }
+
+    @Test
+    public void pageRunningOffEachCornerShowsTheOppositeCorner() {
+        assertEquals(GuidanceEstimator.TOP_LEFT, estimate(page(0.5f, 0.5f, 1f, 1f)).direction);
+        estimator.reset();
+        assertEquals(GuidanceEstimator.BOTTOM_RIGHT, estimate(page(0f, 0f, 0.5f, 0.5f)).direction);
+        estimator.reset();
+        assertEquals(GuidanceEstimator.BOTTOM_LEFT, estimate(page(0.5f, 0f, 1f, 0.5f)).direction);
+        estimator.reset();
+        assertEquals(GuidanceEstimator.TOP_RIGHT, estimate(page(0f, 0.5f, 0.5f, 1f)).direction);
+    }
+
+    @Test
+    public void pageTouchingThreeEdgesIsFaceOnly() {
+        GuidanceEstimator.Guidance g = estimate(page(0f, 0.3f, 1f, 1f));
+        assertEquals(GuidanceEstimator.PAPER_FACE_ONLY, g.direction);
+        assertFalse(g.ready);
+    }
+
+    @Test
+    public void pageFillingTheFrameIsFaceOnly() {
+        GuidanceEstimator.Guidance g = estimate(page(0.02f, 0.02f, 0.98f, 0.98f));
+        assertEquals(GuidanceEstimator.PAPER_FACE_ONLY, g.direction);
+        assertTrue(g.coverage > GuidanceEstimator.FACE_ONLY_COVERAGE);
+    }
+
+    @Test
+    public void flatBrightFrameIsFaceOnly() {
+        GuidanceEstimator.Guidance g = estimate(flat(200));
+        assertEquals(GuidanceEstimator.PAPER_FACE_ONLY, g.direction);
+        assertEquals(1f, g.coverage, 1e-6f);
+        assertNull(g.quad);
+    }
+
+    @Test
+    public void flatDimFrameIsNotAConfidentNoDocument() {
+        // A page filling the view in poor light: must not keep frames from the server.
+        GuidanceEstimator.Guidance g = estimate(flat(90));
+        assertEquals(GuidanceEstimator.NO_DOCUMENT, g.direction);
+        assertTrue(g.confidence < 0.5f);
+    }
+
+    @Test
+    public void tinyBrightSpotIsNoDocument() {
+        GuidanceEstimator.Guidance g = estimate(page(0.45f, 0.45f, 0.55f, 0.55f));
+        assertEquals(GuidanceEstimator.NO_DOCUMENT, g.direction);
+        assertTrue(g.coverage < GuidanceEstimator.MIN_COVERAGE);
+        assertNull(g.quad);
+    }
+
+    @Test
+    public void lowContrastFrameIsNoDocument() {
+        // Spread enough not to count as flat, but the two sides are too close to tell apart.
+        byte[] luma = page(0.2f, 0.2f, 0.8f, 0.8f);
+        for (int i = 0; i < luma.length; i++) luma[i] = (byte) ((luma[i] & 0xFF) == PAPER ? 123 : 95);
+        GuidanceEstimator.Guidance g = estimate(luma);
+        assertEquals(GuidanceEstimator.NO_DOCUMENT, g.direction);
+        assertNull(g.quad);
+    }
+
+    @Test
+    public void trapezoidsReportTheFarEdge() {
+        // Narrow top edge: the top of the page leans away from the camera.
+        assertEquals(GuidanceEstimator.TILT_TOP_AWAY,
+                estimate(quad(0.4f, 0.2f, 0.6f, 0.2f, 0.8f, 0.8f, 0.2f, 0.8f)).tilt);
+        estimator.reset();
+        assertEquals(GuidanceEstimator.TILT_BOTTOM_AWAY,
+                estimate(quad(0.2f, 0.2f, 0.8f, 0.2f, 0.6f, 0.8f, 0.4f, 0.8f)).tilt);
+        estimator.reset();
+        assertEquals(GuidanceEstimator.TILT_LEFT_AWAY,
+                estimate(quad(0.25f, 0.4f, 0.75f, 0.2f, 0.75f, 0.8f, 0.25f, 0.6f)).tilt);
+        estimator.reset();
+        GuidanceEstimator.Guidance g = estimate(quad(0.25f, 0.2f, 0.75f, 0.4f, 0.75f, 0.6f, 0.25f, 0.8f));
+        assertEquals(GuidanceEstimator.TILT_RIGHT_AWAY, g.tilt);
+        assertFalse(g.ready);
+    }
+
+    @Test
+    public void coverageIsSmoothedAcrossFrames() {
+        estimate(page(0.2f, 0.2f, 0.8f, 0.8f));
+        GuidanceEstimator.Guidance g = estimate(page(0.35f, 0.35f, 0.65f, 0.65f));
+        // Halfway between 0.36 and 0.09.
+        assertEquals(0.225f, g.coverage, 0.03f);
+        estimator.reset();
+        assertEquals(0.09f, estimate(page(0.35f, 0.35f, 0.65f, 0.65f)).coverage, 0.02f);
+    }
+
+    @Test
+    public void rowStrideAndLargeFramesAreHandled() {
+        int width = 1280;
+        int height = 960;
+        int stride = width + 64;
+        byte[] luma = new byte[stride * height];
+        Arrays.fill(luma, (byte) TABLE);
+        fill(luma, stride, 0.2f, 0.2f, 0.8f, 0.2f, 0.8f, 0.8f, 0.2f, 0.8f, width, height);
+        // Padding bytes past each row are bright; they must not count as paper.
+        for (int y = 0; y < height; y++) {
+            for (int x = width; x < stride; x++) luma[y * stride + x] = (byte) 255;
+        }
+        GuidanceEstimator.Guidance g = estimator.estimate(luma, width, height, stride);
+        assertEquals(GuidanceEstimator.PERFECT, g.direction);
+        assertEquals(0.36f, g.coverage, 0.03f);
+    }
+
+    @Test
+    public void tinyFrameIsNoDocument() {
+        assertEquals(GuidanceEstimator.NO_DOCUMENT, estimator.estimate(new byte[16], 4, 4, 4).direction);
+    }
+
+    private GuidanceEstimator.Guidance estimate(byte[] luma) {
+        return estimator.estimate(luma, WIDTH, HEIGHT, WIDTH);
+    }
+
+    private static byte[] flat(int value) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luma, (byte) value);
+        return luma;
+    }
+
+    private static byte[] page(float left, float top, float right, float bottom) {
+        return quad(left, top, right, top, right, bottom, left, bottom);
+    }
+
+    // Corners tl, tr, br, bl in normalized coordinates.
+    private static byte[] quad(float... corners) {
+        byte[] luma = flat(TABLE);
+        fill(luma, WIDTH, corners[0], corners[1], corners[2], corners[3], corners[4], corners[5],
+                corners[6], corners[7], WIDTH, HEIGHT);
+        return luma;
+    }
+
+    private static void fill(byte[] luma, int stride, float x0, float y0, float x1, float y1,
+                             float x2, float y2, float x3, float y3, int width, int height) {
+        float[] xs = {x0 * width, x1 * width, x2 * width, x3 * width};
+        float[] ys = {y0 * height, y1 * height, y2 * height, y3 * height};
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (inside(xs, ys, x + 0.5f, y + 0.5f)) luma[y * stride + x] = (byte) PAPER;
+            }
+        }
+    }
+
+    // Clockwise convex quad: inside when on the right of every edge (y grows downward).
+    private static boolean inside(float[] xs, float[] ys, float px, float py) {
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            float cross = (xs[j] - xs[i]) * (py - ys[i]) - (ys[j] - ys[i]) * (px - xs[i]);
+            if (cross < 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+// Robolectric only for org.json, which is a stub in plain unit tests.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class KeywordRegistryTest {
+    // Unit tests run from the module directory.
+    private static final Path ASSETS = Paths.get("src/main/assets");
+
+    @Test
+    public void everyDeclaredModelIsBundled() throws Exception {
+        String json = new String(Files.readAllBytes(ASSETS.resolve("wake_keywords.json")), StandardCharsets.UTF_8);
+        JSONArray entries = new JSONArray(json);
+        assertFalse(entries.length() == 0);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            String model = entry.getString("model");
+            assertTrue("missing " + model, Files.isRegularFile(ASSETS.resolve(model)));
+            assertTrue("duplicate " + entry.getString("id"), ids.add(entry.getString("id")));
+        }
+    }
+}
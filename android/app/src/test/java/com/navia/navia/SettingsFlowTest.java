@@ -0,0 +1,139 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+// Robolectric only for org.json, which is a stub in plain unit tests.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SettingsFlowTest {
+    private static final String FLOW = "{"
+            + "\"id\": \"radio\","
+            + "\"settings\": [\"android.settings.A\", \"android.settings.B\"],"
+            + "\"timeoutMs\": 12000,"
+            + "\"steps\": ["
+            + "  {\"id\": \"open\", \"optional\": true, \"match\": {\"text\": [\"Radio\"]},"
+            + "   \"action\": \"click\", \"wait\": {\"until\": \"window\"}},"
+            + "  {\"id\": \"turn_on\", \"match\": {\"text\": [\"Use radio\"], \"exclude\": [\"usage\"]},"
+            + "   \"action\": \"toggle\", \"checked\": false, \"timeoutMs\": 3000,"
+            + "   \"wait\": {\"until\": \"match\", \"match\": {\"viewId\": \"status\"}}},"
+            + "  {\"id\": \"look\", \"match\": {\"className\": \"Switch\"}}"
+            + "]}";
+
+    @Test
+    public void parsesFlowAndSteps() throws JSONException {
+        SettingsFlow flow = SettingsFlow.parse(new JSONObject(FLOW));
+        assertEquals("radio", flow.id);
+        assertEquals(Arrays.asList("android.settings.A", "android.settings.B"), flow.settings);
+        assertEquals(Collections.singletonList("com.android.settings"), flow.packages);
+        assertEquals(12000, flow.timeoutMs);
+        assertEquals(3, flow.steps.size());
+
+        SettingsFlow.Step open = flow.steps.get(0);
+        assertEquals("open", open.id);
+        assertTrue(open.optional);
+        assertEquals(SettingsFlow.Action.CLICK, open.action);
+        assertEquals(SettingsFlow.Wait.WINDOW, open.waitKind);
+        assertNull(open.waitFor);
+        assertEquals(8000, open.timeoutMs);
+
+        SettingsFlow.Step turnOn = flow.steps.get(1);
+        assertEquals(SettingsFlow.Action.TOGGLE, turnOn.action);
+        assertFalse(turnOn.checked);
+        assertFalse(turnOn.optional);
+        assertEquals(3000, turnOn.timeoutMs);
+        assertEquals(SettingsFlow.Wait.MATCH, turnOn.waitKind);
+        assertEquals("status", turnOn.waitFor.viewId);
+        assertEquals(Collections.singletonList("usage"), turnOn.match.exclude);
+
+        // Defaults: click, no wait, checked.
+        SettingsFlow.Step look = flow.steps.get(2);
+        assertEquals(SettingsFlow.Action.CLICK, look.action);
+        assertEquals(SettingsFlow.Wait.NONE, look.waitKind);
+        assertTrue(look.checked);
+        assertEquals("Switch", look.match.className);
+    }
+
+    @Test
+    public void packagesDecideWhichEventsCount() throws JSONException {
+        SettingsFlow defaults = SettingsFlow.parse(new JSONObject(FLOW));
+        assertTrue(defaults.handlesPackage("com.android.settings"));
+        assertFalse(defaults.handlesPackage("com.example.launcher"));
+
+        JSONObject entry = new JSONObject(FLOW).put("packages", new JSONArray().put("com.samsung.android"));
+        SettingsFlow vendor = SettingsFlow.parse(entry);
+        assertTrue(vendor.handlesPackage("com.samsung.android.settings"));
+        assertFalse(vendor.handlesPackage("com.android.settings"));
+    }
+
+    @Test
+    public void rejectsBrokenEntries() throws JSONException {
+        JSONObject noSteps = new JSONObject(FLOW).put("steps", new JSONArray());
+        assertThrows(IllegalArgumentException.class, () -> SettingsFlow.parse(noSteps));
+
+        JSONObject emptyMatcher = new JSONObject(FLOW);
+        emptyMatcher.getJSONArray("steps").getJSONObject(0).put("match", new JSONObject());
+        assertThrows(IllegalArgumentException.class, () -> SettingsFlow.parse(emptyMatcher));
+
+        JSONObject badAction = new JSONObject(FLOW);
+        badAction.getJSONArray("steps").getJSONObject(0).put("action", "swipe");
+        assertThrows(IllegalArgumentException.class, () -> SettingsFlow.parse(badAction));
+
+        JSONObject badWait = new JSONObject(FLOW);
+        badWait.getJSONArray("steps").getJSONObject(0).put("wait", new JSONObject().put("until", "forever"));
+        assertThrows(IllegalArgumentException.class, () -> SettingsFlow.parse(badWait));
+
+        JSONObject noId = new JSONObject(FLOW);
+        noId.remove("id");
+        assertThrows(JSONException.class, () -> SettingsFlow.parse(noId));
+    }
+
+    @Test
+    public void matcherComparesTextCaseInsensitivelyAndHonoursExcludes() throws JSONException {
+        SettingsFlow.Matcher match = SettingsFlow.parse(new JSONObject(FLOW)).steps.get(1).match;
+        assertTrue(match.matches("USE RADIO", null, null, null));
+        assertTrue(match.matches(null, "Use radio, on", null, null));
+        assertFalse(match.matches("Use radio usage", null, null, null));
+        assertFalse(match.matches("Radio", null, null, null));
+
+        SettingsFlow.Matcher byId = SettingsFlow.parse(new JSONObject(FLOW)).steps.get(1).waitFor;
+        assertTrue(byId.matches("", null, "com.android.settings:id/status", null));
+        assertFalse(byId.matches("", null, null, null));
+
+        SettingsFlow.Matcher byClass = SettingsFlow.parse(new JSONObject(FLOW)).steps.get(2).match;
+        assertTrue(byClass.matches(null, null, null, "android.widget.Switch"));
+        assertFalse(byClass.matches(null, null, null, "android.widget.TextView"));
+    }
+
+    @Test
+    public void bundledFlowsAllParse() throws Exception {
+        // Unit tests run from the module directory.
+        String json = new String(Files.readAllBytes(Paths.get("src/main/assets/settings_flows.json")),
+                StandardCharsets.UTF_8);
+        JSONArray entries = new JSONObject(json).getJSONArray("flows");
+        boolean hasDefault = false;
+        for (int i = 0; i < entries.length(); i++) {
+            SettingsFlow flow = SettingsFlow.parse(entries.getJSONObject(i));
+            assertFalse(flow.id, flow.settings.isEmpty());
+            hasDefault |= SettingsFlow.DEFAULT_FLOW.equals(flow.id);
+        }
+        assertTrue(hasDefault);
+    }
+}
@@ -0,0 +1,143 @@
+package com.navia.navia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VerifierPoolTest {
+    private static final int FRAME = 512;
+    // The wake service's 4 s snapshot.
+    private static final short[] SNAPSHOT = new short[125 * FRAME];
+
+    @Test
+    public void firstConfidentWindowDecides() throws Exception {
+        VerifierPool pool = new VerifierPool(2,
+                () -> new ScriptedSpeakerVerifier(FRAME, new float[]{0.1f, 0.3f, 0.9f}, 0));
+        try {
+            VerifierPool.Decision decision = pool.verify(SNAPSHOT, FRAME, 0.6f);
+            assertTrue(decision.matched);
+            assertEquals(0.9f, decision.score, 1e-6f);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void belowThresholdEveryWindowIsScored() throws Exception {
+        VerifierPool pool = new VerifierPool(2, () -> new ScriptedSpeakerVerifier(FRAME, new float[]{0.4f}, 0));
+        try {
+            VerifierPool.Decision decision = pool.verify(SNAPSHOT, FRAME, 0.6f);
+            assertFalse(decision.matched);
+            assertEquals(VerifierPool.CANDIDATES, decision.windowsScored);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void inlineScoresTheSameWindowsAsThePool() throws Exception {
+        float[] scores = {0.2f, 0.5f, 0.3f};
+        VerifierPool pool = new VerifierPool(2, () -> new ScriptedSpeakerVerifier(FRAME, scores, 0));
+        try {
+            VerifierPool.Decision pooled = pool.verify(SNAPSHOT, FRAME, 1f);
+            VerifierPool.Decision inline = VerifierPool.verifyInline(
+                    new ScriptedSpeakerVerifier(FRAME, scores, 0), SNAPSHOT, FRAME, 1f);
+            assertEquals(pooled.score, inline.score, 1e-6f);
+            assertEquals(VerifierPool.CANDIDATES, inline.windowsScored);
+        } finally {
+            pool.close();
+        }
+        // A confident window ends the search, as in the pool.
+        VerifierPool.Decision early = VerifierPool.verifyInline(
+                new ScriptedSpeakerVerifier(FRAME, new float[]{0.9f}, 0), SNAPSHOT, FRAME, 0.6f);
+        assertTrue(early.matched);
+        assertEquals(1, early.windowsScored);
+    }
+
+    @Test
+    public void closeWaitsForWindowsStillInsideProcess() throws Exception {
+        CountDownLatch inProcess = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger deleted = new AtomicInteger();
+        VerifierPool pool = new VerifierPool(1, () -> new BlockingVerifier(inProcess, release, deleted));
+
+        AtomicReference<Throwable> verifyError = new AtomicReference<>();
+        Thread verify = new Thread(() -> {
+            try {
+                pool.verify(SNAPSHOT, FRAME, 0.6f);
+            } catch (Throwable t) {
+                verifyError.set(t);
+            }
+        });
+        verify.start();
+        assertTrue(inProcess.await(2, TimeUnit.SECONDS));
+
+        Thread close = new Thread(pool::close);
+        close.start();
+        close.join(200);
+        // The instance is still inside process(): it must not be deleted under it.
+        assertTrue(close.isAlive());
+        assertEquals(0, deleted.get());
+
+        release.countDown();
+        close.join(2000);
+        verify.join(2000);
+        assertFalse(close.isAlive());
+        assertEquals(1, deleted.get());
+        assertTrue(verifyError.get() instanceof VoiceEngineException);
+    }
+
+    @Test
+    public void verifyAfterCloseFails() throws Exception {
+        VerifierPool pool = new VerifierPool(1, () -> new ScriptedSpeakerVerifier(FRAME, new float[]{0.9f}, 0));
+        pool.close();
+        assertThrows(VoiceEngineException.class, () -> pool.verify(SNAPSHOT, FRAME, 0.6f));
+    }
+
+    // Parks in its first process() call until released.
+    private static final class BlockingVerifier implements SpeakerVerifier {
+        private final CountDownLatch inProcess;
+        private final CountDownLatch release;
+        private final AtomicInteger deleted;
+
+        BlockingVerifier(CountDownLatch inProcess, CountDownLatch release, AtomicInteger deleted) {
+            this.inProcess = inProcess;
+            this.release = release;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public int getFrameLength() {
+            return FRAME;
+        }
+
+        @Override
+        public float process(short[] frame) throws VoiceEngineException {
+            if (deleted.get() > 0) throw new IllegalStateException("used after delete");
+            inProcess.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new VoiceEngineException("interrupted", e);
+            }
+            return 0f;
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void delete() {
+            deleted.incrementAndGet();
+        }
+    }
+}
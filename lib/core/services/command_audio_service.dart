@@ -0,0 +1,96 @@
+import 'dart:async';
+import 'dart:typed_data';
+import 'package:flutter/services.dart';
+
+/// Receives the audio spoken right after the wake word. The wake-word service
+/// keeps the microphone open after "noor" and streams 16-bit little-endian mono
+/// PCM from the end of the keyword until the user stops speaking, so the command
+/// is captured even while the app is still being launched.
+///
+/// Chunks that arrive before anyone listens are kept in [buffered] until the
+/// stream ends. An `end` event with reason `rejected` means the speaker failed
+/// verification and the audio must be discarded. MainScreen hands the command
+/// that followed an "open" keyword to [WakeActionService.recognizeCommand].
+class CommandAudioService {
+  static const EventChannel _events = EventChannel('nabd/command_audio');
+  static const String _pcmChannel = 'nabd/command_audio/pcm';
+
+  static final StreamController<Uint8List> _pcm =
+      StreamController<Uint8List>.broadcast();
+  static final StreamController<Map<String, dynamic>> _lifecycle =
+      StreamController<Map<String, dynamic>>.broadcast();
+  static final BytesBuilder _buffer = BytesBuilder(copy: false);
+  static StreamSubscription? _eventSub;
+  static bool _open = false;
+  static String? _keyword;
+  static String? _endReason;
+  static int _sampleRate = 16000;
+
+  /// Live PCM chunks of the current command.
+  static Stream<Uint8List> get pcm => _pcm.stream;
+
+  /// `start` (keyword, sampleRate) and `end` (reason, durationMs) events.
+  static Stream<Map<String, dynamic>> get events => _lifecycle.stream;
+
+  static bool get isOpen => _open;
+  static String? get keyword => _keyword;
+  static int get sampleRate => _sampleRate;
+
+  /// Everything received for the current (or last) command so far.
+  static Uint8List get buffered => _buffer.toBytes();
+
+  static void initialize() {
+    if (_eventSub != null) return;
+    ServicesBinding.instance.defaultBinaryMessenger
+        .setMessageHandler(_pcmChannel, (ByteData? message) async {
+      if (message != null && _open) {
+        final chunk = message.buffer
+            .asUint8List(message.offsetInBytes, message.lengthInBytes);
+        // The message buffer is reused by the engine, keep a copy.
+        final copy = Uint8List.fromList(chunk);
+        _buffer.add(copy);
+        _pcm.add(copy);
+      }
+      // The reply is the acknowledgement the service paces itself on.
+      return null;
+    });
+    _eventSub = _events.receiveBroadcastStream().listen((dynamic event) {
+      if (event is! Map) return;
+      final data = Map<String, dynamic>.from(event);
+      if (data['event'] == 'start') {
+        _buffer.clear();
+        _open = true;
+        _keyword = data['keyword'] as String?;
+        _endReason = null;
+        _sampleRate = (data['sampleRate'] as int?) ?? 16000;
+      } else if (data['event'] == 'end') {
+        _open = false;
+        _endReason = data['reason'] as String?;
+        if (data['reason'] == 'rejected') _buffer.clear();
+      }
+      _lifecycle.add(data);
+    });
+  }
+
+  /// Returns the captured command and forgets it.
+  static Uint8List take() {
+    return _buffer.takeBytes();
+  }
+
+  /// Waits for the command spoken after [keyword] to end and takes it. Null when
+  /// the stream belongs to another keyword, was cut short or was rejected.
+  static Future<Uint8List?> takeCommand(String? keyword,
+      {Duration timeout = const Duration(seconds: 12)}) async {
+    if (keyword == null || keyword != _keyword) return null;
+    if (_open) {
+      try {
+        await events.firstWhere((e) => e['event'] == 'end').timeout(timeout);
+      } on TimeoutException {
+        return null;
+      }
+    }
+    if (_endReason != 'complete') return null;
+    final audio = take();
+    return audio.isEmpty ? null : audio;
+  }
+}
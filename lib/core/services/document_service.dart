@@ -0,0 +1,124 @@
+import 'dart:async';
+import 'dart:convert';
+import 'dart:typed_data';
+import 'package:flutter/services.dart';
+
+/// What the native side knows about a picked document without reading it.
+/// [type] is sniffed from the file's first bytes (`pdf`, `doc`, `docx`, `zip` or
+/// `unknown`), so a renamed file cannot pass as a PDF. [size] is -1 when the
+/// provider does not report one.
+class DocumentInfo {
+  final String uri;
+  final String name;
+  final int size;
+  final String mime;
+  final String type;
+
+  DocumentInfo({
+    required this.uri,
+    required this.name,
+    required this.size,
+    required this.mime,
+    required this.type,
+  });
+
+  factory DocumentInfo.fromMap(Map<String, dynamic> map) => DocumentInfo(
+        uri: map['uri'] as String? ?? '',
+        name: map['name'] as String? ?? '',
+        size: (map['size'] as num?)?.toInt() ?? -1,
+        mime: map['mime'] as String? ?? '',
+        type: map['type'] as String? ?? 'unknown',
+      );
+}
+
+/// Reads documents through the native `saf_meta` service. Content arrives in
+/// chunks on the `saf_meta/chunks` binary channel; the native reader waits for
+/// each chunk to be acknowledged, so only a few chunks are ever in memory.
+/// PDFs are not read here: their pages are rendered natively by [PdfPageService].
+class DocumentService {
+  static const MethodChannel _channel = MethodChannel('saf_meta');
+  static const String _chunkChannel = 'saf_meta/chunks';
+
+  static const int _data = 0;
+  static const int _end = 1;
+  static const int _cancelled = 2;
+
+  static final Map<int, StreamController<Uint8List>> _streams = {};
+  static bool _initialized = false;
+  // Ids are chosen here so the controller is registered before the first chunk.
+  static int _nextId = 1;
+
+  static void _initialize() {
+    if (_initialized) return;
+    _initialized = true;
+    ServicesBinding.instance.defaultBinaryMessenger
+        .setMessageHandler(_chunkChannel, (ByteData? message) async {
+      if (message == null || message.lengthInBytes < 12) return null;
+      final id = message.getInt32(0, Endian.little);
+      final flags = message.getInt32(8, Endian.little);
+      final controller = _streams[id];
+      if (controller == null) return null;
+      final payload = message.buffer
+          .asUint8List(message.offsetInBytes + 12, message.lengthInBytes - 12);
+      if (flags == _data) {
+        // The message buffer is reused by the engine, keep a copy.
+        controller.add(Uint8List.fromList(payload));
+      } else {
+        _streams.remove(id);
+        if (flags != _end && flags != _cancelled) {
+          controller.addError(PlatformException(
+              code: 'READ', message: utf8.decode(payload)));
+        }
+        await controller.close();
+      }
+      // The reply is the acknowledgement the reader paces itself on.
+      return null;
+    });
+  }
+
+  /// Name, size, reported MIME and sniffed type of [uri].
+  static Future<DocumentInfo> describe(String uri) async {
+    final map = await _channel.invokeMapMethod<String, dynamic>('describe', {'uri': uri});
+    return DocumentInfo.fromMap(map ?? const {});
+  }
+
+  /// The content of [uri] in chunks of about [chunkSize] bytes. Cancelling the
+  /// subscription stops the native reader.
+  static Stream<Uint8List> read(String uri, {int chunkSize = 256 * 1024}) =>
+      _open(uri, 'bytes', chunkSize);
+
+  /// The plain text of the .docx at [uri], extracted natively while the file is
+  /// read; paragraphs end with a line break. Cancelling the subscription stops
+  /// the native reader.
+  static Stream<String> readText(String uri, {int chunkSize = 64 * 1024}) =>
+      _open(uri, 'text', chunkSize).cast<List<int>>().transform(utf8.decoder);
+
+  static Stream<Uint8List> _open(String uri, String format, int chunkSize) {
+    _initialize();
+    final id = _nextId++;
+    late StreamController<Uint8List> controller;
+    controller = StreamController<Uint8List>(
+      onListen: () async {
+        _streams[id] = controller;
+        try {
+          await _channel.invokeMethod(
+              'openStream', {'id': id, 'uri': uri, 'format': format, 'chunkSize': chunkSize});
+        } catch (e) {
+          if (_streams.remove(id) != null) {
+            controller.addError(e);
+            await controller.close();
+          }
+        }
+      },
+      onCancel: () async {
+        if (_streams.remove(id) != null) await cancel(id);
+      },
+    );
+    return controller.stream;
+  }
+
+  /// Stops the native reader of stream [id].
+  static Future<void> cancel(int id) async {
+    await _channel.invokeMethod('cancelStream', {'id': id});
+  }
+}
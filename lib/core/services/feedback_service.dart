@@ -69,4 +69,30 @@ class FeedbackService {
       print("Failed to play waiting tone: ${e.message}");
     }
   }
+
+  void stopProgressTone() {
+    try {
+      _platform.invokeMethod('stopProgressTone');
+    } on PlatformException catch (e) {
+      print("Failed to stop progress tone: ${e.message}");
+    }
+  }
+
+  void stopAllTones() {
+    try {
+      _platform.invokeMethod('stopAllTones');
+    } on PlatformException catch (e) {
+      print("Failed to stop tones: ${e.message}");
+    }
+  }
+
+  Future<Map<String, dynamic>> getToneLatency() async {
+    try {
+      final stats = await _platform.invokeMethod<Map>('getToneLatency');
+      return Map<String, dynamic>.from(stats ?? const {});
+    } on PlatformException catch (e) {
+      print("Failed to read tone latency: ${e.message}");
+      return const {};
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+import 'dart:async';
+import 'package:flutter/services.dart';
+
+/// A page shown on the document's texture: display it with
+/// `Texture(textureId: textureId)` at [width] x [height].
+class PdfPageView {
+  final int page;
+  final int textureId;
+  final int width;
+  final int height;
+  final bool cached;
+
+  PdfPageView({
+    required this.page,
+    required this.textureId,
+    required this.width,
+    required this.height,
+    required this.cached,
+  });
+}
+
+/// Renders PDF pages natively (`nabd/pdf`). The native engine keeps recently
+/// rendered pages and prefetches the next ones in reading order, so turning to
+/// the next page is usually answered from its cache.
+///
+/// Each open document has one texture; [render] draws the page onto it before
+/// returning, so no pixels travel over the channel.
+class PdfPageService {
+  static const MethodChannel _channel = MethodChannel('nabd/pdf');
+
+  /// Opens [uri] and returns `{docId, pageCount, textureId}`.
+  static Future<Map<String, dynamic>> open(String uri) async {
+    final info = await _channel.invokeMapMethod<String, dynamic>('open', {'uri': uri});
+    return info ?? const {};
+  }
+
+  /// Shows page [page] (0-based) of [docId], [width] pixels wide.
+  static Future<PdfPageView> render(int docId, int page, int width) async {
+    final info = await _channel.invokeMapMethod<String, dynamic>(
+        'render', {'docId': docId, 'page': page, 'width': width});
+    if (info == null) {
+      throw PlatformException(code: 'RENDER', message: 'No page $page');
+    }
+    return PdfPageView(
+      page: page,
+      textureId: info['textureId'] as int,
+      width: info['width'] as int,
+      height: info['height'] as int,
+      cached: info['cached'] == true,
+    );
+  }
+
+  static Future<void> close(int docId) async {
+    await _channel.invokeMethod('close', {'docId': docId});
+  }
+
+  /// Cache hits/misses, render times and the memory budget.
+  static Future<Map<String, dynamic>> getStats() async {
+    final stats = await _channel.invokeMapMethod<String, dynamic>('getStats');
+    return stats ?? const {};
+  }
+}
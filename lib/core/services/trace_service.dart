@@ -0,0 +1,92 @@
+import 'dart:typed_data';
+import 'package:flutter/services.dart';
+
+/// One record of the native trace ring (see NabdTrace.java).
+class TraceEvent {
+  final int timestampNs;
+  final int id;
+  final String name;
+  final int threadId;
+  final int a;
+  final int b;
+
+  TraceEvent(this.timestampNs, this.id, this.name, this.threadId, this.a, this.b);
+
+  @override
+  String toString() => '${(timestampNs / 1e6).toStringAsFixed(3)}ms [$threadId] $name a=$a b=$b';
+}
+
+/// Dumps the native diagnostics ring. Recording is on by default in debug builds
+/// and can be switched on in release builds with [setEnabled].
+class TraceService {
+  static const MethodChannel _channel = MethodChannel('nabd/trace');
+
+  static Future<void> setEnabled(bool enabled) async {
+    await _channel.invokeMethod('setEnabled', {'enabled': enabled});
+  }
+
+  static Future<bool> isEnabled() async {
+    return await _channel.invokeMethod<bool>('isEnabled') ?? false;
+  }
+
+  static Future<void> clear() async {
+    await _channel.invokeMethod('clear');
+  }
+
+  /// Switches the wake-event recorder (last [maxEvents] wake events with their
+  /// audio, score and timings) and returns its state. Off by default.
+  static Future<Map<String, dynamic>> setWakeRecorder({bool? enabled, int? maxEvents}) async {
+    final state = await _channel.invokeMapMethod<String, dynamic>('setWakeRecorder', {
+      if (enabled != null) 'enabled': enabled,
+      if (maxEvents != null) 'maxEvents': maxEvents,
+    });
+    return state ?? const {};
+  }
+
+  /// Event count, disk and memory use against their budgets, drops.
+  static Future<Map<String, dynamic>> getWakeRecorder() async {
+    return await _channel.invokeMapMethod<String, dynamic>('getWakeRecorder') ?? const {};
+  }
+
+  /// Saved wake events, newest first (keyword, outcome, score, timings, clip).
+  static Future<List<Map<String, dynamic>>> listWakeEvents() async {
+    final events = await _channel.invokeListMethod<Map>('listWakeEvents') ?? const [];
+    return events.map((e) => Map<String, dynamic>.from(e)).toList();
+  }
+
+  /// Zips the saved events (or only event [id]) and returns the archive path,
+  /// null when there is nothing to export.
+  static Future<String?> exportWakeEvents({String? id}) async {
+    return _channel.invokeMethod<String>('exportWakeEvents', {if (id != null) 'id': id});
+  }
+
+  static Future<void> clearWakeEvents() async {
+    await _channel.invokeMethod('clearWakeEvents');
+  }
+
+  /// Records oldest first. Section events carry the section name in [TraceEvent.name].
+  /// The wake-word listener runs in its own process with its own ring; pass
+  /// [wakeProcess] to dump that one (empty when the listener is not running).
+  static Future<List<TraceEvent>> dump({bool wakeProcess = false}) async {
+    final result = await _channel.invokeMethod<Map>('dump', {if (wakeProcess) 'process': 'wake'});
+    if (result == null) return [];
+    final Uint8List records = result['records'];
+    final int recordBytes = result['recordBytes'];
+    final Map names = result['events'];
+    final Map sections = result['sections'];
+
+    final data = ByteData.sublistView(records);
+    final events = <TraceEvent>[];
+    for (var offset = 0; offset + recordBytes <= records.length; offset += recordBytes) {
+      final ts = data.getInt64(offset, Endian.little);
+      final meta = data.getInt64(offset + 8, Endian.little);
+      final a = data.getInt64(offset + 16, Endian.little);
+      final b = data.getInt64(offset + 24, Endian.little);
+      final id = meta >> 32;
+      var name = names[id] as String? ?? 'event_$id';
+      if (id == 1 || id == 2) name = '$name ${sections[a] ?? a}';
+      events.add(TraceEvent(ts, id, name, meta & 0xffffffff, a, b));
+    }
+    return events;
+  }
+}
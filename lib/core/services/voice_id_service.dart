@@ -2,6 +2,19 @@ import 'package:flutter/services.dart';
 
 const _platform = MethodChannel('nabd/voiceid');
 
+/// The enrollment take was rejected by the native quality check before profiling.
+/// [reason] is NO_SPEECH, TOO_QUIET, NOISY or CLIPPING; [metrics] holds speechRatio,
+/// snrDb, clipRate, levelDbfs, noiseDbfs and frames.
+class EnrollmentQualityException implements Exception {
+  final String reason;
+  final Map<String, dynamic> metrics;
+
+  EnrollmentQualityException(this.reason, this.metrics);
+
+  @override
+  String toString() => 'EnrollmentQualityException($reason, $metrics)';
+}
+
 class VoiceIdService {
   Future<List<int>?> enrollVoice(String accessKey) async {
     try {
@@ -16,11 +29,25 @@ class VoiceIdService {
       }
       return null;
     } on PlatformException catch (e) {
+      if (e.code == 'ENROLL_QUALITY' && e.details is Map) {
+        final metrics = Map<String, dynamic>.from(e.details);
+        throw EnrollmentQualityException(metrics['reason'] as String? ?? 'UNKNOWN', metrics);
+      }
       print("Failed to enroll voice: '${e.message}'.");
       return null;
     }
   }
 
+  /// Quality metrics of the last enrollment take (accepted or not), if any.
+  Future<Map<String, dynamic>?> getEnrollmentQuality() async {
+    try {
+      final result = await _platform.invokeMethod<Map>('getEnrollmentQuality');
+      return result == null ? null : Map<String, dynamic>.from(result);
+    } on PlatformException {
+      return null;
+    }
+  }
+
   Future<void> resetEnrollment() async {
     try {
       await _platform.invokeMethod('resetEnrollment');
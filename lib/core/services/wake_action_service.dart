@@ -0,0 +1,54 @@
+import 'dart:async';
+import 'package:flutter/services.dart';
+
+import 'command_audio_service.dart';
+
+/// Delivers the action bound to the wake keyword that opened the app
+/// (e.g. "tab:1" for "noor read"), so the command needs no second utterance.
+/// When the listening bubble captured the command, `command` holds its text.
+class WakeActionService {
+  static const MethodChannel _channel = MethodChannel('nabd/wake_action');
+  static final StreamController<Map<String, dynamic>> _controller =
+      StreamController<Map<String, dynamic>>.broadcast();
+  static bool _initialized = false;
+
+  static Stream<Map<String, dynamic>> get actions => _controller.stream;
+
+  static void initialize() {
+    if (_initialized) return;
+    _initialized = true;
+    _channel.setMethodCallHandler((call) async {
+      if (call.method == 'wake_action' && call.arguments != null) {
+        _controller.add(Map<String, dynamic>.from(call.arguments));
+      }
+    });
+  }
+
+  /// Text of the command spoken right after [keyword] ("noor, read the page"),
+  /// recognised from the audio the wake service captured. Null when there was
+  /// none, it was not understood or the device cannot recognise recorded audio.
+  static Future<String?> recognizeCommand(String? keyword, String languageCode) async {
+    try {
+      if (await _channel.invokeMethod<bool>('canRecognizeCommand') != true) return null;
+      final pcm = await CommandAudioService.takeCommand(keyword);
+      if (pcm == null) return null;
+      return await _channel.invokeMethod<String>('recognizeCommand', {
+        'pcm': pcm,
+        'sampleRate': CommandAudioService.sampleRate,
+        'language': languageCode == 'ar' ? 'ar-SA' : 'en-US',
+      });
+    } catch (e) {
+      return null;
+    }
+  }
+
+  /// Action that launched the activity before Flutter was listening, if any.
+  static Future<Map<String, dynamic>?> consumePendingAction() async {
+    try {
+      final result = await _channel.invokeMethod<Map>('consumePendingAction');
+      return result == null ? null : Map<String, dynamic>.from(result);
+    } catch (e) {
+      return null;
+    }
+  }
+}
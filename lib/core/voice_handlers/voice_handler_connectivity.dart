@@ -0,0 +1,33 @@
+import 'package:flutter/material.dart';
+import 'package:flutter_bloc/flutter_bloc.dart';
+
+import '../../features/connectivity/presentation/cubit/connectivity_cubit.dart';
+import '../../features/connectivity/presentation/cubit/connectivity_state.dart';
+
+class ConnectivityVoiceHandler {
+  static Future<bool> handle(
+      BuildContext context,
+      Map<String, dynamic> intent, {
+        String? originalText,
+      }) async {
+    switch (intent['id']) {
+      case 'connectivity.check_wifi':
+        context.read<ConnectivityCubit>().request(ConnectivityTask.check);
+        return true;
+      case 'connectivity.wifi_password':
+        // كلمة المرور لا تأتي من حالة الشبكة، تحتاج الإعدادات دائماً
+        context.read<ConnectivityCubit>().request(ConnectivityTask.wifiPassword);
+        return true;
+      case 'connectivity.connect_bluetooth':
+        context.read<ConnectivityCubit>().request(ConnectivityTask.bluetooth);
+        return true;
+      case 'connectivity.mobile_data':
+        context.read<ConnectivityCubit>().request(ConnectivityTask.mobileData);
+        return true;
+      case 'connectivity.hotspot':
+        context.read<ConnectivityCubit>().request(ConnectivityTask.hotspot);
+        return true;
+    }
+    return false;
+  }
+}
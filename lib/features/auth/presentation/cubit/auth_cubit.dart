@@ -277,6 +277,8 @@ class AuthCubit extends Cubit<AuthState> {
           ),
         );
       }
+    } on EnrollmentQualityException catch (e) {
+      emit(VoiceIdEnrollmentError(message: _qualityMessage(e.reason), quality: e.metrics));
     } on PlatformException catch (e) {
       emit(
         VoiceIdEnrollmentError(
@@ -288,6 +290,21 @@ class AuthCubit extends Cubit<AuthState> {
     }
   }
 
+  String _qualityMessage(String reason) {
+    switch (reason) {
+      case 'NO_SPEECH':
+        return 'لم نسمع كلاماً كافياً، استمر في الكلام طوال مدة التسجيل.';
+      case 'TOO_QUIET':
+        return 'الصوت منخفض جداً، اقترب من الهاتف وأعد المحاولة.';
+      case 'NOISY':
+        return 'الضوضاء عالية، انتقل إلى مكان أهدأ وأعد المحاولة.';
+      case 'CLIPPING':
+        return 'الصوت مشوّه، ابتعد قليلاً عن الهاتف وأعد المحاولة.';
+      default:
+        return 'جودة التسجيل غير كافية، أعد المحاولة.';
+    }
+  }
+
   Future<void> checkAuthStatus() async {
     try {
       emit(AuthLoading());
@@ -108,9 +108,11 @@ class VoiceIdEnrollmentComplete extends AuthState {
 
 class VoiceIdEnrollmentError extends AuthState {
   final String message;
+  // مقاييس جودة التسجيل عند رفضه قبل إنشاء البصمة
+  final Map<String, dynamic>? quality;
 
-  const VoiceIdEnrollmentError({required this.message});
+  const VoiceIdEnrollmentError({required this.message, this.quality});
 
   @override
-  List<Object> get props => [message];
+  List<Object?> get props => [message, quality];
 }
@@ -27,9 +27,35 @@ class ConnectivityChannel {
             'password': call.arguments['password']
           });
           break;
+        case 'session_state':
+          _eventController.add({
+            'type': 'session_state',
+            'state': call.arguments['state'],
+            'previous': call.arguments['previous'],
+            'reason': call.arguments['reason']
+          });
+          break;
+        case 'network_state':
+          _eventController.add({
+            'type': 'network_state',
+            ...Map<String, dynamic>.from(call.arguments),
+          });
+          break;
         case 'capture_blocked':
           _eventController.add({'type': 'capture_blocked'});
           break;
+        case 'flow_step':
+          _eventController.add({
+            'type': 'flow_step',
+            ...Map<String, dynamic>.from(call.arguments),
+          });
+          break;
+        case 'flow_done':
+          _eventController.add({
+            'type': 'flow_done',
+            ...Map<String, dynamic>.from(call.arguments),
+          });
+          break;
         case 'failure':
           _eventController.add({
             'type': 'failure',
@@ -62,6 +88,20 @@ class ConnectivityChannel {
     }
   }
 
+  /// Current network from ConnectivityManager/WifiManager, no Settings involved.
+  /// Keys: connected, wifi, transport, validated, ssid (null when the platform
+  /// hides it), ssidStatus (on Wi-Fi: available, no_permission, location_off or
+  /// unknown), rssi, signalLevel (0-4), linkSpeedMbps, frequencyMhz.
+  /// The SSID needs the location permission and location turned on.
+  static Future<Map<String, dynamic>?> getNetworkState() async {
+    try {
+      final result = await _channel.invokeMethod<Map>('get_network_state');
+      return result == null ? null : Map<String, dynamic>.from(result);
+    } catch (e) {
+      return null;
+    }
+  }
+
   static Future<void> openWifiSettings() async {
     try {
       await _channel.invokeMethod('open_wifi_settings');
@@ -70,6 +110,25 @@ class ConnectivityChannel {
     }
   }
 
+  /// Opens the Settings screen of [flow] (an id from settings_flows.json, e.g.
+  /// wifi, bluetooth, mobile_data, hotspot); a11y_start then runs its steps.
+  static Future<void> openSettingsFlow(String flow) async {
+    try {
+      await _channel.invokeMethod('open_settings_flow', {'flow': flow});
+    } catch (e) {
+      // Handle error silently
+    }
+  }
+
+  static Future<List<String>> getSettingsFlows() async {
+    try {
+      final result = await _channel.invokeMethod<List>('settings_flows');
+      return result == null ? const [] : List<String>.from(result);
+    } catch (e) {
+      return const [];
+    }
+  }
+
   static Future<void> captureOnce() async {
     try {
       await _channel.invokeMethod('capture_once');
@@ -111,9 +170,9 @@ class ConnectivityChannel {
     }
   }
 
-  static Future<void> connectivityFlowStart() async {
+  static Future<void> connectivityFlowStart({String? flow}) async {
     try {
-      await _channel.invokeMethod('connectivity_flow_start');
+      await _channel.invokeMethod('connectivity_flow_start', {'flow': flow});
     } catch (e) {
       // Handle error silently
     }
@@ -127,6 +186,15 @@ class ConnectivityChannel {
     }
   }
 
+  static Future<String> getSessionState() async {
+    try {
+      final result = await _channel.invokeMethod('connectivity_session_state');
+      return result as String? ?? 'IDLE';
+    } catch (e) {
+      return 'IDLE';
+    }
+  }
+
   static Future<String> getWifiPassword(String ssid) async {
     try {
       final result = await _channel.invokeMethod('get_wifi_password', {'ssid': ssid});
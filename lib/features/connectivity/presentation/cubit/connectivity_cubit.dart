@@ -5,8 +5,37 @@ class ConnectivityCubit extends Cubit<ConnectivityState> {
 
   ConnectivityCubit() : super(ConnectivityIdle());
 
-  void showSuccess() {
-    emit(ConnectivitySuccess());
+  ConnectivityTask? _pending;
+  int _serial = 0;
+
+  // الشاشة قد لا تكون مبنية بعد (تغيير التبويب)، لذلك يبقى الطلب معلقاً حتى تأخذه
+  void request(ConnectivityTask task) {
+    _pending = task;
+    emit(ConnectivityRequested(task: task, serial: ++_serial));
+  }
+
+  ConnectivityTask? takePending() {
+    final task = _pending;
+    _pending = null;
+    return task;
+  }
+
+  void showSuccess({String? flow}) {
+    emit(ConnectivitySuccess(flow: flow));
+  }
+
+  void showConnected(Map<String, dynamic> network) {
+    emit(ConnectivityConnected(
+      ssid: network['ssid'] as String?,
+      ssidStatus: network['ssidStatus'] as String?,
+      signalLevel: network['signalLevel'] as int?,
+      linkSpeedMbps: network['linkSpeedMbps'] as int?,
+      validated: network['validated'] == true,
+    ));
+  }
+
+  void showPassword(String? ssid, String? password, {String? ssidStatus}) {
+    emit(ConnectivityPassword(ssid: ssid, ssidStatus: ssidStatus, password: password));
   }
 
   void showError(String reason) {
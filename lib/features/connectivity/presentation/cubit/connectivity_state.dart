@@ -1,5 +1,20 @@
 import 'package:equatable/equatable.dart';
 
+/// What the connectivity screen was opened for. Only [check] can be answered
+/// from the network APIs; the others need Settings and the accessibility flow.
+enum ConnectivityTask {
+  check,
+  wifiPassword,
+  bluetooth('bluetooth'),
+  mobileData('mobile_data'),
+  hotspot('hotspot');
+
+  /// Settings flow id (settings_flows.json) for tasks that just run a flow.
+  final String? flow;
+
+  const ConnectivityTask([this.flow]);
+}
+
 abstract class ConnectivityState extends Equatable {
   const ConnectivityState();
 
@@ -10,9 +25,59 @@ abstract class ConnectivityState extends Equatable {
 class ConnectivityIdle extends ConnectivityState {}
 
 
+/// A voice command asked for [task] while the screen may already be showing.
+class ConnectivityRequested extends ConnectivityState {
+  final ConnectivityTask task;
+  final int serial;
+
+  const ConnectivityRequested({required this.task, required this.serial});
+
+  @override
+  List<Object?> get props => [task, serial];
+}
+
+
+
+
+class ConnectivitySuccess extends ConnectivityState {
+  /// The settings flow that finished; null for the Wi-Fi screen.
+  final String? flow;
+
+  const ConnectivitySuccess({this.flow});
 
+  @override
+  List<Object?> get props => [flow];
+}
+
+
+/// Already on Wi-Fi, answered from the network APIs without opening Settings.
+class ConnectivityConnected extends ConnectivityState {
+  final String? ssid;
+  /// Why [ssid] is null: no_permission, location_off or unknown ('available' otherwise).
+  final String? ssidStatus;
+  final int? signalLevel;
+  final int? linkSpeedMbps;
+  final bool validated;
 
-class ConnectivitySuccess extends ConnectivityState {}
+  const ConnectivityConnected({this.ssid, this.ssidStatus, this.signalLevel, this.linkSpeedMbps, required this.validated});
+
+  @override
+  List<Object?> get props => [ssid, ssidStatus, signalLevel, linkSpeedMbps, validated];
+}
+
+
+/// Result of the Wi-Fi password task; [password] is null when no QR was read.
+/// Without [ssid] nothing is read, and [ssidStatus] says why it is missing.
+class ConnectivityPassword extends ConnectivityState {
+  final String? ssid;
+  final String? ssidStatus;
+  final String? password;
+
+  const ConnectivityPassword({this.ssid, this.ssidStatus, this.password});
+
+  @override
+  List<Object?> get props => [ssid, ssidStatus, password];
+}
 
 
 class ConnectivityError extends ConnectivityState {
@@ -1,7 +1,10 @@
+import 'dart:async';
 import 'package:flutter/material.dart';
 import 'package:flutter_bloc/flutter_bloc.dart';
+import 'package:permission_handler/permission_handler.dart';
 import '../../../../l10n/app_localizations.dart';
 import '../../../../core/services/feedback_service.dart';
+import '../../../../core/utils/permissions_helper.dart';
 import '../../../../core/theme/app_theme.dart';
 import '../cubit/connectivity_cubit.dart';
 import '../cubit/connectivity_state.dart';
@@ -15,19 +18,22 @@ class ConnectivityScreen extends StatefulWidget {
 }
 
 class _ConnectivityScreenState extends State<ConnectivityScreen> {
+  // زر المشاركة قد يطلب رمز القفل، فننتظر ظهور رمز QR لفترة
+  static const Duration _qrWait = Duration(seconds: 20);
+  static const Duration _qrPoll = Duration(milliseconds: 500);
+
   final FeedbackService _feedbackService = FeedbackService();
-  bool _flowStarted = false;
+  bool _readingPassword = false;
 
   @override
   void initState() {
     super.initState();
     ConnectivityChannel.initialize();
     _setupConnectivityChannel();
-    
-    if (!_flowStarted) {
-      _flowStarted = true;
-      _runConnectivityFlow();
-    }
+
+    // أمر صوتي قد يكون طلب مهمة قبل بناء الشاشة، وإلا فهو فحص عادي
+    final task = context.read<ConnectivityCubit>().takePending() ?? ConnectivityTask.check;
+    _runConnectivityFlow(task);
   }
 
   void _setupConnectivityChannel() {
@@ -36,6 +42,19 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
         case 'failure':
           _onFailure(arguments as Map<String, dynamic>);
           break;
+        case 'session_state':
+        case 'flow_step':
+        case 'flow_done':
+        case 'qr_parsed':
+          // انتقالات الجلسة وقياسات الخطوات للمتابعة فقط، وكلمة المرور تصل من getWifiPassword
+          break;
+        case 'network_state':
+          // تحديثات الشبكة تهم المسار السريع فقط
+          final network = Map<String, dynamic>.from(arguments as Map);
+          if (context.read<ConnectivityCubit>().state is ConnectivityConnected && network['wifi'] == true) {
+            context.read<ConnectivityCubit>().showConnected(network);
+          }
+          break;
         default:
           // تجاهل كل الطلبات الأخرى - نحتاج فقط رسالة النجاح
           context.read<ConnectivityCubit>().showSuccess();
@@ -44,17 +63,111 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
     });
   }
 
-  Future<void> _runConnectivityFlow() async {
+  Future<void> _runConnectivityFlow(ConnectivityTask task) async {
+    // المسار السريع: إذا كان الجهاز متصلاً بالواي فاي نجيب مباشرة من حالة الشبكة
+    // بدون فتح الإعدادات أو مسح شجرة الـ accessibility. كلمة المرور ليست في
+    // حالة الشبكة، فطلبها يمر دائماً عبر الإعدادات
+    if (task == ConnectivityTask.check) {
+      // اسم الشبكة يعتبره أندرويد بيانات موقع، فبدون إذن الموقع يصل فارغاً
+      await PermissionsHelper.requestPermission(Permission.locationWhenInUse);
+      final network = await ConnectivityChannel.getNetworkState();
+      if (!mounted) return;
+      if (network != null && network['wifi'] == true) {
+        context.read<ConnectivityCubit>().showConnected(network);
+        return;
+      }
+    } else if (task == ConnectivityTask.wifiPassword) {
+      await _readWifiPassword();
+      return;
+    } else if (task.flow != null) {
+      await _runSettingsFlow(task.flow!);
+      return;
+    }
+
     // فتح إعدادات الواي فاي وتشغيل accessibility service
+    // الجلسة في الطرف الأصلي تنتظر ظهور الإعدادات بنفسها، لا حاجة للتأخير
     await ConnectivityChannel.openWifiSettings();
-    await Future.delayed(const Duration(milliseconds: 200));
     await ConnectivityChannel.invoke('a11y_start');
-    
+    if (!mounted) return;
+
     // عرض رسالة النجاح
     context.read<ConnectivityCubit>().showSuccess();
   }
 
 
+  // تشغيل مسار إعدادات كامل (البلوتوث، بيانات الجوال، نقطة الاتصال) وانتظار نهايته
+  Future<void> _runSettingsFlow(String flow) async {
+    final cubit = context.read<ConnectivityCubit>();
+    final done = ConnectivityChannel.eventStream
+        .firstWhere((e) => e['type'] == 'flow_done' || e['type'] == 'failure')
+        .timeout(const Duration(seconds: 35), onTimeout: () => {'type': 'flow_done', 'outcome': 'timeout'});
+    await ConnectivityChannel.connectivityFlowStart(flow: flow);
+    await ConnectivityChannel.openSettingsFlow(flow);
+    await ConnectivityChannel.invoke('a11y_start');
+
+    final event = await done;
+    await ConnectivityChannel.connectivityFlowEnd();
+    // الفشل يُعرض من معالج القناة
+    if (event['type'] == 'failure') return;
+    if (event['outcome'] == 'done') {
+      cubit.showSuccess(flow: flow);
+    } else {
+      cubit.showError('TIMEOUT');
+    }
+  }
+
+  // الإعدادات → الشبكة المتصلة → مشاركة، ثم قراءة رمز QR من إطار الشاشة المحضّر مسبقاً
+  Future<void> _readWifiPassword() async {
+    if (_readingPassword) return;
+    _readingPassword = true;
+    final cubit = context.read<ConnectivityCubit>();
+    try {
+      await PermissionsHelper.requestPermission(Permission.locationWhenInUse);
+      final network = await ConnectivityChannel.getNetworkState();
+      final String? ssid = network?['ssid'] as String?;
+      // بدون اسم الشبكة لا يمكن التأكد أن رمز QR الظاهر لها، فلا نقرأ أي كلمة مرور
+      if (ssid == null) {
+        cubit.showPassword(null, null, ssidStatus: network?['ssidStatus'] as String? ?? 'unknown');
+        return;
+      }
+      if (!await ConnectivityChannel.isScreenCaptureReady() &&
+          !await ConnectivityChannel.requestScreenCapture()) {
+        cubit.showPassword(ssid, null);
+        return;
+      }
+
+      final done = ConnectivityChannel.eventStream
+          .firstWhere((e) => e['type'] == 'flow_done' || e['type'] == 'failure')
+          .timeout(const Duration(seconds: 35), onTimeout: () => {'type': 'flow_done', 'outcome': 'timeout'});
+      await ConnectivityChannel.prewarmStart();
+      await ConnectivityChannel.connectivityFlowStart(flow: 'wifi_share');
+      await ConnectivityChannel.openSettingsFlow('wifi_share');
+      await ConnectivityChannel.invoke('a11y_start');
+
+      final event = await done;
+      // الفشل يُعرض من معالج القناة
+      if (event['type'] == 'failure') return;
+      if (event['outcome'] != 'done') {
+        cubit.showPassword(ssid, null);
+        return;
+      }
+
+      String password = '';
+      final deadline = DateTime.now().add(_qrWait);
+      while (password.isEmpty && DateTime.now().isBefore(deadline)) {
+        if (await ConnectivityChannel.captureFromPrewarm()) {
+          password = await ConnectivityChannel.getWifiPassword(ssid);
+        }
+        if (password.isEmpty) await Future.delayed(_qrPoll);
+      }
+      cubit.showPassword(ssid, password.isEmpty ? null : password);
+    } finally {
+      await ConnectivityChannel.prewarmStop();
+      await ConnectivityChannel.connectivityFlowEnd();
+      _readingPassword = false;
+    }
+  }
+
   void _onFailure(Map err) async {
     // Show error
     if (mounted) {
@@ -74,9 +187,19 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
   @override
   Widget build(BuildContext context) {
     return BlocListener<ConnectivityCubit, ConnectivityState>(
+      // تحديثات الإشارة لا تُعلن من جديد
+      listenWhen: (previous, current) => !(previous is ConnectivityConnected && current is ConnectivityConnected),
       listener: (context, state) {
-        if (state is ConnectivitySuccess) {
+        if (state is ConnectivityRequested) {
+          // الشاشة ظاهرة بالفعل؛ إن أخذتها initState فلا شيء معلق
+          final task = context.read<ConnectivityCubit>().takePending();
+          if (task != null) _runConnectivityFlow(task);
+        } else if (state is ConnectivitySuccess) {
           _feedbackService.announce(AppLocalizations.of(context)!.operation_successful, context);
+        } else if (state is ConnectivityConnected) {
+          _feedbackService.announce(_connectedText(context, state), context);
+        } else if (state is ConnectivityPassword) {
+          _feedbackService.announce(_passwordText(context, state), context);
         }
       },
       child: BlocBuilder<ConnectivityCubit, ConnectivityState>(
@@ -96,7 +219,11 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
 
   Widget _buildContent(BuildContext context, ConnectivityState state) {
     if (state is ConnectivitySuccess) {
-      return _buildSuccessMessage(context);
+      return _buildSuccessMessage(context, state);
+    } else if (state is ConnectivityConnected) {
+      return _buildConnectedMessage(context, state);
+    } else if (state is ConnectivityPassword) {
+      return _buildPasswordMessage(context, state);
     } else if (state is ConnectivityError) {
       return _buildErrorMessage(context, state);
     } else {
@@ -104,7 +231,7 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
     }
   }
 
-  Widget _buildSuccessMessage(BuildContext context) {
+  Widget _buildSuccessMessage(BuildContext context, ConnectivitySuccess state) {
     return Container(
       decoration: const BoxDecoration(
         gradient: AppTheme.mainGradient,
@@ -142,13 +269,14 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
               const SizedBox(height: 16),
               
               // Success Message
-              Text(
-                AppLocalizations.of(context)!.wifi_settings_opened,
-                style: Theme.of(context).textTheme.bodyLarge?.copyWith(
-                  color: Colors.white.withOpacity(0.9),
+              if (state.flow == null)
+                Text(
+                  AppLocalizations.of(context)!.wifi_settings_opened,
+                  style: Theme.of(context).textTheme.bodyLarge?.copyWith(
+                    color: Colors.white.withOpacity(0.9),
+                  ),
+                  textAlign: TextAlign.center,
                 ),
-                textAlign: TextAlign.center,
-              ),
               const SizedBox(height: 32),
               
               // Close button
@@ -182,6 +310,91 @@ class _ConnectivityScreenState extends State<ConnectivityScreen> {
 
 
 
+  String _connectedText(BuildContext context, ConnectivityConnected state) {
+    final l10n = AppLocalizations.of(context)!;
+    if (state.ssid != null) return l10n.wifi_connected_to(state.ssid!);
+    return '${l10n.wifi_connected}. ${_ssidMissingText(l10n, state.ssidStatus)}';
+  }
+
+  String _ssidMissingText(AppLocalizations l10n, String? ssidStatus) {
+    switch (ssidStatus) {
+      case 'no_permission':
+        return l10n.wifi_name_needs_permission;
+      case 'location_off':
+        return l10n.wifi_name_needs_location;
+      default:
+        return l10n.wifi_name_unavailable;
+    }
+  }
+
+  Widget _buildConnectedMessage(BuildContext context, ConnectivityConnected state) {
+    final details = [
+      if (state.signalLevel != null) '${AppLocalizations.of(context)!.wifi_signal}: ${state.signalLevel}/4',
+      if (state.linkSpeedMbps != null) '${state.linkSpeedMbps} Mbps',
+      if (!state.validated) AppLocalizations.of(context)!.wifi_no_internet,
+    ];
+    return Column(
+      mainAxisAlignment: MainAxisAlignment.center,
+      children: [
+        const Icon(Icons.wifi, size: 80, color: Colors.white),
+        const SizedBox(height: 24),
+        Text(
+          _connectedText(context, state),
+          style: Theme.of(context).textTheme.headlineSmall?.copyWith(
+            color: Colors.white,
+            fontWeight: FontWeight.bold,
+          ),
+          textAlign: TextAlign.center,
+        ),
+        const SizedBox(height: 12),
+        Text(
+          details.join(' · '),
+          style: Theme.of(context).textTheme.bodyLarge?.copyWith(
+            color: Colors.white.withOpacity(0.9),
+          ),
+          textAlign: TextAlign.center,
+        ),
+      ],
+    );
+  }
+
+  String _passwordText(BuildContext context, ConnectivityPassword state) {
+    final l10n = AppLocalizations.of(context)!;
+    if (state.password != null) return l10n.wifi_password_is(state.password!);
+    if (state.ssidStatus != null) {
+      return '${l10n.wifi_password_not_found}. ${_ssidMissingText(l10n, state.ssidStatus)}';
+    }
+    return l10n.wifi_password_not_found;
+  }
+
+  Widget _buildPasswordMessage(BuildContext context, ConnectivityPassword state) {
+    return Column(
+      mainAxisAlignment: MainAxisAlignment.center,
+      children: [
+        Icon(state.password != null ? Icons.wifi_password : Icons.error, size: 80,
+            color: state.password != null ? Colors.white : Colors.red),
+        const SizedBox(height: 24),
+        if (state.ssid != null)
+          Text(
+            state.ssid!,
+            style: Theme.of(context).textTheme.bodyLarge?.copyWith(
+              color: Colors.white.withOpacity(0.9),
+            ),
+            textAlign: TextAlign.center,
+          ),
+        const SizedBox(height: 12),
+        SelectableText(
+          _passwordText(context, state),
+          style: Theme.of(context).textTheme.headlineSmall?.copyWith(
+            color: Colors.white,
+            fontWeight: FontWeight.bold,
+          ),
+          textAlign: TextAlign.center,
+        ),
+      ],
+    );
+  }
+
   Widget _buildErrorMessage(BuildContext context, ConnectivityError state) {
     return Column(
       mainAxisAlignment: MainAxisAlignment.center,
@@ -4,6 +4,7 @@ import 'package:camera/camera.dart';
 import 'package:web_socket_channel/web_socket_channel.dart';
 import 'package:web_socket_channel/io.dart';
 
+import 'offline_guidance.dart';
 import 'yuv_to_jpeg_converter.dart';
 
 typedef GuidanceCallback =
@@ -18,6 +19,22 @@ class GuidanceService {
   final String serverUrl;
   final int targetFps;
 
+  /// Skip uploading frames the on-device estimator is sure show no document.
+  /// Off by default: a wrong local no_document would hide the page from the server.
+  final bool prefilterUploads;
+
+  // Without a server reply for this long, guidance comes from the phone.
+  static const int _serverStaleMs = 1500;
+  // The on-device estimate runs at most this often while it stands in.
+  static const int _localGapMs = 150;
+  // With prefilterUploads, only no_document this certain keeps a frame off the wire.
+  static const double _prefilterConfidence = 0.9;
+
+  final OfflineGuidance _offline = OfflineGuidance();
+  GuidanceCallback? _onGuidance;
+  int _lastServerGuidanceMs = 0;
+  int _lastLocalMs = 0;
+
   CameraController? _camera;
   WebSocketChannel? _channel;
   StreamSubscription? _wsSub;
@@ -32,12 +49,18 @@ class GuidanceService {
 
   bool _isStreaming = false;
 
-  GuidanceService({required this.serverUrl, this.targetFps = 20});
+  GuidanceService({
+    required this.serverUrl,
+    this.targetFps = 20,
+    this.prefilterUploads = false,
+  });
 
   Future<void> start({
     required GuidanceCallback onGuidance,
     required Function(String) onError,
   }) async {
+    _onGuidance = onGuidance;
+    await _offline.reset();
     try {
       final cameras = await availableCameras();
       _camera = CameraController(
@@ -73,6 +96,7 @@ class GuidanceService {
           try {
             final m = jsonDecode(data.toString()) as Map<String, dynamic>;
             if (m['type'] == 'guidance') {
+              _lastServerGuidanceMs = DateTime.now().millisecondsSinceEpoch;
               onGuidance(
                 direction: (m['class'] as String?) ?? 'no_document',
                 coverage: (m['coverage'] ?? 0.0).toDouble(),
@@ -95,6 +119,8 @@ class GuidanceService {
       );
 
       _connected = true;
+      // Give the server its full grace period before standing in for it.
+      _lastServerGuidanceMs = DateTime.now().millisecondsSinceEpoch;
       _startHeartbeat();
 
       _isStreaming = true;
@@ -131,18 +157,50 @@ class GuidanceService {
     _wsSub?.cancel();
     _channel?.sink.close();
     _channel = null;
+    _onGuidance = null;
     await _camera?.dispose();
     _camera = null;
     _connected = false;
   }
 
+  bool _serverAvailable(int now) =>
+      _channel != null &&
+      _connected &&
+      now - _lastServerGuidanceMs < _serverStaleMs;
+
+  void _deliver(GuidanceReading reading) {
+    _onGuidance?.call(
+      direction: reading.direction,
+      coverage: reading.coverage,
+      confidence: reading.confidence,
+      ready: reading.ready,
+    );
+  }
+
   Future<void> _onFrame(CameraImage image) async {
     final now = DateTime.now().millisecondsSinceEpoch;
-    if (_channel == null) return;
     if (_isProcessing) return;
     if (now - _lastSentMs < _minGapMs) return;
     _isProcessing = true;
     try {
+      if (!_serverAvailable(now)) {
+        // No (timely) server: guide from the phone instead of dropping the frame.
+        if (now - _lastLocalMs >= _localGapMs) {
+          _lastLocalMs = now;
+          final local = await _offline.estimate(image);
+          if (local != null) _deliver(local);
+        }
+        if (_channel == null || !_connected) return;
+      } else if (prefilterUploads) {
+        final local = await _offline.estimate(image);
+        if (local != null &&
+            local.direction == 'no_document' &&
+            local.confidence >= _prefilterConfidence) {
+          _deliver(local);
+          _lastSentMs = now;
+          return;
+        }
+      }
       final jpeg = await YuvToJpegConverter.convert(image, 80);
       if (jpeg.isNotEmpty && _channel != null) {
         _seq += 1;
@@ -159,8 +217,10 @@ class GuidanceService {
         _channel!.sink.add(jpeg);
         _lastSentMs = now;
       }
-    } catch (_) {}
-    _isProcessing = false;
+    } catch (_) {
+    } finally {
+      _isProcessing = false;
+    }
   }
 
   CameraController? get cameraController => _camera;
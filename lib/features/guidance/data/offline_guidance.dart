@@ -0,0 +1,68 @@
+import 'dart:typed_data';
+import 'package:camera/camera.dart';
+import 'package:flutter/services.dart';
+
+/// One guidance reading, from the server or from the on-device estimator.
+class GuidanceReading {
+  final String direction;
+  final double coverage;
+  final double confidence;
+  final bool ready;
+  final String? tilt;
+
+  const GuidanceReading({
+    required this.direction,
+    required this.coverage,
+    required this.confidence,
+    required this.ready,
+    this.tilt,
+  });
+
+  factory GuidanceReading.fromMap(Map<dynamic, dynamic> m) => GuidanceReading(
+        direction: (m['class'] as String?) ?? 'no_document',
+        coverage: (m['coverage'] ?? 0.0).toDouble(),
+        confidence: (m['conf'] ?? 0.0).toDouble(),
+        ready: (m['ready'] ?? false) == true,
+        tilt: m['tilt'] as String?,
+      );
+}
+
+/// Framing guidance computed on the phone (`nabd/guidance`), used when the
+/// guidance server is unreachable or slow, and to skip uploading frames that
+/// plainly show no document. Only a subsampled luma plane (at most
+/// [maxWidth] pixels wide) crosses the channel.
+class OfflineGuidance {
+  static const MethodChannel _channel = MethodChannel('nabd/guidance');
+  static const int maxWidth = 160;
+
+  Future<GuidanceReading?> estimate(CameraImage image) async {
+    if (image.planes.isEmpty) return null;
+    final plane = image.planes[0];
+    final step = (image.width + maxWidth - 1) ~/ maxWidth;
+    final w = image.width ~/ step;
+    final h = image.height ~/ step;
+    final src = plane.bytes;
+    final out = Uint8List(w * h);
+    for (int y = 0; y < h; y++) {
+      final row = y * step * plane.bytesPerRow;
+      for (int x = 0; x < w; x++) {
+        out[y * w + x] = src[row + x * step];
+      }
+    }
+    try {
+      final m = await _channel.invokeMapMethod<String, dynamic>(
+          'estimate', {'y': out, 'width': w, 'height': h, 'rowStride': w});
+      return m == null ? null : GuidanceReading.fromMap(m);
+    } on PlatformException {
+      return null;
+    }
+  }
+
+  Future<void> reset() async {
+    try {
+      await _channel.invokeMethod('reset');
+    } on PlatformException {
+      // Nothing to reset on platforms without the estimator.
+    }
+  }
+}
@@ -5,8 +5,10 @@ import 'package:navia/core/services/feedback_service.dart';
 
 import '../../../../core/services/stt_service.dart';
 import '../../../../core/services/shake_detector_service.dart';
+import '../../../../core/services/wake_action_service.dart';
 import '../../../../core/theme/app_theme.dart';
 import '../../../../core/voice_handlers/voice_handler_camera.dart';
+import '../../../../core/voice_handlers/voice_handler_connectivity.dart';
 import '../../../../core/voice_handlers/voice_handler_language.dart';
 import '../../../../core/voice_handlers/voice_handler_profile.dart';
 import '../../../../l10n/app_localizations.dart';
@@ -48,11 +50,18 @@ class _MainScreenState extends State<MainScreen> with WidgetsBindingObserver {
   late VoiceRouter _voiceRouter;
   late ChatCompilationLoader _loader;
   bool _inited = false;
+  StreamSubscription<Map<String, dynamic>>? _wakeActionSub;
 
   @override
   void initState() {
     super.initState();
     WidgetsBinding.instance.addObserver(this);
+    // أوامر الكلمة المفتاحية (مثل "نور اقرأ") تصل مباشرة بدون جولة كلام ثانية
+    WakeActionService.initialize();
+    _wakeActionSub = WakeActionService.actions.listen(_handleWakeAction);
+    WakeActionService.consumePendingAction().then((wake) {
+      if (wake != null) _handleWakeAction(wake);
+    });
     // نبدأ مستشعر الهز بمجرد دخول الشاشة.
     _shakeDetectorService.start(
       onShake: (event) {
@@ -128,8 +137,50 @@ class _MainScreenState extends State<MainScreen> with WidgetsBindingObserver {
     });
   }
 
+  void _handleWakeAction(Map<String, dynamic> wake) {
+    if (!mounted) return;
+    final String action = wake['action'] as String? ?? 'open';
+    print("[🟢] أمر الكلمة المفتاحية: ${wake['keyword']} → $action");
+    if (action.startsWith('tab:')) {
+      final index = int.tryParse(action.substring(4));
+      if (index != null) {
+        Navigator.of(context).popUntil((route) => route.isFirst);
+        context.read<NavigationCubit>().changePage(index);
+      }
+    } else if (action.startsWith('intent:')) {
+      // intent:<page>:<intent id> → نفس مسار أوامر VoiceRouter
+      final parts = action.split(':');
+      if (parts.length == 3) {
+        final navCubit = context.read<NavigationCubit>();
+        final targetIndex = _pageIndexFromFileName(parts[1]);
+        if (navCubit.state.index != targetIndex) navCubit.changePage(targetIndex);
+        _executeIntent(context, {'id': parts[2]}, wake['command'] as String? ?? '');
+      }
+    } else if (action == 'command') {
+      // الفقاعة لم يكن لديها فهرس الأوامر بعد: نمرر النص كأمر صوتي عادي
+      final command = wake['command'] as String?;
+      if (command != null && command.trim().isNotEmpty) {
+        Navigator.of(context).popUntil((route) => route.isFirst);
+        _handleVoiceCommand(command);
+      }
+    } else if (action == 'open') {
+      // "نور" والأمر في جملة واحدة: نتعرف على الصوت الملتقط بعد الكلمة المفتاحية
+      _recognizeWakeCommand(wake['keyword'] as String?);
+    }
+  }
+
+  Future<void> _recognizeWakeCommand(String? keyword) async {
+    final lang = Localizations.localeOf(context).languageCode;
+    final text = await WakeActionService.recognizeCommand(keyword, lang);
+    if (!mounted || text == null) return;
+    print("أمر بعد الكلمة المفتاحية: $text");
+    setState(() => _lastCommand = text);
+    _handleVoiceCommand(text);
+  }
+
   @override
   void dispose() {
+    _wakeActionSub?.cancel();
     _silenceTimer?.cancel();
     _shakeDetectorService.stop(); // إيقاف مستشعر الهز.
     _sttService.stopListening();
@@ -217,6 +268,7 @@ class _MainScreenState extends State<MainScreen> with WidgetsBindingObserver {
       return;
     }
     if (await LanguageVoiceHandler.handle(context, intent, originalText: originalText)) return;
+    if (await ConnectivityVoiceHandler.handle(context, intent, originalText: originalText)) return;
     print("[🟢] لم يتعرف على أي Handler للintent الحالي");
     _announcePage("لم أفهم الأمر");
   }
@@ -1,3 +1,4 @@
+import 'package:flutter/services.dart';
 import 'chat_compilation_loader.dart';
 
 class VoiceRouter {
@@ -10,10 +11,35 @@ class VoiceRouter {
     'settings',
   ];
 
+  static const MethodChannel _indexChannel = MethodChannel('nabd/intent_index');
+
   VoiceRouter(this.loader);
 
   Future<Map<String, dynamic>> route(String userText,
       {String currentPage = 'home'}) async {
+    // المسار السريع: الفهرس المترجم في Java (نفس ملفات YAML ونفس قواعد المطابقة)
+    try {
+      final result = await _indexChannel.invokeMethod<Map>('route', {
+        'text': userText,
+        'lang': loader.locale,
+        'page': currentPage,
+      });
+      if (result != null) return _toDartMap(result);
+    } on PlatformException catch (e) {
+      print('[VoiceRouter] native index failed: ${e.message}');
+    } on MissingPluginException {
+      // لا يوجد فهرس أصلي (منصة أخرى) → المسار القديم
+    }
+    return _routeFromYaml(userText, currentPage: currentPage);
+  }
+
+  static Map<String, dynamic> _toDartMap(Map map) {
+    return map.map((key, value) =>
+        MapEntry(key.toString(), value is Map ? _toDartMap(value) : value));
+  }
+
+  Future<Map<String, dynamic>> _routeFromYaml(String userText,
+      {String currentPage = 'home'}) async {
     print('================= VoiceRouter ===============');
     print('Received text: $userText');
     print('Current page: $currentPage');
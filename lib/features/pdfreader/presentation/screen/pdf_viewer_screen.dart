@@ -0,0 +1,147 @@
+import 'package:flutter/material.dart';
+import 'package:flutter/semantics.dart';
+import 'package:flutter/services.dart';
+import 'package:navia/core/services/pdf_page_service.dart';
+
+/// Shows a picked PDF one page at a time. Pages are rendered natively onto the
+/// document's texture; the engine prefetches the next pages, so a turn forward
+/// is usually answered from its cache.
+class PdfViewerScreen extends StatefulWidget {
+  final String uri;
+  final String name;
+
+  const PdfViewerScreen({super.key, required this.uri, required this.name});
+
+  @override
+  State<PdfViewerScreen> createState() => _PdfViewerScreenState();
+}
+
+class _PdfViewerScreenState extends State<PdfViewerScreen> {
+  int? _docId;
+  int _pageCount = 0;
+  int _page = 0;
+  PdfPageView? _view;
+  String? _error;
+  // Only the newest turn updates the screen.
+  int _request = 0;
+  bool _disposed = false;
+
+  @override
+  void initState() {
+    super.initState();
+    _open();
+  }
+
+  Future<void> _open() async {
+    try {
+      final info = await PdfPageService.open(widget.uri);
+      final docId = info['docId'] as int?;
+      if (_disposed) {
+        if (docId != null) PdfPageService.close(docId);
+        return;
+      }
+      setState(() {
+        _docId = docId;
+        _pageCount = (info['pageCount'] as int?) ?? 0;
+      });
+      if (docId == null || _pageCount == 0) {
+        setState(() => _error = 'This document has no pages.');
+        return;
+      }
+      await _show(0);
+    } on PlatformException catch (e) {
+      if (mounted) setState(() => _error = 'Could not open the document. ${e.message ?? ''}');
+    }
+  }
+
+  // Physical pixels, so the page is as sharp as the screen.
+  int _pixelWidth() {
+    final media = MediaQuery.of(context);
+    return (media.size.width * media.devicePixelRatio).round();
+  }
+
+  Future<void> _show(int page) async {
+    final docId = _docId;
+    if (docId == null || page < 0 || page >= _pageCount) return;
+    final request = ++_request;
+    try {
+      final view = await PdfPageService.render(docId, page, _pixelWidth());
+      if (!mounted || request != _request) return;
+      setState(() {
+        _page = page;
+        _view = view;
+      });
+      SemanticsService.announce('Page ${page + 1} of $_pageCount', Directionality.of(context));
+    } on PlatformException catch (e) {
+      if (!mounted || request != _request) return;
+      debugPrint('render failed: ${e.message}');
+      SemanticsService.announce('Could not show page ${page + 1}', Directionality.of(context));
+    }
+  }
+
+  void _onSwipe(DragEndDetails details) {
+    final velocity = details.primaryVelocity ?? 0;
+    if (velocity < 0) {
+      _show(_page + 1);
+    } else if (velocity > 0) {
+      _show(_page - 1);
+    }
+  }
+
+  @override
+  void dispose() {
+    _disposed = true;
+    final docId = _docId;
+    if (docId != null) PdfPageService.close(docId);
+    super.dispose();
+  }
+
+  @override
+  Widget build(BuildContext context) {
+    final view = _view;
+    Widget body;
+    if (_error != null) {
+      body = Center(child: Text(_error!));
+    } else if (view == null) {
+      body = const Center(child: CircularProgressIndicator());
+    } else {
+      body = GestureDetector(
+        onHorizontalDragEnd: _onSwipe,
+        child: Center(
+          child: Semantics(
+            image: true,
+            label: 'Page ${_page + 1} of $_pageCount',
+            child: AspectRatio(
+              aspectRatio: view.width / view.height,
+              child: Texture(textureId: view.textureId),
+            ),
+          ),
+        ),
+      );
+    }
+    return Scaffold(
+      appBar: AppBar(title: Text(widget.name)),
+      body: body,
+      bottomNavigationBar: view == null
+          ? null
+          : SafeArea(
+              child: Row(
+                mainAxisAlignment: MainAxisAlignment.spaceBetween,
+                children: [
+                  IconButton(
+                    tooltip: 'Previous page',
+                    icon: const Icon(Icons.chevron_left),
+                    onPressed: _page > 0 ? () => _show(_page - 1) : null,
+                  ),
+                  Text('${_page + 1} / $_pageCount'),
+                  IconButton(
+                    tooltip: 'Next page',
+                    icon: const Icon(Icons.chevron_right),
+                    onPressed: _page + 1 < _pageCount ? () => _show(_page + 1) : null,
+                  ),
+                ],
+              ),
+            ),
+    );
+  }
+}
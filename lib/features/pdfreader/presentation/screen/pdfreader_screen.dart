@@ -3,13 +3,18 @@ import 'package:flutter/services.dart';
 import 'package:file_picker/file_picker.dart';
 import 'package:mime/mime.dart';
 import 'dart:io' show Platform;
+import 'package:navia/core/services/document_service.dart';
+
+import 'pdf_viewer_screen.dart';
+import 'word_reader_screen.dart';
 
 class PickedDoc {
   final String uri;
   final String name;
   final int? size;
   final String mime;
-  PickedDoc({required this.uri, required this.name, required this.size, required this.mime});
+  final String type;
+  PickedDoc({required this.uri, required this.name, required this.size, required this.mime, required this.type});
 }
 
 class PdfReaderScreen extends StatefulWidget {
@@ -18,11 +23,11 @@ class PdfReaderScreen extends StatefulWidget {
 }
 
 class _PdfReaderScreenState extends State<PdfReaderScreen> {
-  static const _metaCh = MethodChannel('saf_meta');
-  static const _allowedExt = {'pdf', 'doc', 'docx'};
+  // Word 97-2003 .doc files are not read (only .docx text is extracted).
+  static const _allowedExt = {'pdf', 'docx'};
+  static const _allowedTypes = {'pdf', 'docx'};
   static const _allowedMimes = {
     'application/pdf',
-    'application/msword',
     'application/vnd.openxmlformats-officedocument.wordprocessingml.document',
   };
 
@@ -45,38 +50,45 @@ class _PdfReaderScreenState extends State<PdfReaderScreen> {
 
     final f = res.files.single;
     final path = f.path ?? '';
-    String mime = '';
-    if (Platform.isAndroid && path.startsWith('content://')) {
-      mime = await _getMimeAndroid(path);
+    // The native service sniffs the real type and reads the size from the
+    // provider without reading the file. PDF pages are then rendered natively and
+    // Word text is streamed in chunks, so there is no size cap.
+    DocumentInfo? info;
+    if (Platform.isAndroid && path.isNotEmpty) {
+      try {
+        info = await DocumentService.describe(path);
+      } on PlatformException catch (e) {
+        debugPrint('describe failed: ${e.message}');
+      }
     }
+    String mime = info?.mime ?? '';
     mime = mime.isNotEmpty ? mime : (lookupMimeType(f.name) ?? '');
 
     final ext = (f.extension ?? '').toLowerCase();
+    final type = info?.type ?? ext;
     final okByExt = _allowedExt.contains(ext);
     final okByMime = mime.isEmpty ? true : _allowedMimes.contains(mime);
-    if (!(okByExt && okByMime)) {
-      await _announce('Unsupported type. Please select PDF or Word only.');
+    // A .docx whose zip directory could not be checked still sniffs as a zip.
+    final okByContent = _allowedTypes.contains(type) || (type == 'zip' && ext == 'docx');
+    if (type == 'doc') {
+      await _announce('Older Word (.doc) files cannot be read. Please save the file as .docx.');
       return _openPicker();
     }
-
-    // Validate file size (optional)
-    if (f.size != null && f.size! > 1024 * 500) {  // Set size limit to 500 KB
-      await _announce('File too large. Max allowed size: 500 KB');
+    if (!(okByExt && okByMime && okByContent)) {
+      await _announce('Unsupported type. Please select a PDF or a Word (.docx) file.');
       return _openPicker();
     }
 
     await _announce('File selected.');
-    final picked = PickedDoc(uri: path, name: f.name, size: f.size, mime: mime);
-    debugPrint('Picked -> uri=${picked.uri} | name=${picked.name} | size=${picked.size} | mime=${picked.mime}');
-  }
-
-  Future<String> _getMimeAndroid(String contentUri) async {
-    try {
-      final mt = await _metaCh.invokeMethod<String>('getMimeType', {'uri': contentUri});
-      return mt ?? '';
-    } catch (_) {
-      return '';
-    }
+    final size = (info != null && info.size >= 0) ? info.size : f.size;
+    final picked = PickedDoc(uri: path, name: info?.name ?? f.name, size: size, mime: mime, type: type);
+    debugPrint('Picked -> uri=${picked.uri} | name=${picked.name} | size=${picked.size} | mime=${picked.mime} | type=${picked.type}');
+    if (!mounted || picked.uri.isEmpty) return;
+    await Navigator.of(context).push(MaterialPageRoute(
+      builder: (_) => picked.type == 'pdf'
+          ? PdfViewerScreen(uri: picked.uri, name: picked.name)
+          : WordReaderScreen(uri: picked.uri, name: picked.name),
+    ));
   }
 
   @override
@@ -92,7 +104,7 @@ class _PdfReaderScreenState extends State<PdfReaderScreen> {
       appBar: AppBar(title: const Text('Pick PDF/Word (Selection Only)')),
       body: Center(
         child: Semantics(
-          label: 'Pick a document. Allowed types: PDF or Word.',
+          label: 'Pick a document. Allowed types: PDF or Word (.docx).',
           button: true,
           child: Column(
             mainAxisAlignment: MainAxisAlignment.center,
@@ -0,0 +1,94 @@
+import 'dart:async';
+import 'dart:convert';
+
+import 'package:flutter/material.dart';
+import 'package:flutter/semantics.dart';
+import 'package:navia/core/services/document_service.dart';
+
+/// Shows the text of a picked .docx. The text is extracted natively while the
+/// file is read and arrives paragraph by paragraph, so the first page shows up
+/// before a large document has been read to the end; only the text is kept,
+/// never the file. Leaving the screen cancels the native reader.
+class WordReaderScreen extends StatefulWidget {
+  final String uri;
+  final String name;
+
+  const WordReaderScreen({super.key, required this.uri, required this.name});
+
+  @override
+  State<WordReaderScreen> createState() => _WordReaderScreenState();
+}
+
+class _WordReaderScreenState extends State<WordReaderScreen> {
+  final List<String> _paragraphs = [];
+  StreamSubscription<String>? _subscription;
+  bool _done = false;
+  String? _error;
+
+  @override
+  void initState() {
+    super.initState();
+    _subscription = DocumentService.readText(widget.uri)
+        .transform(const LineSplitter())
+        .listen(_onParagraph, onError: _onError, onDone: _onDone);
+  }
+
+  void _onParagraph(String paragraph) {
+    if (paragraph.trim().isEmpty) return;
+    setState(() => _paragraphs.add(paragraph));
+  }
+
+  void _onError(Object error) {
+    debugPrint('readText failed: $error');
+    if (!mounted) return;
+    setState(() => _error = 'Could not read the document.');
+    SemanticsService.announce('Could not read the document.', Directionality.of(context));
+  }
+
+  void _onDone() {
+    if (!mounted) return;
+    setState(() => _done = true);
+    if (_error == null && _paragraphs.isEmpty) {
+      SemanticsService.announce('This document has no text.', Directionality.of(context));
+    }
+  }
+
+  @override
+  void dispose() {
+    _subscription?.cancel();
+    super.dispose();
+  }
+
+  @override
+  Widget build(BuildContext context) {
+    final Widget body;
+    if (_error != null && _paragraphs.isEmpty) {
+      body = Center(child: Text(_error!));
+    } else if (_paragraphs.isEmpty) {
+      body = Center(
+        child: _done ? const Text('This document has no text.') : const CircularProgressIndicator(),
+      );
+    } else {
+      body = ListView.builder(
+        padding: const EdgeInsets.all(16),
+        itemCount: _paragraphs.length + (_done ? 0 : 1),
+        itemBuilder: (context, index) {
+          if (index == _paragraphs.length) {
+            return const Padding(
+              padding: EdgeInsets.all(16),
+              child: Center(child: CircularProgressIndicator()),
+            );
+          }
+          return Padding(
+            padding: const EdgeInsets.only(bottom: 12),
+            child: Text(_paragraphs[index]),
+          );
+        },
+      );
+    }
+    return Scaffold(
+      appBar: AppBar(title: Text(widget.name)),
+      body: body,
+    );
+  }
+}
@@ -673,6 +673,60 @@ abstract class AppLocalizations {
   /// In en, this message translates to:
   /// **'Disconnected'**
   String get guidance_disconnected;
+
+  /// No description provided for @wifi_connected.
+  ///
+  /// In en, this message translates to:
+  /// **'Connected to Wi-Fi'**
+  String get wifi_connected;
+
+  /// No description provided for @wifi_connected_to.
+  ///
+  /// In en, this message translates to:
+  /// **'Connected to {ssid}'**
+  String wifi_connected_to(Object ssid);
+
+  /// No description provided for @wifi_signal.
+  ///
+  /// In en, this message translates to:
+  /// **'Signal'**
+  String get wifi_signal;
+
+  /// No description provided for @wifi_no_internet.
+  ///
+  /// In en, this message translates to:
+  /// **'No internet access'**
+  String get wifi_no_internet;
+
+  /// No description provided for @wifi_password_is.
+  ///
+  /// In en, this message translates to:
+  /// **'The Wi-Fi password is {password}'**
+  String wifi_password_is(Object password);
+
+  /// No description provided for @wifi_password_not_found.
+  ///
+  /// In en, this message translates to:
+  /// **'Could not read the Wi-Fi password'**
+  String get wifi_password_not_found;
+
+  /// No description provided for @wifi_name_needs_permission.
+  ///
+  /// In en, this message translates to:
+  /// **'The network name needs location permission'**
+  String get wifi_name_needs_permission;
+
+  /// No description provided for @wifi_name_needs_location.
+  ///
+  /// In en, this message translates to:
+  /// **'Turn on location to hear the network name'**
+  String get wifi_name_needs_location;
+
+  /// No description provided for @wifi_name_unavailable.
+  ///
+  /// In en, this message translates to:
+  /// **'The network name is unavailable'**
+  String get wifi_name_unavailable;
 }
 
 class _AppLocalizationsDelegate
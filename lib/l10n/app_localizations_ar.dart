@@ -315,4 +315,35 @@ class AppLocalizationsAr extends AppLocalizations {
 
   @override
   String get guidance_disconnected => 'غير متصل';
+
+  @override
+  String get wifi_connected => 'متصل بالواي فاي';
+
+  @override
+  String wifi_connected_to(Object ssid) {
+    return 'متصل بشبكة $ssid';
+  }
+
+  @override
+  String get wifi_signal => 'قوة الإشارة';
+
+  @override
+  String get wifi_no_internet => 'لا يوجد اتصال بالإنترنت';
+
+  @override
+  String wifi_password_is(Object password) {
+    return 'كلمة سر الواي فاي هي $password';
+  }
+
+  @override
+  String get wifi_password_not_found => 'تعذرت قراءة كلمة سر الواي فاي';
+
+  @override
+  String get wifi_name_needs_permission => 'معرفة اسم الشبكة تحتاج إذن الموقع';
+
+  @override
+  String get wifi_name_needs_location => 'شغّل الموقع لمعرفة اسم الشبكة';
+
+  @override
+  String get wifi_name_unavailable => 'اسم الشبكة غير متاح';
 }
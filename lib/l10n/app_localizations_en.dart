@@ -317,4 +317,37 @@ class AppLocalizationsEn extends AppLocalizations {
 
   @override
   String get guidance_disconnected => 'Disconnected';
+
+  @override
+  String get wifi_connected => 'Connected to Wi-Fi';
+
+  @override
+  String wifi_connected_to(Object ssid) {
+    return 'Connected to $ssid';
+  }
+
+  @override
+  String get wifi_signal => 'Signal';
+
+  @override
+  String get wifi_no_internet => 'No internet access';
+
+  @override
+  String wifi_password_is(Object password) {
+    return 'The Wi-Fi password is $password';
+  }
+
+  @override
+  String get wifi_password_not_found => 'Could not read the Wi-Fi password';
+
+  @override
+  String get wifi_name_needs_permission =>
+      'The network name needs location permission';
+
+  @override
+  String get wifi_name_needs_location =>
+      'Turn on location to hear the network name';
+
+  @override
+  String get wifi_name_unavailable => 'The network name is unavailable';
 }
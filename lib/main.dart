@@ -1,11 +1,15 @@
+import 'dart:async';
+
 import 'package:firebase_core/firebase_core.dart';
 import 'package:flutter/material.dart';
+import 'package:flutter/services.dart';
 import 'package:flutter_bloc/flutter_bloc.dart';
 import 'package:flutter_dotenv/flutter_dotenv.dart';
 import 'package:flutter_localizations/flutter_localizations.dart';
 import '../../../../l10n/app_localizations.dart';
 
 import 'core/services/background_service_manager.dart';
+import 'core/services/command_audio_service.dart';
 import 'features/auth/presentation/cubit/auth_cubit.dart';
 import 'features/main/presentation/cubit/navigation_cubit.dart';
 import 'features/connectivity/presentation/cubit/connectivity_cubit.dart';
@@ -15,14 +19,41 @@ import 'injection_container.dart' as di;
 import 'core/theme/app_theme.dart';
 
 Future<void> main() async {
+  await _initialize();
+  runApp(const MyApp());
+}
+
+const _warmEngine = MethodChannel('nabd/warm_engine');
+
+// Entry point of the engine WarmFlutterEngine starts while the wake service listens.
+// It does everything main() does ahead of time, but the app (and the splash screen's
+// permission checks and navigation) only starts once an activity has attached.
+@pragma('vm:entry-point')
+Future<void> warmMain() async {
   WidgetsFlutterBinding.ensureInitialized();
+  final attached = Completer<void>();
+  _warmEngine.setMethodCallHandler((call) async {
+    if (call.method == 'attach' && !attached.isCompleted) attached.complete();
+  });
+  await _initialize();
+  if (await _warmEngine.invokeMethod<bool>('isAttached') == true && !attached.isCompleted) {
+    attached.complete();
+  }
+  await attached.future;
+  _warmEngine.setMethodCallHandler(null);
+  runApp(const MyApp());
+}
+
+Future<void> _initialize() async {
+  WidgetsFlutterBinding.ensureInitialized();
+  // Listen before anything slow so the command after the wake word is not dropped.
+  CommandAudioService.initialize();
   await Firebase.initializeApp(options: DefaultFirebaseOptions.currentPlatform);
   await dotenv.load(fileName: ".env");
 
   final String picoVoiceAccessKey = dotenv.env['PICOVOICE_ACCESS_KEY']!;
   await di.init(accessKey: picoVoiceAccessKey);
   BackgroundServiceManager();
-  runApp(const MyApp());
 }
 
 class MyApp extends StatefulWidget {